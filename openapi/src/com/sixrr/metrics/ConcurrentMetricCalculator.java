@@ -0,0 +1,35 @@
+/*
+ * Copyright 2005, Sixth and Red River Software
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.sixrr.metrics;
+
+/**
+ * An optional extension of the MetricCalculator interface, for calculators which allow the files of the analysis
+ * scope to be processed by several threads at once.  Calculators which do not implement this interface are only ever
+ * passed one file at a time.
+ */
+public interface ConcurrentMetricCalculator extends MetricCalculator {
+
+    /**
+     * Tells whether {@link #processFile} may be called concurrently on this calculator.  If not, MetricsReloaded
+     * creates a separate calculator for every worker thread, using {@link Metric#createCalculator()}.  Each of those
+     * calculators runs its own {@link #beginMetricsRun} and {@link #endMetricsRun}, and the results they post together
+     * make up the results of the metric.  This is suitable for calculators which post the results for a file while
+     * processing it.
+     * @return true if this calculator is thread-safe, false if a calculator per thread is needed.
+     */
+    boolean isThreadSafe();
+}
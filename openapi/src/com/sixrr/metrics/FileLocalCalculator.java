@@ -0,0 +1,29 @@
+/*
+ * Copyright 2005, Sixth and Red River Software
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.sixrr.metrics;
+
+/**
+ * A marker interface for calculators whose results for a file depend only on the contents of that file.  Everything
+ * such a calculator posts while processing a file, and the partial result it produces for a file if it is a
+ * {@link PartialResultCalculator}, remains valid for as long as the file does not change.  MetricsReloaded may then
+ * reuse those results in a later run, instead of passing the unchanged file to the calculator again.
+ * <p/>
+ * Calculators which look at other files, for example by resolving references, searching for inheritors or using
+ * dependency information, must not implement this interface.
+ */
+public interface FileLocalCalculator extends MetricCalculator {
+}
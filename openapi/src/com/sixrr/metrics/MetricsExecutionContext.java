@@ -17,8 +17,11 @@
 package com.sixrr.metrics;
 
 import com.intellij.openapi.project.Project;
+import com.intellij.openapi.util.Computable;
 import com.intellij.openapi.util.UserDataHolder;
 import com.intellij.analysis.AnalysisScope;
+import org.jetbrains.annotations.NonNls;
+import org.jetbrains.annotations.NotNull;
 
 /**
  * The MetricsExecutionContext is used .  One MetricsExecutionContext is created for each metrics run, and shared by
@@ -37,4 +40,18 @@ public interface MetricsExecutionContext extends UserDataHolder {
      */
     AnalysisScope getScope();
 
+    /**
+     * The number of threads the files of the analysis scope are processed with.  Calculators may use this many threads
+     * for any expensive preparation of their own.
+     * @return  the number of threads for the run, at least 1.
+     */
+    int getThreadCount();
+
+    /**
+     * Runs work whose results are shared by several calculators, such as building a dependency map or searching for
+     * references.  When the run is profiled, its cost is recorded under the specified name, instead of as part of the
+     * cost of the calculator which happened to need the results first.
+     * @return  the result of the work.
+     */
+    <T> T runSharedPhase(@NonNls @NotNull String name, @NotNull Computable<T> phase);
 }
@@ -0,0 +1,26 @@
+/*
+ * Copyright 2005, Sixth and Red River Software
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.sixrr.metrics;
+
+/**
+ * A marker interface for ratio metrics whose numerator and denominator cannot be added up over disjoint parts of a
+ * project, for example because the denominator grows with the square of the number of classes measured.  When the
+ * results of several runs over different parts of a project are combined, values of such a metric which more than one
+ * run reported are dropped, instead of being replaced by a wrong value.
+ */
+public interface NonAdditiveMetric extends Metric {
+}
@@ -0,0 +1,64 @@
+/*
+ * Copyright 2005, Sixth and Red River Software
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.sixrr.metrics;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * An optional extension of the MetricCalculator interface, for calculators which aggregate values over the files of
+ * the analysis scope.  Instead of keeping a running total, such a calculator hands MetricsReloaded a partial result
+ * after each file it has processed ("map").  MetricsReloaded combines the partial results of all files ("reduce"), and
+ * passes the combined result back to the calculator to be posted.
+ * <p/>
+ * Because a partial result calculator keeps no state from one file to the next, MetricsReloaded may create a separate
+ * calculator for each worker thread, using {@link Metric#createCalculator()}, and combine the partial results of all
+ * those calculators.
+ * @param <P> the type of the partial results.
+ */
+public interface PartialResultCalculator<P> extends MetricCalculator {
+
+    /**
+     * Returns the contribution of the file which was processed last, and resets the calculator for the next file.
+     * The calculator must not modify the returned object afterwards.
+     * @return the partial result, or null if the file did not contribute anything.
+     */
+    @Nullable
+    P takePartialResult();
+
+    /**
+     * Combines two partial results into a new one.  This operation must be associative, and must not modify either
+     * argument.
+     */
+    @NotNull
+    P reduce(@NotNull P first, @NotNull P second);
+
+    /**
+     * Adds a partial result to an accumulated result, and returns the accumulated result.  The accumulated result is
+     * always one returned by {@link #reduce} or by an earlier call of this method, so it may be modified in place,
+     * which is much cheaper than copying it for every file.  The partial result must not be modified.
+     */
+    @NotNull
+    P accumulate(@NotNull P accumulated, @NotNull P partialResult);
+
+    /**
+     * Posts the combined partial results of all files in the run.  This method is called once, before
+     * {@link #endMetricsRun}, on the calculator which was created first for the metric.
+     * @param result the combined result, or null if no file contributed anything.
+     */
+    void postResult(@Nullable P result);
+}
@@ -0,0 +1,38 @@
+/*
+ * Copyright 2005-2016 Sixth and Red River Software, Bas Leijdekkers
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.sixrr.metrics;
+
+import com.intellij.psi.PsiElementVisitor;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * An optional extension of the MetricCalculator interface, for calculators which do not need to walk the files of the
+ * analysis scope themselves.  Instead of calling {@link #processFile} on such a calculator, MetricsReloaded walks each
+ * file only once, and offers every element it encounters to the visitors of all calculators taking part in this
+ * shared traversal.
+ */
+public interface SharedTraversalCalculator extends MetricCalculator {
+
+    /**
+     * Returns the visitor which should be offered the elements of each file during the shared traversal.  Elements are
+     * offered parents first, so the visitor must not descend into the children of an element itself.  This method is
+     * called once for each metrics run, after {@link #beginMetricsRun}.
+     * @return a non-recursive visitor, or null if files should be passed to {@link #processFile} instead.
+     */
+    @Nullable
+    PsiElementVisitor getSharedVisitor();
+}
@@ -0,0 +1,31 @@
+/*
+ * Copyright 2005, Sixth and Red River Software
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.sixrr.metrics;
+
+/**
+ * An optional extension of the Metric interface, for metrics whose values may be kept in the persistent cache of
+ * MetricsReloaded.  Cached values are only reused by metrics of the same version, so the version must be increased
+ * whenever the values the metric calculates for a file change.  Values of metrics which do not implement this
+ * interface are never cached.
+ */
+public interface VersionedMetric extends Metric {
+
+    /**
+     * @return the version of the calculation of this metric.
+     */
+    int getVersion();
+}
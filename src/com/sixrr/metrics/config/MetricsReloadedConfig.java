@@ -29,6 +29,10 @@ public final class MetricsReloadedConfig implements PersistentStateComponent<Met
     public String selectedProfile = "";
     public boolean autoscroll = false;
     public boolean showOnlyWarnings = false;
+    public boolean parallelExecution = false;
+    public boolean persistentCache = false;
+    public boolean incrementalUpdate = false;
+    public boolean profileRun = false;
 
     private MetricsReloadedConfig() {}
 
@@ -60,6 +64,38 @@ public final class MetricsReloadedConfig implements PersistentStateComponent<Met
         this.showOnlyWarnings = showOnlyWarnings;
     }
 
+    public boolean isParallelExecution() {
+        return parallelExecution;
+    }
+
+    public void setParallelExecution(boolean parallelExecution) {
+        this.parallelExecution = parallelExecution;
+    }
+
+    public boolean isPersistentCache() {
+        return persistentCache;
+    }
+
+    public void setPersistentCache(boolean persistentCache) {
+        this.persistentCache = persistentCache;
+    }
+
+    public boolean isIncrementalUpdate() {
+        return incrementalUpdate;
+    }
+
+    public void setIncrementalUpdate(boolean incrementalUpdate) {
+        this.incrementalUpdate = incrementalUpdate;
+    }
+
+    public boolean isProfileRun() {
+        return profileRun;
+    }
+
+    public void setProfileRun(boolean profileRun) {
+        this.profileRun = profileRun;
+    }
+
     @Nullable
     @Override
     public MetricsReloadedConfig getState() {
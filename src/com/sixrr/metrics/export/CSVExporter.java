@@ -18,81 +18,84 @@ package com.sixrr.metrics.export;
 
 import com.sixrr.metrics.Metric;
 import com.sixrr.metrics.MetricCategory;
-import com.sixrr.metrics.metricModel.MetricAbbreviationComparator;
-import com.sixrr.metrics.metricModel.MetricsResult;
 import com.sixrr.metrics.metricModel.MetricsRun;
 import com.sixrr.metrics.utils.FormatUtils;
 import org.jetbrains.annotations.NonNls;
 
-import java.io.IOException;
 import java.io.PrintWriter;
-import java.util.Arrays;
 
-public class CSVExporter implements Exporter {
-
-    private final MetricsRun run;
+public class CSVExporter extends CategoryExporter {
 
     public CSVExporter(MetricsRun run) {
-        this.run = run;
-    }
-
-    @Override
-    public void export(String fileName) throws IOException {
-        PrintWriter writer = new PrintWriter(fileName);
-        try {
-            export(writer);
-        } finally {
-            writer.close();
-        }
+        super(run);
     }
 
     @Override
-    public void export(PrintWriter writer) throws IOException {
+    protected void writeHeader(PrintWriter writer) {
         writer.print(run.getProfileName());
         writer.print(',');
         writer.println(run.getTimestamp());
-        for (MetricCategory category : MetricCategory.values()) {
-            writeResultsForCategory(category, writer);
-        }
     }
 
-    private void writeResultsForCategory(MetricCategory category, PrintWriter writer) {
-        final MetricsResult results = run.getResultsForCategory(category);
-        final String categoryName = category.name();
-        writeResults(results, writer, categoryName);
+    @Override
+    protected boolean sortMeasuredObjects() {
+        return true;
+    }
+
+    @Override
+    protected void writeCategory(MetricCategory category, ResultTable table, CategoryOutput out)
+            throws InterruptedException {
+        writeResults(table, out, category.name());
     }
 
-    private static void writeResults(MetricsResult results, @NonNls PrintWriter writer, String type) {
-        final Metric[] metrics = results.getMetrics();
+    static void writeResults(ResultTable table, CategoryOutput output, String type) throws InterruptedException {
+        final Metric[] metrics = table.metrics;
         if (metrics.length == 0) {
             return;
         }
-        Arrays.sort(metrics, new MetricAbbreviationComparator());
-        writer.print(type);
+        @NonNls final StringBuilder out = output.getBuffer();
+        out.append(type);
         for (final Metric metric : metrics) {
-            final String abbreviation = metric.getAbbreviation();
-            writer.print(',' + abbreviation);
+            out.append(',').append(metric.getAbbreviation());
         }
-        writer.println();
-        final String[] measuredObjects = results.getMeasuredObjects();
-        Arrays.sort(measuredObjects);
-
-        for (final String object : measuredObjects) {
-            writer.print('\"' + object + '\"');
+        out.append(LINE_SEPARATOR);
+        final String[] measuredObjects = table.measuredObjects;
+        for (int row = 0; row < measuredObjects.length; row++) {
+            out.append('"').append(measuredObjects[row]).append('"');
+            for (int i = 0; i < metrics.length; i++) {
+                if (table.hasValue(i, row)) {
+                    appendValue(out, metrics[i], table.values[i][row], false);
+                } else {
+                    out.append(",n/a");
+                }
+            }
+            out.append(LINE_SEPARATOR);
+            output.endRow();
+        }
+        for (double quantile : FormatUtils.SUMMARY_QUANTILES) {
+            out.append('p').append(FormatUtils.toPercentile(quantile));
             for (final Metric metric : metrics) {
-                final Double metricValue = results.getValueForMetric(metric, object);
+                final Double metricValue = table.results.getQuantileForMetric(metric, quantile);
                 if (metricValue == null) {
-                    writer.print(",n/a");
+                    out.append(",n/a");
                 } else {
-                    String formattedValue = FormatUtils.formatValue(metric, metricValue);
-                    if (formattedValue.indexOf((int) ',') >= 0) {
-                        formattedValue = '"' + formattedValue + '"';
-                    }
-                    writer.print(',' + formattedValue);
+                    appendValue(out, metric, metricValue.doubleValue(), true);
                 }
             }
-            writer.println();
+            out.append(LINE_SEPARATOR);
+        }
+        out.append(LINE_SEPARATOR);
+    }
+
+    private static void appendValue(StringBuilder out, Metric metric, double value, boolean average) {
+        out.append(',');
+        final int start = out.length();
+        FormatUtils.appendValue(out, metric, value, average);
+        for (int i = start; i < out.length(); i++) {
+            if (out.charAt(i) == ',') {
+                out.insert(start, '"').append('"');
+                break;
+            }
         }
-        writer.println();
     }
 }
@@ -0,0 +1,154 @@
+/*
+ * Copyright 2005-2016 Sixth and Red River Software, Bas Leijdekkers
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.sixrr.metrics.export;
+
+import com.sixrr.metrics.MetricCategory;
+import com.sixrr.metrics.metricModel.MetricsRun;
+import org.jetbrains.annotations.NonNls;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+
+/**
+ * Base class of exporters which write the results of each category separately.  The categories are formatted in
+ * parallel and written in order.  Each category is handed to the writing thread in chunks, and its formatting waits
+ * while too many of its chunks are pending, so only a bounded part of the document is held in memory.
+ */
+abstract class CategoryExporter implements Exporter {
+
+    @NonNls static final String LINE_SEPARATOR = System.getProperty("line.separator");
+    private static final int BUFFER_SIZE = 1 << 16;
+    private static final int CHUNK_SIZE = 1 << 16;
+    private static final int MAX_PENDING_CHUNKS = 16;
+
+    protected final MetricsRun run;
+
+    CategoryExporter(MetricsRun run) {
+        this.run = run;
+    }
+
+    @Override
+    public void export(String fileName) throws IOException {
+        final PrintWriter writer = new PrintWriter(
+                new BufferedWriter(new OutputStreamWriter(new FileOutputStream(fileName)), BUFFER_SIZE));
+        try {
+            export(writer);
+        } finally {
+            writer.close();
+        }
+    }
+
+    @Override
+    public void export(PrintWriter writer) throws IOException {
+        writeHeader(writer);
+        final MetricCategory[] categories = MetricCategory.values();
+        final int threadCount = Math.min(categories.length, Runtime.getRuntime().availableProcessors());
+        final ExecutorService executor = Executors.newFixedThreadPool(threadCount);
+        try {
+            final List<CategoryOutput> outputs = new ArrayList<CategoryOutput>(categories.length);
+            final List<Future<?>> futures = new ArrayList<Future<?>>(categories.length);
+            for (final MetricCategory category : categories) {
+                final CategoryOutput out = new CategoryOutput();
+                outputs.add(out);
+                futures.add(executor.submit(new Callable<Object>() {
+                    @Override
+                    public Object call() throws InterruptedException {
+                        try {
+                            final ResultTable table = new ResultTable(run.getResultsForCategory(category),
+                                    sortMeasuredObjects());
+                            writeCategory(category, table, out);
+                            out.flush();
+                        } finally {
+                            out.close();
+                        }
+                        return null;
+                    }
+                }));
+            }
+            // categories are started in order, so the one being written is always running or done
+            for (int i = 0; i < outputs.size(); i++) {
+                final BlockingQueue<String> chunks = outputs.get(i).chunks;
+                for (String chunk = chunks.take(); !chunk.isEmpty(); chunk = chunks.take()) {
+                    writer.write(chunk);
+                }
+                futures.get(i).get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        } catch (ExecutionException e) {
+            final Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new RuntimeException(cause);
+        } finally {
+            executor.shutdownNow();
+        }
+        writeFooter(writer);
+        writer.flush();
+        if (writer.checkError()) {
+            throw new IOException("Error writing export");
+        }
+    }
+
+    protected abstract boolean sortMeasuredObjects();
+
+    protected void writeHeader(PrintWriter writer) {}
+
+    /**
+     * Formats the results of the specified category.  Called on a pooled thread, concurrently for all categories.
+     */
+    protected abstract void writeCategory(MetricCategory category, ResultTable table, CategoryOutput out)
+            throws InterruptedException;
+
+    protected void writeFooter(PrintWriter writer) {}
+
+    /**
+     * The formatted output of one category.  Exporters append to the buffer and call {@link #endRow} after each
+     * row, which passes the buffer on to the writing thread once it has grown past the chunk size.
+     */
+    static class CategoryOutput {
+
+        /** holds the chunks of the category, ended by an empty one */
+        final BlockingQueue<String> chunks = new ArrayBlockingQueue<String>(MAX_PENDING_CHUNKS);
+        private final StringBuilder buffer = new StringBuilder(CHUNK_SIZE);
+
+        StringBuilder getBuffer() {
+            return buffer;
+        }
+
+        void endRow() throws InterruptedException {
+            if (buffer.length() >= CHUNK_SIZE) {
+                flush();
+            }
+        }
+
+        void flush() throws InterruptedException {
+            if (buffer.length() > 0) {
+                chunks.put(buffer.toString());
+                buffer.setLength(0);
+            }
+        }
+
+        void close() throws InterruptedException {
+            chunks.put("");
+        }
+    }
+}
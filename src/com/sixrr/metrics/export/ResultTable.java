@@ -0,0 +1,95 @@
+/*
+ * Copyright 2005-2016 Sixth and Red River Software, Bas Leijdekkers
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.sixrr.metrics.export;
+
+import com.sixrr.metrics.Metric;
+import com.sixrr.metrics.metricModel.MetricAbbreviationComparator;
+import com.sixrr.metrics.metricModel.MetricsResult;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * The results of one category copied into columns, so they can be exported without looking up each value.
+ */
+class ResultTable {
+
+    final MetricsResult results;
+    final Metric[] metrics;
+    final String[] measuredObjects;
+    /** the values of each metric, in the order of the measured objects, NaN if there is no value */
+    final double[][] values;
+
+    /**
+     * @param sortMeasuredObjects  true to sort the measured objects by name, false to keep them in the order of the
+     *                             results.  Metrics are always sorted by abbreviation.
+     */
+    ResultTable(@NotNull MetricsResult results, boolean sortMeasuredObjects) {
+        this.results = results;
+        metrics = results.getMetrics();
+        Arrays.sort(metrics, new MetricAbbreviationComparator());
+        final String[] objects = results.getMeasuredObjects();
+        values = new double[metrics.length][];
+        for (int i = 0; i < metrics.length; i++) {
+            values[i] = results.getValuesForMetric(metrics[i]);
+        }
+        if (!sortMeasuredObjects) {
+            measuredObjects = objects;
+            return;
+        }
+        final int[] order = getSortedOrder(objects);
+        measuredObjects = new String[objects.length];
+        for (int i = 0; i < order.length; i++) {
+            measuredObjects[i] = objects[order[i]];
+        }
+        for (int i = 0; i < values.length; i++) {
+            final double[] column = values[i];
+            final double[] sortedColumn = new double[objects.length];
+            for (int j = 0; j < order.length; j++) {
+                sortedColumn[j] = order[j] < column.length ? column[order[j]] : Double.NaN;
+            }
+            values[i] = sortedColumn;
+        }
+    }
+
+    int getRowCount() {
+        return measuredObjects.length;
+    }
+
+    boolean hasValue(int metric, int row) {
+        return row < values[metric].length && !Double.isNaN(values[metric][row]);
+    }
+
+    private static int[] getSortedOrder(final String[] strings) {
+        final Integer[] order = new Integer[strings.length];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = Integer.valueOf(i);
+        }
+        Arrays.sort(order, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer index1, Integer index2) {
+                return strings[index1.intValue()].compareTo(strings[index2.intValue()]);
+            }
+        });
+        final int[] result = new int[order.length];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = order[i].intValue();
+        }
+        return result;
+    }
+}
@@ -20,72 +20,74 @@ import com.intellij.analysis.AnalysisScope;
 import com.intellij.openapi.util.text.StringUtil;
 import com.sixrr.metrics.Metric;
 import com.sixrr.metrics.MetricCategory;
-import com.sixrr.metrics.metricModel.MetricAbbreviationComparator;
-import com.sixrr.metrics.metricModel.MetricsResult;
 import com.sixrr.metrics.metricModel.MetricsRun;
+import com.sixrr.metrics.utils.FormatUtils;
 import org.jetbrains.annotations.NonNls;
 
-import java.io.FileOutputStream;
-import java.io.IOException;
 import java.io.PrintWriter;
-import java.util.Arrays;
 
-public class XMLExporter implements Exporter {
-
-    private final MetricsRun run;
+public class XMLExporter extends CategoryExporter {
 
     public XMLExporter(MetricsRun run) {
-        this.run = run;
-    }
-
-    @Override
-    public void export(String fileName) throws IOException {
-        @NonNls final PrintWriter writer = new PrintWriter(new FileOutputStream(fileName));
-        try {
-            export(writer);
-        } finally {
-            writer.close();
-        }
+        super(run);
     }
 
     @Override
-    public void export(PrintWriter writer) throws IOException {
+    protected void writeHeader(PrintWriter writer) {
         writer.println("<METRICS profile=\"" + StringUtil.escapeXml(run.getProfileName()) + "\" timestamp=\"" +
                 run.getTimestamp() + "\">");
         writeContext(run.getContext());
-        for (MetricCategory category : MetricCategory.values()) {
-            writeResultsForCategory(category, writer);
-        }
-        writer.println("</METRICS>");
     }
 
     private void writeContext(AnalysisScope context) {
     }
 
-    private void writeResultsForCategory(MetricCategory category, PrintWriter writer) {
-        final MetricsResult results = run.getResultsForCategory(category);
-        final Metric[] metrics = results.getMetrics();
-        Arrays.sort(metrics, new MetricAbbreviationComparator());
-        for (final Metric metric : metrics) {
-            writeResultsForMetric(category, metric, results, writer);
-        }
+    @Override
+    protected void writeFooter(PrintWriter writer) {
+        writer.println("</METRICS>");
+    }
+
+    @Override
+    protected boolean sortMeasuredObjects() {
+        return false;
     }
 
-    private static void writeResultsForMetric(MetricCategory category, Metric metric, MetricsResult results,
-                                              @NonNls PrintWriter writer) {
-        writer.println("\t<METRIC category=\"" + category.name() + "\" name=\"" +
-                metric.getDisplayName() + "\" abbreviation=\"" + metric.getAbbreviation() + "\">");
-        for (final String measuredObject : results.getMeasuredObjects()) {
-            writeValue(results, metric, measuredObject, writer);
+    @Override
+    protected void writeCategory(MetricCategory category, ResultTable table, CategoryOutput out)
+            throws InterruptedException {
+        final String[] escapedObjects = new String[table.getRowCount()];
+        for (int row = 0; row < escapedObjects.length; row++) {
+            escapedObjects[row] = StringUtil.escapeXml(table.measuredObjects[row]);
+        }
+        for (int i = 0; i < table.metrics.length; i++) {
+            writeResultsForMetric(category, table, i, escapedObjects, out);
         }
-        writer.println("\t</METRIC>");
     }
 
-    private static void writeValue(MetricsResult results, Metric metric, String measuredObject,
-                                   @NonNls PrintWriter writer) {
-        final Double value = results.getValueForMetric(metric, measuredObject);
-        if (value != null) {
-            writer.println("\t\t<VALUE measured=\"" + StringUtil.escapeXml(measuredObject) + "\" value=\"" + value + "\"/>");
+    private static void writeResultsForMetric(MetricCategory category, ResultTable table, int metricIndex,
+                                              String[] escapedObjects, CategoryOutput output)
+            throws InterruptedException {
+        @NonNls final StringBuilder out = output.getBuffer();
+        final Metric metric = table.metrics[metricIndex];
+        out.append("\t<METRIC category=\"").append(category.name())
+                .append("\" name=\"").append(metric.getDisplayName())
+                .append("\" abbreviation=\"").append(metric.getAbbreviation()).append('"');
+        for (double quantile : FormatUtils.SUMMARY_QUANTILES) {
+            final Double value = table.results.getQuantileForMetric(metric, quantile);
+            if (value != null) {
+                out.append(" p").append(FormatUtils.toPercentile(quantile))
+                        .append("=\"").append(value.doubleValue()).append('"');
+            }
+        }
+        out.append('>').append(LINE_SEPARATOR);
+        final double[] values = table.values[metricIndex];
+        for (int row = 0; row < escapedObjects.length; row++) {
+            if (table.hasValue(metricIndex, row)) {
+                out.append("\t\t<VALUE measured=\"").append(escapedObjects[row])
+                        .append("\" value=\"").append(values[row]).append("\"/>").append(LINE_SEPARATOR);
+                output.endRow();
+            }
         }
+        out.append("\t</METRIC>").append(LINE_SEPARATOR);
     }
 }
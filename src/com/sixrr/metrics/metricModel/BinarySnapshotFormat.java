@@ -0,0 +1,157 @@
+/*
+ * Copyright 2005, Sixth and Red River Software
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+
+package com.sixrr.metrics.metricModel;
+
+import org.jetbrains.annotations.NonNls;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Constants and encoding helpers shared by the reader and writer of binary snapshots.  A binary snapshot consists of:
+ * <ul>
+ * <li>a fixed header: magic number, format version, flags and the offset of the index;</li>
+ * <li>the profile name, timestamp, plugin version, and the index and count of the shard, both 0 if the run was
+ * not sharded;</li>
+ * <li>a block holding the sorted dictionary of measured objects, each sharing a prefix with the one before;</li>
+ * <li>a block for each metric, holding its delta coded dictionary IDs, a flag telling whether denominators are
+ * stored, and its values, or its numerators followed by its denominators;</li>
+ * <li>the index: the class name, block offset and value count of each metric.</li>
+ * </ul>
+ * Blocks are optionally deflated.  All integers except those of the fixed header are unsigned variable length ints.
+ */
+final class BinarySnapshotFormat {
+
+    static final int MAGIC = 0x4d52534e; // "MRSN"
+    static final int VERSION = 3;
+    static final int FIRST_VERSION_WITH_DENOMINATORS = 2;
+    static final int FIRST_VERSION_WITH_SHARD = 3;
+    static final int FLAG_COMPRESSED = 1;
+    static final int INDEX_OFFSET_POSITION = 12;
+    @NonNls static final String FILE_EXTENSION = ".metb";
+
+    private BinarySnapshotFormat() {}
+
+    static boolean isBinarySnapshotFileName(@NotNull String fileName) {
+        return fileName.endsWith(FILE_EXTENSION);
+    }
+
+    static boolean isBinarySnapshot(@NotNull File file) {
+        try {
+            final DataInputStream in = new DataInputStream(new FileInputStream(file));
+            try {
+                return in.readInt() == MAGIC;
+            } finally {
+                in.close();
+            }
+        } catch (IOException ignore) {
+            return false;
+        }
+    }
+
+    static void writeVarInt(@NotNull DataOutput out, int value) throws IOException {
+        while ((value & ~0x7f) != 0) {
+            out.writeByte((value & 0x7f) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte(value);
+    }
+
+    static int readVarInt(@NotNull ByteBuffer in) {
+        int result = 0;
+        for (int shift = 0; ; shift += 7) {
+            final byte b = in.get();
+            result |= (b & 0x7f) << shift;
+            if (b >= 0) {
+                return result;
+            }
+        }
+    }
+
+    static String readUTF(ByteBuffer buffer) throws IOException {
+        final int length = buffer.getShort() & 0xffff;
+        final byte[] bytes = new byte[length + 2];
+        bytes[0] = (byte) (length >> 8);
+        bytes[1] = (byte) length;
+        buffer.get(bytes, 2, length);
+        // decoded by DataInputStream, because DataOutput.writeUTF() writes modified UTF-8
+        return new DataInputStream(new ByteArrayInputStream(bytes)).readUTF();
+    }
+
+    static void writeBlock(@NotNull DataOutput out, @NotNull byte[] bytes, boolean compress) throws IOException {
+        writeVarInt(out, bytes.length);
+        if (!compress) {
+            writeVarInt(out, bytes.length);
+            out.write(bytes);
+            return;
+        }
+        final Deflater deflater = new Deflater();
+        try {
+            deflater.setInput(bytes);
+            deflater.finish();
+            final ByteArrayOutputStream compressed = new ByteArrayOutputStream(bytes.length / 2 + 16);
+            final byte[] buffer = new byte[8192];
+            while (!deflater.finished()) {
+                final int count = deflater.deflate(buffer);
+                compressed.write(buffer, 0, count);
+            }
+            writeVarInt(out, compressed.size());
+            out.write(compressed.toByteArray());
+        } finally {
+            deflater.end();
+        }
+    }
+
+    /**
+     * @return the contents of the block at the current position of the buffer, which is moved past the block.
+     */
+    @NotNull
+    static ByteBuffer readBlock(@NotNull ByteBuffer in, boolean compressed) throws IOException {
+        final int length = readVarInt(in);
+        final int storedLength = readVarInt(in);
+        final ByteBuffer stored = in.slice();
+        stored.limit(storedLength);
+        in.position(in.position() + storedLength);
+        if (!compressed) {
+            return stored;
+        }
+        final byte[] input = new byte[storedLength];
+        stored.get(input);
+        final byte[] result = new byte[length];
+        final Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(input);
+            int count = 0;
+            while (count < length && !inflater.finished()) {
+                if (inflater.needsInput()) {
+                    throw new EOFException("truncated block");
+                }
+                count += inflater.inflate(result, count, length - count);
+            }
+        } catch (DataFormatException e) {
+            throw new IOException(e.getMessage());
+        } finally {
+            inflater.end();
+        }
+        return ByteBuffer.wrap(result);
+    }
+}
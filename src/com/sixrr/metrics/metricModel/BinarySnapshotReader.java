@@ -0,0 +1,227 @@
+/*
+ * Copyright 2005, Sixth and Red River Software
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+
+package com.sixrr.metrics.metricModel;
+
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.progress.ProgressIndicator;
+import com.intellij.openapi.progress.ProgressManager;
+import com.sixrr.metrics.Metric;
+import com.sixrr.metrics.MetricCategory;
+import com.sixrr.metrics.profile.MetricRepository;
+import com.sixrr.metrics.profile.MetricsProfileRepository;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.*;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Reads a binary snapshot, which is mapped into memory instead of read through a stream.  Only the header and the index
+ * are read up front.  The values of each category are read when the results of that category are first used.
+ * @see BinarySnapshotFormat
+ */
+class BinarySnapshotReader {
+
+    private static final Logger logger = Logger.getInstance("MetricsReloaded");
+
+    private final File file;
+    @Nullable private final ProgressIndicator indicator;
+    private long fileLength = 0L;
+    private long lastModified = 0L;
+    private int version = 0;
+    private boolean compressed = false;
+    private int dictionaryOffset = 0;
+    private String[] dictionary = null;
+
+    BinarySnapshotReader(@NotNull File file, @Nullable ProgressIndicator indicator) {
+        this.file = file;
+        this.indicator = indicator;
+    }
+
+    /**
+     * @return the run read from the file, or null if the file could not be read.
+     */
+    @Nullable
+    MetricsRunImpl read() {
+        try {
+            fileLength = file.length();
+            lastModified = file.lastModified();
+            return readIndex(map());
+        } catch (IOException e) {
+            logger.warn(e);
+        } catch (BufferUnderflowException e) {
+            logger.warn("truncated snapshot: " + file, e);
+        } catch (IndexOutOfBoundsException e) {
+            logger.warn("corrupt snapshot: " + file, e);
+        } catch (IllegalArgumentException e) {
+            logger.warn("corrupt snapshot: " + file, e);
+        }
+        return null;
+    }
+
+    private ByteBuffer map() throws IOException {
+        final RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+        try {
+            final FileChannel channel = randomAccessFile.getChannel();
+            // the mapping stays valid after the channel is closed
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0L, channel.size());
+        } finally {
+            randomAccessFile.close();
+        }
+    }
+
+    private MetricsRunImpl readIndex(ByteBuffer buffer) throws IOException {
+        if (buffer.getInt() != BinarySnapshotFormat.MAGIC) {
+            throw new IOException("not a binary snapshot: " + file);
+        }
+        version = buffer.getInt();
+        if (version < 1 || version > BinarySnapshotFormat.VERSION) {
+            throw new IOException("unsupported snapshot version " + version + ": " + file);
+        }
+        compressed = (buffer.getInt() & BinarySnapshotFormat.FLAG_COMPRESSED) != 0;
+        final long indexOffset = buffer.getLong();
+        final MetricsRunImpl run = new MetricsRunImpl();
+        run.setProfileName(BinarySnapshotFormat.readUTF(buffer));
+        run.setTimestamp(new TimeStamp(BinarySnapshotFormat.readUTF(buffer)));
+        BinarySnapshotFormat.readUTF(buffer); // plugin version, may need this later
+        if (version >= BinarySnapshotFormat.FIRST_VERSION_WITH_SHARD) {
+            final int shardIndex = BinarySnapshotFormat.readVarInt(buffer);
+            run.setShard(shardIndex, BinarySnapshotFormat.readVarInt(buffer));
+        }
+        dictionaryOffset = buffer.position();
+
+        buffer.position((int) indexOffset);
+        final int metricCount = BinarySnapshotFormat.readVarInt(buffer);
+        final Map<MetricCategory, List<Metric>> metrics =
+                new EnumMap<MetricCategory, List<Metric>>(MetricCategory.class);
+        final Map<MetricCategory, List<Long>> offsets = new EnumMap<MetricCategory, List<Long>>(MetricCategory.class);
+        for (MetricCategory category : MetricCategory.values()) {
+            metrics.put(category, new ArrayList<Metric>());
+            offsets.put(category, new ArrayList<Long>());
+        }
+        final MetricRepository repository = MetricsProfileRepository.getInstance();
+        for (int i = 0; i < metricCount; i++) {
+            if (indicator != null) {
+                indicator.checkCanceled();
+            }
+            final String className = BinarySnapshotFormat.readUTF(buffer);
+            final long offset = buffer.getLong();
+            BinarySnapshotFormat.readVarInt(buffer); // value count
+            final Metric metric = repository.getMetric(className);
+            if (metric == null) {
+                continue;
+            }
+            metrics.get(metric.getCategory()).add(metric);
+            offsets.get(metric.getCategory()).add(Long.valueOf(offset));
+        }
+        for (MetricCategory category : MetricCategory.values()) {
+            final List<Metric> categoryMetrics = metrics.get(category);
+            final List<Long> categoryOffsets = offsets.get(category);
+            if (!categoryMetrics.isEmpty()) {
+                final long[] blockOffsets = new long[categoryOffsets.size()];
+                for (int i = 0; i < blockOffsets.length; i++) {
+                    blockOffsets[i] = categoryOffsets.get(i).longValue();
+                }
+                final Metric[] metricsArray = categoryMetrics.toArray(new Metric[categoryMetrics.size()]);
+                run.setResultsForCategory(category, new LazyMetricsResult(this, metricsArray, blockOffsets));
+            }
+        }
+        return run;
+    }
+
+    /**
+     * Reads the values of the specified metrics.  Checks for cancellation of the current progress indicator, if any.
+     * @param offsets the offsets of the blocks of the metrics, as recorded in the index.
+     */
+    synchronized void load(@NotNull Metric[] metrics, @NotNull long[] offsets, @NotNull MetricsResult result)
+            throws IOException {
+        if (file.length() != fileLength || file.lastModified() != lastModified) {
+            throw new IOException("snapshot changed since it was opened: " + file);
+        }
+        try {
+            final ByteBuffer buffer = map();
+            if (dictionary == null) {
+                buffer.position(dictionaryOffset);
+                dictionary = decodeDictionary(BinarySnapshotFormat.readBlock(buffer, compressed));
+            }
+            for (int i = 0; i < metrics.length; i++) {
+                ProgressManager.checkCanceled();
+                buffer.position((int) offsets[i]);
+                final ByteBuffer block = BinarySnapshotFormat.readBlock(buffer, compressed);
+                decodeValues(metrics[i], block, version, dictionary, result);
+            }
+        } catch (BufferUnderflowException e) {
+            throw new IOException("truncated snapshot: " + file);
+        } catch (IndexOutOfBoundsException e) {
+            throw new IOException("corrupt snapshot: " + file);
+        } catch (IllegalArgumentException e) {
+            throw new IOException("corrupt snapshot: " + file);
+        }
+    }
+
+    static String[] decodeDictionary(ByteBuffer block) throws IOException {
+        final int size = BinarySnapshotFormat.readVarInt(block);
+        final String[] result = new String[size];
+        String previous = "";
+        byte[] bytes = new byte[64];
+        for (int i = 0; i < size; i++) {
+            final int sharedLength = BinarySnapshotFormat.readVarInt(block);
+            final int suffixLength = BinarySnapshotFormat.readVarInt(block);
+            if (suffixLength > bytes.length) {
+                bytes = new byte[Math.max(suffixLength, bytes.length << 1)];
+            }
+            block.get(bytes, 0, suffixLength);
+            final String suffix = new String(bytes, 0, suffixLength, "UTF-8");
+            result[i] = previous.substring(0, sharedLength) + suffix;
+            previous = result[i];
+        }
+        return result;
+    }
+
+    private static void decodeValues(Metric metric, ByteBuffer block, int version, String[] dictionary,
+                                     MetricsResult result) {
+        final int count = BinarySnapshotFormat.readVarInt(block);
+        final int[] rows = new int[count];
+        int row = 0;
+        for (int i = 0; i < count; i++) {
+            row += BinarySnapshotFormat.readVarInt(block);
+            rows[i] = row;
+        }
+        final boolean hasDenominators =
+                version >= BinarySnapshotFormat.FIRST_VERSION_WITH_DENOMINATORS && block.get() != 0;
+        if (!hasDenominators) {
+            for (int i = 0; i < count; i++) {
+                result.postValue(metric, dictionary[rows[i]], block.getDouble());
+            }
+            return;
+        }
+        final double[] numerators = new double[count];
+        for (int i = 0; i < count; i++) {
+            numerators[i] = block.getDouble();
+        }
+        for (int i = 0; i < count; i++) {
+            result.postValue(metric, dictionary[rows[i]], numerators[i], block.getDouble());
+        }
+    }
+}
@@ -0,0 +1,214 @@
+/*
+ * Copyright 2005, Sixth and Red River Software
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+
+package com.sixrr.metrics.metricModel;
+
+import com.sixrr.metrics.Metric;
+import com.sixrr.metrics.MetricCategory;
+import gnu.trove.TObjectIntHashMap;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.TreeSet;
+
+/**
+ * Writes a metrics run as a binary snapshot.
+ * @see BinarySnapshotFormat
+ */
+class BinarySnapshotWriter {
+
+    private final MetricsRun run;
+    private final boolean compress;
+
+    BinarySnapshotWriter(@NotNull MetricsRun run, boolean compress) {
+        this.run = run;
+        this.compress = compress;
+    }
+
+    void write(@NotNull File file, @NotNull String version) throws IOException {
+        final String[] dictionary = createDictionary();
+        final TObjectIntHashMap<String> ids = new TObjectIntHashMap<String>(dictionary.length);
+        for (int i = 0; i < dictionary.length; i++) {
+            ids.put(dictionary[i], i);
+        }
+        final List<String> metricClassNames = new ArrayList<String>();
+        final List<Long> metricOffsets = new ArrayList<Long>();
+        final List<Integer> metricValueCounts = new ArrayList<Integer>();
+        final CountingOutputStream counter =
+                new CountingOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+        final DataOutputStream out = new DataOutputStream(counter);
+        try {
+            out.writeInt(BinarySnapshotFormat.MAGIC);
+            out.writeInt(BinarySnapshotFormat.VERSION);
+            out.writeInt(compress ? BinarySnapshotFormat.FLAG_COMPRESSED : 0);
+            out.writeLong(0L); // index offset, filled in below
+            out.writeUTF(String.valueOf(run.getProfileName()));
+            out.writeUTF(String.valueOf(run.getTimestamp()));
+            out.writeUTF(version);
+            BinarySnapshotFormat.writeVarInt(out, run.getShardIndex());
+            BinarySnapshotFormat.writeVarInt(out, run.getShardCount());
+            BinarySnapshotFormat.writeBlock(out, encodeDictionary(dictionary), compress);
+            for (MetricCategory category : MetricCategory.values()) {
+                final MetricsResult results = run.getResultsForCategory(category);
+                final String[] measuredObjects = results.getMeasuredObjects();
+                final int[] order = getOrderOfIds(measuredObjects, ids);
+                for (Metric metric : results.getMetrics()) {
+                    final ByteArrayOutputStream bytes = new ByteArrayOutputStream(measuredObjects.length * 10 + 8);
+                    final int valueCount =
+                            encodeValues(metric, results, measuredObjects, order, ids, new DataOutputStream(bytes));
+                    metricClassNames.add(metric.getClass().getName());
+                    metricOffsets.add(Long.valueOf(counter.getCount()));
+                    metricValueCounts.add(Integer.valueOf(valueCount));
+                    BinarySnapshotFormat.writeBlock(out, bytes.toByteArray(), compress);
+                }
+            }
+            final long indexOffset = counter.getCount();
+            BinarySnapshotFormat.writeVarInt(out, metricClassNames.size());
+            for (int i = 0; i < metricClassNames.size(); i++) {
+                out.writeUTF(metricClassNames.get(i));
+                out.writeLong(metricOffsets.get(i).longValue());
+                BinarySnapshotFormat.writeVarInt(out, metricValueCounts.get(i).intValue());
+            }
+            out.close();
+            final RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw");
+            try {
+                randomAccessFile.seek(BinarySnapshotFormat.INDEX_OFFSET_POSITION);
+                randomAccessFile.writeLong(indexOffset);
+            } finally {
+                randomAccessFile.close();
+            }
+        } finally {
+            out.close();
+        }
+    }
+
+    private String[] createDictionary() {
+        final TreeSet<String> measuredObjects = new TreeSet<String>();
+        for (MetricCategory category : MetricCategory.values()) {
+            final MetricsResult results = run.getResultsForCategory(category);
+            measuredObjects.addAll(Arrays.asList(results.getMeasuredObjects()));
+        }
+        return measuredObjects.toArray(new String[measuredObjects.size()]);
+    }
+
+    static byte[] encodeDictionary(String[] dictionary) throws IOException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream(dictionary.length * 16 + 8);
+        final DataOutputStream out = new DataOutputStream(bytes);
+        BinarySnapshotFormat.writeVarInt(out, dictionary.length);
+        String previous = "";
+        for (String measuredObject : dictionary) {
+            final int sharedLength = getSharedPrefixLength(previous, measuredObject);
+            final byte[] suffix = measuredObject.substring(sharedLength).getBytes("UTF-8");
+            BinarySnapshotFormat.writeVarInt(out, sharedLength);
+            BinarySnapshotFormat.writeVarInt(out, suffix.length);
+            out.write(suffix);
+            previous = measuredObject;
+        }
+        return bytes.toByteArray();
+    }
+
+    private static int getSharedPrefixLength(String s1, String s2) {
+        final int length = Math.min(s1.length(), s2.length());
+        int result = 0;
+        while (result < length && s1.charAt(result) == s2.charAt(result)) {
+            result++;
+        }
+        if (result > 0 && Character.isHighSurrogate(s1.charAt(result - 1))) {
+            // don't split a surrogate pair between the prefix and the suffix
+            result--;
+        }
+        return result;
+    }
+
+    /**
+     * @return the indices of the measured objects, ordered by their dictionary IDs.
+     */
+    private static int[] getOrderOfIds(String[] measuredObjects, TObjectIntHashMap<String> ids) {
+        final long[] keys = new long[measuredObjects.length];
+        for (int i = 0; i < measuredObjects.length; i++) {
+            keys[i] = ((long) ids.get(measuredObjects[i]) << 32) | i;
+        }
+        Arrays.sort(keys);
+        final int[] result = new int[keys.length];
+        for (int i = 0; i < keys.length; i++) {
+            result[i] = (int) keys[i];
+        }
+        return result;
+    }
+
+    private static int encodeValues(Metric metric, MetricsResult results, String[] measuredObjects, int[] order,
+                                    TObjectIntHashMap<String> ids, DataOutputStream out) throws IOException {
+        final double[] numerators = results.getNumeratorsForMetric(metric);
+        final double[] denominators = results.getDenominatorsForMetric(metric);
+        final double[] values = results.getValuesForMetric(metric);
+        final int[] valueIndices = new int[order.length];
+        int count = 0;
+        boolean hasDenominators = false;
+        for (int index : order) {
+            if (index < values.length && !Double.isNaN(values[index])) {
+                valueIndices[count] = index;
+                count++;
+                hasDenominators |= denominators[index] != 1.0;
+            }
+        }
+        BinarySnapshotFormat.writeVarInt(out, count);
+        int previousRow = 0;
+        for (int i = 0; i < count; i++) {
+            final int row = ids.get(measuredObjects[valueIndices[i]]);
+            BinarySnapshotFormat.writeVarInt(out, row - previousRow);
+            previousRow = row;
+        }
+        out.writeByte(hasDenominators ? 1 : 0);
+        for (int i = 0; i < count; i++) {
+            out.writeDouble(hasDenominators ? numerators[valueIndices[i]] : values[valueIndices[i]]);
+        }
+        if (hasDenominators) {
+            for (int i = 0; i < count; i++) {
+                out.writeDouble(denominators[valueIndices[i]]);
+            }
+        }
+        return count;
+    }
+
+    private static class CountingOutputStream extends FilterOutputStream {
+
+        private long count = 0L;
+
+        CountingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] bytes, int offset, int length) throws IOException {
+            out.write(bytes, offset, length);
+            count += length;
+        }
+
+        long getCount() {
+            return count;
+        }
+    }
+}
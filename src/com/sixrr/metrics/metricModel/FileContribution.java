@@ -0,0 +1,261 @@
+/*
+ * Copyright 2005, Sixth and Red River Software
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.sixrr.metrics.metricModel;
+
+import com.intellij.openapi.fileTypes.FileType;
+import com.intellij.openapi.module.Module;
+import com.intellij.openapi.module.ModuleManager;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.util.TextRange;
+import com.intellij.psi.*;
+import com.intellij.psi.util.PsiTreeUtil;
+import com.sixrr.metrics.Metric;
+import com.sixrr.metrics.MetricCategory;
+import com.sixrr.metrics.MetricsResultsHolder;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The results posted by file-local calculators while processing a single file, and their partial results for it.
+ */
+class FileContribution {
+
+    private final long modificationStamp;
+    private final List<RecordedValue> values = new ArrayList<RecordedValue>();
+    private final Object[] partialResults;
+
+    FileContribution(long modificationStamp, int numCalculators) {
+        this.modificationStamp = modificationStamp;
+        partialResults = new Object[numCalculators];
+    }
+
+    public long getModificationStamp() {
+        return modificationStamp;
+    }
+
+    /**
+     * @param target  the measured object, a smart pointer for classes, interfaces and methods and the name of modules
+     *                and packages, which must not keep their PSI alive.
+     */
+    public void addValue(MetricCategory category, Metric metric, @Nullable Object target,
+                         double numerator, double denominator, boolean fraction) {
+        values.add(new RecordedValue(category, metric, target, numerator, denominator, fraction));
+    }
+
+    public void setPartialResult(int index, @Nullable Object partialResult) {
+        partialResults[index] = partialResult;
+    }
+
+    @Nullable
+    public Object getPartialResult(int index) {
+        return partialResults[index];
+    }
+
+    public void addValues(FileContribution contribution) {
+        values.addAll(contribution.values);
+    }
+
+    /**
+     * Encodes the values recorded for the specified metric, for storage in the persistent cache.  Only values for
+     * classes, interfaces and methods can be stored, which are identified by their text range in the file.
+     * @return the encoded values, or null if some of the values cannot be stored.
+     */
+    @Nullable
+    public byte[] encodeValues(Metric metric) {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final DataOutputStream out = new DataOutputStream(bytes);
+        try {
+            for (RecordedValue value : values) {
+                if (value.metric != metric) {
+                    continue;
+                }
+                final MetricCategory category = value.category;
+                if (category != MetricCategory.Class && category != MetricCategory.Interface &&
+                        category != MetricCategory.Method) {
+                    return null;
+                }
+                final PsiElement element = ((SmartPsiElementPointer<?>) value.target).getElement();
+                if (element == null) {
+                    return null;
+                }
+                final TextRange range = element.getTextRange();
+                out.writeByte(category.ordinal());
+                out.writeInt(range.getStartOffset());
+                out.writeInt(range.getEndOffset());
+                out.writeDouble(value.numerator);
+                out.writeDouble(value.denominator);
+                out.writeBoolean(value.fraction);
+            }
+            out.close();
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Records the values of the specified metric decoded from the persistent cache, finding their classes and methods
+     * in the specified file.
+     * @return true if all values were restored, false if the data did not match the file and nothing was recorded.
+     */
+    public boolean decodeValues(Metric metric, PsiFile file, byte[] data, MeasuredObjectKeys keys) {
+        final List<RecordedValue> decodedValues = new ArrayList<RecordedValue>();
+        final MetricCategory[] categories = MetricCategory.values();
+        final DataInputStream in = new DataInputStream(new ByteArrayInputStream(data));
+        try {
+            while (in.available() > 0) {
+                final MetricCategory category = categories[in.readByte()];
+                final int startOffset = in.readInt();
+                final int endOffset = in.readInt();
+                final Class<? extends PsiElement> elementClass =
+                        category == MetricCategory.Method ? PsiMethod.class : PsiClass.class;
+                final PsiElement element =
+                        PsiTreeUtil.findElementOfClassAtRange(file, startOffset, endOffset, elementClass);
+                if (element == null || element.getTextRange().getStartOffset() != startOffset ||
+                        element.getTextRange().getEndOffset() != endOffset) {
+                    return false;
+                }
+                decodedValues.add(new RecordedValue(category, metric, keys.getPointer(element),
+                        in.readDouble(), in.readDouble(), in.readBoolean()));
+            }
+        } catch (IOException e) {
+            return false;
+        } catch (IndexOutOfBoundsException e) {
+            return false;
+        }
+        values.addAll(decodedValues);
+        return true;
+    }
+
+    /**
+     * Posts the recorded values again.  Must be called inside a read action.
+     * @param project  the project in which the recorded modules and packages are found.
+     */
+    public void replay(MetricsResultsHolder resultsHolder, Project project) {
+        for (RecordedValue value : values) {
+            value.replay(resultsHolder, project);
+        }
+    }
+
+    /**
+     * Releases the smart pointers to the measured objects of the recorded values.
+     */
+    public void dispose() {
+        for (RecordedValue value : values) {
+            if (value.target instanceof SmartPsiElementPointer) {
+                final SmartPsiElementPointer<?> pointer = (SmartPsiElementPointer<?>) value.target;
+                SmartPointerManager.getInstance(pointer.getProject()).removePointer(pointer);
+            }
+        }
+        values.clear();
+    }
+
+    private static class RecordedValue {
+
+        private final MetricCategory category;
+        private final Metric metric;
+        private final Object target;
+        private final double numerator;
+        private final double denominator;
+        private final boolean fraction;
+
+        RecordedValue(MetricCategory category, Metric metric, @Nullable Object target,
+                      double numerator, double denominator, boolean fraction) {
+            this.category = category;
+            this.metric = metric;
+            this.target = target;
+            this.numerator = numerator;
+            this.denominator = denominator;
+            this.fraction = fraction;
+        }
+
+        @Nullable
+        private Object resolveTarget(Project project) {
+            if (target instanceof SmartPsiElementPointer) {
+                return ((SmartPsiElementPointer<?>) target).getElement();
+            }
+            if (category == MetricCategory.Module) {
+                return ModuleManager.getInstance(project).findModuleByName((String) target);
+            }
+            if (category == MetricCategory.Package) {
+                return JavaPsiFacade.getInstance(project).findPackage((String) target);
+            }
+            return target;
+        }
+
+        void replay(MetricsResultsHolder resultsHolder, Project project) {
+            final Object element = resolveTarget(project);
+            if (element == null && category != MetricCategory.Project) {
+                return;
+            }
+            switch (category) {
+                case Project:
+                    if (fraction) {
+                        resultsHolder.postProjectMetric(metric, numerator, denominator);
+                    } else {
+                        resultsHolder.postProjectMetric(metric, numerator);
+                    }
+                    break;
+                case FileType:
+                    if (fraction) {
+                        resultsHolder.postFileTypeMetric(metric, (FileType) element, numerator, denominator);
+                    } else {
+                        resultsHolder.postFileTypeMetric(metric, (FileType) element, numerator);
+                    }
+                    break;
+                case Module:
+                    if (fraction) {
+                        resultsHolder.postModuleMetric(metric, (Module) element, numerator, denominator);
+                    } else {
+                        resultsHolder.postModuleMetric(metric, (Module) element, numerator);
+                    }
+                    break;
+                case Package:
+                    if (fraction) {
+                        resultsHolder.postPackageMetric(metric, (PsiPackage) element, numerator, denominator);
+                    } else {
+                        resultsHolder.postPackageMetric(metric, (PsiPackage) element, numerator);
+                    }
+                    break;
+                case Class:
+                    if (fraction) {
+                        resultsHolder.postClassMetric(metric, (PsiClass) element, numerator, denominator);
+                    } else {
+                        resultsHolder.postClassMetric(metric, (PsiClass) element, numerator);
+                    }
+                    break;
+                case Interface:
+                    if (fraction) {
+                        resultsHolder.postInterfaceMetric(metric, (PsiClass) element, numerator, denominator);
+                    } else {
+                        resultsHolder.postInterfaceMetric(metric, (PsiClass) element, numerator);
+                    }
+                    break;
+                case Method:
+                    if (fraction) {
+                        resultsHolder.postMethodMetric(metric, (PsiMethod) element, numerator, denominator);
+                    } else {
+                        resultsHolder.postMethodMetric(metric, (PsiMethod) element, numerator);
+                    }
+                    break;
+            }
+        }
+    }
+}
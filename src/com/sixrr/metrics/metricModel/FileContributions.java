@@ -0,0 +1,149 @@
+/*
+ * Copyright 2005, Sixth and Red River Software
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.sixrr.metrics.metricModel;
+
+import com.intellij.openapi.fileEditor.FileDocumentManager;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.psi.PsiFile;
+import com.sixrr.metrics.Metric;
+import com.sixrr.metrics.MetricsResultsHolder;
+import com.sixrr.metrics.VersionedMetric;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The results of the file-local calculators of a metrics run, for each file processed, keyed by the modification
+ * stamp of the file.  A later run of the same metrics can reuse the results for files which have not changed since.
+ */
+public class FileContributions {
+
+    private final Project project;
+    private final List<Metric> metrics;
+    private final List<String> metricIds;
+    private final PersistentMetricsCache cache;
+    private final MeasuredObjectKeys keys;
+    private final Map<VirtualFile, FileContribution> contributions =
+            new ConcurrentHashMap<VirtualFile, FileContribution>();
+    private FileContributions previous;
+
+    FileContributions(Project project, List<Metric> metrics, @Nullable FileContributions previous,
+                      @Nullable PersistentMetricsCache cache, MeasuredObjectKeys keys) {
+        this.project = project;
+        this.metrics = metrics;
+        this.cache = cache;
+        this.keys = keys;
+        metricIds = new ArrayList<String>(metrics.size());
+        for (Metric metric : metrics) {
+            metricIds.add(metric.getID());
+        }
+        this.previous = previous != null && previous.metricIds.equals(metricIds) ? previous : null;
+    }
+
+    /**
+     * @return the contribution recorded for the file by the previous run, if the file has not changed since.
+     */
+    @Nullable
+    FileContribution findReusable(VirtualFile virtualFile) {
+        if (previous == null) {
+            return null;
+        }
+        final FileContribution contribution = previous.contributions.get(virtualFile);
+        if (contribution == null || contribution.getModificationStamp() != virtualFile.getModificationStamp() ||
+                FileDocumentManager.getInstance().isFileModified(virtualFile)) {
+            return null;
+        }
+        return contribution;
+    }
+
+    /**
+     * @return true if the values of the metric at the specified index are kept in the persistent cache.
+     */
+    boolean isCached(int index) {
+        return cache != null && metrics.get(index) instanceof VersionedMetric;
+    }
+
+    /**
+     * Restores the values of the metrics at the specified indices for a file from the persistent cache.
+     * @return true if the values of all these metrics were found in the cache and recorded in the contribution, false
+     * if nothing was recorded.
+     */
+    boolean restoreCached(PsiFile file, String contentHash, List<Integer> indices, FileContribution contribution) {
+        if (cache == null) {
+            return false;
+        }
+        final FileContribution restored = new FileContribution(contribution.getModificationStamp(), 0);
+        for (int index : indices) {
+            final Metric metric = metrics.get(index);
+            final byte[] data = cache.get(contentHash, (VersionedMetric) metric);
+            if (data == null || !restored.decodeValues(metric, file, data, keys)) {
+                return false;
+            }
+        }
+        contribution.addValues(restored);
+        return true;
+    }
+
+    /**
+     * Stores the values recorded in the contribution of a file for the metrics at the specified indices in the
+     * persistent cache.
+     */
+    void storeCached(String contentHash, List<Integer> indices, FileContribution contribution) {
+        if (cache == null) {
+            return;
+        }
+        for (int index : indices) {
+            final Metric metric = metrics.get(index);
+            final byte[] data = contribution.encodeValues(metric);
+            if (data != null) {
+                cache.put(contentHash, (VersionedMetric) metric, data);
+            }
+        }
+    }
+
+    void put(VirtualFile virtualFile, FileContribution contribution) {
+        contributions.put(virtualFile, contribution);
+    }
+
+    /**
+     * Posts the recorded values of all files of this run, and forgets the previous run.  Files which were not
+     * processed in this run, because they were deleted or are no longer in scope, are not included.  Must be called
+     * inside a read action.
+     */
+    void replay(MetricsResultsHolder resultsHolder) {
+        previous = null;
+        for (FileContribution contribution : contributions.values()) {
+            contribution.replay(resultsHolder, project);
+        }
+    }
+
+    /**
+     * Releases the smart pointers of the recorded values.  The contributions can not be used afterwards, also not as
+     * the previous run of a later one.
+     */
+    public void dispose() {
+        previous = null;
+        for (FileContribution contribution : contributions.values()) {
+            contribution.dispose();
+        }
+        contributions.clear();
+    }
+}
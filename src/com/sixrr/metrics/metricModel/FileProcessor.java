@@ -0,0 +1,278 @@
+/*
+ * Copyright 2005, Sixth and Red River Software
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.sixrr.metrics.metricModel;
+
+import com.intellij.openapi.progress.EmptyProgressIndicator;
+import com.intellij.openapi.progress.ProgressManager;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.psi.PsiElementVisitor;
+import com.intellij.psi.PsiFile;
+import com.sixrr.metrics.FileLocalCalculator;
+import com.sixrr.metrics.MetricCalculator;
+import com.sixrr.metrics.PartialResultCalculator;
+import com.sixrr.metrics.SharedTraversalCalculator;
+import com.sixrr.metrics.utils.DispatchingElementVisitor;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Passes files to a number of calculators, walking each file only once for all calculators which support a shared
+ * traversal, and combining the partial results of calculators which produce them.  When processing incrementally,
+ * file-local calculators are skipped for files whose contribution from a previous run can be reused, and those
+ * without partial results for files whose values are found in the persistent cache.
+ */
+class FileProcessor {
+
+    private final MetricCalculator[] calculators;
+    private final Object[] partialResults;
+    /** true for the partial results which were created by this processor, and may be accumulated into in place */
+    private final boolean[] accumulating;
+    private final FileContributions contributions;
+    private final RecordingResultsHolder recorder;
+    private final RunProfile profile;
+    private final List<Integer> cachedIndices;
+    private final CalculatorGroup cachedCalculators;
+    private final CalculatorGroup localCalculators;
+    private final CalculatorGroup otherCalculators;
+
+    /**
+     * @param calculators the calculators of the run, in the order of their metrics.  Entries are null for calculators
+     *                    to which this processor should not pass files.
+     * @param contributions the per-file contributions to record, or null when not processing incrementally.
+     * @param recorder the results holder to which the file-local calculators post, or null when not processing
+     *                 incrementally.
+     * @param profile the profile to record the cost of the calculators in, or null when the run is not profiled.
+     */
+    FileProcessor(MetricCalculator[] calculators, @Nullable FileContributions contributions,
+                  @Nullable RecordingResultsHolder recorder, @Nullable RunProfile profile) {
+        this.calculators = calculators;
+        this.contributions = contributions;
+        this.recorder = recorder;
+        this.profile = profile;
+        partialResults = new Object[calculators.length];
+        accumulating = new boolean[calculators.length];
+        cachedIndices = new ArrayList<Integer>(calculators.length);
+        final List<Integer> localIndices = new ArrayList<Integer>(calculators.length);
+        final List<Integer> otherIndices = new ArrayList<Integer>(calculators.length);
+        for (int i = 0; i < calculators.length; i++) {
+            final MetricCalculator calculator = calculators[i];
+            if (calculator == null) {
+                continue;
+            }
+            if (isLocal(calculator) && contributions.isCached(i) && !(calculator instanceof PartialResultCalculator)) {
+                cachedIndices.add(Integer.valueOf(i));
+            } else if (isLocal(calculator)) {
+                localIndices.add(Integer.valueOf(i));
+            } else {
+                otherIndices.add(Integer.valueOf(i));
+            }
+        }
+        cachedCalculators = new CalculatorGroup(calculators, cachedIndices, profile);
+        localCalculators = new CalculatorGroup(calculators, localIndices, profile);
+        otherCalculators = new CalculatorGroup(calculators, otherIndices, profile);
+    }
+
+    private boolean isLocal(MetricCalculator calculator) {
+        return contributions != null && calculator instanceof FileLocalCalculator;
+    }
+
+    public void processFile(PsiFile file) {
+        final VirtualFile virtualFile = file.getVirtualFile();
+        final boolean incremental = contributions != null && virtualFile != null;
+        final FileContribution reusable = incremental ? contributions.findReusable(virtualFile) : null;
+        final FileContribution contribution;
+        otherCalculators.processFile(file);
+        if (!incremental) {
+            contribution = null;
+            cachedCalculators.processFile(file);
+            localCalculators.processFile(file);
+        } else if (reusable != null) {
+            contribution = reusable;
+        } else {
+            contribution = new FileContribution(virtualFile.getModificationStamp(), calculators.length);
+            recorder.startRecording(contribution);
+            try {
+                if (!cachedIndices.isEmpty()) {
+                    final long[] start = profile == null ? null : profile.start();
+                    final String contentHash = PersistentMetricsCache.hashContents(file);
+                    final boolean restored =
+                            contributions.restoreCached(file, contentHash, cachedIndices, contribution);
+                    if (start != null) {
+                        profile.stopPhase("Persistent cache", start);
+                    }
+                    if (!restored) {
+                        cachedCalculators.processFile(file);
+                        contributions.storeCached(contentHash, cachedIndices, contribution);
+                    }
+                }
+                localCalculators.processFile(file);
+            } finally {
+                recorder.stopRecording();
+            }
+        }
+        for (int i = 0; i < calculators.length; i++) {
+            final MetricCalculator calculator = calculators[i];
+            if (!(calculator instanceof PartialResultCalculator)) {
+                continue;
+            }
+            final PartialResultCalculator<?> partialResultCalculator = (PartialResultCalculator<?>) calculator;
+            final Object partialResult;
+            if (reusable != null && isLocal(calculator)) {
+                partialResult = reusable.getPartialResult(i);
+            } else {
+                partialResult = partialResultCalculator.takePartialResult();
+                if (contribution != null && isLocal(calculator)) {
+                    contribution.setPartialResult(i, partialResult);
+                }
+            }
+            accumulate(partialResultCalculator, i, partialResult);
+        }
+        if (contribution != null) {
+            contributions.put(virtualFile, contribution);
+        }
+    }
+
+    @Nullable
+    public MetricCalculator getCalculator(int index) {
+        return calculators[index];
+    }
+
+    /**
+     * @return the combined partial results of all files processed for the calculator at the specified index.
+     */
+    @Nullable
+    public Object getPartialResult(int index) {
+        return partialResults[index];
+    }
+
+    /**
+     * Adds the partial result of a file to the combined result of this processor.  The result of the first file is
+     * kept as is, because it may also be kept in a file contribution.  Combining it with the result of the second file
+     * creates a new result, to which the results of all other files are added in place.
+     */
+    private <P> void accumulate(PartialResultCalculator<P> calculator, int index, @Nullable Object partialResult) {
+        final Object accumulated = partialResults[index];
+        if (partialResult == null) {
+            return;
+        }
+        if (accumulated == null) {
+            partialResults[index] = partialResult;
+        } else if (accumulating[index]) {
+            partialResults[index] = calculator.accumulate((P) accumulated, (P) partialResult);
+        } else {
+            partialResults[index] = calculator.reduce((P) accumulated, (P) partialResult);
+            accumulating[index] = true;
+        }
+    }
+
+    @Nullable
+    static <P> P combine(PartialResultCalculator<P> calculator, @Nullable Object first, @Nullable Object second) {
+        if (first == null) {
+            return (P) second;
+        }
+        if (second == null) {
+            return (P) first;
+        }
+        return calculator.reduce((P) first, (P) second);
+    }
+
+    /**
+     * Calculators which process files together.  When profiling, the calculators taking part in the shared traversal
+     * each walk the files separately instead, so the cost of each walk can be recorded for its calculator.  This makes
+     * a profiled run slower, but keeps the cost of every calculator apart.
+     */
+    private static class CalculatorGroup {
+
+        private final List<MetricCalculator> fileCalculators;
+        private final int[] fileCalculatorIndices;
+        private final PsiElementVisitor sharedTraversal;
+        private final List<PsiElementVisitor> separateTraversals;
+        private final int[] separateTraversalIndices;
+        private final RunProfile profile;
+
+        CalculatorGroup(MetricCalculator[] calculators, List<Integer> indices, @Nullable RunProfile profile) {
+            this.profile = profile;
+            fileCalculators = new ArrayList<MetricCalculator>(indices.size());
+            final List<Integer> fileIndices = new ArrayList<Integer>(indices.size());
+            final List<PsiElementVisitor> sharedVisitors = new ArrayList<PsiElementVisitor>(indices.size());
+            final List<Integer> sharedIndices = new ArrayList<Integer>(indices.size());
+            for (Integer index : indices) {
+                final MetricCalculator calculator = calculators[index.intValue()];
+                final PsiElementVisitor sharedVisitor = calculator instanceof SharedTraversalCalculator
+                        ? ((SharedTraversalCalculator) calculator).getSharedVisitor()
+                        : null;
+                if (sharedVisitor == null) {
+                    fileCalculators.add(calculator);
+                    fileIndices.add(index);
+                } else {
+                    sharedVisitors.add(sharedVisitor);
+                    sharedIndices.add(index);
+                }
+            }
+            fileCalculatorIndices = toArray(fileIndices);
+            if (profile == null) {
+                sharedTraversal = sharedVisitors.isEmpty() ? null : new DispatchingElementVisitor(sharedVisitors);
+                separateTraversals = new ArrayList<PsiElementVisitor>(0);
+                separateTraversalIndices = new int[0];
+            } else {
+                sharedTraversal = null;
+                separateTraversals = new ArrayList<PsiElementVisitor>(sharedVisitors.size());
+                for (PsiElementVisitor sharedVisitor : sharedVisitors) {
+                    separateTraversals.add(new DispatchingElementVisitor(sharedVisitor));
+                }
+                separateTraversalIndices = toArray(sharedIndices);
+            }
+        }
+
+        private static int[] toArray(List<Integer> list) {
+            final int[] result = new int[list.size()];
+            for (int i = 0; i < result.length; i++) {
+                result[i] = list.get(i).intValue();
+            }
+            return result;
+        }
+
+        void processFile(final PsiFile file) {
+            for (int i = 0; i < fileCalculatorIndices.length; i++) {
+                final long[] start = profile == null ? null : profile.start();
+                fileCalculators.get(i).processFile(file);
+                if (start != null) {
+                    profile.stop(fileCalculatorIndices[i], RunProfile.Stage.PROCESS_FILES, start);
+                }
+            }
+            if (sharedTraversal != null) {
+                walk(file, sharedTraversal);
+            }
+            for (int i = 0; i < separateTraversalIndices.length; i++) {
+                final long[] start = profile.start();
+                walk(file, separateTraversals.get(i));
+                profile.stop(separateTraversalIndices[i], RunProfile.Stage.PROCESS_FILES, start);
+            }
+        }
+
+        private static void walk(final PsiFile file, final PsiElementVisitor traversal) {
+            ProgressManager.getInstance().runProcess(new Runnable() {
+                @Override
+                public void run() {
+                    file.accept(traversal);
+                }
+            }, new EmptyProgressIndicator());
+        }
+    }
+}
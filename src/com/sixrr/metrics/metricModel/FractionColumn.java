@@ -0,0 +1,142 @@
+/*
+ * Copyright 2005, Sixth and Red River Software
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+
+package com.sixrr.metrics.metricModel;
+
+import com.sixrr.metrics.utils.QuantileSketch;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * The numerators and denominators posted for a single metric, indexed by the row ID of the measured object.  The
+ * minimum, maximum, total, average and a quantile sketch of the column are maintained as values are added, so the
+ * summary rows of a metrics table do not need to scan the column on each repaint.
+ */
+class FractionColumn {
+
+    private static final int INITIAL_SIZE = 16;
+
+    private double[] numerators = new double[INITIAL_SIZE];
+    private double[] denominators = new double[INITIAL_SIZE];
+    private final BitSet present = new BitSet();
+
+    private double minimum = Double.POSITIVE_INFINITY;
+    private double maximum = Double.NEGATIVE_INFINITY;
+    private double total = 0.0;
+    private double totalNumerator = 0.0;
+    private double totalDenominator = 0.0;
+    private QuantileSketch sketch = new QuantileSketch();
+    private boolean statisticsValid = true;
+
+    void put(int row, double numerator, double denominator) {
+        if (row >= numerators.length) {
+            final int length = Math.max(row + 1, numerators.length << 1);
+            numerators = Arrays.copyOf(numerators, length);
+            denominators = Arrays.copyOf(denominators, length);
+        }
+        if (present.get(row)) {
+            // the overwritten value may have been the minimum or maximum, recalculate everything when next needed
+            statisticsValid = false;
+        }
+        numerators[row] = numerator;
+        denominators[row] = denominator;
+        present.set(row);
+        if (statisticsValid) {
+            addToStatistics(row);
+        }
+    }
+
+    private void addToStatistics(int row) {
+        final double numerator = numerators[row];
+        final double denominator = denominators[row];
+        final double value = numerator / denominator;
+        minimum = Math.min(minimum, value);
+        maximum = Math.max(maximum, value);
+        total += value;
+        totalNumerator += numerator;
+        totalDenominator += denominator;
+        sketch.add(get(row));
+    }
+
+    private void ensureStatisticsValid() {
+        if (statisticsValid) {
+            return;
+        }
+        minimum = Double.POSITIVE_INFINITY;
+        maximum = Double.NEGATIVE_INFINITY;
+        total = 0.0;
+        totalNumerator = 0.0;
+        totalDenominator = 0.0;
+        sketch = new QuantileSketch();
+        for (int row = present.nextSetBit(0); row >= 0; row = present.nextSetBit(row + 1)) {
+            addToStatistics(row);
+        }
+        statisticsValid = true;
+    }
+
+    boolean contains(int row) {
+        return row >= 0 && present.get(row);
+    }
+
+    double get(int row) {
+        return toValue(numerators[row], denominators[row]);
+    }
+
+    static double toValue(double numerator, double denominator) {
+        if (denominator == 0.0) {
+            return 1.0;
+        }
+        return numerator / denominator;
+    }
+
+    double getNumerator(int row) {
+        return numerators[row];
+    }
+
+    double getDenominator(int row) {
+        return denominators[row];
+    }
+
+    double getMinimum() {
+        ensureStatisticsValid();
+        return minimum;
+    }
+
+    double getMaximum() {
+        ensureStatisticsValid();
+        return maximum;
+    }
+
+    double getTotal() {
+        ensureStatisticsValid();
+        return total;
+    }
+
+    double getAverage() {
+        ensureStatisticsValid();
+        if (totalDenominator == 0.0) {
+            return 1.0;
+        }
+        return totalNumerator / totalDenominator;
+    }
+
+    QuantileSketch getSketch() {
+        ensureStatisticsValid();
+        return sketch;
+    }
+}
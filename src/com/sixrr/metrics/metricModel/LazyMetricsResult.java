@@ -0,0 +1,179 @@
+/*
+ * Copyright 2005, Sixth and Red River Software
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+
+package com.sixrr.metrics.metricModel;
+
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.psi.PsiElement;
+import com.sixrr.metrics.Metric;
+import com.sixrr.metrics.profile.MetricsProfile;
+import com.sixrr.metrics.utils.QuantileSketch;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+
+/**
+ * The results of one category of a binary snapshot, which are read from the snapshot when first needed.  The metrics
+ * are known from the index of the snapshot, so asking for them does not read any values.  If reading the values
+ * fails, the result stays empty; the snapshot is only read again when it is opened again.
+ */
+class LazyMetricsResult implements MetricsResult {
+
+    private static final Logger logger = Logger.getInstance("MetricsReloaded");
+
+    private final BinarySnapshotReader reader;
+    private final Metric[] metrics;
+    private final long[] offsets;
+    private volatile MetricsResult delegate = null;
+
+    LazyMetricsResult(@NotNull BinarySnapshotReader reader, @NotNull Metric[] metrics, @NotNull long[] offsets) {
+        this.reader = reader;
+        this.metrics = metrics;
+        this.offsets = offsets;
+    }
+
+    private MetricsResult getDelegate() {
+        MetricsResult result = delegate;
+        if (result != null) {
+            return result;
+        }
+        synchronized (this) {
+            if (delegate == null) {
+                // load into a new result, so a canceled load leaves this result unloaded
+                final MetricsResultImpl loaded = new MetricsResultImpl();
+                try {
+                    reader.load(metrics, offsets, loaded);
+                    delegate = loaded;
+                } catch (IOException e) {
+                    // not retried, every table cell painted would read the snapshot again
+                    logger.warn("Could not read results from snapshot", e);
+                    delegate = new MetricsResultImpl();
+                }
+            }
+            result = delegate;
+        }
+        return result;
+    }
+
+    @Override
+    public void postValue(Metric metric, String measured, double value) {
+        getDelegate().postValue(metric, measured, value);
+    }
+
+    @Override
+    public void postValue(Metric metric, String measured, double numerator, double denominator) {
+        getDelegate().postValue(metric, measured, numerator, denominator);
+    }
+
+    @Override
+    @Nullable
+    public Double getValueForMetric(Metric metric, String measured) {
+        return getDelegate().getValueForMetric(metric, measured);
+    }
+
+    @Override
+    public String[] getMeasuredObjects() {
+        return getDelegate().getMeasuredObjects();
+    }
+
+    @Override
+    @NotNull
+    public double[] getValuesForMetric(Metric metric) {
+        return getDelegate().getValuesForMetric(metric);
+    }
+
+    @Override
+    @NotNull
+    public double[] getNumeratorsForMetric(Metric metric) {
+        return getDelegate().getNumeratorsForMetric(metric);
+    }
+
+    @Override
+    @NotNull
+    public double[] getDenominatorsForMetric(Metric metric) {
+        return getDelegate().getDenominatorsForMetric(metric);
+    }
+
+    @Override
+    public Metric[] getMetrics() {
+        final MetricsResult result = delegate;
+        return result == null ? metrics.clone() : result.getMetrics();
+    }
+
+    @Override
+    @Nullable
+    public Double getTotalForMetric(Metric metric) {
+        return getDelegate().getTotalForMetric(metric);
+    }
+
+    @Override
+    @Nullable
+    public Double getAverageForMetric(Metric metric) {
+        return getDelegate().getAverageForMetric(metric);
+    }
+
+    @Override
+    @Nullable
+    public Double getMinimumForMetric(Metric metric) {
+        return getDelegate().getMinimumForMetric(metric);
+    }
+
+    @Override
+    @Nullable
+    public Double getMaximumForMetric(Metric metric) {
+        return getDelegate().getMaximumForMetric(metric);
+    }
+
+    @Override
+    @Nullable
+    public Double getQuantileForMetric(Metric metric, double fraction) {
+        return getDelegate().getQuantileForMetric(metric, fraction);
+    }
+
+    @Override
+    @Nullable
+    public QuantileSketch getQuantileSketchForMetric(Metric metric) {
+        return getDelegate().getQuantileSketchForMetric(metric);
+    }
+
+    @Override
+    public void setElementForMeasuredObject(String measuredObject, PsiElement element) {
+        getDelegate().setElementForMeasuredObject(measuredObject, element);
+    }
+
+    @Override
+    @Nullable
+    public PsiElement getElementForMeasuredObject(String measuredObject) {
+        return getDelegate().getElementForMeasuredObject(measuredObject);
+    }
+
+    @Override
+    public boolean hasWarnings(MetricsProfile profile) {
+        return getDelegate().hasWarnings(profile);
+    }
+
+    @Override
+    public MetricsResult filterRowsWithoutWarnings(MetricsProfile profile) {
+        return getDelegate().filterRowsWithoutWarnings(profile);
+    }
+
+    @Override
+    public MetricsResult filterMetrics(MetricsProfile profile) {
+        return getDelegate().filterMetrics(profile);
+    }
+}
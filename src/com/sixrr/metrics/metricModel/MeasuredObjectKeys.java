@@ -0,0 +1,88 @@
+/*
+ * Copyright 2005, Sixth and Red River Software
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+
+package com.sixrr.metrics.metricModel;
+
+import com.intellij.psi.*;
+import com.intellij.util.containers.ContainerUtil;
+import com.sixrr.metrics.utils.MethodUtils;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Remembers the measured object key of each class and method posted during a metrics run, so the qualified name or
+ * signature is calculated once per element instead of once per metric.  Likewise the smart pointers recording the
+ * elements in the contributions of files are created once per element.  The elements are held weakly, so the keys do
+ * not keep the PSI of the files measured alive.
+ */
+class MeasuredObjectKeys {
+
+    private final ConcurrentMap<PsiElement, String> keys = ContainerUtil.createConcurrentWeakMap();
+    private final ConcurrentMap<PsiElement, SmartPsiElementPointer<PsiElement>> pointers =
+            ContainerUtil.createConcurrentWeakMap();
+
+    @Nullable
+    String getKey(@NotNull PsiClass aClass) {
+        final String key = keys.get(aClass);
+        if (key != null) {
+            return key;
+        }
+        final String qualifiedName = aClass.getQualifiedName();
+        if (qualifiedName == null) {
+            return null;
+        }
+        return putIfAbsent(aClass, qualifiedName);
+    }
+
+    @NotNull
+    String getKey(@NotNull PsiMethod method) {
+        final String key = keys.get(method);
+        if (key != null) {
+            return key;
+        }
+        return putIfAbsent(method, MethodUtils.calculateSignature(method));
+    }
+
+    private String putIfAbsent(PsiElement element, String key) {
+        // return the key already stored by another thread, so all posts for the element share a single string
+        final String previous = keys.putIfAbsent(element, key);
+        return previous != null ? previous : key;
+    }
+
+    @NotNull
+    SmartPsiElementPointer<PsiElement> getPointer(@NotNull PsiElement element) {
+        final SmartPsiElementPointer<PsiElement> pointer = pointers.get(element);
+        if (pointer != null) {
+            return pointer;
+        }
+        final SmartPointerManager pointerManager = SmartPointerManager.getInstance(element.getProject());
+        final SmartPsiElementPointer<PsiElement> newPointer = pointerManager.createSmartPsiElementPointer(element);
+        final SmartPsiElementPointer<PsiElement> previous = pointers.putIfAbsent(element, newPointer);
+        if (previous == null) {
+            return newPointer;
+        }
+        pointerManager.removePointer(newPointer);
+        return previous;
+    }
+
+    void clear() {
+        keys.clear();
+        pointers.clear();
+    }
+}
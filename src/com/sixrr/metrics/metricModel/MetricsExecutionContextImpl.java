@@ -17,40 +17,66 @@
 package com.sixrr.metrics.metricModel;
 
 import com.intellij.analysis.AnalysisScope;
+import com.intellij.openapi.application.AccessToken;
+import com.intellij.openapi.application.Application;
+import com.intellij.openapi.application.ApplicationManager;
 import com.intellij.openapi.fileTypes.FileType;
+import com.intellij.openapi.progress.ProcessCanceledException;
 import com.intellij.openapi.progress.ProgressIndicator;
 import com.intellij.openapi.progress.ProgressManager;
 import com.intellij.openapi.progress.Task;
 import com.intellij.openapi.project.Project;
 import com.intellij.openapi.roots.ProjectFileIndex;
 import com.intellij.openapi.roots.ProjectRootManager;
+import com.intellij.openapi.util.Computable;
 import com.intellij.openapi.util.Key;
 import com.intellij.openapi.vfs.VirtualFile;
 import com.intellij.psi.PsiCompiledElement;
 import com.intellij.psi.PsiElementVisitor;
 import com.intellij.psi.PsiFile;
+import com.intellij.psi.PsiManager;
+import com.intellij.util.Processor;
+import com.sixrr.metrics.ConcurrentMetricCalculator;
+import com.sixrr.metrics.FileLocalCalculator;
 import com.sixrr.metrics.Metric;
 import com.sixrr.metrics.MetricCalculator;
 import com.sixrr.metrics.MetricsExecutionContext;
 import com.sixrr.metrics.MetricsResultsHolder;
+import com.sixrr.metrics.PartialResultCalculator;
+import com.sixrr.metrics.config.MetricsReloadedConfig;
 import com.sixrr.metrics.profile.MetricInstance;
 import com.sixrr.metrics.profile.MetricsProfile;
 import com.sixrr.metrics.utils.MetricsReloadedBundle;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
+import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class MetricsExecutionContextImpl implements MetricsExecutionContext {
 
     private final Project project;
     private final AnalysisScope scope;
+    private int threadCount;
+    private boolean incremental = false;
+    private FileContributions previousContributions = null;
+    private FileContributions fileContributions = null;
+    private PersistentMetricsCache cache;
+    private boolean profiling;
+    private RunProfile runProfile = null;
 
     public MetricsExecutionContextImpl(Project project, AnalysisScope scope) {
         this.project = project;
         this.scope = scope;
+        threadCount = MetricsReloadedConfig.getInstance().isParallelExecution()
+                ? Runtime.getRuntime().availableProcessors()
+                : 1;
+        cache = MetricsReloadedConfig.getInstance().isPersistentCache() ? PersistentMetricsCache.getInstance() : null;
+        profiling = MetricsReloadedConfig.getInstance().isProfileRun();
     }
 
     public final void execute(final MetricsProfile profile, final MetricsResultsHolder resultsHolder) {
@@ -76,58 +102,328 @@ public class MetricsExecutionContextImpl implements MetricsExecutionContext {
     }
 
     public void calculateMetrics(MetricsProfile profile, final MetricsResultsHolder resultsHolder) {
-        final ProgressIndicator indicator = ProgressManager.getInstance().getProgressIndicator();
-        final List<MetricInstance> metrics = profile.getMetricInstances();
-        indicator.setText(MetricsReloadedBundle.message("initializing.progress.string"));
-        final int numFiles = scope.getFileCount();
-        final int numMetrics = metrics.size();
-        final List<MetricCalculator> calculators = new ArrayList<MetricCalculator>(numMetrics);
-        for (final MetricInstance metricInstance : metrics) {
-            indicator.checkCanceled();
-            if (!metricInstance.isEnabled()) {
-                continue;
-            }
-            final Metric metric = metricInstance.getMetric();
-            final MetricCalculator calculator = metric.createCalculator();
-
-            calculators.add(calculator);
-            calculator.beginMetricsRun(metric, resultsHolder, this);
-        }
+        try {
+            final ProgressIndicator indicator = ProgressManager.getInstance().getProgressIndicator();
+            final List<MetricInstance> metrics = profile.getMetricInstances();
+            indicator.setText(MetricsReloadedBundle.message("initializing.progress.string"));
+            final int numFiles = scope.getFileCount();
+            final int numMetrics = metrics.size();
+            final List<Metric> enabledMetrics = new ArrayList<Metric>(numMetrics);
+            final List<MetricCalculator> calculators = new ArrayList<MetricCalculator>(numMetrics);
+            final boolean recording = incremental || cache != null;
+            // a single pointer for each class and method recorded during the run
+            final MeasuredObjectKeys keys = resultsHolder instanceof MetricsRunImpl
+                    ? ((MetricsRunImpl) resultsHolder).getMeasuredObjectKeys()
+                    : new MeasuredObjectKeys();
+            final RecordingResultsHolder recorder = recording ? new RecordingResultsHolder(resultsHolder, keys) : null;
+            for (final MetricInstance metricInstance : metrics) {
+                if (metricInstance.isEnabled()) {
+                    enabledMetrics.add(metricInstance.getMetric());
+                }
+            }
+            runProfile = profiling ? new RunProfile(enabledMetrics) : null;
+            for (int i = 0; i < enabledMetrics.size(); i++) {
+                indicator.checkCanceled();
+                final Metric metric = enabledMetrics.get(i);
+                final MetricCalculator calculator = metric.createCalculator();
+
+                calculators.add(calculator);
+                final long[] start = startMeasuring();
+                calculator.beginMetricsRun(metric, getResultsHolder(calculator, resultsHolder, recorder), this);
+                stopMeasuring(i, RunProfile.Stage.BEGIN, start);
+            }
+            fileContributions = recording
+                    ? new FileContributions(project, enabledMetrics, previousContributions, cache, keys)
+                    : null;
+            previousContributions = null;
 
-        scope.accept(new PsiElementVisitor() {
-            private int mainTraversalProgress = 0;
+            final List<MetricCalculator> serialCalculators = new ArrayList<MetricCalculator>();
+            final List<FileProcessor> fileProcessors = createFileProcessors(enabledMetrics, calculators,
+                    serialCalculators, resultsHolder, recorder, indicator);
+            if (fileProcessors.size() > 1) {
+                processFilesInParallel(fileProcessors, calculators, serialCalculators, indicator, numFiles);
+            } else {
+                final FileProcessor fileProcessor = fileProcessors.get(0);
+                scope.accept(new PsiElementVisitor() {
+                    private int mainTraversalProgress = 0;
 
-            @Override
-            public void visitFile(PsiFile file) {
-                super.visitFile(file);
-                if (file instanceof PsiCompiledElement) {
-                    return;
-                }
-                final FileType fileType = file.getFileType();
-                if (fileType.isBinary()) {
-                    return;
+                    @Override
+                    public void visitFile(PsiFile file) {
+                        super.visitFile(file);
+                        if (!isMeasured(file)) {
+                            return;
+                        }
+                        final String fileName = file.getName();
+                        indicator.setText(MetricsReloadedBundle.message("analyzing.progress.string", fileName));
+                        mainTraversalProgress++;
+
+                        fileProcessor.processFile(file);
+                        indicator.setFraction((double) mainTraversalProgress / (double) numFiles);
+                    }
+                });
+            }
+
+            indicator.setText(MetricsReloadedBundle.message("tabulating.results.progress.string"));
+            if (fileContributions != null) {
+                ApplicationManager.getApplication().runReadAction(new Runnable() {
+                    @Override
+                    public void run() {
+                        runSharedPhase("Replaying unchanged files", new Computable<Object>() {
+                            @Override
+                            public Object compute() {
+                                fileContributions.replay(resultsHolder);
+                                return null;
+                            }
+                        });
+                    }
+                });
+            }
+            if (cache != null) {
+                cache.save();
+            }
+            for (int i = 0; i < calculators.size(); i++) {
+                final MetricCalculator calculator = calculators.get(i);
+                if (calculator instanceof PartialResultCalculator) {
+                    indicator.checkCanceled();
+                    final long[] start = startMeasuring();
+                    postCombinedResult((PartialResultCalculator<?>) calculator, i, fileProcessors);
+                    stopMeasuring(i, RunProfile.Stage.END, start);
                 }
-                final VirtualFile virtualFile = file.getVirtualFile();
-                final ProjectRootManager rootManager = ProjectRootManager.getInstance(file.getProject());
-                final ProjectFileIndex fileIndex = rootManager.getFileIndex();
-                if (fileIndex.isExcluded(virtualFile) || !fileIndex.isInContent(virtualFile)) {
-                    return;
+            }
+            for (int i = 0; i < calculators.size(); i++) {
+                final MetricCalculator calculator = calculators.get(i);
+                indicator.checkCanceled();
+                final long[] start = startMeasuring();
+                calculator.endMetricsRun();
+                for (FileProcessor fileProcessor : fileProcessors) {
+                    final MetricCalculator workerCalculator = fileProcessor.getCalculator(i);
+                    if (workerCalculator != null && workerCalculator != calculator) {
+                        workerCalculator.endMetricsRun();
+                    }
                 }
-                final String fileName = file.getName();
-                indicator.setText(MetricsReloadedBundle.message("analyzing.progress.string", fileName));
-                mainTraversalProgress++;
+                stopMeasuring(i, RunProfile.Stage.END, start);
+            }
+        } finally {
+            // also after a cancellation, so the run does not keep the PSI of the analysed files alive
+            if (resultsHolder instanceof MetricsRunImpl) {
+                ((MetricsRunImpl) resultsHolder).endPosting();
+            }
+        }
+    }
+
+    private static <P> void postCombinedResult(PartialResultCalculator<P> calculator, int index,
+                                               List<FileProcessor> fileProcessors) {
+        P result = null;
+        for (FileProcessor fileProcessor : fileProcessors) {
+            result = FileProcessor.combine(calculator, result, (P) fileProcessor.getPartialResult(index));
+        }
+        calculator.postResult(result);
+    }
 
-                for (MetricCalculator calculator : calculators) {
-                    calculator.processFile(file);
+    /**
+     * Creates a file processor for each worker thread.  Calculators which cannot take part in parallel processing are
+     * added to the serialCalculators list instead, when using more than one thread.
+     */
+    private List<FileProcessor> createFileProcessors(List<Metric> metrics, List<MetricCalculator> calculators,
+                                                     List<MetricCalculator> serialCalculators,
+                                                     MetricsResultsHolder resultsHolder,
+                                                     RecordingResultsHolder recorder, ProgressIndicator indicator) {
+        final int numCalculators = calculators.size();
+        final List<FileProcessor> fileProcessors = new ArrayList<FileProcessor>(threadCount);
+        for (int i = 0; i < threadCount; i++) {
+            final MetricCalculator[] workerCalculators = new MetricCalculator[numCalculators];
+            for (int j = 0; j < numCalculators; j++) {
+                final MetricCalculator calculator = calculators.get(j);
+                if (i == 0) {
+                    if (threadCount > 1 && !(calculator instanceof PartialResultCalculator) &&
+                            !(calculator instanceof ConcurrentMetricCalculator)) {
+                        serialCalculators.add(calculator);
+                    } else {
+                        workerCalculators[j] = calculator;
+                    }
+                } else if (calculator instanceof PartialResultCalculator ||
+                        calculator instanceof ConcurrentMetricCalculator &&
+                                !((ConcurrentMetricCalculator) calculator).isThreadSafe()) {
+                    indicator.checkCanceled();
+                    final Metric metric = metrics.get(j);
+                    final MetricCalculator workerCalculator = metric.createCalculator();
+                    final long[] start = startMeasuring();
+                    workerCalculator.beginMetricsRun(metric,
+                            getResultsHolder(workerCalculator, resultsHolder, recorder), this);
+                    stopMeasuring(j, RunProfile.Stage.BEGIN, start);
+                    workerCalculators[j] = workerCalculator;
+                } else if (calculator instanceof ConcurrentMetricCalculator) {
+                    workerCalculators[j] = calculator;
                 }
-                indicator.setFraction((double) mainTraversalProgress / (double) numFiles);
+            }
+            fileProcessors.add(new FileProcessor(workerCalculators, fileContributions, recorder, runProfile));
+        }
+        return fileProcessors;
+    }
+
+    private static MetricsResultsHolder getResultsHolder(MetricCalculator calculator,
+                                                         MetricsResultsHolder resultsHolder,
+                                                         RecordingResultsHolder recorder) {
+        return recorder != null && calculator instanceof FileLocalCalculator ? recorder : resultsHolder;
+    }
+
+    /**
+     * Distributes the files of the scope over a pool of worker threads, each processing its files under a read action.
+     */
+    private void processFilesInParallel(List<FileProcessor> fileProcessors, List<MetricCalculator> calculators,
+                                        final List<MetricCalculator> serialCalculators,
+                                        final ProgressIndicator indicator, final int numFiles) {
+        final int[] serialIndices = new int[serialCalculators.size()];
+        for (int i = 0; i < serialIndices.length; i++) {
+            serialIndices[i] = calculators.indexOf(serialCalculators.get(i));
+        }
+        final List<VirtualFile> files = new ArrayList<VirtualFile>(numFiles);
+        scope.accept(new Processor<VirtualFile>() {
+            @Override
+            public boolean process(VirtualFile virtualFile) {
+                files.add(virtualFile);
+                return true;
             }
         });
 
-        indicator.setText(MetricsReloadedBundle.message("tabulating.results.progress.string"));
-        for (MetricCalculator calculator : calculators) {
-            indicator.checkCanceled();
-            calculator.endMetricsRun();
+        final PsiManager psiManager = PsiManager.getInstance(project);
+        final Application application = ApplicationManager.getApplication();
+        final AtomicInteger nextFile = new AtomicInteger(0);
+        final AtomicInteger filesProcessed = new AtomicInteger(0);
+        final ExecutorService executor = Executors.newFixedThreadPool(fileProcessors.size());
+        try {
+            final List<Future<?>> futures = new ArrayList<Future<?>>(fileProcessors.size());
+            for (final FileProcessor fileProcessor : fileProcessors) {
+                futures.add(executor.submit(new Runnable() {
+                    @Override
+                    public void run() {
+                        ProgressManager.getInstance().runProcess(new Runnable() {
+                            @Override
+                            public void run() {
+                                for (int i = nextFile.getAndIncrement(); i < files.size();
+                                     i = nextFile.getAndIncrement()) {
+                                    indicator.checkCanceled();
+                                    final AccessToken token = application.acquireReadActionLock();
+                                    try {
+                                        final PsiFile file = psiManager.findFile(files.get(i));
+                                        if (file != null && isMeasured(file)) {
+                                            indicator.setText(MetricsReloadedBundle.message(
+                                                    "analyzing.progress.string", file.getName()));
+                                            fileProcessor.processFile(file);
+                                            for (int j = 0; j < serialIndices.length; j++) {
+                                                final MetricCalculator calculator = serialCalculators.get(j);
+                                                synchronized (calculator) {
+                                                    final long[] start = startMeasuring();
+                                                    calculator.processFile(file);
+                                                    stopMeasuring(serialIndices[j], RunProfile.Stage.PROCESS_FILES,
+                                                            start);
+                                                }
+                                            }
+                                        }
+                                    } finally {
+                                        token.finish();
+                                    }
+                                    final int progress = filesProcessed.incrementAndGet();
+                                    indicator.setFraction((double) progress / (double) numFiles);
+                                }
+                            }
+                        }, indicator);
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ProcessCanceledException();
+        } catch (ExecutionException e) {
+            final Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new RuntimeException(cause);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static boolean isMeasured(PsiFile file) {
+        if (file instanceof PsiCompiledElement) {
+            return false;
+        }
+        final FileType fileType = file.getFileType();
+        if (fileType.isBinary()) {
+            return false;
+        }
+        final VirtualFile virtualFile = file.getVirtualFile();
+        final ProjectRootManager rootManager = ProjectRootManager.getInstance(file.getProject());
+        final ProjectFileIndex fileIndex = rootManager.getFileIndex();
+        return !fileIndex.isExcluded(virtualFile) && fileIndex.isInContent(virtualFile);
+    }
+
+    /**
+     * Sets the number of threads used to process the files of the scope.  Only calculators implementing
+     * {@link ConcurrentMetricCalculator} or {@link PartialResultCalculator} process files concurrently, others are
+     * passed one file at a time.
+     */
+    public void setThreadCount(int threadCount) {
+        this.threadCount = Math.max(1, threadCount);
+    }
+
+    /**
+     * Enables incremental processing.  The values posted by {@link FileLocalCalculator file-local calculators} are
+     * recorded for each file, and reused instead of recalculated for files which are unchanged since the previous run.
+     * Other calculators still process every file of the scope.
+     * @param previous the contributions recorded by the previous run of the same metrics, or null if there was none.
+     */
+    public void setIncremental(@Nullable FileContributions previous) {
+        incremental = true;
+        previousContributions = previous;
+    }
+
+    /**
+     * @return the per-file contributions recorded by the last run, for reuse by a later run, or null if the run was not
+     * incremental.
+     */
+    @Nullable
+    public FileContributions getFileContributions() {
+        return fileContributions;
+    }
+
+    /**
+     * Sets the persistent cache from which the values of file-local calculators are restored for files whose contents
+     * were measured before, in this or an earlier session.  By default the cache is used when enabled in the settings.
+     * @param cache the cache to use, or null to calculate all values.
+     */
+    public void setPersistentCache(@Nullable PersistentMetricsCache cache) {
+        this.cache = cache;
+    }
+
+    /**
+     * Enables recording the cost of each calculator and of the work shared between calculators.  By default runs are
+     * profiled when enabled in the settings.
+     */
+    public void setProfiling(boolean profiling) {
+        this.profiling = profiling;
+    }
+
+    /**
+     * @return the cost of the calculators of the last run, or null if it was not profiled.
+     */
+    @Nullable
+    public RunProfile getRunProfile() {
+        return runProfile;
+    }
+
+    @Nullable
+    private long[] startMeasuring() {
+        return runProfile == null ? null : runProfile.start();
+    }
+
+    private void stopMeasuring(int calculator, RunProfile.Stage stage, @Nullable long[] start) {
+        if (start != null) {
+            runProfile.stop(calculator, stage, start);
         }
     }
 
@@ -145,7 +441,24 @@ public class MetricsExecutionContextImpl implements MetricsExecutionContext {
         return scope;
     }
 
-    private Map userData = new HashMap();
+    @Override
+    public final int getThreadCount() {
+        return threadCount;
+    }
+
+    @Override
+    public final <T> T runSharedPhase(@NotNull String name, @NotNull Computable<T> phase) {
+        final long[] start = runProfile == null ? null : runProfile.start();
+        try {
+            return phase.compute();
+        } finally {
+            if (start != null) {
+                runProfile.stopPhase(name, start);
+            }
+        }
+    }
+
+    private final Map userData = Collections.synchronizedMap(new HashMap());
 
     @Override
     public final <T> T getUserData(@NotNull Key<T> key) {
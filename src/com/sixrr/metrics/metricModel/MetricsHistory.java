@@ -0,0 +1,538 @@
+/*
+ * Copyright 2005-2016 Sixth and Red River Software, Bas Leijdekkers
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.sixrr.metrics.metricModel;
+
+import com.sixrr.metrics.Metric;
+import com.sixrr.metrics.MetricCategory;
+import gnu.trove.TIntArrayList;
+import gnu.trove.TLongIntHashMap;
+import gnu.trove.TObjectIntHashMap;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileLock;
+import java.util.*;
+import java.util.zip.CRC32;
+
+/**
+ * An append-only store of the results of many metrics runs.  Each run appended becomes a new generation.  Only the
+ * values which changed since the previous generation are stored, so a history of hundreds of builds takes little more
+ * space than a single snapshot, and the value series of every measured object can be queried without reading any
+ * snapshot.
+ * <p>
+ * The file consists of a header followed by one record for each generation: its length, checksum and payload.  The
+ * payload holds the time, profile name and label of the generation, the metric ids, measured objects and series
+ * (metric and measured object pairs) first seen in this generation, and the series whose value changed.  A series
+ * which is absent from a run is recorded with the value NaN.  A record which was not completely written, for example
+ * because the process was killed, is ignored and overwritten by the next append.
+ */
+public final class MetricsHistory {
+
+    private static final int MAGIC = 0x4d524853; // "MRHS"
+    private static final int VERSION = 1;
+    private static final int HEADER_LENGTH = 8;
+    private static final int RECORD_HEADER_LENGTH = 8;
+
+    private final File file;
+    private long validLength = HEADER_LENGTH;
+
+    private final List<Long> times = new ArrayList<Long>();
+    private final List<String> profileNames = new ArrayList<String>();
+    private final List<String> labels = new ArrayList<String>();
+
+    private final List<String> metricIds = new ArrayList<String>();
+    private final TObjectIntHashMap<String> metricIndex = new TObjectIntHashMap<String>();
+    private final List<String> measuredObjects = new ArrayList<String>();
+    private final TObjectIntHashMap<String> measuredObjectIndex = new TObjectIntHashMap<String>();
+    private final List<Series> series = new ArrayList<Series>();
+    private final TLongIntHashMap seriesIndex = new TLongIntHashMap();
+    private final List<TIntArrayList> seriesByMetric = new ArrayList<TIntArrayList>();
+
+    private MetricsHistory(@NotNull File file) {
+        this.file = file;
+    }
+
+    /**
+     * Opens the history stored in the specified file, which is created if it does not exist yet.
+     */
+    @NotNull
+    public static MetricsHistory open(@NotNull File file) throws IOException {
+        final MetricsHistory history = new MetricsHistory(file);
+        if (!file.exists() || file.length() == 0L) {
+            final DataOutputStream out = new DataOutputStream(new FileOutputStream(file));
+            try {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+            } finally {
+                out.close();
+            }
+        } else {
+            history.load();
+        }
+        return history;
+    }
+
+    private void load() throws IOException {
+        final DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+        try {
+            if (in.readInt() != MAGIC) {
+                throw new IOException("Not a metrics history file: " + file);
+            }
+            final int version = in.readInt();
+            if (version != VERSION) {
+                throw new IOException("Unsupported metrics history version " + version + ": " + file);
+            }
+            readRecords(in, file.length());
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Reads the complete records following the valid part of the file.
+     * @param in  the input, positioned at the end of the valid part.
+     */
+    private void readRecords(DataInputStream in, long fileLength) throws IOException {
+        final CRC32 crc = new CRC32();
+        while (true) {
+            final byte[] payload;
+            final int checksum;
+            try {
+                final int length = in.readInt();
+                if (length < 0 || length > fileLength - validLength - RECORD_HEADER_LENGTH) {
+                    break;
+                }
+                checksum = in.readInt();
+                payload = new byte[length];
+                in.readFully(payload);
+            } catch (EOFException ignore) {
+                break;
+            }
+            crc.reset();
+            crc.update(payload);
+            if ((int) crc.getValue() != checksum) {
+                break;
+            }
+            apply(ByteBuffer.wrap(payload));
+            validLength += RECORD_HEADER_LENGTH + payload.length;
+        }
+    }
+
+    /**
+     * Appends the results of the specified run as a new generation.  The file is locked while appending, and the
+     * generations appended by other processes since the history was opened are read first.
+     * @param label  a description of the generation, for example a build number or revision.
+     * @return the new generation.
+     */
+    public synchronized int append(@NotNull MetricsRun run, @NotNull String label) throws IOException {
+        final TimeStamp timestamp = run.getTimestamp();
+        final long time = timestamp == null ? System.currentTimeMillis() : timestamp.getTime();
+        final byte[] payload;
+        final RandomAccessFile out = new RandomAccessFile(file, "rw");
+        try {
+            final FileLock lock = out.getChannel().lock();
+            try {
+                final long length = out.length();
+                if (length > validLength) {
+                    out.seek(validLength);
+                    // not closed, that would close the file
+                    readRecords(new DataInputStream(new BufferedInputStream(Channels.newInputStream(out.getChannel()))),
+                            length);
+                }
+                payload = encode(run, time, String.valueOf(run.getProfileName()), label);
+                final CRC32 crc = new CRC32();
+                crc.update(payload);
+                // drops an incomplete record left behind by an earlier append
+                out.setLength(validLength);
+                out.seek(validLength);
+                final ByteArrayOutputStream record = new ByteArrayOutputStream(payload.length + RECORD_HEADER_LENGTH);
+                final DataOutputStream recordOut = new DataOutputStream(record);
+                recordOut.writeInt(payload.length);
+                recordOut.writeInt((int) crc.getValue());
+                recordOut.write(payload);
+                out.write(record.toByteArray());
+                out.getFD().sync();
+            } finally {
+                lock.release();
+            }
+        } finally {
+            out.close();
+        }
+        apply(ByteBuffer.wrap(payload));
+        validLength += RECORD_HEADER_LENGTH + payload.length;
+        return times.size() - 1;
+    }
+
+    private byte[] encode(MetricsRun run, long time, String profileName, String label) throws IOException {
+        final List<String> newMetricIds = new ArrayList<String>();
+        final TObjectIntHashMap<String> newMetricIndex = new TObjectIntHashMap<String>();
+        final List<String> newMeasuredObjects = new ArrayList<String>();
+        final TObjectIntHashMap<String> newMeasuredObjectIndex = new TObjectIntHashMap<String>();
+        final TIntArrayList newSeries = new TIntArrayList();
+        final TLongIntHashMap newSeriesIndex = new TLongIntHashMap();
+        final TIntArrayList changedSeries = new TIntArrayList();
+        final List<Double> changedValues = new ArrayList<Double>();
+        final BitSet present = new BitSet(series.size());
+        for (MetricCategory category : MetricCategory.values()) {
+            final MetricsResult results = run.getResultsForCategory(category);
+            final String[] objects = results.getMeasuredObjects();
+            for (Metric metric : results.getMetrics()) {
+                final String metricId = metric.getID();
+                int metricNumber = findId(metricId, metricIndex);
+                if (metricNumber < 0) {
+                    metricNumber = metricIds.size() + intern(metricId, newMetricIds, newMetricIndex);
+                }
+                for (String measuredObject : objects) {
+                    final Double value = results.getValueForMetric(metric, measuredObject);
+                    if (value == null || value.isNaN()) {
+                        continue;
+                    }
+                    int objectNumber = findId(measuredObject, measuredObjectIndex);
+                    if (objectNumber < 0) {
+                        objectNumber = measuredObjects.size() +
+                                intern(measuredObject, newMeasuredObjects, newMeasuredObjectIndex);
+                    }
+                    final long key = getSeriesKey(metricNumber, objectNumber);
+                    int seriesNumber = seriesIndex.containsKey(key) ? seriesIndex.get(key) : -1;
+                    if (seriesNumber >= 0) {
+                        present.set(seriesNumber);
+                        if (Double.compare(series.get(seriesNumber).getLastValue(), value.doubleValue()) == 0) {
+                            continue;
+                        }
+                    } else if (newSeriesIndex.containsKey(key)) {
+                        continue; // the same metric and measured object reported twice
+                    } else {
+                        seriesNumber = series.size() + newSeries.size() / 2;
+                        newSeriesIndex.put(key, seriesNumber);
+                        newSeries.add(metricNumber);
+                        newSeries.add(objectNumber);
+                    }
+                    changedSeries.add(seriesNumber);
+                    changedValues.add(value);
+                }
+            }
+        }
+        for (int i = 0; i < series.size(); i++) {
+            if (!present.get(i) && !Double.isNaN(series.get(i).getLastValue())) {
+                changedSeries.add(i);
+                changedValues.add(Double.valueOf(Double.NaN));
+            }
+        }
+
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream(changedSeries.size() * 10 + 64);
+        final DataOutputStream out = new DataOutputStream(bytes);
+        out.writeLong(time);
+        out.writeUTF(profileName);
+        out.writeUTF(label);
+        writeStrings(out, newMetricIds);
+        writeStrings(out, newMeasuredObjects);
+        BinarySnapshotFormat.writeVarInt(out, newSeries.size() / 2);
+        for (int i = 0; i < newSeries.size(); i++) {
+            BinarySnapshotFormat.writeVarInt(out, newSeries.get(i));
+        }
+        final int[] order = sortedOrder(changedSeries);
+        BinarySnapshotFormat.writeVarInt(out, order.length);
+        int previous = 0;
+        for (int index : order) {
+            final int seriesNumber = changedSeries.get(index);
+            BinarySnapshotFormat.writeVarInt(out, seriesNumber - previous);
+            previous = seriesNumber;
+            out.writeDouble(changedValues.get(index).doubleValue());
+        }
+        out.close();
+        return bytes.toByteArray();
+    }
+
+    private void apply(ByteBuffer payload) throws IOException {
+        final int generation = times.size();
+        final long time = payload.getLong();
+        final String profileName = BinarySnapshotFormat.readUTF(payload);
+        final String label = BinarySnapshotFormat.readUTF(payload);
+        final int metricCount = BinarySnapshotFormat.readVarInt(payload);
+        for (int i = 0; i < metricCount; i++) {
+            final String metricId = BinarySnapshotFormat.readUTF(payload);
+            metricIndex.put(metricId, metricIds.size());
+            metricIds.add(metricId);
+            seriesByMetric.add(new TIntArrayList());
+        }
+        final int measuredObjectCount = BinarySnapshotFormat.readVarInt(payload);
+        for (int i = 0; i < measuredObjectCount; i++) {
+            final String measuredObject = BinarySnapshotFormat.readUTF(payload);
+            measuredObjectIndex.put(measuredObject, measuredObjects.size());
+            measuredObjects.add(measuredObject);
+        }
+        final int seriesCount = BinarySnapshotFormat.readVarInt(payload);
+        for (int i = 0; i < seriesCount; i++) {
+            final int metricNumber = BinarySnapshotFormat.readVarInt(payload);
+            final int objectNumber = BinarySnapshotFormat.readVarInt(payload);
+            if (metricNumber >= metricIds.size() || objectNumber >= measuredObjects.size()) {
+                throw new IOException("Corrupt metrics history: " + file);
+            }
+            final int seriesNumber = series.size();
+            seriesIndex.put(getSeriesKey(metricNumber, objectNumber), seriesNumber);
+            series.add(new Series(objectNumber));
+            seriesByMetric.get(metricNumber).add(seriesNumber);
+        }
+        final int changeCount = BinarySnapshotFormat.readVarInt(payload);
+        int seriesNumber = 0;
+        for (int i = 0; i < changeCount; i++) {
+            seriesNumber += BinarySnapshotFormat.readVarInt(payload);
+            if (seriesNumber >= series.size()) {
+                throw new IOException("Corrupt metrics history: " + file);
+            }
+            series.get(seriesNumber).add(generation, payload.getDouble());
+        }
+        times.add(Long.valueOf(time));
+        profileNames.add(profileName);
+        labels.add(label);
+    }
+
+    public synchronized int getGenerationCount() {
+        return times.size();
+    }
+
+    public synchronized long getTime(int generation) {
+        return times.get(generation).longValue();
+    }
+
+    public synchronized String getProfileName(int generation) {
+        return profileNames.get(generation);
+    }
+
+    public synchronized String getLabel(int generation) {
+        return labels.get(generation);
+    }
+
+    /**
+     * @return the last generation appended at or before the specified time, or -1 if there is no such generation.
+     */
+    public synchronized int findGeneration(long time) {
+        int result = -1;
+        for (int i = 0; i < times.size(); i++) {
+            if (times.get(i).longValue() <= time) {
+                result = i;
+            }
+        }
+        return result;
+    }
+
+    @NotNull
+    public synchronized String[] getMetricIds() {
+        return metricIds.toArray(new String[metricIds.size()]);
+    }
+
+    /**
+     * @return the value of the specified metric for the specified measured object in the specified generation,
+     * or null if it had no value in that generation.
+     */
+    @Nullable
+    public synchronized Double getValue(@NotNull String metricId, @NotNull String measuredObject, int generation) {
+        final Series values = findSeries(metricId, measuredObject);
+        if (values == null) {
+            return null;
+        }
+        final double value = values.getValue(generation);
+        return Double.isNaN(value) ? null : Double.valueOf(value);
+    }
+
+    /**
+     * @return the values of the specified metric for the specified measured object in generations
+     * {@code fromGeneration} (inclusive) to {@code toGeneration} (exclusive), with NaN for generations without a
+     * value.
+     */
+    @NotNull
+    public synchronized double[] getSeries(@NotNull String metricId, @NotNull String measuredObject,
+                                           int fromGeneration, int toGeneration) {
+        final double[] result = new double[toGeneration - fromGeneration];
+        Arrays.fill(result, Double.NaN);
+        final Series values = findSeries(metricId, measuredObject);
+        if (values != null) {
+            values.fill(result, fromGeneration);
+        }
+        return result;
+    }
+
+    /**
+     * @return the measured objects whose value of the specified metric increased the most between the specified
+     * generations, largest increase first.  Only measured objects with a value in both generations are considered.
+     */
+    @NotNull
+    public synchronized List<Change> getLargestIncreases(@NotNull String metricId, int fromGeneration,
+                                                         int toGeneration, int count) {
+        final int metricNumber = findId(metricId, metricIndex);
+        if (metricNumber < 0) {
+            return Collections.emptyList();
+        }
+        final List<Change> result = new ArrayList<Change>();
+        final TIntArrayList seriesNumbers = seriesByMetric.get(metricNumber);
+        for (int i = 0; i < seriesNumbers.size(); i++) {
+            final Series values = series.get(seriesNumbers.get(i));
+            final double before = values.getValue(fromGeneration);
+            final double after = values.getValue(toGeneration);
+            if (after > before) {
+                result.add(new Change(measuredObjects.get(values.measuredObject), before, after));
+            }
+        }
+        Collections.sort(result);
+        return result.size() > count ? new ArrayList<Change>(result.subList(0, count)) : result;
+    }
+
+    @Nullable
+    private Series findSeries(String metricId, String measuredObject) {
+        final int metricNumber = findId(metricId, metricIndex);
+        final int objectNumber = findId(measuredObject, measuredObjectIndex);
+        if (metricNumber < 0 || objectNumber < 0) {
+            return null;
+        }
+        final long key = getSeriesKey(metricNumber, objectNumber);
+        return seriesIndex.containsKey(key) ? series.get(seriesIndex.get(key)) : null;
+    }
+
+    private static long getSeriesKey(int metricNumber, int objectNumber) {
+        return ((long) metricNumber << 32) | (objectNumber & 0xffffffffL);
+    }
+
+    private static int findId(String s, TObjectIntHashMap<String> index) {
+        return index.containsKey(s) ? index.get(s) : -1;
+    }
+
+    private static int intern(String s, List<String> strings, TObjectIntHashMap<String> index) {
+        if (index.containsKey(s)) {
+            return index.get(s);
+        }
+        final int result = strings.size();
+        index.put(s, result);
+        strings.add(s);
+        return result;
+    }
+
+    private static void writeStrings(DataOutput out, List<String> strings) throws IOException {
+        BinarySnapshotFormat.writeVarInt(out, strings.size());
+        for (String s : strings) {
+            out.writeUTF(s);
+        }
+    }
+
+    private static int[] sortedOrder(final TIntArrayList values) {
+        final Integer[] order = new Integer[values.size()];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = Integer.valueOf(i);
+        }
+        Arrays.sort(order, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer index1, Integer index2) {
+                final int value1 = values.get(index1.intValue());
+                final int value2 = values.get(index2.intValue());
+                return value1 < value2 ? -1 : (value1 == value2 ? 0 : 1);
+            }
+        });
+        final int[] result = new int[order.length];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = order[i].intValue();
+        }
+        return result;
+    }
+
+    /**
+     * The values of one metric for one measured object, stored only for the generations in which they changed.
+     */
+    private static class Series {
+
+        final int measuredObject;
+        private int[] generations = new int[2];
+        private double[] values = new double[2];
+        private int size = 0;
+
+        Series(int measuredObject) {
+            this.measuredObject = measuredObject;
+        }
+
+        void add(int generation, double value) {
+            if (size == generations.length) {
+                generations = Arrays.copyOf(generations, size * 2);
+                values = Arrays.copyOf(values, size * 2);
+            }
+            generations[size] = generation;
+            values[size] = value;
+            size++;
+        }
+
+        double getLastValue() {
+            return size == 0 ? Double.NaN : values[size - 1];
+        }
+
+        double getValue(int generation) {
+            final int index = Arrays.binarySearch(generations, 0, size, generation);
+            if (index >= 0) {
+                return values[index];
+            }
+            final int insertionPoint = -index - 1;
+            return insertionPoint == 0 ? Double.NaN : values[insertionPoint - 1];
+        }
+
+        void fill(double[] result, int fromGeneration) {
+            double value = getValue(fromGeneration);
+            int index = 0;
+            while (index < size && generations[index] <= fromGeneration) {
+                index++;
+            }
+            for (int i = 0; i < result.length; i++) {
+                final int generation = fromGeneration + i;
+                while (index < size && generations[index] == generation) {
+                    value = values[index];
+                    index++;
+                }
+                result[i] = value;
+            }
+        }
+    }
+
+    public static class Change implements Comparable<Change> {
+
+        private final String measuredObject;
+        private final double before;
+        private final double after;
+
+        Change(@NotNull String measuredObject, double before, double after) {
+            this.measuredObject = measuredObject;
+            this.before = before;
+            this.after = after;
+        }
+
+        @NotNull
+        public String getMeasuredObject() {
+            return measuredObject;
+        }
+
+        public double getBefore() {
+            return before;
+        }
+
+        public double getAfter() {
+            return after;
+        }
+
+        @Override
+        public int compareTo(Change other) {
+            final int result = Double.compare(other.after - other.before, after - before);
+            return result != 0 ? result : measuredObject.compareTo(other.measuredObject);
+        }
+    }
+}
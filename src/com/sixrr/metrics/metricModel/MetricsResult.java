@@ -19,6 +19,8 @@ package com.sixrr.metrics.metricModel;
 import com.intellij.psi.PsiElement;
 import com.sixrr.metrics.Metric;
 import com.sixrr.metrics.profile.MetricsProfile;
+import com.sixrr.metrics.utils.QuantileSketch;
+import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
 public interface MetricsResult {
@@ -32,6 +34,28 @@ public interface MetricsResult {
 
     String[] getMeasuredObjects();
 
+    /**
+     * @return the values of the specified metric for each of the measured objects, in the order returned by
+     * {@link #getMeasuredObjects()}, with NaN for measured objects without a value.  Values posted after calling
+     * {@code getMeasuredObjects()} may be missing from or appended to the result.
+     */
+    @NotNull
+    double[] getValuesForMetric(Metric metric);
+
+    /**
+     * @return the numerators of the values of the specified metric, like {@link #getValuesForMetric(Metric)}.
+     * Metrics posted without a denominator have the value as numerator.
+     */
+    @NotNull
+    double[] getNumeratorsForMetric(Metric metric);
+
+    /**
+     * @return the denominators of the values of the specified metric, like {@link #getValuesForMetric(Metric)}.
+     * Metrics posted without a denominator have the denominator 1.0.
+     */
+    @NotNull
+    double[] getDenominatorsForMetric(Metric metric);
+
     Metric[] getMetrics();
 
     @Nullable
@@ -46,6 +70,20 @@ public interface MetricsResult {
     @Nullable
     Double getMaximumForMetric(Metric metric);
 
+    /**
+     * @param fraction the quantile to estimate, between 0.0 and 1.0, for example 0.9 for the 90th percentile.
+     * @return the estimated quantile of the values of the specified metric, or null if there are no values.
+     */
+    @Nullable
+    Double getQuantileForMetric(Metric metric, double fraction);
+
+    /**
+     * @return a copy of the sketch of the distribution of the values of the specified metric, which can be merged with
+     * sketches from other results, or null if there are no values.
+     */
+    @Nullable
+    QuantileSketch getQuantileSketchForMetric(Metric metric);
+
     void setElementForMeasuredObject(String measuredObject, PsiElement element);
 
     @Nullable
@@ -54,4 +92,9 @@ public interface MetricsResult {
     boolean hasWarnings(MetricsProfile profile);
 
     MetricsResult filterRowsWithoutWarnings(MetricsProfile profile);
+
+    /**
+     * @return the values of only those metrics which are enabled in the specified profile.
+     */
+    MetricsResult filterMetrics(MetricsProfile profile);
 }
@@ -24,20 +24,26 @@ import com.sixrr.metrics.Metric;
 import com.sixrr.metrics.MetricType;
 import com.sixrr.metrics.profile.MetricInstance;
 import com.sixrr.metrics.profile.MetricsProfile;
-import com.sixrr.metrics.utils.StringToFractionMap;
+import com.sixrr.metrics.utils.QuantileSketch;
+import gnu.trove.TObjectIntHashMap;
+import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
+import java.util.Arrays;
 import java.util.HashMap;
-import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
 
+/**
+ * Stores each measured object once, under a dense row ID, and the values of each metric in a column indexed by
+ * those row IDs.
+ */
 public class MetricsResultImpl implements MetricsResult {
-    private final Map<Metric, StringToFractionMap> values = new HashMap<Metric, StringToFractionMap>(32);
-    private final Set<String> measuredObjects = new HashSet<String>(32);
-    private final Set<Metric> metrics = new HashSet<Metric>(32);
-    private final Map<String, SmartPsiElementPointer<PsiElement>> elements =
-            new HashMap<String, SmartPsiElementPointer<PsiElement>>(1024);
+    private final TObjectIntHashMap<String> rowIds = new TObjectIntHashMap<String>(1024);
+    private String[] measuredObjects = new String[1024];
+    private SmartPsiElementPointer<PsiElement>[] elements = newPointerArray(1024);
+    private int rowCount = 0;
+    private final Map<Metric, FractionColumn> columns = new HashMap<Metric, FractionColumn>(32);
 
     @Override
     public void postValue(Metric metric, String measured, double value) {
@@ -45,100 +51,234 @@ public class MetricsResultImpl implements MetricsResult {
     }
 
     @Override
-    public void postValue(Metric metric, String measured, double numerator, double denominator) {
+    public synchronized void postValue(Metric metric, String measured, double numerator, double denominator) {
         if (measured == null) {
             return;
         }
-        StringToFractionMap metricValues = values.get(metric);
-        if (metricValues == null) {
-            metricValues = new StringToFractionMap();
-            values.put(metric, metricValues);
+        FractionColumn column = columns.get(metric);
+        if (column == null) {
+            column = new FractionColumn();
+            columns.put(metric, column);
         }
-        metricValues.put(measured, numerator, denominator);
-        measuredObjects.add(measured);
-        metrics.add(metric);
+        column.put(internRow(measured), numerator, denominator);
+    }
+
+    /**
+     * Posts the value, or combines it with the value posted before for the same metric and measured object, as when
+     * both were measured over different parts of the measured object.  Counts are added up, the numerators and
+     * denominators of ratios and averages are added up separately, and of scores the maximum is kept.
+     */
+    synchronized void combineValue(Metric metric, String measured, double numerator, double denominator) {
+        final FractionColumn column = columns.get(metric);
+        final int row = findRow(measured);
+        if (column == null || !column.contains(row)) {
+            postValue(metric, measured, numerator, denominator);
+            return;
+        }
+        final double value = FractionColumn.toValue(numerator, denominator);
+        switch (metric.getType()) {
+            case Count:
+            case RecursiveCount:
+                column.put(row, column.get(row) + value, 1.0);
+                break;
+            case Ratio:
+            case RecursiveRatio:
+            case Average:
+                column.put(row, column.getNumerator(row) + numerator, column.getDenominator(row) + denominator);
+                break;
+            default:
+                if (value > column.get(row)) {
+                    column.put(row, numerator, denominator);
+                }
+        }
+    }
+
+    private int internRow(String measured) {
+        final int row = findRow(measured);
+        if (row >= 0) {
+            return row;
+        }
+        if (rowCount == measuredObjects.length) {
+            measuredObjects = Arrays.copyOf(measuredObjects, rowCount << 1);
+            elements = Arrays.copyOf(elements, rowCount << 1);
+        }
+        measuredObjects[rowCount] = measured;
+        rowCount++;
+        // row IDs are stored plus one, because the map returns 0 for absent keys
+        rowIds.put(measured, rowCount);
+        return rowCount - 1;
+    }
+
+    private int findRow(String measured) {
+        return rowIds.get(measured) - 1;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static SmartPsiElementPointer<PsiElement>[] newPointerArray(int length) {
+        return new SmartPsiElementPointer[length];
     }
 
     @Override
     @Nullable
-    public Double getValueForMetric(Metric metric, String measured) {
-        final StringToFractionMap metricValues = values.get(metric);
-        if (metricValues == null) {
+    public synchronized Double getValueForMetric(Metric metric, String measured) {
+        final FractionColumn column = columns.get(metric);
+        if (column == null) {
             return null;
         }
-        return metricValues.containsKey(measured) ? Double.valueOf(metricValues.get(measured)) : null;
+        final int row = findRow(measured);
+        return column.contains(row) ? Double.valueOf(column.get(row)) : null;
+    }
+
+    @Override
+    public synchronized String[] getMeasuredObjects() {
+        return Arrays.copyOf(measuredObjects, rowCount);
+    }
+
+    @Override
+    @NotNull
+    public synchronized double[] getValuesForMetric(Metric metric) {
+        final double[] result = new double[rowCount];
+        final FractionColumn column = columns.get(metric);
+        for (int row = 0; row < result.length; row++) {
+            result[row] = column != null && column.contains(row) ? column.get(row) : Double.NaN;
+        }
+        return result;
     }
 
     @Override
-    public String[] getMeasuredObjects() {
-        return measuredObjects.toArray(new String[measuredObjects.size()]);
+    @NotNull
+    public synchronized double[] getNumeratorsForMetric(Metric metric) {
+        final double[] result = new double[rowCount];
+        final FractionColumn column = columns.get(metric);
+        for (int row = 0; row < result.length; row++) {
+            result[row] = column != null && column.contains(row) ? column.getNumerator(row) : Double.NaN;
+        }
+        return result;
     }
 
     @Override
-    public Metric[] getMetrics() {
+    @NotNull
+    public synchronized double[] getDenominatorsForMetric(Metric metric) {
+        final double[] result = new double[rowCount];
+        final FractionColumn column = columns.get(metric);
+        for (int row = 0; row < result.length; row++) {
+            result[row] = column != null && column.contains(row) ? column.getDenominator(row) : Double.NaN;
+        }
+        return result;
+    }
+
+    @Override
+    public synchronized Metric[] getMetrics() {
+        final Set<Metric> metrics = columns.keySet();
         return metrics.toArray(new Metric[metrics.size()]);
     }
 
     @Override
     @Nullable
-    public Double getMinimumForMetric(Metric metric) {
-        final StringToFractionMap metricValues = values.get(metric);
-        if (metricValues == null) {
+    public synchronized Double getMinimumForMetric(Metric metric) {
+        final FractionColumn column = columns.get(metric);
+        if (column == null) {
             return Double.valueOf(0.0);
         }
-        return Double.valueOf(metricValues.getMinimum());
+        return Double.valueOf(column.getMinimum());
     }
 
     @Override
     @Nullable
-    public Double getMaximumForMetric(Metric metric) {
-        final StringToFractionMap metricValues = values.get(metric);
-        if (metricValues == null) {
+    public synchronized Double getMaximumForMetric(Metric metric) {
+        final FractionColumn column = columns.get(metric);
+        if (column == null) {
             return Double.valueOf(0.0);
         }
-        return Double.valueOf(metricValues.getMaximum());
+        return Double.valueOf(column.getMaximum());
+    }
+
+    @Override
+    @Nullable
+    public synchronized Double getQuantileForMetric(Metric metric, double fraction) {
+        final FractionColumn column = columns.get(metric);
+        if (column == null) {
+            return null;
+        }
+        final QuantileSketch sketch = column.getSketch();
+        return sketch.getCount() == 0L ? null : Double.valueOf(sketch.getQuantile(fraction));
     }
 
     @Override
     @Nullable
-    public Double getTotalForMetric(Metric metric) {
+    public synchronized QuantileSketch getQuantileSketchForMetric(Metric metric) {
+        final FractionColumn column = columns.get(metric);
+        if (column == null) {
+            return null;
+        }
+        return new QuantileSketch(column.getSketch());
+    }
+
+    @Override
+    @Nullable
+    public synchronized Double getTotalForMetric(Metric metric) {
         final MetricType metricType = metric.getType();
         if (metricType != MetricType.Count) {
             return null;
         }
-        final StringToFractionMap metricValues = values.get(metric);
-        if (metricValues == null) {
+        final FractionColumn column = columns.get(metric);
+        if (column == null) {
             return Double.valueOf(0.0);
         }
-        return Double.valueOf(metricValues.getTotal());
+        return Double.valueOf(column.getTotal());
     }
 
     @Override
     @Nullable
-    public Double getAverageForMetric(Metric metric) {
+    public synchronized Double getAverageForMetric(Metric metric) {
         final MetricType metricType = metric.getType();
         if (metricType == MetricType.RecursiveCount || metricType == MetricType.RecursiveRatio) {
             return null;
         }
-        final StringToFractionMap metricValues = values.get(metric);
-        if (metricValues == null) {
+        final FractionColumn column = columns.get(metric);
+        if (column == null) {
             return Double.valueOf(0.0);
         }
-        return Double.valueOf(metricValues.getAverage());
+        return Double.valueOf(column.getAverage());
     }
 
     @Override
     public void setElementForMeasuredObject(String measuredObject, PsiElement element) {
+        if (measuredObject == null) {
+            return;
+        }
+        // every metric posts the element of its measured object, but a single pointer per row is enough.  The values
+        // are posted first, so an element without a row has no values to show and is not kept.
+        final int row;
+        synchronized (this) {
+            row = findRow(measuredObject);
+            if (row < 0 || elements[row] != null) {
+                return;
+            }
+        }
         final Project project = element.getProject();
         final SmartPointerManager pointerManager = SmartPointerManager.getInstance(project);
         final SmartPsiElementPointer<PsiElement> pointer = pointerManager.createSmartPsiElementPointer(element);
-        elements.put(measuredObject, pointer);
+        synchronized (this) {
+            if (elements[row] == null) {
+                elements[row] = pointer;
+            } else {
+                pointerManager.removePointer(pointer);
+            }
+        }
     }
 
     @Override
     @Nullable
     public PsiElement getElementForMeasuredObject(String measuredObject) {
-        final SmartPsiElementPointer<PsiElement> pointer = elements.get(measuredObject);
+        final SmartPsiElementPointer<PsiElement> pointer;
+        synchronized (this) {
+            final int row = findRow(measuredObject);
+            if (row < 0) {
+                return null;
+            }
+            pointer = elements[row];
+        }
         if (pointer == null) {
             return null;
         }
@@ -146,17 +286,14 @@ public class MetricsResultImpl implements MetricsResult {
     }
 
     @Override
-    public boolean hasWarnings(MetricsProfile profile) {
-        for (Metric metric : metrics) {
+    public synchronized boolean hasWarnings(MetricsProfile profile) {
+        for (Map.Entry<Metric, FractionColumn> entry : columns.entrySet()) {
+            final Metric metric = entry.getKey();
             final MetricInstance metricInstance = profile.getMetricInstance(metric);
             assert metricInstance != null : "no instance found for " + metric.getID();
-            final StringToFractionMap valuesForMetric = values.get(metric);
-            for (String measuredObject : measuredObjects) {
-                final double value = valuesForMetric.get(measuredObject);
-                if (metricInstance.isUpperThresholdEnabled() && value > metricInstance.getUpperThreshold()) {
-                    return true;
-                }
-                if (metricInstance.isLowerThresholdEnabled() && value < metricInstance.getLowerThreshold()) {
+            final FractionColumn column = entry.getValue();
+            for (int row = 0; row < rowCount; row++) {
+                if (column.contains(row) && isOutsideThresholds(metricInstance, column.get(row))) {
                     return true;
                 }
             }
@@ -164,44 +301,72 @@ public class MetricsResultImpl implements MetricsResult {
         return false;
     }
 
+    private static boolean isOutsideThresholds(MetricInstance metricInstance, double value) {
+        if (metricInstance.isUpperThresholdEnabled() && value > metricInstance.getUpperThreshold()) {
+            return true;
+        }
+        return metricInstance.isLowerThresholdEnabled() && value < metricInstance.getLowerThreshold();
+    }
+
     @Override
-    public MetricsResult filterRowsWithoutWarnings(MetricsProfile profile) {
-        final MetricsResult out = new MetricsResultImpl();
-        for (String measuredObject : measuredObjects) {
+    public synchronized MetricsResult filterRowsWithoutWarnings(MetricsProfile profile) {
+        final MetricsResultImpl out = new MetricsResultImpl();
+        for (int row = 0; row < rowCount; row++) {
             boolean found = false;
-            for (Metric metric : metrics) {
+            for (Map.Entry<Metric, FractionColumn> entry : columns.entrySet()) {
+                final Metric metric = entry.getKey();
                 final MetricInstance metricInstance = profile.getMetricInstance(metric);
                 assert metricInstance != null : "no instance found for " + metric.getID();
                 if (!metricInstance.isEnabled()) {
                     continue;
                 }
-                final StringToFractionMap valuesForMetric = values.get(metric);
-                if (!valuesForMetric.containsKey(measuredObject)) {
-                    continue;
-                }
-                final double value = valuesForMetric.get(measuredObject);
-                if (metricInstance.isUpperThresholdEnabled() && value > metricInstance.getUpperThreshold()) {
-                    found = true;
-                    break;
-                }
-                if (metricInstance.isLowerThresholdEnabled() && value < metricInstance.getLowerThreshold()) {
+                final FractionColumn column = entry.getValue();
+                if (column.contains(row) && isOutsideThresholds(metricInstance, column.get(row))) {
                     found = true;
                     break;
                 }
             }
             if (found) {
-                for (Metric metric : metrics) {
-                    final StringToFractionMap valuesForMetric = values.get(metric);
-                    final double value = valuesForMetric.get(measuredObject);
-                    out.postValue(metric, measuredObject, value, 1.0); //not quite right
+                final String measuredObject = measuredObjects[row];
+                for (Map.Entry<Metric, FractionColumn> entry : columns.entrySet()) {
+                    final FractionColumn column = entry.getValue();
+                    if (column.contains(row)) {
+                        out.postValue(entry.getKey(), measuredObject,
+                                column.getNumerator(row), column.getDenominator(row));
+                    }
                 }
-                final PsiElement elementForMeasuredObject = getElementForMeasuredObject(measuredObject);
-                if (elementForMeasuredObject != null) {
-                    out.setElementForMeasuredObject(measuredObject, elementForMeasuredObject);
+                final SmartPsiElementPointer<PsiElement> pointer = elements[row];
+                if (pointer != null) {
+                    out.elements[out.internRow(measuredObject)] = pointer;
                 }
             }
         }
         return out;
+    }
 
+    @Override
+    public synchronized MetricsResult filterMetrics(MetricsProfile profile) {
+        final MetricsResultImpl out = new MetricsResultImpl();
+        for (Map.Entry<Metric, FractionColumn> entry : columns.entrySet()) {
+            final Metric metric = entry.getKey();
+            final MetricInstance metricInstance = profile.getMetricInstance(metric);
+            if (metricInstance == null || !metricInstance.isEnabled()) {
+                continue;
+            }
+            final FractionColumn column = entry.getValue();
+            for (int row = 0; row < rowCount; row++) {
+                if (column.contains(row)) {
+                    out.postValue(metric, measuredObjects[row], column.getNumerator(row), column.getDenominator(row));
+                }
+            }
+        }
+        for (int row = 0; row < rowCount; row++) {
+            final SmartPsiElementPointer<PsiElement> pointer = elements[row];
+            final int outRow = out.findRow(measuredObjects[row]);
+            if (pointer != null && outRow >= 0) {
+                out.elements[outRow] = pointer;
+            }
+        }
+        return out;
     }
 }
@@ -23,6 +23,7 @@ import com.sixrr.metrics.MetricsResultsHolder;
 import com.sixrr.metrics.profile.MetricsProfile;
 import org.jetbrains.annotations.NonNls;
 
+import java.io.IOException;
 import java.util.List;
 
 public interface MetricsRun extends MetricsResultsHolder {
@@ -31,7 +32,7 @@ public interface MetricsRun extends MetricsResultsHolder {
 
     MetricsResult getResultsForCategory(MetricCategory category);
 
-    void writeToFile(@NonNls String fileName);
+    void writeToFile(@NonNls String fileName) throws IOException;
 
     String getProfileName();
 
@@ -39,5 +40,21 @@ public interface MetricsRun extends MetricsResultsHolder {
 
     AnalysisScope getContext();
 
+    /**
+     * @return the index of the shard measured by this run, numbered from 1, or 0 if the run was not sharded.
+     */
+    int getShardIndex();
+
+    /**
+     * @return the number of shards the scope was divided in, or 0 if the run was not sharded.
+     */
+    int getShardCount();
+
     MetricsRun filterRowsWithoutWarnings(MetricsProfile profile);
+
+    /**
+     * @return a run with the results of only those metrics which are enabled in the specified profile, named after
+     * that profile.
+     */
+    MetricsRun filterMetrics(MetricsProfile profile);
 }
@@ -18,25 +18,21 @@ package com.sixrr.metrics.metricModel;
 
 import com.intellij.analysis.AnalysisScope;
 import com.intellij.ide.plugins.PluginManager;
-import com.intellij.openapi.diagnostic.Logger;
 import com.intellij.openapi.extensions.PluginId;
 import com.intellij.openapi.fileTypes.FileType;
 import com.intellij.openapi.module.Module;
-import com.intellij.openapi.util.io.FileUtilRt;
+import com.intellij.openapi.progress.ProgressIndicator;
+import com.intellij.openapi.progress.ProgressManager;
 import com.intellij.openapi.util.text.StringUtil;
 import com.intellij.psi.PsiClass;
 import com.intellij.psi.PsiMethod;
 import com.intellij.psi.PsiPackage;
 import com.sixrr.metrics.Metric;
 import com.sixrr.metrics.MetricCategory;
-import com.sixrr.metrics.profile.MetricRepository;
+import com.sixrr.metrics.NonAdditiveMetric;
 import com.sixrr.metrics.profile.MetricsProfile;
-import com.sixrr.metrics.profile.MetricsProfileRepository;
-import com.sixrr.metrics.utils.MethodUtils;
-import org.jdom.Document;
-import org.jdom.Element;
-import org.jdom.input.SAXBuilder;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 import javax.xml.stream.XMLOutputFactory;
 import javax.xml.stream.XMLStreamException;
@@ -46,12 +42,14 @@ import java.util.*;
 
 public class MetricsRunImpl implements MetricsRun {
 
-    private static final Logger logger = Logger.getInstance("MetricsReloaded");
     private final Map<MetricCategory, MetricsResult> metricResults =
             new EnumMap<MetricCategory, MetricsResult>(MetricCategory.class);
     private String profileName = null;
     private AnalysisScope context = null;
     private TimeStamp timestamp = null;
+    private int shardIndex = 0;
+    private int shardCount = 0;
+    private final MeasuredObjectKeys measuredObjectKeys = new MeasuredObjectKeys();
 
     public MetricsRunImpl() {
         final MetricCategory[] categories = MetricCategory.values();
@@ -105,7 +103,7 @@ public class MetricsRunImpl implements MetricsRun {
     @Override
     public void postClassMetric(@NotNull Metric metric, @NotNull PsiClass aClass, double value) {
         final MetricsResult results = getResultsForCategory(MetricCategory.Class);
-        final String qualifiedName = aClass.getQualifiedName();
+        final String qualifiedName = measuredObjectKeys.getKey(aClass);
         results.postValue(metric, qualifiedName, value);
         results.setElementForMeasuredObject(qualifiedName, aClass);
     }
@@ -113,7 +111,7 @@ public class MetricsRunImpl implements MetricsRun {
     @Override
     public void postInterfaceMetric(@NotNull Metric metric, @NotNull PsiClass anInterface, double value) {
         final MetricsResult results = getResultsForCategory(MetricCategory.Interface);
-        final String qualifiedName = anInterface.getQualifiedName();
+        final String qualifiedName = measuredObjectKeys.getKey(anInterface);
         results.postValue(metric, qualifiedName, value);
         results.setElementForMeasuredObject(qualifiedName, anInterface);
     }
@@ -121,7 +119,7 @@ public class MetricsRunImpl implements MetricsRun {
     @Override
     public void postMethodMetric(@NotNull Metric metric, @NotNull PsiMethod method, double value) {
         final MetricsResult results = getResultsForCategory(MetricCategory.Method);
-        final String signature = MethodUtils.calculateSignature(method);
+        final String signature = measuredObjectKeys.getKey(method);
         results.postValue(metric, signature, value);
         results.setElementForMeasuredObject(signature, method);
     }
@@ -156,71 +154,94 @@ public class MetricsRunImpl implements MetricsRun {
     public void postClassMetric(@NotNull Metric metric, @NotNull PsiClass aClass,
                                 double numerator, double denominator) {
         final MetricsResult results = getResultsForCategory(MetricCategory.Class);
-        results.postValue(metric, aClass.getQualifiedName(), numerator, denominator);
+        results.postValue(metric, measuredObjectKeys.getKey(aClass), numerator, denominator);
     }
 
     @Override
     public void postInterfaceMetric(@NotNull Metric metric, @NotNull PsiClass anInterface,
                                     double numerator, double denominator) {
         final MetricsResult results = getResultsForCategory(MetricCategory.Interface);
-        results.postValue(metric, anInterface.getQualifiedName(), numerator, denominator);
+        results.postValue(metric, measuredObjectKeys.getKey(anInterface), numerator, denominator);
     }
 
     @Override
     public void postMethodMetric(@NotNull Metric metric, @NotNull PsiMethod method,
                                  double numerator, double denominator) {
         final MetricsResult results = getResultsForCategory(MetricCategory.Method);
-        final String signature = MethodUtils.calculateSignature(method);
+        final String signature = measuredObjectKeys.getKey(method);
         results.postValue(metric, signature, numerator, denominator);
         results.setElementForMeasuredObject(signature, method);
     }
 
-    private void postRawMetric(@NotNull Metric metric, @NotNull String measured, double value) {
+    void postRawMetric(@NotNull Metric metric, @NotNull String measured, double value) {
         final MetricCategory category = metric.getCategory();
         final MetricsResult result = metricResults.get(category);
         result.postValue(metric, measured, value);
     }
 
+    void postRawMetric(@NotNull Metric metric, @NotNull String measured, double numerator, double denominator) {
+        final MetricCategory category = metric.getCategory();
+        final MetricsResult result = metricResults.get(category);
+        result.postValue(metric, measured, numerator, denominator);
+    }
+
+    MeasuredObjectKeys getMeasuredObjectKeys() {
+        return measuredObjectKeys;
+    }
+
+    /**
+     * Releases the measured object keys remembered for the classes and methods posted so far.  Called when a metrics
+     * run has finished posting values, so the run does not keep the PSI of the analysed files alive.
+     */
+    public void endPosting() {
+        measuredObjectKeys.clear();
+    }
+
     @Override
     public MetricsResult getResultsForCategory(@NotNull MetricCategory category) {
         return metricResults.get(category);
     }
 
-    private void setResultsForCategory(@NotNull MetricCategory category, @NotNull MetricsResult results) {
+    void setResultsForCategory(@NotNull MetricCategory category, @NotNull MetricsResult results) {
         metricResults.put(category, results);
     }
 
+    /**
+     * Writes a snapshot of this run.  The snapshot is written in the binary format if the file name has the binary
+     * snapshot extension, and in XML otherwise.
+     */
     @Override
-    public void writeToFile(@NotNull String fileName) {
+    public void writeToFile(@NotNull String fileName) throws IOException {
+        final String version = PluginManager.getPlugin(PluginId.getId("MetricsReloaded")).getVersion();
+        if (BinarySnapshotFormat.isBinarySnapshotFileName(fileName)) {
+            new BinarySnapshotWriter(this, true).write(new File(fileName), version);
+            return;
+        }
+        final OutputStream out = new BufferedOutputStream(new FileOutputStream(fileName));
         try {
-            final XMLStreamWriter writer =
-                    XMLOutputFactory.newInstance().createXMLStreamWriter(new FileOutputStream(fileName), "UTF-8");
-            try {
-                writer.writeStartDocument();
-                writer.writeCharacters("\n");
-                writer.writeStartElement("SNAPSHOT");
-                writer.writeAttribute("profile", profileName);
-                writer.writeAttribute("timestamp", timestamp.toString());
-                final String version = PluginManager.getPlugin(PluginId.getId("MetricsReloaded")).getVersion();
-                writer.writeAttribute("version", version);
-                writer.writeCharacters("\n");
-                final MetricCategory[] categories = MetricCategory.values();
-                for (MetricCategory category : categories) {
-                    writeResultsForCategory(category, writer);
-                }
-                writer.writeEndElement();
-                writer.writeEndDocument();
-            } finally {
-                try {
-                    writer.close();
-                } catch (XMLStreamException e) {
-                    logger.warn(e);
-                }
+            final XMLStreamWriter writer = XMLOutputFactory.newInstance().createXMLStreamWriter(out, "UTF-8");
+            writer.writeStartDocument();
+            writer.writeCharacters("\n");
+            writer.writeStartElement("SNAPSHOT");
+            writer.writeAttribute("profile", profileName);
+            writer.writeAttribute("timestamp", timestamp.toString());
+            writer.writeAttribute("version", version);
+            if (shardCount > 0) {
+                writer.writeAttribute("shard", shardIndex + "/" + shardCount);
+            }
+            writer.writeCharacters("\n");
+            final MetricCategory[] categories = MetricCategory.values();
+            for (MetricCategory category : categories) {
+                writeResultsForCategory(category, writer);
             }
-        } catch (IOException e) {
-            logger.warn(e);
+            writer.writeEndElement();
+            writer.writeEndDocument();
+            // does not close the underlying stream
+            writer.close();
         } catch (XMLStreamException e) {
-            logger.warn(e);
+            throw new IOException("Could not write snapshot " + fileName + ": " + e.getMessage(), e);
+        } finally {
+            out.close();
         }
     }
 
@@ -251,12 +272,28 @@ public class MetricsRunImpl implements MetricsRun {
         return context;
     }
 
+    public void setShard(int shardIndex, int shardCount) {
+        this.shardIndex = shardIndex;
+        this.shardCount = shardCount;
+    }
+
+    @Override
+    public int getShardIndex() {
+        return shardIndex;
+    }
+
+    @Override
+    public int getShardCount() {
+        return shardCount;
+    }
+
     @Override
     public MetricsRun filterRowsWithoutWarnings(@NotNull MetricsProfile profile) {
         final MetricsRunImpl out = new MetricsRunImpl();
         out.context = context;
         out.profileName = profileName;
         out.timestamp = timestamp;
+        out.setShard(shardIndex, shardCount);
 
         final Set<MetricCategory> categories = metricResults.keySet();
         for (MetricCategory category : categories) {
@@ -268,6 +305,169 @@ public class MetricsRunImpl implements MetricsRun {
         return out;
     }
 
+    @Override
+    public MetricsRun filterMetrics(@NotNull MetricsProfile profile) {
+        final MetricsRunImpl out = new MetricsRunImpl();
+        out.context = context;
+        out.profileName = profile.getName();
+        out.timestamp = timestamp;
+        out.setShard(shardIndex, shardCount);
+        for (MetricCategory category : metricResults.keySet()) {
+            out.setResultsForCategory(category, getResultsForCategory(category).filterMetrics(profile));
+        }
+        return out;
+    }
+
+    /**
+     * Merges the results of this run, which measured only some of the files of a project, over the results of an
+     * earlier run of the whole project.  The method, class and interface values of the recalculated classes are taken
+     * from this run, those of other classes from the baseline.  Package, module, file type and project values aggregate
+     * over files outside this run, so they are taken from the baseline unchanged.  The result is therefore not the same
+     * as that of a run over the whole project: values of classes outside this run which depend on the recalculated
+     * classes, such as the number of dependents of a class a changed file stopped using, and all aggregate values may
+     * be out of date.
+     * @param recalculatedClasses  the qualified names of the top level classes of the files measured by this run, and
+     *                             of the files deleted since the baseline.
+     */
+    @NotNull
+    public MetricsRun mergeOver(@NotNull MetricsRun baseline, @NotNull Set<String> recalculatedClasses) {
+        final MetricsRunImpl out = new MetricsRunImpl();
+        out.context = context;
+        out.profileName = profileName;
+        out.timestamp = timestamp;
+        for (MetricCategory category : MetricCategory.values()) {
+            final MetricsResult baselineResults = baseline.getResultsForCategory(category);
+            final MetricsResult results = getResultsForCategory(category);
+            final boolean perClass = category == MetricCategory.Method || category == MetricCategory.Class ||
+                    category == MetricCategory.Interface;
+            final Map<String, Metric> metrics = new HashMap<String, Metric>();
+            for (Metric metric : results.getMetrics()) {
+                metrics.put(metric.getID(), metric);
+            }
+            final MetricsResultImpl merged = new MetricsResultImpl();
+            final String[] measuredObjects = baselineResults.getMeasuredObjects();
+            for (Metric baselineMetric : baselineResults.getMetrics()) {
+                // results read from a snapshot have metric instances of their own
+                final Metric metric = metrics.containsKey(baselineMetric.getID())
+                        ? metrics.get(baselineMetric.getID())
+                        : baselineMetric;
+                final double[] numerators = baselineResults.getNumeratorsForMetric(baselineMetric);
+                final double[] denominators = baselineResults.getDenominatorsForMetric(baselineMetric);
+                for (int i = 0; i < numerators.length && i < measuredObjects.length; i++) {
+                    if (!Double.isNaN(numerators[i]) &&
+                            !(perClass && isOfClass(measuredObjects[i], recalculatedClasses))) {
+                        merged.postValue(metric, measuredObjects[i], numerators[i], denominators[i]);
+                    }
+                }
+            }
+            if (perClass) {
+                final String[] recalculatedObjects = results.getMeasuredObjects();
+                for (Metric metric : results.getMetrics()) {
+                    final double[] numerators = results.getNumeratorsForMetric(metric);
+                    final double[] denominators = results.getDenominatorsForMetric(metric);
+                    for (int i = 0; i < numerators.length && i < recalculatedObjects.length; i++) {
+                        if (!Double.isNaN(numerators[i])) {
+                            merged.postValue(metric, recalculatedObjects[i], numerators[i], denominators[i]);
+                        }
+                    }
+                }
+            }
+            out.setResultsForCategory(category, merged);
+        }
+        return out;
+    }
+
+    /**
+     * Combines the results of runs which each measured a different part of the same project, for example the shards of
+     * a sharded command line run.  Values reported by a single run are copied, values of measured objects reported by
+     * several runs, such as the project, modules and packages, are combined as described at
+     * {@link MetricsResultImpl#combineValue}.  Values of a {@link NonAdditiveMetric} reported by several runs cannot be
+     * combined, and are left out.  The profile name and timestamp are taken from the first run, the result is not a
+     * shard.
+     * @param droppedMetricIds  receives the IDs of the metrics of which values were left out.
+     */
+    @NotNull
+    public static MetricsRun merge(@NotNull List<MetricsRun> runs, @NotNull Set<String> droppedMetricIds) {
+        final MetricsRunImpl out = new MetricsRunImpl();
+        final MetricsRun first = runs.get(0);
+        out.context = first.getContext();
+        out.profileName = first.getProfileName();
+        out.timestamp = first.getTimestamp();
+        // runs read from snapshots have metric instances of their own
+        final Map<String, Metric> metrics = new HashMap<String, Metric>();
+        for (MetricCategory category : MetricCategory.values()) {
+            final Set<String> sharedValues = findSharedNonAdditiveValues(runs, category);
+            final MetricsResultImpl merged = new MetricsResultImpl();
+            for (MetricsRun run : runs) {
+                final MetricsResult results = run.getResultsForCategory(category);
+                final String[] measuredObjects = results.getMeasuredObjects();
+                for (Metric metric : results.getMetrics()) {
+                    if (!metrics.containsKey(metric.getID())) {
+                        metrics.put(metric.getID(), metric);
+                    }
+                    final Metric mergedMetric = metrics.get(metric.getID());
+                    final double[] numerators = results.getNumeratorsForMetric(metric);
+                    final double[] denominators = results.getDenominatorsForMetric(metric);
+                    for (int i = 0; i < measuredObjects.length && i < numerators.length; i++) {
+                        if (Double.isNaN(numerators[i])) {
+                            continue;
+                        }
+                        if (sharedValues.contains(metric.getID() + '\n' + measuredObjects[i])) {
+                            droppedMetricIds.add(metric.getID());
+                            continue;
+                        }
+                        merged.combineValue(mergedMetric, measuredObjects[i], numerators[i], denominators[i]);
+                    }
+                }
+            }
+            out.setResultsForCategory(category, merged);
+        }
+        return out;
+    }
+
+    /**
+     * @return the metric ID and measured object, separated by a newline, of each value of a non-additive metric which
+     * is reported by more than one of the runs.
+     */
+    private static Set<String> findSharedNonAdditiveValues(List<MetricsRun> runs, MetricCategory category) {
+        final Set<String> reported = new HashSet<String>();
+        final Set<String> shared = new HashSet<String>();
+        for (MetricsRun run : runs) {
+            final MetricsResult results = run.getResultsForCategory(category);
+            final String[] measuredObjects = results.getMeasuredObjects();
+            for (Metric metric : results.getMetrics()) {
+                if (!(metric instanceof NonAdditiveMetric)) {
+                    continue;
+                }
+                final double[] numerators = results.getNumeratorsForMetric(metric);
+                for (int i = 0; i < measuredObjects.length && i < numerators.length; i++) {
+                    final String key = metric.getID() + '\n' + measuredObjects[i];
+                    if (!Double.isNaN(numerators[i]) && !reported.add(key)) {
+                        shared.add(key);
+                    }
+                }
+            }
+        }
+        return shared;
+    }
+
+    /**
+     * @return true if the measured object is one of the specified classes, or a member or inner class of one.
+     */
+    private static boolean isOfClass(String measuredObject, Set<String> classNames) {
+        if (classNames.contains(measuredObject)) {
+            return true;
+        }
+        final int parameters = measuredObject.indexOf('(');
+        final int end = parameters < 0 ? measuredObject.length() : parameters;
+        for (int i = measuredObject.indexOf('.'); i >= 0 && i < end; i = measuredObject.indexOf('.', i + 1)) {
+            if (classNames.contains(measuredObject.substring(0, i))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     private void writeResultsForCategory(MetricCategory category, XMLStreamWriter writer) throws XMLStreamException {
         final MetricsResult results = getResultsForCategory(category);
         final Metric[] metrics = results.getMetrics();
@@ -284,91 +484,49 @@ public class MetricsRunImpl implements MetricsRun {
         writer.writeStartElement("METRIC");
         writer.writeAttribute("class_name", metricClass.getName());
         writer.writeCharacters("\n");
-        for (final String measuredObject : measuredObjects) {
-            writeValue(results, metric, measuredObject, writer);
+        final double[] values = results.getValuesForMetric(metric);
+        final double[] numerators = results.getNumeratorsForMetric(metric);
+        final double[] denominators = results.getDenominatorsForMetric(metric);
+        for (int i = 0; i < measuredObjects.length && i < values.length; i++) {
+            if (!Double.isNaN(values[i])) {
+                writeValue(measuredObjects[i], values[i], numerators[i], denominators[i], writer);
+            }
         }
         writer.writeCharacters("  ");
         writer.writeEndElement();
         writer.writeCharacters("\n");
     }
 
-    private static void writeValue(MetricsResult results, Metric metric, String measuredObject, XMLStreamWriter writer)
-            throws XMLStreamException {
-        final Double value = results.getValueForMetric(metric, measuredObject);
-        if (value != null) {
-            writer.writeCharacters("    ");
-            writer.writeEmptyElement("VALUE");
-            writer.writeAttribute("measured", measuredObject);
-            writer.writeAttribute("value", value.toString());
-            writer.writeCharacters("\n");
+    private static void writeValue(String measuredObject, double value, double numerator, double denominator,
+                                   XMLStreamWriter writer) throws XMLStreamException {
+        writer.writeCharacters("    ");
+        writer.writeEmptyElement("VALUE");
+        writer.writeAttribute("measured", measuredObject);
+        writer.writeAttribute("value", Double.toString(value));
+        if (denominator != 1.0) {
+            // needed to combine the values of several runs, for example when merging shards
+            writer.writeAttribute("numerator", Double.toString(numerator));
+            writer.writeAttribute("denominator", Double.toString(denominator));
         }
+        writer.writeCharacters("\n");
     }
 
+    /**
+     * Reads a snapshot file in either the XML or the binary format.  When called under a progress indicator, reports
+     * progress and can be canceled.
+     * @return the run read from the file, or null if the file could not be read.
+     */
+    @Nullable
     public static MetricsRun readFromFile(@NotNull File file) {
-        final SAXBuilder builder = new SAXBuilder();
-        Document doc;
-        try {
-            doc = builder.build(file);
-        } catch (Exception e) {
-            try {
-                doc = builder.build(fixBrokenXml(file));
-            } catch (Exception e1) {
-                logger.warn(e);
-                return null;
-            }
+        final ProgressIndicator indicator = ProgressManager.getInstance().getProgressIndicator();
+        if (BinarySnapshotFormat.isBinarySnapshot(file)) {
+            return new BinarySnapshotReader(file, indicator).read();
         }
-        final Element snapshotElement = doc.getRootElement();
-        final MetricsRunImpl run = new MetricsRunImpl();
-        run.setTimestamp(new TimeStamp(snapshotElement.getAttributeValue("timestamp")));
-        run.setProfileName(snapshotElement.getAttributeValue("profile"));
-        final String version = snapshotElement.getAttributeValue("version"); // may need this later
-        final List<Element> metrics = snapshotElement.getChildren("METRIC");
-        final MetricRepository repository = MetricsProfileRepository.getInstance();
-        for (final Element metricElement : metrics) {
-            readMetricElement(metricElement, repository, run);
-        }
-        return run;
+        return new SnapshotReader(file, indicator).read();
     }
 
-    @NotNull
-    private static Reader fixBrokenXml(@NotNull File file) throws IOException {
-        final String s = FileUtilRt.loadFile(file);
-        final StringBuilder sb = new StringBuilder();
-        boolean insideQuotes = false;
-        for (int i = 0, length = s.length(); i < length; i++) {
-            final int c = s.codePointAt(i);
-            if (c == '"') {
-                insideQuotes = !insideQuotes;
-                sb.appendCodePoint(c);
-            }
-            else if (!insideQuotes) {
-                sb.appendCodePoint(c);
-            }
-            else if (c == '<') {
-                sb.append("&lt;");
-            } else {
-                sb.appendCodePoint(c);
-            }
-        }
-        return new StringReader(sb.toString());
-    }
-
-    private static void readMetricElement(Element metricElement, MetricRepository repository, MetricsRunImpl run) {
-        try {
-            final String className = metricElement.getAttributeValue("class_name");
-            final Metric metric = repository.getMetric(className);
-            if (metric != null) {
-                final List<Element> values = metricElement.getChildren("VALUE");
-                for (final Element valueElement : values) {
-                    final String measured = valueElement.getAttributeValue("measured");
-                    final String valueString = valueElement.getAttributeValue("value");
-                    final double value = Double.parseDouble(valueString);
-                    run.postRawMetric(metric, measured, value);
-                }
-            }
-        } catch (Exception e) {
-            logger.warn(e);
-        }
+    public static boolean isSnapshotFileName(@NotNull String fileName) {
+        return fileName.endsWith(".met") || BinarySnapshotFormat.isBinarySnapshotFileName(fileName);
     }
 
     public boolean hasWarnings(@NotNull MetricsProfile profile) {
@@ -0,0 +1,309 @@
+/*
+ * Copyright 2005-2016 Sixth and Red River Software, Bas Leijdekkers
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.sixrr.metrics.metricModel;
+
+import com.intellij.openapi.application.PathManager;
+import com.intellij.openapi.components.ServiceManager;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.psi.PsiFile;
+import com.sixrr.metrics.VersionedMetric;
+import org.jetbrains.annotations.NonNls;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.*;
+import java.nio.channels.FileLock;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+
+/**
+ * An on-disk cache of the values file-local calculators posted for a file, keyed by a hash of the file contents and
+ * the ID of the metric, which survives restarts of the IDE and is shared with command line runs.  The cache is kept
+ * in memory while in use, and rewritten to disk after a metrics run which added entries to it, or used entries whose
+ * time of last use on disk is more than a day old.  Rewriting it drops the entries which have not been used for a long
+ * time, and the least recently used entries when the cache would exceed its size limit.  The key of each entry includes
+ * the version of the metric, so entries of a metric are no longer used once a new version calculates it differently.
+ * <p/>
+ * Several IDE and command line processes may use the cache at the same time.  The file is read and replaced while
+ * holding a lock on a separate lock file, and the entries another process saved in the meantime are merged in before
+ * the cache is written.
+ */
+public final class PersistentMetricsCache {
+
+    private static final Logger LOG = Logger.getInstance("#com.sixrr.metrics.metricModel.PersistentMetricsCache");
+
+    private static final int MAGIC = 0x4d524663;
+    private static final int FORMAT_VERSION = 2;
+    private static final long SIZE_LIMIT = 64L * 1024L * 1024L;
+    private static final long MAXIMUM_AGE = 30L * 24L * 60L * 60L * 1000L;
+    private static final long LAST_USED_PRECISION = 24L * 60L * 60L * 1000L;
+    @NonNls
+    private static final String CACHE_FILE = "metrics" + File.separator + "file-metrics.cache";
+    @NonNls
+    private static final String LOCK_FILE_EXTENSION = ".lock";
+
+    private final File file;
+    private final Map<String, Entry> entries = new HashMap<String, Entry>();
+    private boolean loaded = false;
+    private boolean dirty = false;
+
+    private PersistentMetricsCache() {
+        file = new File(PathManager.getSystemPath(), CACHE_FILE);
+    }
+
+    public static PersistentMetricsCache getInstance() {
+        return ServiceManager.getService(PersistentMetricsCache.class);
+    }
+
+    /**
+     * @return a hash of the contents and the file type of the specified file, identifying the file in this cache.
+     */
+    static String hashContents(PsiFile file) {
+        final MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        final CharSequence contents = file.getViewProvider().getContents();
+        final String fileTypeName = file.getFileType().getName();
+        final byte[] buffer = new byte[2 * (fileTypeName.length() + 1 + contents.length())];
+        int position = 0;
+        for (int i = 0; i < fileTypeName.length(); i++) {
+            position = putChar(buffer, position, fileTypeName.charAt(i));
+        }
+        position = putChar(buffer, position, '\0');
+        for (int i = 0; i < contents.length(); i++) {
+            position = putChar(buffer, position, contents.charAt(i));
+        }
+        final byte[] hash = digest.digest(buffer);
+        final StringBuilder result = new StringBuilder(hash.length * 2);
+        for (byte b : hash) {
+            result.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+        }
+        return result.toString();
+    }
+
+    private static int putChar(byte[] buffer, int position, char c) {
+        buffer[position] = (byte) (c >> 8);
+        buffer[position + 1] = (byte) c;
+        return position + 2;
+    }
+
+    private static String createKey(String contentHash, VersionedMetric metric) {
+        return contentHash + '/' + metric.getID() + '/' + metric.getVersion();
+    }
+
+    @Nullable
+    synchronized byte[] get(String contentHash, VersionedMetric metric) {
+        load();
+        final Entry entry = entries.get(createKey(contentHash, metric));
+        if (entry == null) {
+            return null;
+        }
+        entry.lastUsed = System.currentTimeMillis();
+        if (entry.lastUsed - entry.savedLastUsed > LAST_USED_PRECISION) {
+            dirty = true;
+        }
+        return entry.data;
+    }
+
+    synchronized void put(String contentHash, VersionedMetric metric, byte[] data) {
+        load();
+        entries.put(createKey(contentHash, metric), new Entry(data, System.currentTimeMillis(), 0L));
+        dirty = true;
+    }
+
+    private void load() {
+        if (loaded) {
+            return;
+        }
+        loaded = true;
+        if (!file.exists()) {
+            return;
+        }
+        try {
+            final RandomAccessFile lockFile = new RandomAccessFile(getLockFile(), "rw");
+            try {
+                final FileLock lock = lockFile.getChannel().lock(0L, Long.MAX_VALUE, true);
+                try {
+                    if (!read(entries)) {
+                        dirty = true;
+                    }
+                } finally {
+                    lock.release();
+                }
+            } finally {
+                lockFile.close();
+            }
+        } catch (IOException e) {
+            LOG.warn("Could not read metrics cache " + file, e);
+            entries.clear();
+            dirty = true;
+        }
+    }
+
+    private File getLockFile() {
+        return new File(file.getParentFile(), file.getName() + LOCK_FILE_EXTENSION);
+    }
+
+    /**
+     * Adds the entries stored on disk which are not in the specified map, and updates the time of last use of those
+     * which are.
+     * @return false if the file is of an unknown format and was not read, true otherwise.
+     */
+    private boolean read(Map<String, Entry> result) throws IOException {
+        if (!file.exists()) {
+            return true;
+        }
+        final DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+        try {
+            if (in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION) {
+                return false;
+            }
+            final int size = in.readInt();
+            for (int i = 0; i < size; i++) {
+                final String key = in.readUTF();
+                final long lastUsed = in.readLong();
+                final byte[] data = new byte[in.readInt()];
+                in.readFully(data);
+                final Entry entry = result.get(key);
+                if (entry == null) {
+                    result.put(key, new Entry(data, lastUsed, lastUsed));
+                } else {
+                    entry.lastUsed = Math.max(entry.lastUsed, lastUsed);
+                    entry.savedLastUsed = Math.max(entry.savedLastUsed, lastUsed);
+                }
+            }
+        } finally {
+            in.close();
+        }
+        return true;
+    }
+
+    /**
+     * Writes the cache to disk, if it has changed since it was read.  Entries saved by other processes in the meantime
+     * are merged in first.  Entries which have not been used for a month are dropped, as are the least recently used
+     * entries exceeding the size limit of the cache.
+     */
+    public synchronized void save() {
+        if (!dirty) {
+            return;
+        }
+        final File directory = file.getParentFile();
+        if (!directory.exists() && !directory.mkdirs()) {
+            LOG.warn("Could not create directory " + directory);
+            return;
+        }
+        try {
+            final RandomAccessFile lockFile = new RandomAccessFile(getLockFile(), "rw");
+            try {
+                final FileLock lock = lockFile.getChannel().lock();
+                try {
+                    try {
+                        read(entries);
+                    } catch (IOException e) {
+                        LOG.warn("Could not read metrics cache " + file + ", overwriting it", e);
+                    }
+                    write(directory);
+                } finally {
+                    lock.release();
+                }
+            } finally {
+                lockFile.close();
+            }
+        } catch (IOException e) {
+            LOG.warn("Could not write metrics cache " + file, e);
+        }
+    }
+
+    /**
+     * Writes the entries to a new file, and replaces the cache file with it.  Must be called while holding the lock.
+     */
+    private void write(File directory) throws IOException {
+        final List<Map.Entry<String, Entry>> sortedEntries =
+                new ArrayList<Map.Entry<String, Entry>>(entries.entrySet());
+        Collections.sort(sortedEntries, new Comparator<Map.Entry<String, Entry>>() {
+            @Override
+            public int compare(Map.Entry<String, Entry> entry1, Map.Entry<String, Entry> entry2) {
+                final long lastUsed1 = entry1.getValue().lastUsed;
+                final long lastUsed2 = entry2.getValue().lastUsed;
+                return lastUsed1 > lastUsed2 ? -1 : lastUsed1 == lastUsed2 ? 0 : 1;
+            }
+        });
+        final long oldest = System.currentTimeMillis() - MAXIMUM_AGE;
+        long size = 0L;
+        int count = 0;
+        for (Map.Entry<String, Entry> entry : sortedEntries) {
+            final Entry value = entry.getValue();
+            final long entrySize = 2L * entry.getKey().length() + value.data.length + 16L;
+            if (value.lastUsed < oldest || size + entrySize > SIZE_LIMIT) {
+                break;
+            }
+            size += entrySize;
+            count++;
+        }
+        for (Map.Entry<String, Entry> entry : sortedEntries.subList(count, sortedEntries.size())) {
+            entries.remove(entry.getKey());
+        }
+        final File tempFile = File.createTempFile(file.getName(), ".tmp", directory);
+        try {
+            final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)));
+            try {
+                out.writeInt(MAGIC);
+                out.writeInt(FORMAT_VERSION);
+                out.writeInt(count);
+                for (Map.Entry<String, Entry> entry : sortedEntries.subList(0, count)) {
+                    final Entry value = entry.getValue();
+                    out.writeUTF(entry.getKey());
+                    out.writeLong(value.lastUsed);
+                    out.writeInt(value.data.length);
+                    out.write(value.data);
+                }
+            } finally {
+                out.close();
+            }
+            // renaming replaces the file atomically where the platform allows it, readers hold the lock otherwise
+            if (!tempFile.renameTo(file) && (!file.delete() || !tempFile.renameTo(file))) {
+                LOG.warn("Could not replace metrics cache " + file);
+                return;
+            }
+        } finally {
+            if (tempFile.exists()) {
+                tempFile.delete();
+            }
+        }
+        for (Entry entry : entries.values()) {
+            entry.savedLastUsed = entry.lastUsed;
+        }
+        dirty = false;
+    }
+
+    private static class Entry {
+
+        private final byte[] data;
+        private long lastUsed;
+        /** the time of last use stored on disk, or 0 if the entry was not saved yet */
+        private long savedLastUsed;
+
+        Entry(byte[] data, long lastUsed, long savedLastUsed) {
+            this.data = data;
+            this.lastUsed = lastUsed;
+            this.savedLastUsed = savedLastUsed;
+        }
+    }
+}
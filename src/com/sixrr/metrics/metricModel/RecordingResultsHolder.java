@@ -0,0 +1,196 @@
+/*
+ * Copyright 2005, Sixth and Red River Software
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.sixrr.metrics.metricModel;
+
+import com.intellij.openapi.fileTypes.FileType;
+import com.intellij.openapi.module.Module;
+import com.intellij.psi.PsiClass;
+import com.intellij.psi.PsiMethod;
+import com.intellij.psi.PsiPackage;
+import com.sixrr.metrics.Metric;
+import com.sixrr.metrics.MetricCategory;
+import com.sixrr.metrics.MetricsResultsHolder;
+
+/**
+ * Records the values posted while a thread is processing a file into the contribution of that file, and passes values
+ * posted at any other time on to the actual results holder.
+ */
+class RecordingResultsHolder implements MetricsResultsHolder {
+
+    private final MetricsResultsHolder delegate;
+    private final MeasuredObjectKeys keys;
+    private final ThreadLocal<FileContribution> currentContribution = new ThreadLocal<FileContribution>();
+
+    /**
+     * @param keys  the keys from which the pointers to the classes and methods posted are taken.  Modules and packages
+     *              are recorded by name, so the contributions do not keep them alive.
+     */
+    RecordingResultsHolder(MetricsResultsHolder delegate, MeasuredObjectKeys keys) {
+        this.delegate = delegate;
+        this.keys = keys;
+    }
+
+    public void startRecording(FileContribution contribution) {
+        currentContribution.set(contribution);
+    }
+
+    public void stopRecording() {
+        currentContribution.remove();
+    }
+
+    @Override
+    public void postProjectMetric(Metric metric, double value) {
+        final FileContribution contribution = currentContribution.get();
+        if (contribution == null) {
+            delegate.postProjectMetric(metric, value);
+        } else {
+            contribution.addValue(MetricCategory.Project, metric, null, value, 1.0, false);
+        }
+    }
+
+    @Override
+    public void postFileTypeMetric(Metric metric, FileType fileType, double value) {
+        final FileContribution contribution = currentContribution.get();
+        if (contribution == null) {
+            delegate.postFileTypeMetric(metric, fileType, value);
+        } else {
+            contribution.addValue(MetricCategory.FileType, metric, fileType, value, 1.0, false);
+        }
+    }
+
+    @Override
+    public void postModuleMetric(Metric metric, Module module, double value) {
+        final FileContribution contribution = currentContribution.get();
+        if (contribution == null) {
+            delegate.postModuleMetric(metric, module, value);
+        } else {
+            contribution.addValue(MetricCategory.Module, metric, module.getName(), value, 1.0, false);
+        }
+    }
+
+    @Override
+    public void postPackageMetric(Metric metric, PsiPackage aPackage, double value) {
+        final FileContribution contribution = currentContribution.get();
+        if (contribution == null) {
+            delegate.postPackageMetric(metric, aPackage, value);
+        } else {
+            contribution.addValue(MetricCategory.Package, metric, aPackage.getQualifiedName(), value, 1.0, false);
+        }
+    }
+
+    @Override
+    public void postClassMetric(Metric metric, PsiClass aClass, double value) {
+        final FileContribution contribution = currentContribution.get();
+        if (contribution == null) {
+            delegate.postClassMetric(metric, aClass, value);
+        } else {
+            contribution.addValue(MetricCategory.Class, metric, keys.getPointer(aClass), value, 1.0, false);
+        }
+    }
+
+    @Override
+    public void postInterfaceMetric(Metric metric, PsiClass anInterface, double value) {
+        final FileContribution contribution = currentContribution.get();
+        if (contribution == null) {
+            delegate.postInterfaceMetric(metric, anInterface, value);
+        } else {
+            contribution.addValue(MetricCategory.Interface, metric, keys.getPointer(anInterface), value, 1.0, false);
+        }
+    }
+
+    @Override
+    public void postMethodMetric(Metric metric, PsiMethod method, double value) {
+        final FileContribution contribution = currentContribution.get();
+        if (contribution == null) {
+            delegate.postMethodMetric(metric, method, value);
+        } else {
+            contribution.addValue(MetricCategory.Method, metric, keys.getPointer(method), value, 1.0, false);
+        }
+    }
+
+    @Override
+    public void postProjectMetric(Metric metric, double numerator, double denominator) {
+        final FileContribution contribution = currentContribution.get();
+        if (contribution == null) {
+            delegate.postProjectMetric(metric, numerator, denominator);
+        } else {
+            contribution.addValue(MetricCategory.Project, metric, null, numerator, denominator, true);
+        }
+    }
+
+    @Override
+    public void postFileTypeMetric(Metric metric, FileType fileType, double numerator, double denominator) {
+        final FileContribution contribution = currentContribution.get();
+        if (contribution == null) {
+            delegate.postFileTypeMetric(metric, fileType, numerator, denominator);
+        } else {
+            contribution.addValue(MetricCategory.FileType, metric, fileType, numerator, denominator, true);
+        }
+    }
+
+    @Override
+    public void postModuleMetric(Metric metric, Module module, double numerator, double denominator) {
+        final FileContribution contribution = currentContribution.get();
+        if (contribution == null) {
+            delegate.postModuleMetric(metric, module, numerator, denominator);
+        } else {
+            contribution.addValue(MetricCategory.Module, metric, module.getName(), numerator, denominator, true);
+        }
+    }
+
+    @Override
+    public void postPackageMetric(Metric metric, PsiPackage aPackage, double numerator, double denominator) {
+        final FileContribution contribution = currentContribution.get();
+        if (contribution == null) {
+            delegate.postPackageMetric(metric, aPackage, numerator, denominator);
+        } else {
+            contribution.addValue(MetricCategory.Package, metric, aPackage.getQualifiedName(),
+                    numerator, denominator, true);
+        }
+    }
+
+    @Override
+    public void postClassMetric(Metric metric, PsiClass aClass, double numerator, double denominator) {
+        final FileContribution contribution = currentContribution.get();
+        if (contribution == null) {
+            delegate.postClassMetric(metric, aClass, numerator, denominator);
+        } else {
+            contribution.addValue(MetricCategory.Class, metric, keys.getPointer(aClass), numerator, denominator, true);
+        }
+    }
+
+    @Override
+    public void postInterfaceMetric(Metric metric, PsiClass anInterface, double numerator, double denominator) {
+        final FileContribution contribution = currentContribution.get();
+        if (contribution == null) {
+            delegate.postInterfaceMetric(metric, anInterface, numerator, denominator);
+        } else {
+            contribution.addValue(MetricCategory.Interface, metric, keys.getPointer(anInterface),
+                    numerator, denominator, true);
+        }
+    }
+
+    @Override
+    public void postMethodMetric(Metric metric, PsiMethod method, double numerator, double denominator) {
+        final FileContribution contribution = currentContribution.get();
+        if (contribution == null) {
+            delegate.postMethodMetric(metric, method, numerator, denominator);
+        } else {
+            contribution.addValue(MetricCategory.Method, metric, keys.getPointer(method), numerator, denominator, true);
+        }
+    }
+}
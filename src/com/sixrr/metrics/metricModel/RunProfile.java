@@ -0,0 +1,277 @@
+/*
+ * Copyright 2005-2016 Sixth and Red River Software, Bas Leijdekkers
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.sixrr.metrics.metricModel;
+
+import com.sixrr.metrics.Metric;
+import com.sixrr.metrics.MetricCategory;
+import org.jetbrains.annotations.NonNls;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * The wall time, CPU time and allocated bytes spent by each calculator of a metrics run, when the run begins, while
+ * processing files and when the run ends, and by the phases of work shared between calculators.  CPU time and
+ * allocations are those of the thread doing the work, and are zero when the virtual machine cannot measure them.
+ * The cost of a shared phase is not included in the cost of the calculator which happened to start it.
+ */
+public class RunProfile {
+
+    public enum Stage {
+        BEGIN, PROCESS_FILES, END
+    }
+
+    private static final int WALL_TIME = 0;
+    private static final int CPU_TIME = 1;
+    private static final int ALLOCATED_BYTES = 2;
+    private static final int MEASURE_COUNT = 3;
+
+    private static final ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+
+    private final boolean cpuTimeSupported;
+    private final boolean allocationSupported;
+    private final Entry[] calculatorEntries;
+    private final Map<String, Entry> phaseEntries = new LinkedHashMap<String, Entry>();
+    /** the cost of the shared phases run on each thread so far, excluded from any measurement enclosing them */
+    private final ThreadLocal<long[]> phaseTotals = new ThreadLocal<long[]>() {
+        @Override
+        protected long[] initialValue() {
+            return new long[MEASURE_COUNT];
+        }
+    };
+
+    RunProfile(@NotNull List<Metric> metrics) {
+        cpuTimeSupported = threadBean.isCurrentThreadCpuTimeSupported();
+        allocationSupported = threadBean instanceof com.sun.management.ThreadMXBean &&
+                ((com.sun.management.ThreadMXBean) threadBean).isThreadAllocatedMemorySupported();
+        calculatorEntries = new Entry[metrics.size()];
+        for (int i = 0; i < calculatorEntries.length; i++) {
+            final Metric metric = metrics.get(i);
+            calculatorEntries[i] = new Entry(metric.getDisplayName(), metric.getID(), metric.getCategory());
+        }
+    }
+
+    /**
+     * @return the start of a measurement on the current thread, to pass to {@link #stop} or {@link #stopPhase}.
+     */
+    long[] start() {
+        final long[] totals = phaseTotals.get();
+        return new long[]{
+                System.nanoTime() - totals[WALL_TIME],
+                getCpuTime() - totals[CPU_TIME],
+                getAllocatedBytes() - totals[ALLOCATED_BYTES]
+        };
+    }
+
+    void stop(int calculator, @NotNull Stage stage, long[] start) {
+        calculatorEntries[calculator].add(stage, measure(start));
+    }
+
+    void stopPhase(@NotNull String name, long[] start) {
+        final long[] cost = measure(start);
+        final Entry entry;
+        synchronized (phaseEntries) {
+            Entry existing = phaseEntries.get(name);
+            if (existing == null) {
+                existing = new Entry(name, null, null);
+                phaseEntries.put(name, existing);
+            }
+            entry = existing;
+        }
+        entry.add(null, cost);
+        final long[] totals = phaseTotals.get();
+        for (int i = 0; i < MEASURE_COUNT; i++) {
+            totals[i] += cost[i];
+        }
+    }
+
+    private long[] measure(long[] start) {
+        final long[] totals = phaseTotals.get();
+        return new long[]{
+                System.nanoTime() - totals[WALL_TIME] - start[WALL_TIME],
+                getCpuTime() - totals[CPU_TIME] - start[CPU_TIME],
+                getAllocatedBytes() - totals[ALLOCATED_BYTES] - start[ALLOCATED_BYTES]
+        };
+    }
+
+    private long getCpuTime() {
+        return cpuTimeSupported ? Math.max(0L, threadBean.getCurrentThreadCpuTime()) : 0L;
+    }
+
+    private long getAllocatedBytes() {
+        if (!allocationSupported) {
+            return 0L;
+        }
+        final long bytes =
+                ((com.sun.management.ThreadMXBean) threadBean).getThreadAllocatedBytes(Thread.currentThread().getId());
+        return Math.max(0L, bytes);
+    }
+
+    /**
+     * @return the entries of the calculators, in the order of their metrics, followed by those of the shared phases.
+     */
+    @NotNull
+    public List<Entry> getEntries() {
+        final List<Entry> result = new ArrayList<Entry>(Arrays.asList(calculatorEntries));
+        synchronized (phaseEntries) {
+            result.addAll(phaseEntries.values());
+        }
+        return result;
+    }
+
+    /**
+     * Writes this profile as a JSON object holding a "calculators" and a "sharedPhases" array.  All times are in
+     * nanoseconds.
+     */
+    public void writeJson(@NotNull Appendable out) throws IOException {
+        out.append("{\n  \"calculators\": [");
+        for (int i = 0; i < calculatorEntries.length; i++) {
+            final Entry entry = calculatorEntries[i];
+            out.append(i == 0 ? "\n" : ",\n").append("    {\"metric\": ");
+            appendString(entry.metricId, out);
+            out.append(", \"name\": ");
+            appendString(entry.name, out);
+            out.append(", \"category\": ");
+            appendString(entry.category.name(), out);
+            appendMeasures("", entry, null, out);
+            for (Stage stage : Stage.values()) {
+                appendMeasures(getJsonName(stage), entry, stage, out);
+            }
+            out.append('}');
+        }
+        out.append("\n  ],\n  \"sharedPhases\": [");
+        final List<Entry> entries = getEntries();
+        for (int i = calculatorEntries.length; i < entries.size(); i++) {
+            final Entry entry = entries.get(i);
+            out.append(i == calculatorEntries.length ? "\n" : ",\n").append("    {\"name\": ");
+            appendString(entry.name, out);
+            appendMeasures("", entry, null, out);
+            out.append('}');
+        }
+        out.append("\n  ]\n}\n");
+    }
+
+    @NonNls
+    private static String getJsonName(Stage stage) {
+        switch (stage) {
+            case BEGIN:
+                return "begin";
+            case PROCESS_FILES:
+                return "processFiles";
+            default:
+                return "end";
+        }
+    }
+
+    private static void appendMeasures(@NonNls String prefix, Entry entry, @Nullable Stage stage, Appendable out)
+            throws IOException {
+        final String wallTime = prefix.isEmpty() ? "wallTime" : prefix + "WallTime";
+        final String cpuTime = prefix.isEmpty() ? "cpuTime" : prefix + "CpuTime";
+        final String allocatedBytes = prefix.isEmpty() ? "allocatedBytes" : prefix + "AllocatedBytes";
+        out.append(", \"").append(wallTime).append("\": ").append(String.valueOf(entry.getWallTime(stage)));
+        out.append(", \"").append(cpuTime).append("\": ").append(String.valueOf(entry.getCpuTime(stage)));
+        out.append(", \"").append(allocatedBytes).append("\": ");
+        out.append(String.valueOf(entry.getAllocatedBytes(stage)));
+    }
+
+    private static void appendString(String string, Appendable out) throws IOException {
+        out.append('"');
+        for (int i = 0; i < string.length(); i++) {
+            final char c = string.charAt(i);
+            if (c == '"' || c == '\\') {
+                out.append('\\').append(c);
+            } else if (c < ' ') {
+                out.append(String.format("\\u%04x", Integer.valueOf(c)));
+            } else {
+                out.append(c);
+            }
+        }
+        out.append('"');
+    }
+
+    /**
+     * The cost of one calculator, or of one shared phase.
+     */
+    public static class Entry {
+
+        private final String name;
+        private final String metricId;
+        private final MetricCategory category;
+        /** the totals, followed by the measures of each stage */
+        private final AtomicLongArray measures = new AtomicLongArray(MEASURE_COUNT * (Stage.values().length + 1));
+
+        Entry(@NotNull String name, @Nullable String metricId, @Nullable MetricCategory category) {
+            this.name = name;
+            this.metricId = metricId;
+            this.category = category;
+        }
+
+        void add(@Nullable Stage stage, long[] cost) {
+            for (int i = 0; i < MEASURE_COUNT; i++) {
+                measures.addAndGet(i, cost[i]);
+                if (stage != null) {
+                    measures.addAndGet(index(stage, i), cost[i]);
+                }
+            }
+        }
+
+        private static int index(@Nullable Stage stage, int measure) {
+            return stage == null ? measure : MEASURE_COUNT * (stage.ordinal() + 1) + measure;
+        }
+
+        /**
+         * @return the display name of the metric of the calculator, or the name of the shared phase.
+         */
+        @NotNull
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * @return the category of the metric of the calculator, or null for a shared phase.
+         */
+        @Nullable
+        public MetricCategory getCategory() {
+            return category;
+        }
+
+        public boolean isSharedPhase() {
+            return metricId == null;
+        }
+
+        /**
+         * @param stage  the stage to return the time of, or null for the total of all stages.
+         * @return the wall time in nanoseconds.
+         */
+        public long getWallTime(@Nullable Stage stage) {
+            return measures.get(index(stage, WALL_TIME));
+        }
+
+        public long getCpuTime(@Nullable Stage stage) {
+            return measures.get(index(stage, CPU_TIME));
+        }
+
+        public long getAllocatedBytes(@Nullable Stage stage) {
+            return measures.get(index(stage, ALLOCATED_BYTES));
+        }
+    }
+}
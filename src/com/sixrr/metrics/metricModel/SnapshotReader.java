@@ -0,0 +1,239 @@
+/*
+ * Copyright 2005, Sixth and Red River Software
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+
+package com.sixrr.metrics.metricModel;
+
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.progress.ProgressIndicator;
+import com.sixrr.metrics.Metric;
+import com.sixrr.metrics.profile.MetricRepository;
+import com.sixrr.metrics.profile.MetricsProfileRepository;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.*;
+
+/**
+ * Reads a snapshot file with a pull parser, posting each value into the run as it is read, so the memory needed does
+ * not depend on the size of the file.
+ */
+class SnapshotReader {
+
+    private static final Logger logger = Logger.getInstance("MetricsReloaded");
+
+    private final File file;
+    @Nullable private final ProgressIndicator indicator;
+    private long bytesRead = 0L;
+
+    SnapshotReader(@NotNull File file, @Nullable ProgressIndicator indicator) {
+        this.file = file;
+        this.indicator = indicator;
+    }
+
+    /**
+     * @return the run read from the file, or null if the file could not be read.
+     */
+    @Nullable
+    MetricsRunImpl read() {
+        final long length = file.length();
+        try {
+            final InputStream in = new BufferedInputStream(new FileInputStream(file)) {
+                @Override
+                public synchronized int read(byte[] bytes, int offset, int length) throws IOException {
+                    final int count = super.read(bytes, offset, length);
+                    if (count > 0) {
+                        bytesRead += count;
+                    }
+                    return count;
+                }
+            };
+            try {
+                final Reader reader = new AttributeRepairingReader(new InputStreamReader(in, "UTF-8"));
+                final XMLStreamReader xmlReader = XMLInputFactory.newInstance().createXMLStreamReader(reader);
+                try {
+                    return read(xmlReader, length);
+                } finally {
+                    xmlReader.close();
+                }
+            } finally {
+                in.close();
+            }
+        } catch (IOException e) {
+            logger.warn(e);
+        } catch (XMLStreamException e) {
+            logger.warn(e);
+        }
+        return null;
+    }
+
+    private MetricsRunImpl read(XMLStreamReader xmlReader, long length) throws XMLStreamException {
+        final MetricRepository repository = MetricsProfileRepository.getInstance();
+        final MetricsRunImpl run = new MetricsRunImpl();
+        Metric metric = null;
+        int valueCount = 0;
+        while (xmlReader.hasNext()) {
+            if (xmlReader.next() != XMLStreamConstants.START_ELEMENT) {
+                continue;
+            }
+            final String name = xmlReader.getLocalName();
+            if ("VALUE".equals(name)) {
+                if (metric == null) {
+                    continue;
+                }
+                final String measured = xmlReader.getAttributeValue(null, "measured");
+                final String valueString = xmlReader.getAttributeValue(null, "value");
+                final String numeratorString = xmlReader.getAttributeValue(null, "numerator");
+                final String denominatorString = xmlReader.getAttributeValue(null, "denominator");
+                try {
+                    if (numeratorString != null && denominatorString != null) {
+                        run.postRawMetric(metric, measured, Double.parseDouble(numeratorString),
+                                Double.parseDouble(denominatorString));
+                    } else {
+                        run.postRawMetric(metric, measured, Double.parseDouble(valueString));
+                    }
+                } catch (RuntimeException e) {
+                    logger.warn(e);
+                }
+                valueCount++;
+                if ((valueCount & 0x3ff) == 0) {
+                    updateProgress(length);
+                }
+            } else if ("METRIC".equals(name)) {
+                final String className = xmlReader.getAttributeValue(null, "class_name");
+                metric = className == null ? null : repository.getMetric(className);
+                updateProgress(length);
+            } else if ("SNAPSHOT".equals(name)) {
+                run.setTimestamp(new TimeStamp(xmlReader.getAttributeValue(null, "timestamp")));
+                run.setProfileName(xmlReader.getAttributeValue(null, "profile"));
+                readShard(xmlReader.getAttributeValue(null, "shard"), run);
+            }
+        }
+        return run;
+    }
+
+    private void updateProgress(long length) {
+        if (indicator == null) {
+            return;
+        }
+        indicator.checkCanceled();
+        if (length > 0L) {
+            indicator.setFraction((double) bytesRead / (double) length);
+        }
+    }
+
+    /**
+     * Sets the shard of the run from a "index/count" attribute value.  The run is left unsharded if the value is
+     * missing or malformed.
+     */
+    private static void readShard(String shard, MetricsRunImpl run) {
+        if (shard == null) {
+            return;
+        }
+        final int slash = shard.indexOf('/');
+        if (slash < 0) {
+            return;
+        }
+        try {
+            run.setShard(Integer.parseInt(shard.substring(0, slash)), Integer.parseInt(shard.substring(slash + 1)));
+        } catch (NumberFormatException ignore) {}
+    }
+
+    /**
+     * Escapes the '<' characters inside attribute values, which older versions wrote to snapshots unescaped, while
+     * the file is read.
+     */
+    private static class AttributeRepairingReader extends FilterReader {
+
+        private static final String ESCAPED_LESS_THAN = "&lt;";
+
+        private boolean insideTag = false;
+        private char quote = 0;
+        private int pendingEscape = 0;
+        private final char[] input = new char[8192];
+        private int inputPosition = 0;
+        private int inputLength = 0;
+
+        AttributeRepairingReader(Reader in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            final char[] buffer = new char[1];
+            return read(buffer, 0, 1) < 0 ? -1 : buffer[0];
+        }
+
+        @Override
+        public int read(char[] buffer, int offset, int length) throws IOException {
+            int count = 0;
+            while (count < length) {
+                if (pendingEscape > 0) {
+                    buffer[offset + count] = ESCAPED_LESS_THAN.charAt(ESCAPED_LESS_THAN.length() - pendingEscape);
+                    pendingEscape--;
+                    count++;
+                    continue;
+                }
+                if (inputPosition == inputLength) {
+                    if (count > 0) {
+                        break;
+                    }
+                    inputLength = in.read(input, 0, input.length);
+                    inputPosition = 0;
+                    if (inputLength < 0) {
+                        inputLength = 0;
+                        return -1;
+                    }
+                    continue;
+                }
+                final char c = input[inputPosition++];
+                if (quote != 0) {
+                    if (c == quote) {
+                        quote = 0;
+                    } else if (c == '<') {
+                        pendingEscape = ESCAPED_LESS_THAN.length();
+                        continue;
+                    }
+                } else if (insideTag) {
+                    if (c == '"' || c == '\'') {
+                        quote = c;
+                    } else if (c == '>') {
+                        insideTag = false;
+                    }
+                } else if (c == '<') {
+                    insideTag = true;
+                }
+                buffer[offset + count] = c;
+                count++;
+            }
+            return count;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            throw new IOException("skip not supported");
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+    }
+}
@@ -46,6 +46,10 @@ public class TimeStamp {
         }
     }
 
+    public long getTime() {
+        return timestamp.getTime();
+    }
+
     public String toString() {
         DateFormat df = new SimpleDateFormat(TIMESTAMP_FORMAT);
         return df.format(timestamp);
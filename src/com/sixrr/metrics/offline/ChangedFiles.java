@@ -0,0 +1,184 @@
+/*
+ * Copyright 2005-2016 Sixth and Red River Software, Bas Leijdekkers
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.sixrr.metrics.offline;
+
+import com.intellij.execution.ExecutionException;
+import com.intellij.execution.configurations.GeneralCommandLine;
+import com.intellij.execution.process.CapturingProcessHandler;
+import com.intellij.execution.process.ProcessOutput;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.roots.ProjectFileIndex;
+import com.intellij.openapi.roots.ProjectRootManager;
+import com.intellij.openapi.util.text.StringUtil;
+import com.intellij.openapi.vfs.LocalFileSystem;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.psi.*;
+import com.intellij.psi.search.GlobalSearchScope;
+import com.intellij.psi.search.searches.ReferencesSearch;
+import com.intellij.util.Processor;
+import org.jetbrains.annotations.NonNls;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.*;
+
+/**
+ * The files of a project which changed since a git revision, and the files depending on the classes in them.
+ */
+class ChangedFiles {
+
+    private final Project project;
+    private final Set<VirtualFile> files = new LinkedHashSet<VirtualFile>();
+    private final Set<String> classNames = new HashSet<String>();
+
+    private ChangedFiles(Project project) {
+        this.project = project;
+    }
+
+    /**
+     * Asks git for the files changed since the specified revision, in the work tree and the index, including untracked
+     * files which are not ignored.
+     */
+    @NotNull
+    static ChangedFiles find(@NotNull Project project, @NotNull File directory, @NotNull String revision)
+            throws IOException {
+        if (revision.startsWith("-")) {
+            // would be taken for an option by git
+            throw new IOException("Invalid revision: " + revision);
+        }
+        final ChangedFiles result = new ChangedFiles(project);
+        final List<String> topLevel = StringUtil.split(runGit(directory, "rev-parse", "--show-toplevel"), "\n");
+        if (topLevel.isEmpty()) {
+            throw new IOException("Not a git repository: " + directory);
+        }
+        // with -z paths are separated by NUL characters and are not quoted
+        final List<String> paths = new ArrayList<String>();
+        paths.addAll(StringUtil.split(runGit(directory, "diff", "-z", "--name-only", "--no-renames", revision, "--"),
+                "\0"));
+        paths.addAll(StringUtil.split(runGit(directory, "ls-files", "-z", "--others", "--exclude-standard",
+                "--full-name"), "\0"));
+        final List<PsiFile> changedFiles = new ArrayList<PsiFile>();
+        final PsiManager psiManager = PsiManager.getInstance(project);
+        final ProjectFileIndex fileIndex = ProjectRootManager.getInstance(project).getFileIndex();
+        for (String path : paths) {
+            final File file = new File(topLevel.get(0).trim(), path);
+            final VirtualFile virtualFile = LocalFileSystem.getInstance().findFileByIoFile(file);
+            if (virtualFile == null) {
+                if (!file.exists()) {
+                    result.addDeletedFile(file);
+                }
+                continue;
+            }
+            if (!fileIndex.isInContent(virtualFile) || fileIndex.isExcluded(virtualFile)) {
+                continue;
+            }
+            final PsiFile psiFile = psiManager.findFile(virtualFile);
+            if (psiFile != null) {
+                changedFiles.add(psiFile);
+                result.addFile(psiFile);
+            }
+        }
+        for (PsiFile file : changedFiles) {
+            result.addDependentFiles(file);
+        }
+        return result;
+    }
+
+    /**
+     * @return the changed files, and the files which reference the classes in them.
+     */
+    @NotNull
+    Set<VirtualFile> getFiles() {
+        return files;
+    }
+
+    /**
+     * @return the qualified names of the top level classes of the files, and of the files which were deleted.
+     */
+    @NotNull
+    Set<String> getClassNames() {
+        return classNames;
+    }
+
+    private void addFile(PsiFile file) {
+        final VirtualFile virtualFile = file.getVirtualFile();
+        if (virtualFile == null || !files.add(virtualFile) || !(file instanceof PsiClassOwner)) {
+            return;
+        }
+        for (PsiClass aClass : ((PsiClassOwner) file).getClasses()) {
+            final String qualifiedName = aClass.getQualifiedName();
+            if (qualifiedName != null) {
+                classNames.add(qualifiedName);
+            }
+        }
+    }
+
+    private void addDependentFiles(PsiFile file) {
+        if (!(file instanceof PsiClassOwner)) {
+            return;
+        }
+        final GlobalSearchScope scope = GlobalSearchScope.projectScope(project);
+        for (PsiClass aClass : ((PsiClassOwner) file).getClasses()) {
+            ReferencesSearch.search(aClass, scope).forEach(new Processor<PsiReference>() {
+                @Override
+                public boolean process(PsiReference reference) {
+                    final PsiFile referencingFile = reference.getElement().getContainingFile();
+                    if (referencingFile != null) {
+                        addFile(referencingFile);
+                    }
+                    return true;
+                }
+            });
+        }
+    }
+
+    /**
+     * Derives the names of the classes of a deleted file from its path below a source root.
+     */
+    private void addDeletedFile(File file) {
+        final String path = file.getAbsolutePath().replace(File.separatorChar, '/');
+        for (VirtualFile sourceRoot : ProjectRootManager.getInstance(project).getContentSourceRoots()) {
+            final String rootPath = sourceRoot.getPath() + '/';
+            if (!path.startsWith(rootPath)) {
+                continue;
+            }
+            final String relativePath = path.substring(rootPath.length());
+            final int extension = relativePath.lastIndexOf('.');
+            if (extension > relativePath.lastIndexOf('/')) {
+                classNames.add(relativePath.substring(0, extension).replace('/', '.'));
+            }
+            return;
+        }
+    }
+
+    private static String runGit(File directory, @NonNls String... parameters) throws IOException {
+        final GeneralCommandLine commandLine = new GeneralCommandLine("git");
+        commandLine.addParameters(parameters);
+        commandLine.setWorkDirectory(directory);
+        final ProcessOutput output;
+        try {
+            output = new CapturingProcessHandler(commandLine).runProcess();
+        } catch (ExecutionException e) {
+            throw new IOException("Could not run git: " + e.getMessage());
+        }
+        if (output.getExitCode() != 0) {
+            throw new IOException("git " + parameters[0] + " failed: " + output.getStderr().trim());
+        }
+        return output.getStdout();
+    }
+}
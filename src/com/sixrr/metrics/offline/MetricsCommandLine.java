@@ -23,12 +23,15 @@ import com.intellij.openapi.application.ApplicationInfo;
 import com.intellij.openapi.application.ApplicationManager;
 import com.intellij.openapi.application.ApplicationNamesInfo;
 import com.intellij.openapi.application.ApplicationStarter;
+import com.intellij.openapi.application.ModalityState;
 import com.intellij.openapi.application.ex.ApplicationEx;
 import com.intellij.openapi.application.ex.ApplicationInfoEx;
 import com.intellij.openapi.diagnostic.Logger;
 import com.intellij.openapi.progress.ProgressManager;
 import com.intellij.openapi.progress.util.ProgressIndicatorBase;
 import com.intellij.openapi.project.Project;
+import com.intellij.openapi.roots.ProjectFileIndex;
+import com.intellij.openapi.roots.ProjectRootManager;
 import com.intellij.openapi.vfs.LocalFileSystem;
 import com.intellij.openapi.vfs.VirtualFile;
 import com.intellij.openapi.vfs.VirtualFileManager;
@@ -37,38 +40,58 @@ import com.intellij.psi.PsiManager;
 import com.intellij.psi.search.GlobalSearchScopesCore;
 import com.intellij.psi.search.scope.packageSet.NamedScope;
 import com.intellij.psi.search.scope.packageSet.NamedScopesHolder;
+import com.intellij.util.Processor;
+import com.intellij.util.execution.ParametersListUtil;
 import com.sixrr.metrics.export.Exporter;
 import com.sixrr.metrics.export.XMLExporter;
+import com.sixrr.metrics.metricModel.FileContributions;
 import com.sixrr.metrics.metricModel.MetricsExecutionContextImpl;
+import com.sixrr.metrics.metricModel.MetricsHistory;
+import com.sixrr.metrics.metricModel.MetricsRun;
 import com.sixrr.metrics.metricModel.MetricsRunImpl;
+import com.sixrr.metrics.metricModel.PersistentMetricsCache;
+import com.sixrr.metrics.metricModel.RunProfile;
 import com.sixrr.metrics.metricModel.TimeStamp;
+import com.sixrr.metrics.profile.MetricInstance;
 import com.sixrr.metrics.profile.MetricsProfile;
+import com.sixrr.metrics.profile.MetricsProfileImpl;
 import com.sixrr.metrics.profile.MetricsProfileRepository;
 import org.jetbrains.annotations.Contract;
+import org.jetbrains.annotations.Nullable;
 import org.kohsuke.args4j.*;
 
-import java.io.File;
-import java.io.IOException;
-import java.io.PrintStream;
-import java.io.PrintWriter;
-import java.util.Arrays;
-import java.util.List;
+import java.io.*;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.*;
 
 public class MetricsCommandLine implements ApplicationStarter {
 
     private static final Logger LOG = Logger.getInstance("MetricsReloaded");
+    /** the number of scopes, profiles and projects for which a daemon remembers the results of each file */
+    private static final int MAX_FILE_CONTRIBUTIONS = 8;
+    /** where progress information goes, STDERR for a daemon, whose STDOUT carries the answers to its requests */
+    private static PrintStream messages = System.out;
 
     @Argument(index = 0, required = true, metaVar = "<project_path>", usage = "the project to calculate metrics for")
     private String projectPath = null;
 
-    @Argument(index = 1, required = true, metaVar = "<metrics_profile_name>",
-            usage = "name of the metrics profile to use")
-    private String metricsProfileName = "";
+    @Argument(index = 1, metaVar = "<metrics_profile_name>",
+            usage = "name of the metrics profile to use, may be omitted when --profile is given")
+    private String metricsProfileName = null;
 
     @Argument(index = 2, metaVar = "<output_path>",
             usage = "the path to write the output xml to, default writes to STDOUT")
     private String outputXmlPath = null;
 
+    @Option(name = "-p", aliases = "--profile", metaVar = "<name>[=<output_path>]",
+            usage = "also calculate the metrics of this profile and write its output xml to the specified path, " +
+                    "default writes to STDOUT. May be repeated, the project is opened and analyzed only once")
+    private List<String> additionalProfiles = new ArrayList<String>();
+
     @Option(name = "-d", aliases = "--directory", metaVar = "<path>", forbids = "-s",
             usage = "directory to calculate metrics for, default is the whole project")
     private String directory = null;
@@ -77,6 +100,64 @@ public class MetricsCommandLine implements ApplicationStarter {
             usage = "name of scope to calculate metrics for, default is the whole project")
     private String scope = null;
 
+    @Option(name = "--changed-since", metaVar = "<revision>", forbids = {"-d", "-s"},
+            usage = "only calculate metrics for the files changed since this git revision, including uncommitted " +
+                    "changes, and for the files referencing classes in them")
+    private String changedSince = null;
+
+    @Option(name = "--baseline", metaVar = "<snapshot_path>", depends = "--changed-since",
+            usage = "merge the recalculated method, class and interface metrics over this snapshot of the whole " +
+                    "project, taken at the revision given with --changed-since. The result is an approximation: " +
+                    "values of other classes which depend on the changes, and all package, module and project " +
+                    "values, are taken from the snapshot unchanged")
+    private String baselinePath = null;
+
+    @Option(name = "--shard", metaVar = "<index>/<count>", forbids = "--baseline",
+            usage = "only calculate metrics for one of count parts of the scope, numbered from 1. All files of a " +
+                    "package are in the same part. Combine the snapshots of all parts with metrics-merge")
+    private String shard = null;
+
+    @Option(name = "-j", aliases = "--threads", metaVar = "<count>",
+            usage = "number of threads to process files with, default is 1")
+    private int threads = 1;
+
+    @Option(name = "-c", aliases = "--cache",
+            usage = "reuse the metric values of files which are unchanged since an earlier run, and cache new ones")
+    private boolean cache = false;
+
+    @Option(name = "-o", aliases = "--snapshot", metaVar = "<path>",
+            usage = "also write a snapshot of the results, in the binary format if the path ends with .metb")
+    private String snapshotPath = null;
+
+    @Option(name = "--history", metaVar = "<path>",
+            usage = "also append the results to a metrics history file, which is created if it does not exist")
+    private String historyPath = null;
+
+    @Option(name = "--label", metaVar = "<text>", depends = "--history",
+            usage = "label of the results in the metrics history, for example a build number")
+    private String historyLabel = "";
+
+    @Option(name = "--timings", metaVar = "<path>",
+            usage = "also write the wall time, CPU time and allocated bytes spent by each metric, and by the work " +
+                    "shared between metrics, to this file as JSON")
+    private String timingsPath = null;
+
+    @Option(name = "--daemon",
+            usage = "keep running after the first calculation and read further requests from STDIN, one per line, " +
+                    "each holding the arguments of this command. Requests are answered with a line starting with " +
+                    "OK or ERROR, a line holding only quit stops the daemon. The profile may be omitted. Results " +
+                    "must be written to output paths, progress information goes to STDERR")
+    private boolean daemon = false;
+
+    @Option(name = "--port", metaVar = "<port>", depends = {"--daemon", "--token-file"},
+            usage = "read daemon requests from connections to this port on the loopback address instead of STDIN")
+    private int port = -1;
+
+    @Option(name = "--token-file", metaVar = "<path>", depends = "--port",
+            usage = "file to which the daemon writes a secret token, readable only by the current user. Each " +
+                    "connection must send this token as its first line")
+    private String tokenPath = null;
+
     @Option(name = "-v", aliases = "--verbose", usage = "show more progress information", forbids = "-q")
     private boolean verbose = false;
 
@@ -86,6 +167,20 @@ public class MetricsCommandLine implements ApplicationStarter {
     @Option(name = "-h", aliases = "--help", usage = "show this message", help = true)
     private boolean help = false;
 
+    private final Map<String, Project> openProjects = new HashMap<String, Project>();
+    /** the file contributions of the last daemon requests, the least recently used are dropped first */
+    private final Map<String, FileContributions> fileContributions =
+            new LinkedHashMap<String, FileContributions>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, FileContributions> eldest) {
+                    if (size() <= MAX_FILE_CONTRIBUTIONS) {
+                        return false;
+                    }
+                    eldest.getValue().dispose();
+                    return true;
+                }
+            };
+
     @Override
     public String getCommandName() {
         return "metrics";
@@ -95,6 +190,7 @@ public class MetricsCommandLine implements ApplicationStarter {
         final String scriptName = ApplicationNamesInfo.getInstance().getScriptName();
         out.println("Usage: " + scriptName +
                 " metrics [options] <project_path> <metrics_profile_name> [<output_xml_file>]");
+        out.println("       " + scriptName + " metrics [options] -p <name>[=<output_path>] ... <project_path>");
         parser.printUsage(out);
     }
 
@@ -110,6 +206,16 @@ public class MetricsCommandLine implements ApplicationStarter {
                 printUsage(parser, System.out);
                 System.exit(0);
             }
+            if (metricsProfileName == null && additionalProfiles.isEmpty() && !daemon) {
+                System.err.println("No metrics profile specified");
+                printUsage(parser, System.err);
+                System.exit(1);
+            }
+            if (daemon && !hasOutputPaths()) {
+                System.err.println("A daemon can not write results to STDOUT, specify an output path for each profile");
+                printUsage(parser, System.err);
+                System.exit(1);
+            }
         } catch (CmdLineException e) {
             System.err.println(e.getMessage());
             printUsage(parser, System.err);
@@ -119,108 +225,451 @@ public class MetricsCommandLine implements ApplicationStarter {
 
     @Override
     public void main(String[] args) {
-        if (outputXmlPath != null) {
-            final File file = new File(outputXmlPath);
-            final File parentFile = file.getParentFile();
-            if (parentFile != null && !parentFile.exists()) {
-                error("Could not find directory " + parentFile.getAbsolutePath());
-            }
-        }
         final ApplicationEx application = (ApplicationEx) ApplicationManager.getApplication();
         try {
             final ApplicationInfoEx applicationInfo = (ApplicationInfoEx) ApplicationInfo.getInstance();
             info("MetricsReloaded running on " + applicationInfo.getFullApplicationName());
             application.doNotSave();
+            if (daemon) {
+                messages = System.err;
+                startDaemon(application);
+                return;
+            }
             try {
-                info("Opening project...");
-                if (projectPath == null) {
-                    projectPath = new File("").getAbsolutePath();
+                calculate(this);
+            } catch (CommandFailedException e) {
+                error(e.getMessage());
+            } catch (Exception ex) {
+                error(ex);
+            }
+            application.exit(true, true);
+        } catch (Exception e) {
+            LOG.error(e);
+            error(e);
+        }
+    }
+
+    /**
+     * Calculates the metrics of the profiles given on the command line, if any, and then keeps running to serve further
+     * requests with the projects already open.  Requests are read by a separate thread and calculated on the event
+     * dispatch thread, like the first one.
+     */
+    private void startDaemon(final ApplicationEx application) {
+        try {
+            if (metricsProfileName != null || !additionalProfiles.isEmpty()) {
+                calculate(this);
+            } else {
+                openProject(this);
+            }
+        } catch (CommandFailedException e) {
+            error(e.getMessage());
+        }
+        final Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    if (port < 0) {
+                        serve(new BufferedReader(new InputStreamReader(System.in)), new PrintWriter(System.out, true));
+                    } else {
+                        final String token = writeToken(new File(tokenPath));
+                        final ServerSocket serverSocket = new ServerSocket(port, 0, InetAddress.getByName(null));
+                        try {
+                            info("Listening on port " + serverSocket.getLocalPort());
+                            boolean quit = false;
+                            while (!quit) {
+                                final Socket socket = serverSocket.accept();
+                                try {
+                                    final BufferedReader in = new BufferedReader(
+                                            new InputStreamReader(socket.getInputStream(), "UTF-8"));
+                                    final PrintWriter out = new PrintWriter(socket.getOutputStream(), true);
+                                    if (isToken(in.readLine(), token)) {
+                                        quit = serve(in, out);
+                                    } else {
+                                        out.println("ERROR Invalid token");
+                                    }
+                                } finally {
+                                    socket.close();
+                                }
+                            }
+                        } finally {
+                            serverSocket.close();
+                        }
+                    }
+                } catch (IOException e) {
+                    LOG.warn(e);
+                    System.err.println(e.getMessage());
+                } finally {
+                    application.invokeLater(new Runnable() {
+                        @Override
+                        public void run() {
+                            application.exit(true, true);
+                        }
+                    });
                 }
-                projectPath = projectPath.replace(File.separatorChar, '/');
-                final Project project = ProjectUtil.openOrImport(projectPath, null, false);
-                if (project == null) {
-                    error("Unable to open project: " + projectPath);
+            }
+        }, "MetricsReloaded daemon");
+        thread.start();
+    }
+
+    /**
+     * Creates a random token, and writes it to a file which only the current user can read, so connections from
+     * other users of the machine can be refused.
+     */
+    private static String writeToken(File file) throws IOException {
+        final byte[] bytes = new byte[32];
+        new SecureRandom().nextBytes(bytes);
+        final StringBuilder token = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            token.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+        }
+        if (file.exists() && !file.delete()) {
+            throw new IOException("Could not replace token file " + file);
+        }
+        if (!file.createNewFile()) {
+            throw new IOException("Could not create token file " + file);
+        }
+        // restrict the permissions before the token is written
+        file.setReadable(false, false);
+        file.setWritable(false, false);
+        if (!file.setReadable(true, true) || !file.setWritable(true, true)) {
+            throw new IOException("Could not make token file " + file + " accessible only by the current user");
+        }
+        file.deleteOnExit();
+        final Writer writer = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+        try {
+            writer.write(token.toString());
+        } finally {
+            writer.close();
+        }
+        return token.toString();
+    }
+
+    private static boolean isToken(@Nullable String line, String token) throws UnsupportedEncodingException {
+        return line != null && MessageDigest.isEqual(line.trim().getBytes("UTF-8"), token.getBytes("UTF-8"));
+    }
+
+    /**
+     * Reads requests, one per line, until the end of the input or a "quit" line.  Each request consists of the
+     * arguments of the metrics command, and is answered with a line starting with OK or ERROR.
+     * @return true if the daemon should stop.
+     */
+    private boolean serve(BufferedReader in, PrintWriter out) throws IOException {
+        for (String line = in.readLine(); line != null; line = in.readLine()) {
+            line = line.trim();
+            if (line.isEmpty()) {
+                continue;
+            }
+            if (line.equals("quit")) {
+                out.println("OK");
+                return true;
+            }
+            final String response = handleRequest(line);
+            out.println(response.replace('\n', ' '));
+        }
+        return false;
+    }
+
+    private String handleRequest(String line) {
+        final MetricsCommandLine request = new MetricsCommandLine();
+        final CmdLineParser parser = new CmdLineParser(request, ParserProperties.defaults());
+        try {
+            parser.parseArgument(ParametersListUtil.parse(line));
+        } catch (CmdLineException e) {
+            return "ERROR " + e.getMessage();
+        }
+        if (request.daemon || request.help) {
+            return "ERROR " + (request.daemon ? "--daemon" : "--help") + " is not allowed in a request";
+        }
+        if (request.metricsProfileName == null && request.additionalProfiles.isEmpty()) {
+            return "ERROR No metrics profile specified";
+        }
+        if (!request.hasOutputPaths()) {
+            return "ERROR No output path specified for each profile";
+        }
+        final String[] response = new String[1];
+        ApplicationManager.getApplication().invokeAndWait(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    calculate(request);
+                    response[0] = "OK";
+                } catch (CommandFailedException e) {
+                    response[0] = "ERROR " + e.getMessage();
+                } catch (RuntimeException e) {
+                    LOG.warn(e);
+                    response[0] = "ERROR " + e;
                 }
+            }
+        }, ModalityState.NON_MODAL);
+        return response[0];
+    }
 
-                application.runWriteAction(new Runnable() {
-                    @Override
-                    public void run() {
-                        VirtualFileManager.getInstance().refreshWithoutFileWatcher(false);
-                    }
-                });
-                PatchProjectUtil.patchProject(project);
-                info("Project " + project.getName() + " opened.");
+    /**
+     * @return true if no results are exported to STDOUT, because an output path is specified for every profile.
+     */
+    private boolean hasOutputPaths() {
+        if (metricsProfileName != null && outputXmlPath == null) {
+            return false;
+        }
+        for (String profile : additionalProfiles) {
+            if (profile.indexOf('=') < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Opens the project of the request, or refreshes it when this daemon opened it before.
+     */
+    private Project openProject(MetricsCommandLine request) {
+        String path = request.projectPath;
+        if (path == null) {
+            path = new File("").getAbsolutePath();
+        }
+        path = path.replace(File.separatorChar, '/');
+        final Project openProject = openProjects.get(path);
+        if (openProject != null && !openProject.isDisposed()) {
+            refresh();
+            return openProject;
+        }
+        request.info("Opening project...");
+        final Project project = ProjectUtil.openOrImport(path, null, false);
+        if (project == null) {
+            throw new CommandFailedException("Unable to open project: " + path);
+        }
+        refresh();
+        PatchProjectUtil.patchProject(project);
+        request.info("Project " + project.getName() + " opened.");
+        openProjects.put(path, project);
+        return project;
+    }
+
+    private static void refresh() {
+        ApplicationManager.getApplication().runWriteAction(new Runnable() {
+            @Override
+            public void run() {
+                VirtualFileManager.getInstance().refreshWithoutFileWatcher(false);
+            }
+        });
+    }
+
+    private void calculate(final MetricsCommandLine request) {
+        final List<String> profileNames = new ArrayList<String>();
+        final List<String> outputPaths = new ArrayList<String>();
+        if (request.metricsProfileName != null) {
+            profileNames.add(request.metricsProfileName);
+            outputPaths.add(request.outputXmlPath);
+        }
+        for (String profile : request.additionalProfiles) {
+            final int index = profile.indexOf('=');
+            profileNames.add(index < 0 ? profile : profile.substring(0, index));
+            outputPaths.add(index < 0 ? null : profile.substring(index + 1));
+        }
+        for (String outputPath : outputPaths) {
+            if (outputPath == null) {
+                continue;
+            }
+            final File file = new File(outputPath);
+            final File parentFile = file.getParentFile();
+            if (parentFile != null && !parentFile.exists()) {
+                throw new CommandFailedException("Could not find directory " + parentFile.getAbsolutePath());
+            }
+        }
+        final Project project = openProject(request);
 
-                final MetricsProfile profile = getMetricsProfile(metricsProfileName);
-                if (profile == null) {
-                    error("Profile not found: " + metricsProfileName);
+        final List<MetricsProfile> profiles = new ArrayList<MetricsProfile>(profileNames.size());
+        for (String profileName : profileNames) {
+            final MetricsProfile profile = getMetricsProfile(profileName);
+            if (profile == null) {
+                throw new CommandFailedException("Profile not found: " + profileName);
+            }
+            profiles.add(profile);
+        }
+        final MetricsProfile profile = profiles.size() == 1 ? profiles.get(0) : createUnionProfile(profiles);
+        final MetricsRun baseline;
+        if (request.baselinePath != null) {
+            baseline = MetricsRunImpl.readFromFile(new File(request.baselinePath));
+            if (baseline == null) {
+                throw new CommandFailedException("Could not read snapshot: " + request.baselinePath);
+            }
+        } else {
+            baseline = null;
+        }
+        request.info("Calculating metrics");
+        final Set<String> recalculatedClasses = new HashSet<String>();
+        AnalysisScope analysisScope;
+        if (request.scope != null) {
+            final NamedScope namedScope = NamedScopesHolder.getScope(project, request.scope);
+            if (namedScope == null) {
+                throw new CommandFailedException("Scope not found: " + request.scope);
+            }
+            analysisScope = new AnalysisScope(GlobalSearchScopesCore.filterScope(project, namedScope), project);
+        } else if (request.directory != null) {
+            final String directory = request.directory.replace(File.separatorChar, '/');
+
+            final VirtualFile vfsDir = LocalFileSystem.getInstance().findFileByPath(directory);
+            if (vfsDir == null) {
+                throw new CommandFailedException("Directory not found: " + directory);
+            }
+            final PsiDirectory psiDirectory = PsiManager.getInstance(project).findDirectory(vfsDir);
+            if (psiDirectory == null) {
+                throw new CommandFailedException("Directory not found: " + directory);
+            }
+            analysisScope = new AnalysisScope(psiDirectory);
+        } else if (request.changedSince != null) {
+            final ChangedFiles changedFiles;
+            try {
+                changedFiles = ChangedFiles.find(project, new File(project.getBasePath()), request.changedSince);
+            } catch (IOException e) {
+                throw new CommandFailedException(e.getMessage());
+            }
+            request.info(changedFiles.getFiles().size() + " files changed since " + request.changedSince +
+                    " or referencing changed classes");
+            analysisScope = new AnalysisScope(project, changedFiles.getFiles());
+            recalculatedClasses.addAll(changedFiles.getClassNames());
+        } else {
+            analysisScope = new AnalysisScope(project);
+        }
+        int shardIndex = 0;
+        int shardCount = 0;
+        if (request.shard != null) {
+            final int slash = request.shard.indexOf('/');
+            try {
+                shardIndex = Integer.parseInt(request.shard.substring(0, Math.max(0, slash)));
+                shardCount = Integer.parseInt(request.shard.substring(slash + 1));
+            } catch (NumberFormatException ignore) {}
+            if (shardIndex < 1 || shardIndex > shardCount) {
+                throw new CommandFailedException("Invalid shard: " + request.shard);
+            }
+            analysisScope = getShardScope(project, analysisScope, shardIndex - 1, shardCount);
+        }
+        // a daemon recalculates only the changed files when the same metrics are requested for the same scope again
+        final String contributionsKey = project.getBasePath() + '\n' + profileNames + '\n' +
+                request.scope + '\n' + request.directory + '\n' + request.changedSince + '\n' + request.shard;
+        final AnalysisScope finalScope = analysisScope;
+        final int finalShardIndex = shardIndex;
+        final int finalShardCount = shardCount;
+        ProgressManager.getInstance().runProcess(new Runnable() {
+            @Override
+            public void run() {
+                final MetricsRunImpl metricsRun = new MetricsRunImpl();
+                metricsRun.setProfileName(profile.getName());
+                metricsRun.setTimestamp(new TimeStamp());
+                metricsRun.setContext(finalScope);
+                metricsRun.setShard(finalShardIndex, finalShardCount);
+                final MetricsExecutionContextImpl metricsExecutionContext =
+                        new MetricsExecutionContextImpl(project, finalScope);
+                metricsExecutionContext.setThreadCount(request.threads);
+                metricsExecutionContext.setPersistentCache(
+                        request.cache ? PersistentMetricsCache.getInstance() : null);
+                metricsExecutionContext.setProfiling(request.timingsPath != null);
+                if (daemon) {
+                    metricsExecutionContext.setIncremental(fileContributions.get(contributionsKey));
+                }
+                metricsExecutionContext.calculateMetrics(profile, metricsRun);
+                if (daemon) {
+                    fileContributions.put(contributionsKey, metricsExecutionContext.getFileContributions());
+                }
+                final MetricsRun resultRun;
+                if (baseline == null) {
+                    resultRun = metricsRun;
+                } else {
+                    request.info("Merged over " + request.baselinePath + "; values of unchanged classes, packages, " +
+                            "modules and the project are not recalculated and may be out of date");
+                    resultRun = metricsRun.mergeOver(baseline, recalculatedClasses);
                 }
-                info("Calculating metrics");
-                final AnalysisScope analysisScope;
-                if (scope != null) {
-                    final NamedScope namedScope = NamedScopesHolder.getScope(project, scope);
-                    if (namedScope == null) {
-                        error("Scope not found: " + scope);
+                for (int i = 0; i < profiles.size(); i++) {
+                    final MetricsRun profileRun =
+                            profiles.size() == 1 ? resultRun : resultRun.filterMetrics(profiles.get(i));
+                    final Exporter exporter = new XMLExporter(profileRun);
+                    final String outputPath = outputPaths.get(i);
+                    try {
+                        if (outputPath == null) {
+                            final PrintWriter writer = new PrintWriter(System.out, true);
+                            exporter.export(writer);
+                        } else {
+                            exporter.export(outputPath);
+                        }
+                    } catch (IOException e) {
+                        throw new CommandFailedException(e.getMessage());
                     }
-                    analysisScope = new AnalysisScope(GlobalSearchScopesCore.filterScope(project, namedScope), project);
-                } else if (directory != null) {
-                    directory = directory.replace(File.separatorChar, '/');
-
-                    final VirtualFile vfsDir = LocalFileSystem.getInstance().findFileByPath(directory);
-                    if (vfsDir == null) {
-                        error("Directory not found: " + directory);
+                }
+                if (request.snapshotPath != null) {
+                    try {
+                        resultRun.writeToFile(request.snapshotPath);
+                    } catch (IOException e) {
+                        throw new CommandFailedException(e.getMessage());
                     }
-                    final PsiDirectory psiDirectory = PsiManager.getInstance(project).findDirectory(vfsDir);
-                    if (psiDirectory == null) {
-                        error("Directory not found: " + directory);
+                }
+                if (request.historyPath != null) {
+                    try {
+                        MetricsHistory.open(new File(request.historyPath)).append(resultRun, request.historyLabel);
+                    } catch (IOException e) {
+                        throw new CommandFailedException(e.getMessage());
                     }
-                    analysisScope = new AnalysisScope(psiDirectory);
-                } else {
-                    analysisScope = new AnalysisScope(project);
                 }
-                ProgressManager.getInstance().runProcess(new Runnable() {
-                    @Override
-                    public void run() {
-                        final MetricsRunImpl metricsRun = new MetricsRunImpl();
-                        metricsRun.setProfileName(profile.getName());
-                        metricsRun.setTimestamp(new TimeStamp());
-                        metricsRun.setContext(analysisScope);
-                        final MetricsExecutionContextImpl metricsExecutionContext =
-                                new MetricsExecutionContextImpl(project, analysisScope);
-                        metricsExecutionContext.calculateMetrics(profile, metricsRun);
-                        final Exporter exporter = new XMLExporter(metricsRun);
+                final RunProfile runProfile = metricsExecutionContext.getRunProfile();
+                if (runProfile != null) {
+                    try {
+                        final Writer writer =
+                                new OutputStreamWriter(new FileOutputStream(request.timingsPath), "UTF-8");
                         try {
-                            if (outputXmlPath == null) {
-                                final PrintWriter writer = new PrintWriter(System.out, true);
-                                exporter.export(writer);
-                            } else {
-                                exporter.export(outputXmlPath);
-                            }
-                        } catch (IOException e) {
-                            error(e.getMessage());
+                            runProfile.writeJson(writer);
+                        } finally {
+                            writer.close();
                         }
+                    } catch (IOException e) {
+                        throw new CommandFailedException(e.getMessage());
                     }
-                }, new ProgressIndicatorBase() {
-                    private int lastPercent = 0;
-
-                    @Override
-                    public void setFraction(double fraction) {
-                        final int percent = (int)(fraction * 100);
-                        if (lastPercent != percent && !isIndeterminate()) {
-                            lastPercent = percent;
-                            trace("Calculating metrics " + lastPercent + "%");
-                        }
+                }
+            }
+        }, new ProgressIndicatorBase() {
+            private int lastPercent = 0;
+
+            @Override
+            public void setFraction(double fraction) {
+                final int percent = (int)(fraction * 100);
+                if (lastPercent != percent && !isIndeterminate()) {
+                    lastPercent = percent;
+                    request.trace("Calculating metrics " + lastPercent + "%");
+                }
+            }
+        });
+        request.info("Finished.");
+    }
+
+    /**
+     * Restricts the scope to the files of one shard.  Files are assigned to shards by the hash of their package name,
+     * or of their directory when they are not below a source root, so every package is measured by a single shard.
+     */
+    private static AnalysisScope getShardScope(Project project, AnalysisScope scope, final int shardIndex,
+                                               final int shardCount) {
+        final ProjectFileIndex fileIndex = ProjectRootManager.getInstance(project).getFileIndex();
+        final String basePath = project.getBasePath();
+        final List<VirtualFile> files = new ArrayList<VirtualFile>();
+        scope.accept(new Processor<VirtualFile>() {
+            @Override
+            public boolean process(VirtualFile file) {
+                final VirtualFile directory = file.getParent();
+                if (directory == null) {
+                    return true;
+                }
+                String key = fileIndex.getPackageNameByDirectory(directory);
+                if (key == null) {
+                    // the path relative to the project, so every machine assigns the directory to the same shard
+                    key = directory.getPath();
+                    if (basePath != null && key.startsWith(basePath)) {
+                        key = key.substring(basePath.length());
                     }
-                });
-                info("Finished.");
-            } catch (Exception ex) {
-                error(ex);
+                }
+                if ((key.hashCode() & Integer.MAX_VALUE) % shardCount == shardIndex) {
+                    files.add(file);
+                }
+                return true;
             }
-            application.exit(true, true);
-        } catch (Exception e) {
-            LOG.error(e);
-            error(e);
-        }
+        });
+        return new AnalysisScope(project, files);
     }
 
     private static MetricsProfile getMetricsProfile(String profileName) {
@@ -233,6 +682,27 @@ public class MetricsCommandLine implements ApplicationStarter {
         return repository.getCurrentProfile();
     }
 
+    /**
+     * @return a profile with the enabled metrics of all the specified profiles, so they can be calculated in one run.
+     */
+    private static MetricsProfile createUnionProfile(List<MetricsProfile> profiles) {
+        final List<MetricInstance> metricInstances = new ArrayList<MetricInstance>();
+        final Set<String> metricIds = new HashSet<String>();
+        final StringBuilder name = new StringBuilder();
+        for (MetricsProfile profile : profiles) {
+            if (name.length() > 0) {
+                name.append(", ");
+            }
+            name.append(profile.getName());
+            for (MetricInstance metricInstance : profile.getMetricInstances()) {
+                if (metricInstance.isEnabled() && metricIds.add(metricInstance.getMetric().getID())) {
+                    metricInstances.add(metricInstance);
+                }
+            }
+        }
+        return new MetricsProfileImpl(name.toString(), metricInstances);
+    }
+
     @Contract("_ -> fail")
     private static void error(Throwable throwable) {
         System.err.println(throwable.getMessage());
@@ -250,14 +720,20 @@ public class MetricsCommandLine implements ApplicationStarter {
         if (quiet) {
             return;
         }
-        System.out.println(message);
+        messages.println(message);
     }
 
     private void trace(String message) {
         if (!verbose) {
             return;
         }
-        System.out.println(message);
+        messages.println(message);
     }
-}
 
+    private static class CommandFailedException extends RuntimeException {
+
+        CommandFailedException(String message) {
+            super(message);
+        }
+    }
+}
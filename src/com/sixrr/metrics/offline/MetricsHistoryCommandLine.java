@@ -0,0 +1,180 @@
+/*
+ * Copyright 2005-2016 Sixth and Red River Software, Bas Leijdekkers
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+
+package com.sixrr.metrics.offline;
+
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.application.ApplicationNamesInfo;
+import com.intellij.openapi.application.ApplicationStarter;
+import com.intellij.openapi.application.ex.ApplicationEx;
+import com.sixrr.metrics.metricModel.MetricsHistory;
+import com.sixrr.metrics.metricModel.MetricsRun;
+import com.sixrr.metrics.metricModel.MetricsRunImpl;
+import com.sixrr.metrics.metricModel.TimeStamp;
+import org.jetbrains.annotations.Contract;
+import org.kohsuke.args4j.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.text.DateFormat;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Appends snapshots to a metrics history file and queries the value series stored in it.
+ */
+public class MetricsHistoryCommandLine implements ApplicationStarter {
+
+    @Argument(index = 0, required = true, metaVar = "<history_path>",
+            usage = "the metrics history file, which is created if it does not exist")
+    private String historyPath = null;
+
+    @Argument(index = 1, metaVar = "<snapshot_path>...",
+            usage = "snapshots to append to the history, oldest first, in either format")
+    private List<String> snapshotPaths = new ArrayList<String>();
+
+    @Option(name = "-m", aliases = "--metric", metaVar = "<metric_id>", usage = "the metric to query")
+    private String metricId = null;
+
+    @Option(name = "--object", metaVar = "<name>", depends = "-m", forbids = "--since",
+            usage = "show the values of the metric for this measured object")
+    private String measuredObject = null;
+
+    @Option(name = "-n", aliases = "--last", metaVar = "<count>", depends = "--object",
+            usage = "number of generations to show the values of, default is 200")
+    private int last = 200;
+
+    @Option(name = "--since", metaVar = "<yyyy-MM-dd>", depends = "-m", forbids = "--object",
+            usage = "show the measured objects whose value of the metric increased most since this date")
+    private String since = null;
+
+    @Option(name = "-t", aliases = "--top", metaVar = "<count>", depends = "--since",
+            usage = "number of measured objects to show, default is 20")
+    private int top = 20;
+
+    @Option(name = "-h", aliases = "--help", usage = "show this message", help = true)
+    private boolean help = false;
+
+    @Override
+    public String getCommandName() {
+        return "metrics-history";
+    }
+
+    private static void printUsage(CmdLineParser parser, PrintStream out) {
+        final String scriptName = ApplicationNamesInfo.getInstance().getScriptName();
+        out.println("Usage: " + scriptName + " metrics-history [options] <history_path> [<snapshot_path>...]");
+        parser.printUsage(out);
+    }
+
+    @Override
+    public void premain(String[] args) {
+        final ParserProperties properties = ParserProperties.defaults()
+                .withShowDefaults(false)
+                .withOptionSorter(null);
+        final CmdLineParser parser = new CmdLineParser(this, properties);
+        try {
+            parser.parseArgument(Arrays.copyOfRange(args, 1, args.length));
+            if (help) {
+                printUsage(parser, System.out);
+                System.exit(0);
+            }
+        } catch (CmdLineException e) {
+            System.err.println(e.getMessage());
+            printUsage(parser, System.err);
+            System.exit(1);
+        }
+    }
+
+    @Override
+    public void main(String[] args) {
+        final ApplicationEx application = (ApplicationEx) ApplicationManager.getApplication();
+        application.doNotSave();
+        try {
+            final MetricsHistory history = MetricsHistory.open(new File(historyPath));
+            for (String snapshotPath : snapshotPaths) {
+                final File snapshotFile = new File(snapshotPath);
+                final MetricsRun run = MetricsRunImpl.readFromFile(snapshotFile);
+                if (run == null) {
+                    error("Could not read snapshot: " + snapshotPath);
+                }
+                history.append(run, snapshotFile.getName());
+            }
+            if (measuredObject != null) {
+                printSeries(history);
+            } else if (since != null) {
+                printLargestIncreases(history);
+            } else if (snapshotPaths.isEmpty()) {
+                printGenerations(history);
+            }
+        } catch (IOException e) {
+            error(e.getMessage());
+        }
+        application.exit(true, true);
+    }
+
+    private void printGenerations(MetricsHistory history) {
+        final DateFormat format = new SimpleDateFormat(TimeStamp.TIMESTAMP_FORMAT);
+        for (int i = 0; i < history.getGenerationCount(); i++) {
+            System.out.println(i + "\t" + format.format(new Date(history.getTime(i))) + '\t' +
+                    history.getProfileName(i) + '\t' + history.getLabel(i));
+        }
+    }
+
+    private void printSeries(MetricsHistory history) {
+        final int toGeneration = history.getGenerationCount();
+        final int fromGeneration = Math.max(0, toGeneration - last);
+        final double[] values = history.getSeries(metricId, measuredObject, fromGeneration, toGeneration);
+        final DateFormat format = new SimpleDateFormat(TimeStamp.TIMESTAMP_FORMAT);
+        for (int i = 0; i < values.length; i++) {
+            final int generation = fromGeneration + i;
+            final String value = Double.isNaN(values[i]) ? "-" : String.valueOf(values[i]);
+            System.out.println(format.format(new Date(history.getTime(generation))) + '\t' +
+                    history.getLabel(generation) + '\t' + value);
+        }
+    }
+
+    private void printLargestIncreases(MetricsHistory history) {
+        final long time;
+        try {
+            time = new SimpleDateFormat(TimeStamp.TIMESTAMP_DB_FORMAT).parse(since).getTime();
+        } catch (ParseException e) {
+            error("Could not parse date: " + since);
+            return;
+        }
+        final int toGeneration = history.getGenerationCount() - 1;
+        if (toGeneration < 0) {
+            return;
+        }
+        final int fromGeneration = Math.max(0, history.findGeneration(time));
+        final List<MetricsHistory.Change> changes =
+                history.getLargestIncreases(metricId, fromGeneration, toGeneration, top);
+        for (MetricsHistory.Change change : changes) {
+            System.out.println(change.getMeasuredObject() + '\t' + change.getBefore() + '\t' + change.getAfter());
+        }
+    }
+
+    @Contract("_ -> fail")
+    private static void error(String message) {
+        System.err.println(message);
+        System.exit(1);
+    }
+}
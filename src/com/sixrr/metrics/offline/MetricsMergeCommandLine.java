@@ -0,0 +1,168 @@
+/*
+ * Copyright 2005-2016 Sixth and Red River Software, Bas Leijdekkers
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.sixrr.metrics.offline;
+
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.application.ApplicationNamesInfo;
+import com.intellij.openapi.application.ApplicationStarter;
+import com.intellij.openapi.application.ex.ApplicationEx;
+import com.sixrr.metrics.export.XMLExporter;
+import com.sixrr.metrics.metricModel.MetricsRun;
+import com.sixrr.metrics.metricModel.MetricsRunImpl;
+import org.jetbrains.annotations.Contract;
+import org.kohsuke.args4j.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Combines the snapshots written by the shards of a sharded metrics run into a snapshot of the whole project.
+ */
+public class MetricsMergeCommandLine implements ApplicationStarter {
+
+    @Argument(index = 0, required = true, metaVar = "<output_path>",
+            usage = "the merged snapshot, in the binary format if the path ends with .metb")
+    private String outputPath = null;
+
+    @Argument(index = 1, required = true, metaVar = "<shard_snapshot_path>...",
+            usage = "the snapshots of all shards of one run, each exactly once, in either format")
+    private List<String> shardPaths = new ArrayList<String>();
+
+    @Option(name = "-x", aliases = "--xml", metaVar = "<path>",
+            usage = "also export the merged results as XML, as the metrics command does")
+    private String xmlPath = null;
+
+    @Option(name = "-h", aliases = "--help", usage = "show this message", help = true)
+    private boolean help = false;
+
+    @Override
+    public String getCommandName() {
+        return "metrics-merge";
+    }
+
+    private static void printUsage(CmdLineParser parser, PrintStream out) {
+        final String scriptName = ApplicationNamesInfo.getInstance().getScriptName();
+        out.println("Usage: " + scriptName + " metrics-merge [options] <output_path> <shard_snapshot_path>...");
+        parser.printUsage(out);
+    }
+
+    @Override
+    public void premain(String[] args) {
+        final ParserProperties properties = ParserProperties.defaults()
+                .withShowDefaults(false)
+                .withOptionSorter(null);
+        final CmdLineParser parser = new CmdLineParser(this, properties);
+        try {
+            parser.parseArgument(Arrays.copyOfRange(args, 1, args.length));
+            if (help) {
+                printUsage(parser, System.out);
+                System.exit(0);
+            }
+        } catch (CmdLineException e) {
+            System.err.println(e.getMessage());
+            printUsage(parser, System.err);
+            System.exit(1);
+        }
+    }
+
+    @Override
+    public void main(String[] args) {
+        final ApplicationEx application = (ApplicationEx) ApplicationManager.getApplication();
+        application.doNotSave();
+        final List<MetricsRun> shards = new ArrayList<MetricsRun>(shardPaths.size());
+        for (String shardPath : shardPaths) {
+            final MetricsRun run = MetricsRunImpl.readFromFile(new File(shardPath));
+            if (run == null) {
+                error("Could not read snapshot: " + shardPath);
+            }
+            shards.add(run);
+        }
+        checkShards(shards);
+        final Set<String> droppedMetricIds = new TreeSet<String>();
+        final MetricsRun merged = MetricsRunImpl.merge(shards, droppedMetricIds);
+        for (String metricId : droppedMetricIds) {
+            System.err.println("Warning: " + metricId + " cannot be combined over shards and was left out; " +
+                    "calculate it in an unsharded run");
+        }
+        try {
+            merged.writeToFile(outputPath);
+            if (xmlPath != null) {
+                new XMLExporter(merged).export(xmlPath);
+            }
+        } catch (IOException e) {
+            error(e.getMessage());
+        }
+        application.exit(true, true);
+    }
+
+    /**
+     * Checks that the snapshots are of all shards of the same sharded run, each exactly once.
+     */
+    private void checkShards(List<MetricsRun> shards) {
+        final MetricsRun first = shards.get(0);
+        final int shardCount = first.getShardCount();
+        final String profileName = String.valueOf(first.getProfileName());
+        final boolean[] seen = new boolean[shardCount + 1];
+        for (int i = 0; i < shards.size(); i++) {
+            final MetricsRun shard = shards.get(i);
+            final String shardPath = shardPaths.get(i);
+            if (shard.getShardCount() == 0) {
+                error("Not the snapshot of a shard: " + shardPath);
+            }
+            if (shard.getShardCount() != shardCount) {
+                error("Snapshot of shard " + shard.getShardIndex() + '/' + shard.getShardCount() + " does not " +
+                        "belong to a run with " + shardCount + " shards: " + shardPath);
+            }
+            if (!profileName.equals(String.valueOf(shard.getProfileName()))) {
+                error("Snapshot was taken with profile " + shard.getProfileName() + " instead of " + profileName +
+                        ": " + shardPath);
+            }
+            final int shardIndex = shard.getShardIndex();
+            if (shardIndex < 1 || shardIndex > shardCount) {
+                error("Invalid shard " + shardIndex + '/' + shardCount + ": " + shardPath);
+            }
+            if (seen[shardIndex]) {
+                error("Shard " + shardIndex + '/' + shardCount + " given more than once: " + shardPath);
+            }
+            seen[shardIndex] = true;
+        }
+        final StringBuilder missing = new StringBuilder();
+        for (int i = 1; i <= shardCount; i++) {
+            if (!seen[i]) {
+                if (missing.length() > 0) {
+                    missing.append(", ");
+                }
+                missing.append(i).append('/').append(shardCount);
+            }
+        }
+        if (missing.length() > 0) {
+            error("Missing snapshots of shards " + missing);
+        }
+    }
+
+    @Contract("_ -> fail")
+    private static void error(String message) {
+        System.err.println(message);
+        System.exit(1);
+    }
+}
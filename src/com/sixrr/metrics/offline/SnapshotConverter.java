@@ -0,0 +1,92 @@
+/*
+ * Copyright 2005-2016 Sixth and Red River Software, Bas Leijdekkers
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+
+package com.sixrr.metrics.offline;
+
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.application.ApplicationNamesInfo;
+import com.intellij.openapi.application.ApplicationStarter;
+import com.intellij.openapi.application.ex.ApplicationEx;
+import com.sixrr.metrics.metricModel.MetricsRun;
+import com.sixrr.metrics.metricModel.MetricsRunImpl;
+import org.kohsuke.args4j.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.Arrays;
+
+/**
+ * Converts snapshot files between the XML and the binary format.
+ */
+public class SnapshotConverter implements ApplicationStarter {
+
+    @Argument(index = 0, required = true, metaVar = "<input_path>", usage = "the snapshot to convert, in either format")
+    private String inputPath = null;
+
+    @Argument(index = 1, required = true, metaVar = "<output_path>",
+            usage = "the snapshot to write, in the binary format if the path ends with .metb and in XML otherwise")
+    private String outputPath = null;
+
+    @Option(name = "-h", aliases = "--help", usage = "show this message", help = true)
+    private boolean help = false;
+
+    @Override
+    public String getCommandName() {
+        return "metrics-convert";
+    }
+
+    private static void printUsage(CmdLineParser parser, PrintStream out) {
+        final String scriptName = ApplicationNamesInfo.getInstance().getScriptName();
+        out.println("Usage: " + scriptName + " metrics-convert <input_path> <output_path>");
+        parser.printUsage(out);
+    }
+
+    @Override
+    public void premain(String[] args) {
+        final CmdLineParser parser = new CmdLineParser(this, ParserProperties.defaults().withShowDefaults(false));
+        try {
+            parser.parseArgument(Arrays.copyOfRange(args, 1, args.length));
+            if (help) {
+                printUsage(parser, System.out);
+                System.exit(0);
+            }
+        } catch (CmdLineException e) {
+            System.err.println(e.getMessage());
+            printUsage(parser, System.err);
+            System.exit(1);
+        }
+    }
+
+    @Override
+    public void main(String[] args) {
+        final ApplicationEx application = (ApplicationEx) ApplicationManager.getApplication();
+        application.doNotSave();
+        final MetricsRun run = MetricsRunImpl.readFromFile(new File(inputPath));
+        if (run == null) {
+            System.err.println("Could not read snapshot: " + inputPath);
+            System.exit(1);
+        }
+        try {
+            run.writeToFile(outputPath);
+        } catch (IOException e) {
+            System.err.println(e.getMessage());
+            System.exit(1);
+        }
+        application.exit(true, true);
+    }
+}
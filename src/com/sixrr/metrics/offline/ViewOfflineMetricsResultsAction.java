@@ -17,7 +17,9 @@
 package com.sixrr.metrics.offline;
 
 import com.intellij.openapi.actionSystem.*;
+import com.intellij.openapi.progress.ProgressManager;
 import com.intellij.openapi.project.Project;
+import com.intellij.openapi.util.Ref;
 import com.intellij.openapi.wm.WindowManager;
 import com.sixrr.metrics.Metric;
 import com.sixrr.metrics.metricModel.MetricsRun;
@@ -25,6 +27,7 @@ import com.sixrr.metrics.metricModel.MetricsRunImpl;
 import com.sixrr.metrics.profile.*;
 import com.sixrr.metrics.ui.metricdisplay.MetricsToolWindow;
 import com.sixrr.metrics.ui.metricdisplay.SnapshotFileFilter;
+import com.sixrr.metrics.utils.MetricsReloadedBundle;
 
 import javax.swing.*;
 import javax.swing.filechooser.FileFilter;
@@ -54,8 +57,15 @@ public class ViewOfflineMetricsResultsAction extends AnAction {
             return;
         }
         final File selectedFile = chooser.getSelectedFile();
-        final MetricsRun results = MetricsRunImpl.readFromFile(selectedFile);
-        if (results == null) {
+        final Ref<MetricsRun> resultsRef = Ref.create();
+        final boolean completed = ProgressManager.getInstance().runProcessWithProgressSynchronously(new Runnable() {
+            @Override
+            public void run() {
+                resultsRef.set(MetricsRunImpl.readFromFile(selectedFile));
+            }
+        }, MetricsReloadedBundle.message("reading.snapshot.progress"), true, project);
+        final MetricsRun results = resultsRef.get();
+        if (!completed || results == null) {
             return;
         }
         final MetricsToolWindow toolWindow = MetricsToolWindow.getInstance(project);
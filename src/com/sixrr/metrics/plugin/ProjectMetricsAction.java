@@ -48,7 +48,7 @@ public class ProjectMetricsAction extends BaseAnalysisAction {
         final MetricsProfile profile = repository.getCurrentProfile();
         final MetricsToolWindow toolWindow = MetricsToolWindow.getInstance(project);
         final MetricsRunImpl metricsRun = new MetricsRunImpl();
-        new MetricsExecutionContextImpl(project, analysisScope) {
+        final MetricsExecutionContextImpl context = new MetricsExecutionContextImpl(project, analysisScope) {
 
             @Override
             public void onFinish() {
@@ -63,8 +63,14 @@ public class ProjectMetricsAction extends BaseAnalysisAction {
                 metricsRun.setContext(analysisScope);
                 metricsRun.setTimestamp(new TimeStamp());
                 toolWindow.show(metricsRun, profile, analysisScope, showOnlyWarnings);
+                toolWindow.setFileContributions(getFileContributions());
+                toolWindow.setRunProfile(getRunProfile());
             }
-        }.execute(profile, metricsRun);
+        };
+        if (MetricsReloadedConfig.getInstance().isIncrementalUpdate()) {
+            context.setIncremental(null);
+        }
+        context.execute(profile, metricsRun);
     }
 
     @Override
@@ -41,7 +41,12 @@ public class ProfileSelectionPanel extends JPanel {
 
         final JComponent separator =
                 new TitledSeparator(MetricsReloadedBundle.message("metrics.profile"));
-        final JCheckBox checkBox = buildCheckBox(MetricsReloadedConfig.getInstance());
+        final MetricsReloadedConfig configuration = MetricsReloadedConfig.getInstance();
+        final JCheckBox checkBox = buildCheckBox(configuration);
+        final JCheckBox parallelCheckBox = buildParallelExecutionCheckBox(configuration);
+        final JCheckBox cacheCheckBox = buildPersistentCacheCheckBox(configuration);
+        final JCheckBox incrementalCheckBox = buildIncrementalUpdateCheckBox(configuration);
+        final JCheckBox profileRunCheckBox = buildProfileRunCheckBox(configuration);
 
         final GridBagConstraints constraints = new GridBagConstraints();
         constraints.insets.left = 0;
@@ -59,8 +64,20 @@ public class ProfileSelectionPanel extends JPanel {
         add(comboboxWithBrowseButton, constraints);
 
         constraints.gridy = 2;
-        constraints.weighty = 1.0;
         add(checkBox, constraints);
+
+        constraints.gridy = 3;
+        add(parallelCheckBox, constraints);
+
+        constraints.gridy = 4;
+        add(cacheCheckBox, constraints);
+
+        constraints.gridy = 5;
+        add(incrementalCheckBox, constraints);
+
+        constraints.gridy = 6;
+        constraints.weighty = 1.0;
+        add(profileRunCheckBox, constraints);
     }
 
     private static JCheckBox buildCheckBox(final MetricsReloadedConfig configuration) {
@@ -76,6 +93,54 @@ public class ProfileSelectionPanel extends JPanel {
         return checkBox;
     }
 
+    private static JCheckBox buildParallelExecutionCheckBox(final MetricsReloadedConfig configuration) {
+        final JCheckBox checkBox = new JCheckBox(MetricsReloadedBundle.message("calculate.metrics.in.parallel"));
+        checkBox.setSelected(configuration.isParallelExecution());
+        checkBox.addActionListener(new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent event) {
+                configuration.setParallelExecution(checkBox.isSelected());
+            }
+        });
+        return checkBox;
+    }
+
+    private static JCheckBox buildPersistentCacheCheckBox(final MetricsReloadedConfig configuration) {
+        final JCheckBox checkBox = new JCheckBox(MetricsReloadedBundle.message("reuse.cached.metrics.values"));
+        checkBox.setSelected(configuration.isPersistentCache());
+        checkBox.addActionListener(new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent event) {
+                configuration.setPersistentCache(checkBox.isSelected());
+            }
+        });
+        return checkBox;
+    }
+
+    private static JCheckBox buildIncrementalUpdateCheckBox(final MetricsReloadedConfig configuration) {
+        final JCheckBox checkBox = new JCheckBox(MetricsReloadedBundle.message("recalculate.only.changed.files"));
+        checkBox.setSelected(configuration.isIncrementalUpdate());
+        checkBox.addActionListener(new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent event) {
+                configuration.setIncrementalUpdate(checkBox.isSelected());
+            }
+        });
+        return checkBox;
+    }
+
+    private static JCheckBox buildProfileRunCheckBox(final MetricsReloadedConfig configuration) {
+        final JCheckBox checkBox = new JCheckBox(MetricsReloadedBundle.message("record.time.spent.per.metric"));
+        checkBox.setSelected(configuration.isProfileRun());
+        checkBox.addActionListener(new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent event) {
+                configuration.setProfileRun(checkBox.isSelected());
+            }
+        });
+        return checkBox;
+    }
+
     private static ComboboxWithBrowseButton buildComboBoxWithBrowseButton(
             final Project project, final MetricsProfileRepository repository) {
         final String[] profiles = repository.getProfileNames();
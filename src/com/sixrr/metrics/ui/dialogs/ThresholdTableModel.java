@@ -40,12 +40,12 @@ public class ThresholdTableModel extends AbstractTableModel {
 
     @Override
     public int getColumnCount() {
-        return 6;
+        return 8;
     }
 
     @Override
     public boolean isCellEditable(int rowNum, int columnNum) {
-        return columnNum > 3;
+        return columnNum > 5;
     }
 
     @Override
@@ -60,8 +60,12 @@ public class ThresholdTableModel extends AbstractTableModel {
             case 3:
                 return MetricsReloadedBundle.message("maximum");
             case 4:
-                return MetricsReloadedBundle.message("warn.if.less.than1");
+                return MetricsReloadedBundle.message("percentile", Integer.valueOf(90));
             case 5:
+                return MetricsReloadedBundle.message("percentile", Integer.valueOf(99));
+            case 6:
+                return MetricsReloadedBundle.message("warn.if.less.than1");
+            case 7:
                 return MetricsReloadedBundle.message("warn.if.greater.than1");
             default:
                 return null;
@@ -91,8 +95,13 @@ public class ThresholdTableModel extends AbstractTableModel {
             case 3:
                 return calculateMaximumForMetric(metric).toString();
             case 4:
-                return instance.isLowerThresholdEnabled() ? Double.toString(instance.getLowerThreshold()) : "";
+                // the upper percentiles of the current results, as suggestions for the upper threshold
+                return calculateQuantileForMetric(metric, 0.9);
             case 5:
+                return calculateQuantileForMetric(metric, 0.99);
+            case 6:
+                return instance.isLowerThresholdEnabled() ? Double.toString(instance.getLowerThreshold()) : "";
+            case 7:
                 return instance.isUpperThresholdEnabled() ? Double.toString(instance.getUpperThreshold()) : "";
             default:
                 return null;
@@ -107,13 +116,18 @@ public class ThresholdTableModel extends AbstractTableModel {
         return  result.getMaximumForMetric(metric);
     }
 
+    private String calculateQuantileForMetric(Metric metric, double fraction) {
+        final Double quantile = result.getQuantileForMetric(metric, fraction);
+        return quantile == null ? "" : quantile.toString();
+    }
+
     @Override
     public void setValueAt(Object object, int rowNum, int columnNum) {
         final MetricInstance instance = metrics.get(rowNum);
         if (instance == null) {
             return;
         }
-        if (columnNum == 4) {
+        if (columnNum == 6) {
             final String valueString = ((String) object).trim();
             if(valueString.isEmpty()) {
                 instance.setLowerThresholdEnabled(false);
@@ -20,8 +20,10 @@ import com.intellij.icons.AllIcons;
 import com.intellij.openapi.actionSystem.AnAction;
 import com.intellij.openapi.actionSystem.AnActionEvent;
 import com.intellij.openapi.project.Project;
+import com.intellij.openapi.ui.Messages;
 import com.intellij.openapi.wm.WindowManager;
 import com.sixrr.metrics.metricModel.MetricsRun;
+import com.sixrr.metrics.metricModel.MetricsRunImpl;
 import com.sixrr.metrics.utils.MetricsReloadedBundle;
 import org.jetbrains.annotations.NonNls;
 
@@ -29,6 +31,7 @@ import javax.swing.*;
 import javax.swing.filechooser.FileFilter;
 import java.awt.*;
 import java.io.File;
+import java.io.IOException;
 
 class CreateSnapshotAction extends AnAction {
     
@@ -51,10 +54,15 @@ class CreateSnapshotAction extends AnAction {
         if (returnVal == JFileChooser.APPROVE_OPTION) {
             final File selectedFile = chooser.getSelectedFile();
             @NonNls final String fileName = selectedFile.getAbsolutePath();
-            if (fileName.endsWith(".met")) {
-                currentResults.writeToFile(fileName);
-            } else {
-                currentResults.writeToFile(fileName + ".met");
+            try {
+                if (MetricsRunImpl.isSnapshotFileName(fileName)) {
+                    currentResults.writeToFile(fileName);
+                } else {
+                    currentResults.writeToFile(fileName + ".met");
+                }
+            } catch (IOException e) {
+                Messages.showErrorDialog(project, e.getMessage(),
+                        MetricsReloadedBundle.message("unable.to.create.snapshot.dialog.title"));
             }
         }
     }
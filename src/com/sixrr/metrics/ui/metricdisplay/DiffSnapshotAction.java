@@ -18,7 +18,9 @@ package com.sixrr.metrics.ui.metricdisplay;
 import com.intellij.icons.AllIcons;
 import com.intellij.openapi.actionSystem.AnAction;
 import com.intellij.openapi.actionSystem.AnActionEvent;
+import com.intellij.openapi.progress.ProgressManager;
 import com.intellij.openapi.project.Project;
+import com.intellij.openapi.util.Ref;
 import com.intellij.openapi.wm.WindowManager;
 import com.sixrr.metrics.metricModel.MetricsRun;
 import com.sixrr.metrics.metricModel.MetricsRunImpl;
@@ -52,9 +54,16 @@ class DiffSnapshotAction extends AnAction {
 
         if (returnVal == JFileChooser.APPROVE_OPTION) {
             final File selectedFile = chooser.getSelectedFile();
-            final MetricsRun previousResults =
-                    MetricsRunImpl.readFromFile(selectedFile);
-            toolWindow.reloadAsDiff(previousResults);
+            final Ref<MetricsRun> previousResults = Ref.create();
+            final boolean completed = ProgressManager.getInstance().runProcessWithProgressSynchronously(new Runnable() {
+                @Override
+                public void run() {
+                    previousResults.set(MetricsRunImpl.readFromFile(selectedFile));
+                }
+            }, MetricsReloadedBundle.message("reading.snapshot.progress"), true, project);
+            if (completed) {
+                toolWindow.reloadAsDiff(previousResults.get());
+            }
         }
     }
 }
@@ -43,7 +43,7 @@ class MetricCellRenderer extends ColoredTableCellRenderer {
     protected void customizeCellRenderer(JTable table, @Nullable Object value, boolean selected, boolean hasFocus, int row, int column) {
         final MetricTableModel model = (MetricTableModel) table.getModel();
         if (value instanceof String) { // measured object
-            if (model.hasSummaryRows() && row == model.getRowCount() - 2) {
+            if (model.isTotalRow(row)) {
                 append((String) value, SimpleTextAttributes.REGULAR_BOLD_ATTRIBUTES);
             }
             else {
@@ -61,15 +61,13 @@ class MetricCellRenderer extends ColoredTableCellRenderer {
             if (metricType == MetricType.Ratio || metricType == MetricType.RecursiveRatio) {
                 doubleValue *= 100.0;
             }
-            if (model.hasSummaryRows()) {
-                if (row == model.getRowCount() - 1) {
-                    append(FormatUtils.formatValue(metric, (Double) value, true));
-                    return;
-                }
-                else if (row == model.getRowCount() - 2) {
-                    append(FormatUtils.formatValue(metric, (Double) value), SimpleTextAttributes.REGULAR_BOLD_ATTRIBUTES);
-                    return;
-                }
+            if (model.isStatisticRow(row)) {
+                append(FormatUtils.formatValue(metric, (Double) value, true));
+                return;
+            }
+            else if (model.isTotalRow(row)) {
+                append(FormatUtils.formatValue(metric, (Double) value), SimpleTextAttributes.REGULAR_BOLD_ATTRIBUTES);
+                return;
             }
             final String stringValue = FormatUtils.formatValue(metric, (Double) value);
             if (metricInstance.isUpperThresholdEnabled() && doubleValue > metricInstance.getUpperThreshold() ||
@@ -82,7 +80,7 @@ class MetricCellRenderer extends ColoredTableCellRenderer {
             final Pair<Double, Double> pair = (Pair<Double, Double>) value;
             final Double currentValue = pair.getFirst();
             final Double prevValue = pair.getSecond();
-            final boolean average = model.hasSummaryRows() && row == model.getRowCount() - 1;
+            final boolean average = model.isStatisticRow(row);
             final StringBuilder stringValue = new StringBuilder(16);
             final EditorColorsScheme colorsScheme = EditorColorsManager.getInstance().getGlobalScheme();
             Color backgroundColor = null;
@@ -107,7 +105,7 @@ class MetricCellRenderer extends ColoredTableCellRenderer {
                 }
             }
             final int style =
-                    (model.hasSummaryRows() && row == model.getRowCount() - 2) ? SimpleTextAttributes.STYLE_BOLD : -1;
+                    model.isTotalRow(row) ? SimpleTextAttributes.STYLE_BOLD : -1;
             final SimpleTextAttributes attributes =
                     SimpleTextAttributes.REGULAR_ATTRIBUTES.derive(style, null, backgroundColor, null);
             append(stringValue.toString(), attributes);
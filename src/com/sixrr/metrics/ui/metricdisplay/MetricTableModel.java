@@ -26,6 +26,7 @@ import com.sixrr.metrics.metricModel.MetricsResult;
 import com.sixrr.metrics.profile.MetricTableSpecification;
 import com.sixrr.metrics.profile.MetricsProfile;
 import com.sixrr.metrics.profile.MetricsProfileRepository;
+import com.sixrr.metrics.utils.FormatUtils;
 import com.sixrr.metrics.utils.MetricsReloadedBundle;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
@@ -35,6 +36,9 @@ import java.util.*;
 
 class MetricTableModel extends AbstractTableModel {
 
+    private static final double[] QUANTILES = FormatUtils.SUMMARY_QUANTILES;
+    private static final int SUMMARY_ROW_COUNT = 2 + QUANTILES.length;
+
     private final int[] columnPermutation;
     private final MetricTableSpecification tableSpecification;
     private final String type;
@@ -185,7 +189,25 @@ class MetricTableModel extends AbstractTableModel {
 
     @Override
     public int getRowCount() {
-        return hasSummaryRows() ? measuredObjects.length + 2 : measuredObjects.length;
+        return hasSummaryRows() ? measuredObjects.length + SUMMARY_ROW_COUNT : measuredObjects.length;
+    }
+
+    /**
+     * @return the number of rows showing a measured object, which precede the summary rows.
+     */
+    public int getMeasuredObjectCount() {
+        return measuredObjects.length;
+    }
+
+    public boolean isTotalRow(int row) {
+        return hasSummaryRows() && row == measuredObjects.length;
+    }
+
+    /**
+     * @return true if the specified row shows the average or a quantile of each metric.
+     */
+    public boolean isStatisticRow(int row) {
+        return hasSummaryRows() && row > measuredObjects.length;
     }
 
     public int getSortColumn() {
@@ -224,6 +246,21 @@ class MetricTableModel extends AbstractTableModel {
                     return Pair.create(value, prevValue);
                 }
             }
+            if (rowIndex >= measuredObjects.length + 2) {
+                final double quantile = QUANTILES[rowIndex - measuredObjects.length - 2];
+                if (permutedColumn == 0) {
+                    return MetricsReloadedBundle.message("percentile",
+                            Integer.valueOf(FormatUtils.toPercentile(quantile)));
+                } else if (prevResults == null) {
+                    final MetricInstance metricInstance = metricsInstances[permutedColumn - 1];
+                    return results.getQuantileForMetric(metricInstance.getMetric(), quantile);
+                } else {
+                    final MetricInstance metricInstance = metricsInstances[permutedColumn - 1];
+                    final Double value = results.getQuantileForMetric(metricInstance.getMetric(), quantile);
+                    final Double prevValue = prevResults.getQuantileForMetric(metricInstance.getMetric(), quantile);
+                    return Pair.create(value, prevValue);
+                }
+            }
         }
         final String measuredObject = measuredObjects[rowPermutation[rowIndex]];
         if (permutedColumn == 0) {
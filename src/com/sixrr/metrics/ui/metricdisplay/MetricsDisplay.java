@@ -16,6 +16,7 @@
 
 package com.sixrr.metrics.ui.metricdisplay;
 
+import com.intellij.openapi.progress.ProgressManager;
 import com.intellij.openapi.project.Project;
 import com.intellij.ui.ScrollPaneFactory;
 import com.intellij.ui.TableSpeedSearch;
@@ -30,9 +31,11 @@ import com.sixrr.metrics.profile.MetricsProfileRepository;
 import com.sixrr.metrics.utils.MetricsCategoryNameUtil;
 import com.sixrr.metrics.utils.MetricsReloadedBundle;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 import javax.swing.*;
 import javax.swing.event.ChangeEvent;
+import javax.swing.event.ChangeListener;
 import javax.swing.event.ListSelectionEvent;
 import javax.swing.event.TableColumnModelEvent;
 import javax.swing.event.TableColumnModelListener;
@@ -46,11 +49,18 @@ import java.util.List;
 
 public class MetricsDisplay {
     
+    private final Project project;
     private boolean hasOverlay = false;
     private final Map<MetricCategory, JTable> tables = new EnumMap<MetricCategory, JTable>(MetricCategory.class);
     private final JTabbedPane tabbedPane = new JTabbedPane();
+    private final Map<MetricCategory, MetricsResult> pendingOverlays =
+            new EnumMap<MetricCategory, MetricsResult>(MetricCategory.class);
+    private MetricDisplaySpecification pendingSpecification = null;
+    private final JTable runProfileTable = new JBTable();
+    private final JScrollPane runProfileTab = ScrollPaneFactory.createScrollPane(runProfileTable);
 
     public MetricsDisplay(@NotNull Project project) {
+        this.project = project;
         final JTable projectMetricsTable = new JBTable();
         tables.put(MetricCategory.Project, projectMetricsTable);
         final JTable fileTypeMetricsTable = new JBTable();
@@ -86,6 +96,17 @@ public class MetricsDisplay {
                 ScrollPaneFactory.createScrollPane(interfaceMetricsTable));
         tabbedPane.add(MetricsReloadedBundle.message("method.metrics"),
                 ScrollPaneFactory.createScrollPane(methodMetricsTable));
+        new TableSpeedSearch(runProfileTable);
+        runProfileTable.setAutoCreateRowSorter(true);
+        tabbedPane.addChangeListener(new ChangeListener() {
+            @Override
+            public void stateChanged(ChangeEvent e) {
+                final MetricCategory category = getSelectedCategory();
+                if (category != null) {
+                    applyPendingOverlay(category);
+                }
+            }
+        });
     }
 
     private static void setupTable(JTable table, Project project) {
@@ -97,6 +118,7 @@ public class MetricsDisplay {
     }
 
     public void setMetricsResults(MetricDisplaySpecification displaySpecification, MetricsRun run) {
+        pendingOverlays.clear();
         final MetricCategory[] categories = MetricCategory.values();
         for (final MetricCategory category : categories) {
             final JTable table = tables.get(category);
@@ -124,6 +146,7 @@ public class MetricsDisplay {
             setRenderers(table, type);
             setColumnWidths(table, tableSpecification);
         }
+        keepRunProfileTabLast();
     }
 
     public void updateMetricsResults(MetricsRun run,
@@ -143,6 +166,7 @@ public class MetricsDisplay {
 
     public void updateMetricsResultsWithDiff(MetricsRun results,
                                              MetricDisplaySpecification displaySpecification) {
+        pendingOverlays.clear();
         final MetricCategory[] categories = MetricCategory.values();
         for (final MetricCategory category : categories) {
             final JTable table = tables.get(category);
@@ -163,16 +187,30 @@ public class MetricsDisplay {
                     displaySpecification.getSpecification(category);
             setColumnWidths(table, specification);
         }
+        keepRunProfileTabLast();
         hasOverlay = true;
     }
 
+    /**
+     * Shows the differences with the specified run.  Only the table of the selected tab is compared immediately, other
+     * tabs with results of their own are compared when they are selected.  This way the results of a snapshot which is
+     * read lazily are only read for the tabs actually looked at.
+     */
     public void overlayWithDiff(MetricsRun prevRun,
                                 MetricDisplaySpecification displaySpecification) {
+        pendingOverlays.clear();
+        pendingSpecification = displaySpecification;
+        final MetricCategory selectedCategory = getSelectedCategory();
         final MetricCategory[] categories = MetricCategory.values();
         for (final MetricCategory category : categories) {
             final JTable table = tables.get(category);
             final MetricTableModel model = (MetricTableModel) table.getModel();
-            model.setPrevResults(prevRun.getResultsForCategory(category));
+            final MetricsResult prevResults = prevRun.getResultsForCategory(category);
+            if (category != selectedCategory && model.getRowCount() > 0) {
+                pendingOverlays.put(category, prevResults);
+                continue;
+            }
+            model.setPrevResults(prevResults);
             final Container tab = table.getParent().getParent();
             if (model.getRowCount() == 0) {
                 tabbedPane.remove(tab);
@@ -186,10 +224,58 @@ public class MetricsDisplay {
                     displaySpecification.getSpecification(category);
             setColumnWidths(table, specification);
         }
+        keepRunProfileTabLast();
         hasOverlay = true;
     }
 
+    /**
+     * Shows the cost of each calculator of the run in a tab after those of the metrics, or removes that tab if the run
+     * was not profiled.
+     */
+    public void setRunProfile(@Nullable RunProfile profile) {
+        if (profile == null) {
+            tabbedPane.remove(runProfileTab);
+            return;
+        }
+        runProfileTable.setModel(new RunProfileTableModel(profile));
+        // sorted by wall time, most expensive first
+        runProfileTable.getRowSorter().setSortKeys(
+                Collections.singletonList(new RowSorter.SortKey(2, SortOrder.DESCENDING)));
+        tabbedPane.remove(runProfileTab);
+        tabbedPane.add(MetricsReloadedBundle.message("run.profile"), runProfileTab);
+    }
+
+    private void keepRunProfileTabLast() {
+        if (tabbedPane.indexOfComponent(runProfileTab) >= 0) {
+            tabbedPane.remove(runProfileTab);
+            tabbedPane.add(MetricsReloadedBundle.message("run.profile"), runProfileTab);
+        }
+    }
+
+    private void applyPendingOverlay(MetricCategory category) {
+        final MetricsResult prevResults = pendingOverlays.remove(category);
+        if (prevResults == null) {
+            return;
+        }
+        final boolean completed = ProgressManager.getInstance().runProcessWithProgressSynchronously(new Runnable() {
+            @Override
+            public void run() {
+                prevResults.getMeasuredObjects();
+            }
+        }, MetricsReloadedBundle.message("reading.snapshot.progress"), true, project);
+        if (!completed) {
+            pendingOverlays.put(category, prevResults);
+            return;
+        }
+        final JTable table = tables.get(category);
+        final MetricTableModel model = (MetricTableModel) table.getModel();
+        model.setPrevResults(prevResults);
+        setRenderers(table, MetricsCategoryNameUtil.getShortNameForCategory(category));
+        setColumnWidths(table, pendingSpecification.getSpecification(category));
+    }
+
     public void removeDiffOverlay(MetricDisplaySpecification displaySpecification) {
+        pendingOverlays.clear();
         final MetricCategory[] categories = MetricCategory.values();
         for (final MetricCategory category : categories) {
             final JTable table = tables.get(category);
@@ -208,6 +294,7 @@ public class MetricsDisplay {
                     displaySpecification.getSpecification(category);
             setColumnWidths(table, specification);
         }
+        keepRunProfileTabLast();
         hasOverlay = false;
     }
 
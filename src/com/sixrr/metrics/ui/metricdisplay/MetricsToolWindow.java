@@ -21,9 +21,12 @@ import com.intellij.openapi.Disposable;
 import com.intellij.openapi.components.ServiceManager;
 import com.intellij.openapi.project.Project;
 import com.sixrr.metrics.MetricCategory;
+import com.sixrr.metrics.metricModel.FileContributions;
 import com.sixrr.metrics.metricModel.MetricsRun;
+import com.sixrr.metrics.metricModel.RunProfile;
 import com.sixrr.metrics.profile.MetricsProfile;
 import org.jetbrains.annotations.NonNls;
+import org.jetbrains.annotations.Nullable;
 
 public abstract class MetricsToolWindow implements Disposable {
 
@@ -57,4 +60,11 @@ public abstract class MetricsToolWindow implements Disposable {
     public abstract MetricsProfile getCurrentProfile();
 
     public abstract MetricCategory getSelectedCategory();
+
+    @Nullable
+    public abstract FileContributions getFileContributions();
+
+    public abstract void setFileContributions(@Nullable FileContributions contributions);
+
+    public abstract void setRunProfile(@Nullable RunProfile profile);
 }
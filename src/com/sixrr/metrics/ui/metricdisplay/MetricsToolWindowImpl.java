@@ -26,11 +26,14 @@ import com.intellij.openapi.wm.ToolWindow;
 import com.intellij.openapi.wm.ToolWindowAnchor;
 import com.intellij.openapi.wm.ToolWindowManager;
 import com.sixrr.metrics.MetricCategory;
+import com.sixrr.metrics.metricModel.FileContributions;
 import com.sixrr.metrics.metricModel.MetricsRun;
+import com.sixrr.metrics.metricModel.RunProfile;
 import com.sixrr.metrics.profile.MetricDisplaySpecification;
 import com.sixrr.metrics.profile.MetricsProfile;
 import com.sixrr.metrics.utils.MetricsReloadedBundle;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 import javax.swing.*;
 import java.awt.*;
@@ -45,6 +48,7 @@ public final class MetricsToolWindowImpl extends MetricsToolWindow {
     private MetricsRun currentResults = null;
     private AnalysisScope currentScope = null;
     private MetricsProfile currentProfile = null;
+    private FileContributions fileContributions = null;
 
     private MetricsToolWindowImpl(@NotNull Project project) {
         this.project = project;
@@ -73,6 +77,7 @@ public final class MetricsToolWindowImpl extends MetricsToolWindow {
         myToolWindow.setTitle(MetricsReloadedBundle.message("metrics.reloaded.toolwindow.title"));
         myToolWindow.setIcon(IconLoader.getIcon(TOOL_WINDOW_ICON_PATH));
         myToolWindow.setAvailable(false, null);
+        fileContributions = null;
     }
 
     @Override
@@ -166,4 +171,20 @@ public final class MetricsToolWindowImpl extends MetricsToolWindow {
     public MetricCategory getSelectedCategory() {
         return metricsDisplay.getSelectedCategory();
     }
+
+    @Override
+    @Nullable
+    public FileContributions getFileContributions() {
+        return fileContributions;
+    }
+
+    @Override
+    public void setFileContributions(@Nullable FileContributions contributions) {
+        fileContributions = contributions;
+    }
+
+    @Override
+    public void setRunProfile(@Nullable RunProfile profile) {
+        metricsDisplay.setRunProfile(profile);
+    }
 }
@@ -0,0 +1,94 @@
+/*
+ * Copyright 2005-2016 Sixth and Red River Software, Bas Leijdekkers
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.sixrr.metrics.ui.metricdisplay;
+
+import com.sixrr.metrics.MetricCategory;
+import com.sixrr.metrics.metricModel.RunProfile;
+import com.sixrr.metrics.utils.MetricsCategoryNameUtil;
+import com.sixrr.metrics.utils.MetricsReloadedBundle;
+import org.jetbrains.annotations.NotNull;
+
+import javax.swing.table.AbstractTableModel;
+import java.util.List;
+
+/**
+ * Shows the cost of each calculator and shared phase of a profiled run, with times in milliseconds and allocations in
+ * megabytes.
+ */
+class RunProfileTableModel extends AbstractTableModel {
+
+    private static final String[] COLUMN_KEYS = {
+            "run.profile.name", "run.profile.category", "run.profile.wall.time", "run.profile.cpu.time",
+            "run.profile.allocated", "run.profile.begin.time", "run.profile.process.files.time", "run.profile.end.time"
+    };
+
+    private final List<RunProfile.Entry> entries;
+
+    RunProfileTableModel(@NotNull RunProfile profile) {
+        entries = profile.getEntries();
+    }
+
+    @Override
+    public int getRowCount() {
+        return entries.size();
+    }
+
+    @Override
+    public int getColumnCount() {
+        return COLUMN_KEYS.length;
+    }
+
+    @Override
+    public String getColumnName(int column) {
+        return MetricsReloadedBundle.message(COLUMN_KEYS[column]);
+    }
+
+    @Override
+    public Class<?> getColumnClass(int column) {
+        return column < 2 ? String.class : Double.class;
+    }
+
+    @Override
+    public Object getValueAt(int row, int column) {
+        final RunProfile.Entry entry = entries.get(row);
+        switch (column) {
+            case 0:
+                return entry.getName();
+            case 1:
+                final MetricCategory category = entry.getCategory();
+                return category == null
+                        ? MetricsReloadedBundle.message("run.profile.shared.phase")
+                        : MetricsCategoryNameUtil.getShortNameForCategory(category);
+            case 2:
+                return toMillis(entry.getWallTime(null));
+            case 3:
+                return toMillis(entry.getCpuTime(null));
+            case 4:
+                return Double.valueOf((double) entry.getAllocatedBytes(null) / (1024.0 * 1024.0));
+            case 5:
+                return toMillis(entry.getWallTime(RunProfile.Stage.BEGIN));
+            case 6:
+                return toMillis(entry.getWallTime(RunProfile.Stage.PROCESS_FILES));
+            default:
+                return toMillis(entry.getWallTime(RunProfile.Stage.END));
+        }
+    }
+
+    private static Double toMillis(long nanos) {
+        return Double.valueOf((double) nanos / 1000000.0);
+    }
+}
@@ -43,10 +43,7 @@ class ShowDiffDistributionAction extends AbstractAction {
 
     @Override
     public void actionPerformed(ActionEvent e) {
-        int numRows = model.getRowCount();
-        if (numRows > 1) {
-            numRows -= 2;
-        }
+        final int numRows = model.getMeasuredObjectCount();
         final Double[] values = new Double[numRows];
         final Double[] prevValues = new Double[numRows];
         final int selectedColumn = table.getSelectedColumn();
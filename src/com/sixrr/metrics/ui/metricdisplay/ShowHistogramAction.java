@@ -42,10 +42,7 @@ class ShowHistogramAction extends AbstractAction {
 
     @Override
     public void actionPerformed(ActionEvent e) {
-        int numRows = model.getRowCount();
-        if (numRows > 1) {
-            numRows -= 2;
-        }
+        final int numRows = model.getMeasuredObjectCount();
         final Double[] values = new Double[numRows];
         final int selectedColumn = table.getSelectedColumn();
         final int modelColumn = table.convertColumnIndexToModel(selectedColumn);
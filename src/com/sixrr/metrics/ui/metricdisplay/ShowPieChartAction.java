@@ -41,10 +41,7 @@ class ShowPieChartAction extends AbstractAction {
 
     @Override
     public void actionPerformed(ActionEvent e) {
-        int numRows = model.getRowCount();
-        if (numRows > 1) {
-            numRows -= 2;
-        }
+        final int numRows = model.getMeasuredObjectCount();
         final Double[] values = new Double[numRows];
         final String[] measuredItems = new String[numRows];
         final int selectedColumn = table.getSelectedColumn();
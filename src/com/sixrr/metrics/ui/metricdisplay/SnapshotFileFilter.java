@@ -16,6 +16,7 @@
 
 package com.sixrr.metrics.ui.metricdisplay;
 
+import com.sixrr.metrics.metricModel.MetricsRunImpl;
 import com.sixrr.metrics.utils.MetricsReloadedBundle;
 import org.jetbrains.annotations.NonNls;
 
@@ -29,7 +30,7 @@ public class SnapshotFileFilter extends FileFilter {
             return true;
         }
         @NonNls final String fileName = f.getName();
-        return fileName.endsWith(".met");
+        return MetricsRunImpl.isSnapshotFileName(fileName);
     }
 
     @Override
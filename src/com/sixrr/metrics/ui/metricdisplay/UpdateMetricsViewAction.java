@@ -20,6 +20,7 @@ import com.intellij.icons.AllIcons;
 import com.intellij.openapi.actionSystem.AnAction;
 import com.intellij.openapi.actionSystem.AnActionEvent;
 import com.intellij.openapi.project.Project;
+import com.sixrr.metrics.config.MetricsReloadedConfig;
 import com.sixrr.metrics.metricModel.MetricsExecutionContextImpl;
 import com.sixrr.metrics.metricModel.MetricsRunImpl;
 import com.sixrr.metrics.metricModel.TimeStamp;
@@ -43,15 +44,21 @@ class UpdateMetricsViewAction extends AnAction {
         final AnalysisScope currentScope = toolWindow.getCurrentScope();
         final MetricsProfile currentProfile = toolWindow.getCurrentProfile();
         final MetricsRunImpl metricsRun = new MetricsRunImpl();
-        new MetricsExecutionContextImpl(project, currentScope) {
-            
+        final MetricsExecutionContextImpl context = new MetricsExecutionContextImpl(project, currentScope) {
+
             @Override
             public void onFinish() {
                 metricsRun.setProfileName(currentProfile.getName());
                 metricsRun.setContext(currentScope);
                 metricsRun.setTimestamp(new TimeStamp());
+                toolWindow.setFileContributions(getFileContributions());
                 toolWindow.update(metricsRun);
+                toolWindow.setRunProfile(getRunProfile());
             }
-        }.execute(currentProfile, metricsRun);
+        };
+        if (MetricsReloadedConfig.getInstance().isIncrementalUpdate()) {
+            context.setIncremental(toolWindow.getFileContributions());
+        }
+        context.execute(currentProfile, metricsRun);
     }
 }
@@ -20,6 +20,7 @@ import com.intellij.icons.AllIcons;
 import com.intellij.openapi.actionSystem.AnAction;
 import com.intellij.openapi.actionSystem.AnActionEvent;
 import com.intellij.openapi.project.Project;
+import com.sixrr.metrics.config.MetricsReloadedConfig;
 import com.sixrr.metrics.metricModel.MetricsExecutionContextImpl;
 import com.sixrr.metrics.metricModel.MetricsRunImpl;
 import com.sixrr.metrics.metricModel.TimeStamp;
@@ -43,15 +44,21 @@ class UpdateWithDiffAction extends AnAction {
         final AnalysisScope scope = toolWindow.getCurrentScope();
         final MetricsProfile currentProfile = toolWindow.getCurrentProfile();
         final MetricsRunImpl metricsRun = new MetricsRunImpl();
-        new MetricsExecutionContextImpl(project, scope) {
+        final MetricsExecutionContextImpl context = new MetricsExecutionContextImpl(project, scope) {
 
             @Override
             public void onFinish() {
                 metricsRun.setContext(scope);
                 metricsRun.setProfileName(currentProfile.getName());
                 metricsRun.setTimestamp(new TimeStamp());
+                toolWindow.setFileContributions(getFileContributions());
                 toolWindow.updateWithDiff(metricsRun);
+                toolWindow.setRunProfile(getRunProfile());
             }
-        }.execute(currentProfile, metricsRun);
+        };
+        if (MetricsReloadedConfig.getInstance().isIncrementalUpdate()) {
+            context.setIncremental(toolWindow.getFileContributions());
+        }
+        context.execute(currentProfile, metricsRun);
     }
 }
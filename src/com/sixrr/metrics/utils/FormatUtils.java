@@ -19,17 +19,22 @@ package com.sixrr.metrics.utils;
 import com.sixrr.metrics.Metric;
 import com.sixrr.metrics.MetricType;
 
+import java.text.FieldPosition;
 import java.text.NumberFormat;
 
 public final class FormatUtils {
 
-    private static final NumberFormat numberFormatter = NumberFormat.getNumberInstance();
-    private static final NumberFormat intFormatter = NumberFormat.getIntegerInstance();
+    /**
+     * The quantiles of each metric shown below the total and average in summary rows and exports.
+     */
+    public static final double[] SUMMARY_QUANTILES = {0.5, 0.9, 0.99};
 
-    static {
-        numberFormatter.setMaximumFractionDigits(2);
-        numberFormatter.setMinimumFractionDigits(2);
-    }
+    private static final ThreadLocal<Formatters> formatters = new ThreadLocal<Formatters>() {
+        @Override
+        protected Formatters initialValue() {
+            return new Formatters();
+        }
+    };
 
     private FormatUtils() {}
 
@@ -41,14 +46,77 @@ public final class FormatUtils {
         if (value == null) {
             return "";
         }
+        final StringBuilder result = new StringBuilder(16);
+        appendValue(result, metric, value.doubleValue(), average);
+        return result.toString();
+    }
+
+    /**
+     * Appends the value formatted the same as by {@link #formatValue(Metric, Double, boolean)}, without creating
+     * intermediate strings for it.
+     */
+    public static void appendValue(StringBuilder out, Metric metric, double value, boolean average) {
+        final Formatters formatters = FormatUtils.formatters.get();
         final MetricType metricType = metric.getType();
         if (metricType == MetricType.Count || metricType == MetricType.Score ||
                 metricType == MetricType.RecursiveCount) {
-            return average ? numberFormatter.format(value.doubleValue()) : intFormatter.format(value.longValue());
+            if (average) {
+                formatters.format(out, formatters.numberFormatter, value);
+            } else {
+                formatters.formatInteger(out, (long) value);
+            }
         }  else if(metricType == MetricType.Average) {
-            return numberFormatter.format(value) ;
+            formatters.format(out, formatters.numberFormatter, value);
         } else { //it's a ratio or recursive ratio
-            return numberFormatter.format(value.doubleValue() * 100.0) + '%';
+            formatters.format(out, formatters.numberFormatter, value * 100.0);
+            out.append('%');
+        }
+    }
+
+    /**
+     * @return the percentile of the specified quantile, for example 90 for 0.9.
+     */
+    public static int toPercentile(double fraction) {
+        return (int) Math.round(fraction * 100.0);
+    }
+
+    /**
+     * NumberFormat is not thread safe, so each thread formatting values gets its own instances.
+     */
+    private static class Formatters {
+
+        private static final int CACHED_INTEGERS = 1024;
+
+        final NumberFormat numberFormatter = NumberFormat.getNumberInstance();
+        final NumberFormat intFormatter = NumberFormat.getIntegerInstance();
+        private final StringBuffer buffer = new StringBuffer(32);
+        private final FieldPosition position = new FieldPosition(0);
+        private final String[] integers = new String[CACHED_INTEGERS];
+
+        Formatters() {
+            numberFormatter.setMaximumFractionDigits(2);
+            numberFormatter.setMinimumFractionDigits(2);
+        }
+
+        void format(StringBuilder out, NumberFormat format, double value) {
+            buffer.setLength(0);
+            format.format(value, buffer, position);
+            out.append(buffer);
+        }
+
+        void formatInteger(StringBuilder out, long value) {
+            if (value < 0L || value >= CACHED_INTEGERS) {
+                buffer.setLength(0);
+                intFormatter.format(value, buffer, position);
+                out.append(buffer);
+                return;
+            }
+            String result = integers[(int) value];
+            if (result == null) {
+                result = intFormatter.format(value);
+                integers[(int) value] = result;
+            }
+            out.append(result);
         }
     }
 }
@@ -17,7 +17,7 @@ package com.sixrr.stockmetrics.classCalculators;
 
 import com.intellij.psi.PsiClass;
 import com.intellij.psi.PsiElementVisitor;
-import com.intellij.psi.JavaRecursiveElementVisitor;
+import com.intellij.psi.JavaElementVisitor;
 import com.sixrr.stockmetrics.dependency.DependencyMap;
 
 public class AdjustedLevelOrderClassCalculator extends ClassCalculator {
@@ -27,11 +27,15 @@ public class AdjustedLevelOrderClassCalculator extends ClassCalculator {
         return new Visitor();
     }
 
-    private class Visitor extends JavaRecursiveElementVisitor {
+    @Override
+    protected boolean supportsSharedTraversal() {
+        return true;
+    }
+
+    private class Visitor extends JavaElementVisitor {
 
         @Override
         public void visitClass(PsiClass aClass) {
-            super.visitClass(aClass);
             if (isConcreteClass(aClass)) {
                 final DependencyMap dependencyMap =
                         getDependencyMap();
@@ -16,8 +16,9 @@
 package com.sixrr.stockmetrics.classCalculators;
 
 import com.intellij.psi.*;
+import com.sixrr.metrics.FileLocalCalculator;
 
-public class AverageOperationComplexityCalculator extends ClassCalculator {
+public class AverageOperationComplexityCalculator extends ClassCalculator implements FileLocalCalculator {
     private int complexity = 0;
     private int numMethods = 0;
 
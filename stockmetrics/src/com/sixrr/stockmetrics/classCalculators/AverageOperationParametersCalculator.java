@@ -17,19 +17,24 @@
 package com.sixrr.stockmetrics.classCalculators;
 
 import com.intellij.psi.*;
+import com.sixrr.metrics.FileLocalCalculator;
 
-public class AverageOperationParametersCalculator extends ClassCalculator {
+public class AverageOperationParametersCalculator extends ClassCalculator implements FileLocalCalculator {
 
     @Override
     protected PsiElementVisitor createVisitor() {
         return new Visitor();
     }
 
-    private class Visitor extends JavaRecursiveElementVisitor {
+    @Override
+    protected boolean supportsSharedTraversal() {
+        return true;
+    }
+
+    private class Visitor extends JavaElementVisitor {
 
         @Override
         public void visitClass(PsiClass aClass) {
-            super.visitClass(aClass);
             if (!isConcreteClass(aClass)) {
                 return;
             }
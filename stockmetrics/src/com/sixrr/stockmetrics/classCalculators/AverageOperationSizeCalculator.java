@@ -17,8 +17,9 @@
 package com.sixrr.stockmetrics.classCalculators;
 
 import com.intellij.psi.*;
+import com.sixrr.metrics.FileLocalCalculator;
 
-public class AverageOperationSizeCalculator extends ClassCalculator {
+public class AverageOperationSizeCalculator extends ClassCalculator implements FileLocalCalculator {
     private int numStatements = 0;
     private int numMethods = 0;
 
@@ -17,10 +17,16 @@
 package com.sixrr.stockmetrics.classCalculators;
 
 import com.intellij.psi.PsiClass;
+import com.sixrr.metrics.ConcurrentMetricCalculator;
 import com.sixrr.metrics.utils.ClassUtils;
 import com.sixrr.stockmetrics.execution.BaseMetricsCalculator;
 
-public abstract class ClassCalculator extends BaseMetricsCalculator {
+public abstract class ClassCalculator extends BaseMetricsCalculator implements ConcurrentMetricCalculator {
+
+    @Override
+    public boolean isThreadSafe() {
+        return false;
+    }
 
     protected void postMetric(PsiClass aClass, int numerator, int denominator) {
         resultsHolder.postClassMetric(metric, aClass, (double) numerator, (double) denominator);
@@ -25,11 +25,15 @@ public class ClassSizeOperationsCalculator extends ClassCalculator {
         return new Visitor();
     }
 
-    private class Visitor extends JavaRecursiveElementVisitor {
+    @Override
+    protected boolean supportsSharedTraversal() {
+        return true;
+    }
+
+    private class Visitor extends JavaElementVisitor {
 
         @Override
         public void visitClass(PsiClass aClass) {
-            super.visitClass(aClass);
             if (isConcreteClass(aClass)) {
                 final PsiMethod[] methods = aClass.getAllMethods();
 
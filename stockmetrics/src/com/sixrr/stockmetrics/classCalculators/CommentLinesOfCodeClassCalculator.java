@@ -20,11 +20,12 @@ import com.intellij.psi.JavaRecursiveElementVisitor;
 import com.intellij.psi.PsiClass;
 import com.intellij.psi.PsiComment;
 import com.intellij.psi.PsiElementVisitor;
+import com.sixrr.metrics.FileLocalCalculator;
 import com.sixrr.metrics.utils.ClassUtils;
 import com.sixrr.stockmetrics.utils.LineUtil;
 
 public class CommentLinesOfCodeClassCalculator
-        extends ClassCalculator {
+        extends ClassCalculator implements FileLocalCalculator {
     private int elementCount = 0;
 
     @Override
@@ -20,10 +20,11 @@ import com.intellij.psi.JavaRecursiveElementVisitor;
 import com.intellij.psi.PsiClass;
 import com.intellij.psi.PsiComment;
 import com.intellij.psi.PsiElementVisitor;
+import com.sixrr.metrics.FileLocalCalculator;
 import com.sixrr.metrics.utils.ClassUtils;
 import com.sixrr.stockmetrics.utils.LineUtil;
 
-public class CommentRatioClassCalculator extends ClassCalculator {
+public class CommentRatioClassCalculator extends ClassCalculator implements FileLocalCalculator {
     private int commentLines = 0;
 
     @Override
@@ -16,23 +16,28 @@
 
 package com.sixrr.stockmetrics.classCalculators;
 
-import com.intellij.psi.JavaRecursiveElementVisitor;
+import com.intellij.psi.JavaElementVisitor;
 import com.intellij.psi.PsiClass;
 import com.intellij.psi.PsiElementVisitor;
+import com.sixrr.metrics.FileLocalCalculator;
 import com.sixrr.stockmetrics.utils.LineUtil;
 
-public class LinesOfCodeClassCalculator extends ClassCalculator {
+public class LinesOfCodeClassCalculator extends ClassCalculator implements FileLocalCalculator {
 
     @Override
     protected PsiElementVisitor createVisitor() {
         return new Visitor();
     }
 
-    private class Visitor extends JavaRecursiveElementVisitor {
+    @Override
+    protected boolean supportsSharedTraversal() {
+        return true;
+    }
+
+    private class Visitor extends JavaElementVisitor {
 
         @Override
         public void visitClass(PsiClass aClass) {
-            super.visitClass(aClass);
             if (isConcreteClass(aClass)) {
                 int linesOfCode = LineUtil.countLines(aClass);
                 final PsiClass[] innerClasses = aClass.getInnerClasses();
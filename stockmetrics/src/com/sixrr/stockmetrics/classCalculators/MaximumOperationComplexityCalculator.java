@@ -17,8 +17,9 @@
 package com.sixrr.stockmetrics.classCalculators;
 
 import com.intellij.psi.*;
+import com.sixrr.metrics.FileLocalCalculator;
 
-public class MaximumOperationComplexityCalculator extends ClassCalculator {
+public class MaximumOperationComplexityCalculator extends ClassCalculator implements FileLocalCalculator {
     private int complexity = 0;
     private int maxComplexity = 0;
     private int numMethods = 0;
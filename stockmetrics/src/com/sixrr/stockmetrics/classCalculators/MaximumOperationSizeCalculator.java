@@ -17,8 +17,9 @@
 package com.sixrr.stockmetrics.classCalculators;
 
 import com.intellij.psi.*;
+import com.sixrr.metrics.FileLocalCalculator;
 
-public class MaximumOperationSizeCalculator extends ClassCalculator {
+public class MaximumOperationSizeCalculator extends ClassCalculator implements FileLocalCalculator {
     private int numStatements = 0;
     private int maxNumStatements = 0;
     private int numMethods = 0;
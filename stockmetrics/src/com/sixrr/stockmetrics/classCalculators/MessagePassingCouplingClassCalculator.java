@@ -20,9 +20,10 @@ import com.intellij.psi.JavaRecursiveElementVisitor;
 import com.intellij.psi.PsiClass;
 import com.intellij.psi.PsiElementVisitor;
 import com.intellij.psi.PsiMethodCallExpression;
+import com.sixrr.metrics.FileLocalCalculator;
 import com.sixrr.metrics.utils.ClassUtils;
 
-public class MessagePassingCouplingClassCalculator extends ClassCalculator {
+public class MessagePassingCouplingClassCalculator extends ClassCalculator implements FileLocalCalculator {
     private int numCalls = 0;
 
     @Override
@@ -17,9 +17,10 @@
 package com.sixrr.stockmetrics.classCalculators;
 
 import com.intellij.psi.*;
+import com.sixrr.metrics.FileLocalCalculator;
 import com.sixrr.metrics.utils.ClassUtils;
 
-public class NumStatementsClassCalculator extends ClassCalculator {
+public class NumStatementsClassCalculator extends ClassCalculator implements FileLocalCalculator {
     private int elementCount = 0;
 
     @Override
@@ -16,13 +16,11 @@
 
 package com.sixrr.stockmetrics.classCalculators;
 
-import com.intellij.psi.JavaRecursiveElementVisitor;
+import com.intellij.psi.JavaElementVisitor;
 import com.intellij.psi.PsiClass;
 import com.intellij.psi.PsiElementVisitor;
 import com.sixrr.stockmetrics.dependency.DependencyMap;
 
-import java.util.Set;
-
 public class NumTransitiveDependenciesClassCalculator extends ClassCalculator {
 
     @Override
@@ -30,15 +28,18 @@ public class NumTransitiveDependenciesClassCalculator extends ClassCalculator {
         return new Visitor();
     }
 
-    private class Visitor extends JavaRecursiveElementVisitor {
+    @Override
+    protected boolean supportsSharedTraversal() {
+        return true;
+    }
+
+    private class Visitor extends JavaElementVisitor {
 
         @Override
         public void visitClass(PsiClass aClass) {
-            super.visitClass(aClass);
             if (isConcreteClass(aClass)) {
                 final DependencyMap dependencyMap = getDependencyMap();
-                final Set<PsiClass> dependencies = dependencyMap.calculateTransitiveDependencies(aClass);
-                final int numDependencies = dependencies.size() - 1;
+                final int numDependencies = dependencyMap.calculateNumTransitiveDependencies(aClass) - 1;
                 postMetric(aClass, numDependencies);
             }
         }
@@ -16,13 +16,11 @@
 
 package com.sixrr.stockmetrics.classCalculators;
 
-import com.intellij.psi.JavaRecursiveElementVisitor;
+import com.intellij.psi.JavaElementVisitor;
 import com.intellij.psi.PsiClass;
 import com.intellij.psi.PsiElementVisitor;
 import com.sixrr.stockmetrics.dependency.DependentsMap;
 
-import java.util.Set;
-
 public class NumTransitiveDependentsClassCalculator extends ClassCalculator {
 
     @Override
@@ -30,15 +28,18 @@ public class NumTransitiveDependentsClassCalculator extends ClassCalculator {
         return new Visitor();
     }
 
-    private class Visitor extends JavaRecursiveElementVisitor {
+    @Override
+    protected boolean supportsSharedTraversal() {
+        return true;
+    }
+
+    private class Visitor extends JavaElementVisitor {
 
         @Override
         public void visitClass(PsiClass aClass) {
-            super.visitClass(aClass);
             if (isConcreteClass(aClass)) {
                 final DependentsMap dependentsMap = getDependentsMap();
-                final Set<PsiClass> dependents = dependentsMap.calculateTransitiveDependents(aClass);
-                final int numDependents = dependents.size() - 1;
+                final int numDependents = dependentsMap.calculateNumTransitiveDependents(aClass) - 1;
                 postMetric(aClass, numDependents);
             }
         }
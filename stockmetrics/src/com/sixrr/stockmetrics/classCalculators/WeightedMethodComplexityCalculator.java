@@ -17,8 +17,9 @@
 package com.sixrr.stockmetrics.classCalculators;
 
 import com.intellij.psi.*;
+import com.sixrr.metrics.FileLocalCalculator;
 
-public class WeightedMethodComplexityCalculator extends ClassCalculator {
+public class WeightedMethodComplexityCalculator extends ClassCalculator implements FileLocalCalculator {
     private int complexity = 0;
 
     @Override
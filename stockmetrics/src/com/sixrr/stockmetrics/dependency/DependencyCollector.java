@@ -0,0 +1,261 @@
+/*
+ * Copyright 2005-2016 Sixth and Red River Software, Bas Leijdekkers
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.sixrr.stockmetrics.dependency;
+
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.psi.*;
+import com.sixrr.metrics.utils.ClassUtils;
+import gnu.trove.TObjectIntHashMap;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.*;
+
+/**
+ * Finds the dependencies between classes in a number of files, for adding them to a {@link DependencyMapImpl} later.
+ * Each thread building the dependency map uses a collector of its own, so files can be visited concurrently.
+ */
+public class DependencyCollector {
+
+    private final TObjectIntHashMap<Dependency> dependencies = new TObjectIntHashMap<Dependency>();
+    private final Map<VirtualFile, Set<VirtualFile>> fileDependencies = new HashMap<VirtualFile, Set<VirtualFile>>();
+
+    /**
+     * Collects the dependencies of the classes in the specified element.  Must be called inside a read action.
+     */
+    public void collect(PsiElement element) {
+        final PsiFile file = element.getContainingFile();
+        final VirtualFile virtualFile = file == null ? null : file.getVirtualFile();
+        final Set<VirtualFile> referencedFiles;
+        if (virtualFile == null) {
+            referencedFiles = null;
+        } else if (fileDependencies.containsKey(virtualFile)) {
+            referencedFiles = fileDependencies.get(virtualFile);
+        } else {
+            referencedFiles = new HashSet<VirtualFile>();
+            fileDependencies.put(virtualFile, referencedFiles);
+        }
+        element.accept(new DependenciesVisitor(referencedFiles));
+    }
+
+    /**
+     * @return the dependencies found, each mapped to the number of references it was found for.
+     */
+    TObjectIntHashMap<Dependency> getDependencies() {
+        return dependencies;
+    }
+
+    /**
+     * @return the files visited, each mapped to the other files containing classes its classes depend on.
+     */
+    Map<VirtualFile, Set<VirtualFile>> getFileDependencies() {
+        return fileDependencies;
+    }
+
+    private class DependenciesVisitor extends JavaRecursiveElementVisitor {
+
+        private final Stack<PsiClass> classStack = new Stack<PsiClass>();
+        private final Set<VirtualFile> referencedFiles;
+        private PsiClass currentClass = null;
+
+        DependenciesVisitor(@Nullable Set<VirtualFile> referencedFiles) {
+            this.referencedFiles = referencedFiles;
+        }
+
+        @Override
+        public void visitClass(PsiClass aClass) {
+            if (!ClassUtils.isAnonymous(aClass)) {
+                classStack.push(currentClass);
+                currentClass = aClass;
+                addDependencyForTypes(aClass.getSuperTypes());
+                addDependencyForTypeParameters(aClass.getTypeParameters());
+            }
+            super.visitClass(aClass);
+            if (!ClassUtils.isAnonymous(aClass)) {
+                currentClass = classStack.pop();
+            }
+        }
+
+        @Override
+        public void visitMethodCallExpression(PsiMethodCallExpression expression) {
+            super.visitMethodCallExpression(expression);
+            final PsiMethod method = expression.resolveMethod();
+            if (method == null) {
+                return;
+            }
+            addDependencyForClass(method.getContainingClass());
+            addDependencyForTypes(expression.getTypeArguments());
+        }
+
+        @Override
+        public void visitReferenceExpression(PsiReferenceExpression expression) {
+            super.visitReferenceExpression(expression);
+            final PsiElement element = expression.resolve();
+            if (element == null) {
+                return;
+            }
+            if (element instanceof PsiField) {
+                final PsiField field = (PsiField) element;
+                addDependencyForClass(field.getContainingClass());
+            } else if (element instanceof PsiClass) {
+                addDependencyForClass((PsiClass) element);
+            }
+        }
+
+        @Override
+        public void visitMethod(PsiMethod method) {
+            super.visitMethod(method);
+            addDependencyForType(method.getReturnType());
+            addDependencyForTypeParameters(method.getTypeParameters());
+            final PsiReferenceList throwsList = method.getThrowsList();
+            addDependencyForTypes(throwsList.getReferencedTypes());
+        }
+
+        @Override
+        public void visitNewExpression(PsiNewExpression expression) {
+            super.visitNewExpression(expression);
+            addDependencyForType(expression.getType());
+            addDependencyForTypes(expression.getTypeArguments());
+        }
+
+        @Override
+        public void visitVariable(PsiVariable variable) {
+            super.visitVariable(variable);
+            addDependencyForType(variable.getType());
+        }
+
+        @Override
+        public void visitClassObjectAccessExpression(PsiClassObjectAccessExpression exp) {
+            super.visitClassObjectAccessExpression(exp);
+            final PsiTypeElement operand = exp.getOperand();
+            addDependencyForType(operand.getType());
+        }
+
+        @Override
+        public void visitInstanceOfExpression(PsiInstanceOfExpression exp) {
+            super.visitInstanceOfExpression(exp);
+            final PsiTypeElement checkType = exp.getCheckType();
+            if (checkType == null) {
+                return;
+            }
+            addDependencyForType(checkType.getType());
+        }
+
+        @Override
+        public void visitTypeCastExpression(PsiTypeCastExpression exp) {
+            super.visitTypeCastExpression(exp);
+            final PsiTypeElement castType = exp.getCastType();
+            if (castType == null) {
+                return;
+            }
+            addDependencyForType(castType.getType());
+        }
+
+        @Override
+        public void visitLambdaExpression(PsiLambdaExpression expression) {
+            super.visitLambdaExpression(expression);
+            addDependencyForType(expression.getFunctionalInterfaceType());
+        }
+
+        private void addDependencyForTypeParameters(PsiTypeParameter[] parameters) {
+            for (PsiTypeParameter parameter : parameters) {
+                final PsiReferenceList extendsList = parameter.getExtendsList();
+                addDependencyForTypes(extendsList.getReferencedTypes());
+            }
+        }
+
+        private void addDependencyForTypes(PsiType[] types) {
+            for (PsiType type : types) {
+                addDependencyForType(type);
+            }
+        }
+
+        private void addDependencyForType(@Nullable PsiType type) {
+            if (type == null) {
+                return;
+            }
+            final PsiType baseType = type.getDeepComponentType();
+            if (!(baseType instanceof PsiClassType)) {
+                if (baseType instanceof PsiWildcardType) {
+                    final PsiWildcardType wildcardType = (PsiWildcardType) baseType;
+                    addDependencyForType(wildcardType.getBound());
+                }
+                return;
+            }
+            final PsiClassType classType = (PsiClassType) baseType;
+            addDependencyForTypes(classType.getParameters());
+            addDependencyForClass(classType.resolve());
+        }
+
+        private void addDependencyForClass(PsiClass referencedClass) {
+            if (currentClass == null || referencedClass == null || referencedClass.equals(currentClass)) {
+                return;
+            }
+            if (referencedClass instanceof PsiCompiledElement || referencedClass instanceof PsiAnonymousClass ||
+                    referencedClass instanceof PsiTypeParameter) {
+                return;
+            }
+            if (dependencies.adjustValue(new Dependency(currentClass, referencedClass, null, null), 1)) {
+                return;
+            }
+            final PsiPackage aPackage = ClassUtils.findPackage(currentClass);
+            final PsiPackage dependencyPackage = ClassUtils.findPackage(referencedClass);
+            dependencies.put(new Dependency(currentClass, referencedClass, aPackage, dependencyPackage), 1);
+            final PsiFile referencedFile = referencedClass.getContainingFile();
+            if (referencedFiles != null && referencedFile != null && referencedFile.getVirtualFile() != null) {
+                referencedFiles.add(referencedFile.getVirtualFile());
+            }
+        }
+    }
+
+    /**
+     * A dependency of one class on another, with the packages of both classes, which may be null.  Dependencies are
+     * equal when they are between the same classes.
+     */
+    static final class Dependency {
+
+        final PsiClass aClass;
+        final PsiClass referencedClass;
+        final PsiPackage aPackage;
+        final PsiPackage dependencyPackage;
+
+        Dependency(@NotNull PsiClass aClass, @NotNull PsiClass referencedClass, @Nullable PsiPackage aPackage,
+                   @Nullable PsiPackage dependencyPackage) {
+            this.aClass = aClass;
+            this.referencedClass = referencedClass;
+            this.aPackage = aPackage;
+            this.dependencyPackage = dependencyPackage;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Dependency)) {
+                return false;
+            }
+            final Dependency dependency = (Dependency) o;
+            return aClass.equals(dependency.aClass) && referencedClass.equals(dependency.referencedClass);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * aClass.hashCode() + referencedClass.hashCode();
+        }
+    }
+}
@@ -27,6 +27,11 @@ public interface DependencyMap {
 
     Set<PsiClass> calculateTransitiveDependencies(PsiClass aClass);
 
+    /**
+     * @return the number of classes in the transitive dependencies of the specified class, including the class itself.
+     */
+    int calculateNumTransitiveDependencies(PsiClass aClass);
+
     Set<PsiClass> calculateStronglyConnectedComponents(PsiClass aClass);
 
     int calculateLevelOrder(PsiClass aClass);
@@ -37,6 +42,8 @@ public interface DependencyMap {
 
     Set<PsiPackage> calculateTransitivePackageDependencies(PsiPackage aPackage);
 
+    int calculateNumTransitivePackageDependencies(PsiPackage aPackage);
+
     Set<PsiPackage> calculateStronglyConnectedPackageComponents(PsiPackage aPackage);
 
     int calculatePackageLevelOrder(PsiPackage aPackage);
@@ -0,0 +1,392 @@
+/*
+ * Copyright 2005-2016 Sixth and Red River Software, Bas Leijdekkers
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.sixrr.stockmetrics.dependency;
+
+import com.intellij.analysis.AnalysisScope;
+import com.intellij.ide.highlighter.JavaFileType;
+import com.intellij.openapi.application.AccessToken;
+import com.intellij.openapi.application.Application;
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.progress.ProcessCanceledException;
+import com.intellij.openapi.progress.ProgressIndicator;
+import com.intellij.openapi.progress.ProgressManager;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.psi.*;
+import com.intellij.psi.search.GlobalSearchScope;
+import com.intellij.psi.search.PsiSearchHelper;
+import com.intellij.psi.util.PsiTreeUtil;
+import com.intellij.util.Processor;
+import com.sixrr.metrics.utils.ClassUtils;
+import com.sixrr.stockmetrics.i18n.StockMetricsBundle;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Builds the dependency map for an analysis scope, visiting the files of the scope on a number of worker threads.
+ * <p>
+ * For a scope smaller than the whole project, only the files needed to answer queries about the classes and packages
+ * of the scope are visited.  Those are the files reachable along the dependencies from the scope, because of
+ * transitive dependencies and level orders, and the files from which the scope is reachable, because of transitive
+ * dependents.  Files depending on a set of files are found through the word index, as the files mentioning the name of
+ * one of their classes, or of a non-private member whose type names one of their classes, and are visited to check
+ * whether they actually depend on them.  The latter find the files using a class without naming it, for example
+ * through the implicitly typed parameter of a lambda, or a lambda implementing it.  The names of the members of the
+ * classes themselves are not searched, since common names such as get or run would match most of the project.  A
+ * file calling a member inherited from a class names the subclass, which depends on the class and is searched in
+ * turn.  Whenever a file is included, so are the other files of its package, for the package metrics.  The map is
+ * built in rounds, until no more files need to be visited.
+ */
+public class DependencyMapBuilder {
+
+    private final Project project;
+    private final int threadCount;
+    private final ProgressIndicator indicator;
+    private final DependencyMapImpl dependencyMap = new DependencyMapImpl();
+    private final Set<VirtualFile> visitedFiles = new HashSet<VirtualFile>();
+    private final Map<VirtualFile, Set<VirtualFile>> fileDependencies = new HashMap<VirtualFile, Set<VirtualFile>>();
+    private final Map<VirtualFile, Set<VirtualFile>> fileDependents = new HashMap<VirtualFile, Set<VirtualFile>>();
+    private int numFilesToVisit = 0;
+
+    public DependencyMapBuilder(Project project, int threadCount) {
+        this.project = project;
+        this.threadCount = Math.max(1, threadCount);
+        indicator = ProgressManager.getInstance().getProgressIndicator();
+    }
+
+    public DependencyMapImpl build(AnalysisScope scope) {
+        final List<VirtualFile> scopeFiles = collectJavaFiles(scope);
+        if (scope.getScopeType() == AnalysisScope.PROJECT) {
+            numFilesToVisit = scopeFiles.size();
+            visit(scopeFiles);
+            return dependencyMap;
+        }
+        final AnalysisScope projectScope = new AnalysisScope(project);
+        numFilesToVisit = projectScope.getFileCount();
+        final Set<VirtualFile> seeds = addPackageFiles(new HashSet<VirtualFile>(scopeFiles), projectScope);
+        final Map<String, Set<VirtualFile>> searchedWords = new HashMap<String, Set<VirtualFile>>();
+        final Set<VirtualFile> searchedFiles = new HashSet<VirtualFile>();
+        while (true) {
+            final Set<VirtualFile> dependencyClosure =
+                    addPackageFiles(closure(seeds, fileDependencies), projectScope);
+            final Set<VirtualFile> dependentClosure =
+                    addPackageFiles(closure(seeds, fileDependents), projectScope);
+            final Set<VirtualFile> filesToVisit = new HashSet<VirtualFile>();
+            for (VirtualFile file : dependencyClosure) {
+                if (projectScope.contains(file) && !visitedFiles.contains(file)) {
+                    filesToVisit.add(file);
+                }
+            }
+            for (VirtualFile file : dependentClosure) {
+                if (!visitedFiles.contains(file)) {
+                    filesToVisit.add(file);
+                } else if (searchedFiles.add(file)) {
+                    for (VirtualFile candidate : findFilesMentioning(file, searchedWords, projectScope)) {
+                        if (!visitedFiles.contains(candidate)) {
+                            filesToVisit.add(candidate);
+                        }
+                    }
+                }
+            }
+            if (filesToVisit.isEmpty()) {
+                return dependencyMap;
+            }
+            visit(new ArrayList<VirtualFile>(filesToVisit));
+        }
+    }
+
+    private static Set<VirtualFile> closure(Set<VirtualFile> seeds, Map<VirtualFile, Set<VirtualFile>> edges) {
+        final Set<VirtualFile> result = new HashSet<VirtualFile>(seeds);
+        final List<VirtualFile> pending = new ArrayList<VirtualFile>(seeds);
+        while (!pending.isEmpty()) {
+            final Set<VirtualFile> neighbours = edges.get(pending.remove(pending.size() - 1));
+            if (neighbours == null) {
+                continue;
+            }
+            for (VirtualFile neighbour : neighbours) {
+                if (result.add(neighbour)) {
+                    pending.add(neighbour);
+                }
+            }
+        }
+        return result;
+    }
+
+    private Set<VirtualFile> addPackageFiles(final Set<VirtualFile> files, final AnalysisScope projectScope) {
+        final PsiManager psiManager = PsiManager.getInstance(project);
+        final GlobalSearchScope searchScope = GlobalSearchScope.projectScope(project);
+        ApplicationManager.getApplication().runReadAction(new Runnable() {
+            @Override
+            public void run() {
+                final Set<PsiPackage> packages = new HashSet<PsiPackage>();
+                for (VirtualFile file : files) {
+                    final PsiFile psiFile = file.isValid() ? psiManager.findFile(file) : null;
+                    if (psiFile instanceof PsiJavaFile) {
+                        final PsiPackage aPackage = ClassUtils.findPackage(psiFile);
+                        if (aPackage != null) {
+                            packages.add(aPackage);
+                        }
+                    }
+                }
+                for (PsiPackage aPackage : packages) {
+                    indicator.checkCanceled();
+                    for (PsiDirectory directory : aPackage.getDirectories(searchScope)) {
+                        for (PsiFile file : directory.getFiles()) {
+                            final VirtualFile virtualFile = file.getVirtualFile();
+                            if (file instanceof PsiJavaFile && virtualFile != null &&
+                                    projectScope.contains(virtualFile)) {
+                                files.add(virtualFile);
+                            }
+                        }
+                    }
+                }
+            }
+        });
+        return files;
+    }
+
+    /**
+     * @return the files of the project mentioning the name of a class declared in the specified file, or of a member
+     * of another class whose type names such a class.
+     * @param searchedWords  the words searched before, mapped to the files found, so each word is searched only once.
+     */
+    private Set<VirtualFile> findFilesMentioning(final VirtualFile file,
+                                                 final Map<String, Set<VirtualFile>> searchedWords,
+                                                 final AnalysisScope projectScope) {
+        final Set<VirtualFile> result = new HashSet<VirtualFile>();
+        final PsiManager psiManager = PsiManager.getInstance(project);
+        ApplicationManager.getApplication().runReadAction(new Runnable() {
+            @Override
+            public void run() {
+                final PsiFile psiFile = file.isValid() ? psiManager.findFile(file) : null;
+                if (psiFile == null) {
+                    return;
+                }
+                final Set<String> classNames = new HashSet<String>();
+                final Set<String> memberNames = new HashSet<String>();
+                for (PsiClass aClass : PsiTreeUtil.findChildrenOfType(psiFile, PsiClass.class)) {
+                    if (aClass instanceof PsiAnonymousClass || aClass instanceof PsiTypeParameter) {
+                        continue;
+                    }
+                    classNames.add(aClass.getName());
+                }
+                classNames.remove(null);
+                final Set<VirtualFile> namingFiles = new HashSet<VirtualFile>();
+                for (String className : classNames) {
+                    namingFiles.addAll(findFilesWithWord(className, searchedWords, projectScope));
+                }
+                result.addAll(namingFiles);
+                for (VirtualFile namingFile : namingFiles) {
+                    indicator.checkCanceled();
+                    final PsiFile namingPsiFile = namingFile.isValid() ? psiManager.findFile(namingFile) : null;
+                    if (namingPsiFile == null) {
+                        continue;
+                    }
+                    for (PsiClass aClass : PsiTreeUtil.findChildrenOfType(namingPsiFile, PsiClass.class)) {
+                        addMemberNames(aClass, classNames, memberNames);
+                    }
+                }
+                for (String memberName : memberNames) {
+                    result.addAll(findFilesWithWord(memberName, searchedWords, projectScope));
+                }
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Adds the names of the non-private members of the class whose type names one of the specified classes.  Private
+     * members are only used in the file of the class, which is known to name the classes already.
+     */
+    private static void addMemberNames(PsiClass aClass, Set<String> typeNames, Set<String> names) {
+        for (PsiMethod method : aClass.getMethods()) {
+            if (method.isConstructor() || method.hasModifierProperty(PsiModifier.PRIVATE)) {
+                continue;
+            }
+            boolean found = names(method.getReturnType(), typeNames);
+            for (PsiParameter parameter : method.getParameterList().getParameters()) {
+                found = found || names(parameter.getType(), typeNames);
+            }
+            if (found) {
+                names.add(method.getName());
+            }
+        }
+        for (PsiField field : aClass.getFields()) {
+            if (!field.hasModifierProperty(PsiModifier.PRIVATE) && names(field.getType(), typeNames)) {
+                names.add(field.getName());
+            }
+        }
+    }
+
+    private static boolean names(@Nullable PsiType type, Set<String> classNames) {
+        if (type == null) {
+            return false;
+        }
+        final String text = type.getCanonicalText();
+        int start = 0;
+        for (int i = 0; i <= text.length(); i++) {
+            if (i == text.length() || !Character.isJavaIdentifierPart(text.charAt(i))) {
+                if (i > start && classNames.contains(text.substring(start, i))) {
+                    return true;
+                }
+                start = i + 1;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Must be called inside a read action.
+     */
+    private Set<VirtualFile> findFilesWithWord(String word, Map<String, Set<VirtualFile>> searchedWords,
+                                               final AnalysisScope projectScope) {
+        final Set<VirtualFile> searched = searchedWords.get(word);
+        if (searched != null) {
+            return searched;
+        }
+        indicator.checkCanceled();
+        final Set<VirtualFile> result = new HashSet<VirtualFile>();
+        final PsiSearchHelper searchHelper = PsiSearchHelper.SERVICE.getInstance(project);
+        searchHelper.processAllFilesWithWord(word, GlobalSearchScope.projectScope(project), new Processor<PsiFile>() {
+            @Override
+            public boolean process(PsiFile candidate) {
+                final VirtualFile virtualFile = candidate.getVirtualFile();
+                if (candidate instanceof PsiJavaFile && virtualFile != null && projectScope.contains(virtualFile)) {
+                    result.add(virtualFile);
+                }
+                return true;
+            }
+        }, true);
+        searchedWords.put(word, result);
+        return result;
+    }
+
+    private static List<VirtualFile> collectJavaFiles(AnalysisScope scope) {
+        final List<VirtualFile> files = new ArrayList<VirtualFile>(scope.getFileCount());
+        scope.accept(new Processor<VirtualFile>() {
+            @Override
+            public boolean process(VirtualFile virtualFile) {
+                if (virtualFile.getFileType() == JavaFileType.INSTANCE) {
+                    files.add(virtualFile);
+                }
+                return true;
+            }
+        });
+        return files;
+    }
+
+    /**
+     * Visits the specified files on the worker threads, and adds the dependencies found to the map.
+     */
+    private void visit(final List<VirtualFile> files) {
+        final PsiManager psiManager = PsiManager.getInstance(project);
+        final Application application = ApplicationManager.getApplication();
+        final int numWorkers = Math.max(1, Math.min(threadCount, files.size()));
+        final AtomicInteger nextFile = new AtomicInteger(0);
+        final int numFilesVisited = visitedFiles.size();
+        final List<DependencyCollector> collectors = new ArrayList<DependencyCollector>(numWorkers);
+        final List<Runnable> workers = new ArrayList<Runnable>(numWorkers);
+        for (int i = 0; i < numWorkers; i++) {
+            final DependencyCollector collector = new DependencyCollector();
+            collectors.add(collector);
+            workers.add(new Runnable() {
+                @Override
+                public void run() {
+                    for (int j = nextFile.getAndIncrement(); j < files.size(); j = nextFile.getAndIncrement()) {
+                        indicator.checkCanceled();
+                        final VirtualFile virtualFile = files.get(j);
+                        indicator.setText(StockMetricsBundle.message(
+                                "building.dependency.structure.progress.string", virtualFile.getName()));
+                        indicator.setFraction((double) (numFilesVisited + j) / (double) numFilesToVisit);
+                        final AccessToken token = application.acquireReadActionLock();
+                        try {
+                            final PsiFile file = virtualFile.isValid() ? psiManager.findFile(virtualFile) : null;
+                            if (file instanceof PsiJavaFile) {
+                                collector.collect(file);
+                            }
+                        } finally {
+                            token.finish();
+                        }
+                    }
+                }
+            });
+        }
+        runWorkers(workers);
+        visitedFiles.addAll(files);
+        for (DependencyCollector collector : collectors) {
+            dependencyMap.addDependencies(collector);
+            for (Map.Entry<VirtualFile, Set<VirtualFile>> entry : collector.getFileDependencies().entrySet()) {
+                final VirtualFile file = entry.getKey();
+                for (VirtualFile referencedFile : entry.getValue()) {
+                    add(file, referencedFile, fileDependencies);
+                    add(referencedFile, file, fileDependents);
+                }
+            }
+        }
+    }
+
+    private static void add(VirtualFile key, VirtualFile value, Map<VirtualFile, Set<VirtualFile>> map) {
+        Set<VirtualFile> set = map.get(key);
+        if (set == null) {
+            set = new HashSet<VirtualFile>();
+            map.put(key, set);
+        }
+        set.add(value);
+    }
+
+    /**
+     * Runs the workers on a pool of threads, or on the current thread if there is only one.
+     */
+    private void runWorkers(List<Runnable> workers) {
+        if (workers.size() == 1) {
+            workers.get(0).run();
+            return;
+        }
+        final ExecutorService executor = Executors.newFixedThreadPool(workers.size());
+        try {
+            final List<Future<?>> futures = new ArrayList<Future<?>>(workers.size());
+            for (final Runnable worker : workers) {
+                futures.add(executor.submit(new Runnable() {
+                    @Override
+                    public void run() {
+                        ProgressManager.getInstance().runProcess(worker, indicator);
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ProcessCanceledException();
+        } catch (ExecutionException e) {
+            final Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new RuntimeException(cause);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
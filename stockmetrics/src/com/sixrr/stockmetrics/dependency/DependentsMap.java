@@ -35,5 +35,12 @@ public interface DependentsMap {
 
     Set<PsiClass> calculateTransitiveDependents(PsiClass aClass);
 
+    /**
+     * @return the number of classes in the transitive dependents of the specified class, including the class itself.
+     */
+    int calculateNumTransitiveDependents(PsiClass aClass);
+
     Set<PsiPackage> calculateTransitivePackageDependents(PsiPackage aPackage);
+
+    int calculateNumTransitivePackageDependents(PsiPackage aPackage);
 }
@@ -0,0 +1,189 @@
+/*
+ * Copyright 2005-2016 Sixth and Red River Software, Bas Leijdekkers
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.sixrr.stockmetrics.dependency;
+
+import gnu.trove.TLongHashingStrategy;
+import gnu.trove.TLongIntHashMap;
+import gnu.trove.TLongIntIterator;
+
+import java.util.Arrays;
+
+/**
+ * The weighted edges between two sets of interned nodes, stored in compressed sparse row form in both directions,
+ * with the strengths of the edges kept for the forward direction only.
+ * Edges are collected in a hash map while the graph is built, and compacted into primitive arrays on the first query.
+ * For each source node the targets are sorted, as are the sources of each target node.
+ */
+class EdgeTable {
+
+    private static final int[] EMPTY = new int[0];
+
+    /**
+     * Trove hashes a long as the exclusive or of its halves, which for an edge key is source ^ target.  Nearby node
+     * IDs, the common case as IDs are handed out in order, would then collide, so the keys are mixed first.
+     */
+    private static final TLongHashingStrategy EDGE_HASHING = new TLongHashingStrategy() {
+        @Override
+        public int computeHashCode(long key) {
+            // the finalizer of MurmurHash3
+            key ^= key >>> 33;
+            key *= 0xff51afd7ed558ccdL;
+            key ^= key >>> 33;
+            key *= 0xc4ceb9fe1a85ec53L;
+            key ^= key >>> 33;
+            return (int) key;
+        }
+    };
+
+    private TLongIntHashMap pendingEdges = new TLongIntHashMap(EDGE_HASHING);
+
+    private int[] offsets = new int[]{0};
+    private int[] targets = EMPTY;
+    private int[] strengths = EMPTY;
+    private int[] reverseOffsets = new int[]{0};
+    private int[] sources = EMPTY;
+
+    /**
+     * Adds an edge of the specified strength, or adds the strength to that of the existing edge.
+     */
+    void add(int source, int target, int strength) {
+        if (pendingEdges == null) {
+            thaw();
+        }
+        pendingEdges.adjustOrPutValue(((long) source << 32) | target, strength, strength);
+    }
+
+    private void thaw() {
+        pendingEdges = new TLongIntHashMap(EDGE_HASHING);
+        for (int source = 0; source < offsets.length - 1; source++) {
+            for (int i = offsets[source]; i < offsets[source + 1]; i++) {
+                pendingEdges.put(((long) source << 32) | targets[i], strengths[i]);
+            }
+        }
+    }
+
+    /**
+     * Compacts the edges collected so far, if any were added since the last call.
+     */
+    void freeze() {
+        if (pendingEdges == null) {
+            return;
+        }
+        final int numEdges = pendingEdges.size();
+        final int[] edgeSources = new int[numEdges];
+        // the target in the high and the strength in the low half, so sorting orders the edges by target
+        final long[] edgeTargets = new long[numEdges];
+        int numSources = 0;
+        int numTargets = 0;
+        final TLongIntIterator iterator = pendingEdges.iterator();
+        for (int i = 0; i < numEdges; i++) {
+            iterator.advance();
+            final long key = iterator.key();
+            final int source = (int) (key >>> 32);
+            final int target = (int) key;
+            edgeSources[i] = source;
+            edgeTargets[i] = ((long) target << 32) | (iterator.value() & 0xffffffffL);
+            numSources = Math.max(numSources, source + 1);
+            numTargets = Math.max(numTargets, target + 1);
+        }
+        offsets = new int[numSources + 1];
+        for (int source : edgeSources) {
+            offsets[source + 1]++;
+        }
+        for (int i = 0; i < numSources; i++) {
+            offsets[i + 1] += offsets[i];
+        }
+        final long[] rows = new long[numEdges];
+        final int[] next = Arrays.copyOf(offsets, numSources);
+        for (int i = 0; i < numEdges; i++) {
+            rows[next[edgeSources[i]]++] = edgeTargets[i];
+        }
+        targets = new int[numEdges];
+        strengths = new int[numEdges];
+        reverseOffsets = new int[numTargets + 1];
+        for (int source = 0; source < numSources; source++) {
+            Arrays.sort(rows, offsets[source], offsets[source + 1]);
+        }
+        for (int i = 0; i < numEdges; i++) {
+            targets[i] = (int) (rows[i] >>> 32);
+            strengths[i] = (int) rows[i];
+            reverseOffsets[targets[i] + 1]++;
+        }
+        for (int i = 0; i < numTargets; i++) {
+            reverseOffsets[i + 1] += reverseOffsets[i];
+        }
+        // visiting the sources in order keeps the sources of each target sorted
+        sources = new int[numEdges];
+        final int[] nextSource = Arrays.copyOf(reverseOffsets, numTargets);
+        for (int source = 0; source < numSources; source++) {
+            for (int i = offsets[source]; i < offsets[source + 1]; i++) {
+                sources[nextSource[targets[i]]++] = source;
+            }
+        }
+        pendingEdges = null;
+    }
+
+    int getSourceCount() {
+        return offsets.length - 1;
+    }
+
+    int getTargetCount() {
+        return reverseOffsets.length - 1;
+    }
+
+    /**
+     * @return the index of the first edge from the specified node, for use with {@link #getTarget(int)}.
+     */
+    int start(int source) {
+        return source < 0 || source >= getSourceCount() ? 0 : offsets[source];
+    }
+
+    /**
+     * @return the index after the last edge from the specified node.
+     */
+    int end(int source) {
+        return source < 0 || source >= getSourceCount() ? 0 : offsets[source + 1];
+    }
+
+    int getTarget(int index) {
+        return targets[index];
+    }
+
+    int reverseStart(int target) {
+        return target < 0 || target >= getTargetCount() ? 0 : reverseOffsets[target];
+    }
+
+    int reverseEnd(int target) {
+        return target < 0 || target >= getTargetCount() ? 0 : reverseOffsets[target + 1];
+    }
+
+    int getSource(int index) {
+        return sources[index];
+    }
+
+    int getStrength(int source, int target) {
+        final int index = Arrays.binarySearch(targets, start(source), end(source), target);
+        return index < 0 || target < 0 ? 0 : strengths[index];
+    }
+
+    <T> NodeSet<T> getTargets(int source, NodeTable<T> nodes) {
+        return new NodeSet<T>(nodes, targets, start(source), end(source));
+    }
+
+    <T> NodeSet<T> getSources(int target, NodeTable<T> nodes) {
+        return new NodeSet<T>(nodes, sources, reverseStart(target), reverseEnd(target));
+    }
+}
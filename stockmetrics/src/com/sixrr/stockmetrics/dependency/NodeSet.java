@@ -0,0 +1,77 @@
+/*
+ * Copyright 2005-2016 Sixth and Red River Software, Bas Leijdekkers
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.sixrr.stockmetrics.dependency;
+
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * An unmodifiable view of a sorted range of node IDs as a set of nodes.
+ */
+class NodeSet<T> extends AbstractSet<T> {
+
+    private final NodeTable<T> nodes;
+    private final int[] ids;
+    private final int start;
+    private final int end;
+
+    NodeSet(NodeTable<T> nodes, int[] ids, int start, int end) {
+        this.nodes = nodes;
+        this.ids = ids;
+        this.start = start;
+        this.end = end;
+    }
+
+    @Override
+    public Iterator<T> iterator() {
+        return new Iterator<T>() {
+            private int index = start;
+
+            @Override
+            public boolean hasNext() {
+                return index < end;
+            }
+
+            @Override
+            public T next() {
+                if (index >= end) {
+                    throw new NoSuchElementException();
+                }
+                return nodes.get(ids[index++]);
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        // safe, the lookup only calls hashCode() and equals() on the object
+        @SuppressWarnings("unchecked") final T node = (T) o;
+        final int id = nodes.find(node);
+        return id >= 0 && Arrays.binarySearch(ids, start, end, id) >= 0;
+    }
+
+    @Override
+    public int size() {
+        return end - start;
+    }
+}
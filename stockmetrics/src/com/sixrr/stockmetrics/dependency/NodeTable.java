@@ -0,0 +1,56 @@
+/*
+ * Copyright 2005-2016 Sixth and Red River Software, Bas Leijdekkers
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.sixrr.stockmetrics.dependency;
+
+import gnu.trove.TObjectIntHashMap;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Interns the nodes of a dependency graph, so edges can be stored as pairs of consecutive int IDs.
+ */
+class NodeTable<T> {
+
+    private final TObjectIntHashMap<T> ids = new TObjectIntHashMap<T>();
+    private final List<T> nodes = new ArrayList<T>();
+
+    int intern(T node) {
+        final int id = find(node);
+        if (id >= 0) {
+            return id;
+        }
+        nodes.add(node);
+        ids.put(node, nodes.size());
+        return nodes.size() - 1;
+    }
+
+    /**
+     * @return the ID of the specified node, or -1 if the node is not part of the graph.
+     */
+    int find(T node) {
+        // ids are stored plus one, because the map returns 0 for absent keys
+        return ids.get(node) - 1;
+    }
+
+    T get(int id) {
+        return nodes.get(id);
+    }
+
+    int size() {
+        return nodes.size();
+    }
+}
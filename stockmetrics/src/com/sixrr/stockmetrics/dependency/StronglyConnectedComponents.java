@@ -0,0 +1,158 @@
+/*
+ * Copyright 2005-2016 Sixth and Red River Software, Bas Leijdekkers
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.sixrr.stockmetrics.dependency;
+
+import java.util.Arrays;
+
+/**
+ * The strongly connected components of a dependency graph, found with Tarjan's algorithm in a single linear pass, and
+ * the level orders of the components, found by one sweep over the condensation of the graph.
+ */
+class StronglyConnectedComponents {
+
+    private final int[] nodeComponents;
+    private final int[][] members;
+    private final int[] levelOrders;
+    private final int[] adjustedLevelOrders;
+
+    StronglyConnectedComponents(EdgeTable edges, int numNodes) {
+        nodeComponents = findComponents(edges, numNodes);
+        int numComponents = 0;
+        for (int component : nodeComponents) {
+            numComponents = Math.max(numComponents, component + 1);
+        }
+        final int[] memberCounts = new int[numComponents];
+        for (int component : nodeComponents) {
+            memberCounts[component]++;
+        }
+        members = new int[numComponents][];
+        for (int i = 0; i < numComponents; i++) {
+            members[i] = new int[memberCounts[i]];
+        }
+        Arrays.fill(memberCounts, 0);
+        for (int node = 0; node < numNodes; node++) {
+            final int component = nodeComponents[node];
+            members[component][memberCounts[component]++] = node;
+        }
+
+        // components are numbered in reverse topological order, so all dependencies of a component come before it
+        levelOrders = new int[numComponents];
+        adjustedLevelOrders = new int[numComponents];
+        for (int component = 0; component < numComponents; component++) {
+            int levelOrder = 0;
+            int adjustedLevelOrder = 0;
+            for (int node : members[component]) {
+                for (int i = edges.start(node), end = edges.end(node); i < end; i++) {
+                    final int successorComponent = nodeComponents[edges.getTarget(i)];
+                    if (successorComponent != component) {
+                        levelOrder = Math.max(levelOrder, levelOrders[successorComponent]);
+                        adjustedLevelOrder = Math.max(adjustedLevelOrder, adjustedLevelOrders[successorComponent]);
+                    }
+                }
+            }
+            levelOrders[component] = levelOrder + 1;
+            adjustedLevelOrders[component] = adjustedLevelOrder + members[component].length;
+        }
+    }
+
+    /**
+     * Iterative version of Tarjan's algorithm, so deep dependency chains cannot overflow the stack.
+     * @return the component of each node.  Components are numbered in the order they are completed, which is a
+     * reverse topological order of the condensation.
+     */
+    private static int[] findComponents(EdgeTable edges, int numNodes) {
+        final int[] indices = new int[numNodes];
+        Arrays.fill(indices, -1);
+        final int[] lowLinks = new int[numNodes];
+        final int[] nextEdges = new int[numNodes];
+        final boolean[] onStack = new boolean[numNodes];
+        final int[] stack = new int[numNodes];
+        final int[] callStack = new int[numNodes];
+        final int[] nodeComponents = new int[numNodes];
+        int stackSize = 0;
+        int index = 0;
+        int numComponents = 0;
+        for (int root = 0; root < numNodes; root++) {
+            if (indices[root] >= 0) {
+                continue;
+            }
+            indices[root] = lowLinks[root] = index++;
+            nextEdges[root] = edges.start(root);
+            stack[stackSize++] = root;
+            onStack[root] = true;
+            callStack[0] = root;
+            int callDepth = 1;
+            while (callDepth > 0) {
+                final int node = callStack[callDepth - 1];
+                if (nextEdges[node] < edges.end(node)) {
+                    final int successor = edges.getTarget(nextEdges[node]++);
+                    if (indices[successor] < 0) {
+                        indices[successor] = lowLinks[successor] = index++;
+                        nextEdges[successor] = edges.start(successor);
+                        stack[stackSize++] = successor;
+                        onStack[successor] = true;
+                        callStack[callDepth++] = successor;
+                    } else if (onStack[successor]) {
+                        lowLinks[node] = Math.min(lowLinks[node], indices[successor]);
+                    }
+                    continue;
+                }
+                callDepth--;
+                if (callDepth > 0) {
+                    final int caller = callStack[callDepth - 1];
+                    lowLinks[caller] = Math.min(lowLinks[caller], lowLinks[node]);
+                }
+                if (lowLinks[node] == indices[node]) {
+                    int member;
+                    do {
+                        member = stack[--stackSize];
+                        onStack[member] = false;
+                        nodeComponents[member] = numComponents;
+                    } while (member != node);
+                    numComponents++;
+                }
+            }
+        }
+        return nodeComponents;
+    }
+
+    int getComponentCount() {
+        return members.length;
+    }
+
+    /**
+     * @return the component of the specified node, or -1 if the node is not part of the graph.
+     */
+    int getComponent(int node) {
+        return node < 0 || node >= nodeComponents.length ? -1 : nodeComponents[node];
+    }
+
+    /**
+     * @return the sorted IDs of the nodes in the specified component.
+     */
+    int[] getMembers(int component) {
+        return members[component];
+    }
+
+    int getLevelOrder(int component) {
+        return levelOrders[component];
+    }
+
+    int getAdjustedLevelOrder(int component) {
+        return adjustedLevelOrders[component];
+    }
+}
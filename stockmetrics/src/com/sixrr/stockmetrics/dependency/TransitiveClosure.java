@@ -0,0 +1,157 @@
+/*
+ * Copyright 2005-2016 Sixth and Red River Software, Bas Leijdekkers
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.sixrr.stockmetrics.dependency;
+
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Arrays;
+
+/**
+ * Reachability on the condensation of a dependency graph, either along its edges (dependencies) or against them
+ * (dependents).  The number of nodes reachable from each component is computed for all components at once, with
+ * word-packed bitsets swept over the components in topological order.  To bound memory use, the nodes are covered in
+ * blocks of bit positions, each block requiring one sweep.
+ */
+class TransitiveClosure {
+
+    private static final int MAXIMUM_WORDS = 1 << 21;
+
+    private final StronglyConnectedComponents components;
+    private final boolean reverse;
+    private final int[] offsets;
+    private final int[] neighbours;
+    private final int[] counts;
+
+    TransitiveClosure(StronglyConnectedComponents components, EdgeTable edges, boolean reverse) {
+        this.components = components;
+        this.reverse = reverse;
+        offsets = new int[components.getComponentCount() + 1];
+        neighbours = new int[collectNeighbours(edges, null)];
+        collectNeighbours(edges, neighbours);
+        counts = countReachableNodes();
+    }
+
+    /**
+     * Collects the distinct neighbouring components of each component into the result array, if not null, and stores
+     * the offsets of the neighbours of each component.
+     * @return the total number of neighbours.
+     */
+    private int collectNeighbours(EdgeTable edges, @Nullable int[] result) {
+        final int numComponents = components.getComponentCount();
+        final int[] lastSeen = new int[numComponents];
+        Arrays.fill(lastSeen, -1);
+        int numNeighbours = 0;
+        for (int component = 0; component < numComponents; component++) {
+            offsets[component] = numNeighbours;
+            for (int node : components.getMembers(component)) {
+                final int start = reverse ? edges.reverseStart(node) : edges.start(node);
+                final int end = reverse ? edges.reverseEnd(node) : edges.end(node);
+                for (int i = start; i < end; i++) {
+                    final int neighbour = components.getComponent(reverse ? edges.getSource(i) : edges.getTarget(i));
+                    if (neighbour != component && lastSeen[neighbour] != component) {
+                        lastSeen[neighbour] = component;
+                        if (result != null) {
+                            result[numNeighbours] = neighbour;
+                        }
+                        numNeighbours++;
+                    }
+                }
+            }
+        }
+        offsets[numComponents] = numNeighbours;
+        return numNeighbours;
+    }
+
+    private int[] countReachableNodes() {
+        final int numComponents = components.getComponentCount();
+        final int[] positions = new int[numComponents + 1];
+        for (int component = 0; component < numComponents; component++) {
+            positions[component + 1] = positions[component] + components.getMembers(component).length;
+        }
+        final int numNodes = positions[numComponents];
+        final int[] result = new int[numComponents];
+        if (numComponents == 0) {
+            return result;
+        }
+        final int wordsPerComponent =
+                Math.max(1, Math.min((numNodes + 63) >>> 6, MAXIMUM_WORDS / numComponents));
+        final long[] words = new long[numComponents * wordsPerComponent];
+        for (int blockStart = 0; blockStart < numNodes; blockStart += wordsPerComponent << 6) {
+            final int blockEnd = Math.min(numNodes, blockStart + (wordsPerComponent << 6));
+            Arrays.fill(words, 0L);
+            for (int i = 0; i < numComponents; i++) {
+                // neighbours along the edges have lower numbers, neighbours against the edges higher numbers
+                final int component = reverse ? numComponents - 1 - i : i;
+                final int base = component * wordsPerComponent;
+                for (int j = offsets[component]; j < offsets[component + 1]; j++) {
+                    final int neighbourBase = neighbours[j] * wordsPerComponent;
+                    for (int word = 0; word < wordsPerComponent; word++) {
+                        words[base + word] |= words[neighbourBase + word];
+                    }
+                }
+                final int start = Math.max(blockStart, positions[component]);
+                final int end = Math.min(blockEnd, positions[component + 1]);
+                for (int position = start; position < end; position++) {
+                    final int bit = position - blockStart;
+                    words[base + (bit >>> 6)] |= 1L << (bit & 63);
+                }
+                int count = 0;
+                for (int word = 0; word < wordsPerComponent; word++) {
+                    count += Long.bitCount(words[base + word]);
+                }
+                result[component] += count;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return the number of nodes reachable from the specified component, including its own members.
+     */
+    int getCount(int component) {
+        return counts[component];
+    }
+
+    /**
+     * @return the sorted IDs of the nodes reachable from the specified component, including its own members.
+     */
+    int[] getReachableNodes(int component) {
+        final int numComponents = components.getComponentCount();
+        final boolean[] visited = new boolean[numComponents];
+        final int[] pending = new int[numComponents];
+        final int[] result = new int[counts[component]];
+        int numPending = 0;
+        int numNodes = 0;
+        pending[numPending++] = component;
+        visited[component] = true;
+        while (numPending > 0) {
+            final int current = pending[--numPending];
+            final int[] members = components.getMembers(current);
+            System.arraycopy(members, 0, result, numNodes, members.length);
+            numNodes += members.length;
+            for (int j = offsets[current]; j < offsets[current + 1]; j++) {
+                final int neighbour = neighbours[j];
+                if (!visited[neighbour]) {
+                    visited[neighbour] = true;
+                    pending[numPending++] = neighbour;
+                }
+            }
+        }
+        Arrays.sort(result);
+        return result;
+    }
+}
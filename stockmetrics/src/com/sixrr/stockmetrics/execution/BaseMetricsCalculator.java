@@ -16,33 +16,25 @@
 
 package com.sixrr.stockmetrics.execution;
 
-import com.intellij.analysis.AnalysisScope;
-import com.intellij.ide.highlighter.JavaFileType;
-import com.intellij.openapi.application.AccessToken;
-import com.intellij.openapi.application.Application;
-import com.intellij.openapi.application.ApplicationManager;
 import com.intellij.openapi.progress.EmptyProgressIndicator;
-import com.intellij.openapi.progress.ProgressIndicator;
 import com.intellij.openapi.progress.ProgressManager;
-import com.intellij.openapi.project.Project;
+import com.intellij.openapi.util.Computable;
 import com.intellij.openapi.util.Key;
-import com.intellij.openapi.vfs.VirtualFile;
 import com.intellij.psi.PsiElementVisitor;
 import com.intellij.psi.PsiFile;
-import com.intellij.psi.PsiJavaFile;
-import com.intellij.psi.PsiManager;
-import com.intellij.util.Processor;
 import com.sixrr.metrics.Metric;
-import com.sixrr.metrics.MetricCalculator;
 import com.sixrr.metrics.MetricsExecutionContext;
 import com.sixrr.metrics.MetricsResultsHolder;
+import com.sixrr.metrics.SharedTraversalCalculator;
+import com.sixrr.metrics.utils.DispatchingElementVisitor;
 import com.sixrr.stockmetrics.dependency.DependencyMap;
+import com.sixrr.stockmetrics.dependency.DependencyMapBuilder;
 import com.sixrr.stockmetrics.dependency.DependencyMapImpl;
 import com.sixrr.stockmetrics.dependency.DependentsMap;
-import com.sixrr.stockmetrics.i18n.StockMetricsBundle;
 import com.sixrr.stockmetrics.metricModel.BaseMetric;
+import org.jetbrains.annotations.Nullable;
 
-public abstract class BaseMetricsCalculator implements MetricCalculator {
+public abstract class BaseMetricsCalculator implements SharedTraversalCalculator {
 
     private static final Key<DependencyMapImpl> dependencyMapKey = new Key<DependencyMapImpl>("dependencyMap");
 
@@ -50,6 +42,7 @@ public abstract class BaseMetricsCalculator implements MetricCalculator {
     protected MetricsResultsHolder resultsHolder = null;
     protected MetricsExecutionContext executionContext = null;
     private PsiElementVisitor visitor;
+    private PsiElementVisitor fileVisitor;
 
     @Override
     public void beginMetricsRun(Metric metric, MetricsResultsHolder resultsHolder,
@@ -61,6 +54,7 @@ public abstract class BaseMetricsCalculator implements MetricCalculator {
             calculateDependencies();
         }
         visitor = createVisitor();
+        fileVisitor = supportsSharedTraversal() ? new DispatchingElementVisitor(visitor) : visitor;
     }
 
     @Override
@@ -68,13 +62,28 @@ public abstract class BaseMetricsCalculator implements MetricCalculator {
         ProgressManager.getInstance().runProcess(new Runnable() {
             @Override
             public void run() {
-                file.accept(visitor);
+                file.accept(fileVisitor);
             }
         }, new EmptyProgressIndicator());
     }
 
     protected abstract PsiElementVisitor createVisitor();
 
+    /**
+     * Calculators which override this method to return true take part in the shared traversal of each file,
+     * instead of walking every file on their own.  The visitor returned by {@link #createVisitor()} must then
+     * not descend into child elements itself.
+     */
+    protected boolean supportsSharedTraversal() {
+        return false;
+    }
+
+    @Override
+    @Nullable
+    public final PsiElementVisitor getSharedVisitor() {
+        return supportsSharedTraversal() ? visitor : null;
+    }
+
     @Override
     public void endMetricsRun() {}
 
@@ -87,43 +96,15 @@ public abstract class BaseMetricsCalculator implements MetricCalculator {
     }
 
     private void calculateDependencies() {
-        final DependencyMapImpl dependencyMap = new DependencyMapImpl();
-        final ProgressManager progressManager = ProgressManager.getInstance();
-        final ProgressIndicator progressIndicator = progressManager.getProgressIndicator();
-
-        final Project project = executionContext.getProject();
-        final AnalysisScope analysisScope = new AnalysisScope(project);
-        final int allFilesCount = analysisScope.getFileCount();
-        final PsiManager psiManager = PsiManager.getInstance(project);
-        final Application application = ApplicationManager.getApplication();
-
-        analysisScope.accept(new Processor<VirtualFile>() {
-
-            private int dependencyProgress = 0;
-
-            @Override
-            public boolean process(VirtualFile virtualFile) {
-                final String fileName = virtualFile.getName();
-                progressIndicator.setText(
-                        StockMetricsBundle.message("building.dependency.structure.progress.string", fileName));
-                progressIndicator.setFraction((double) dependencyProgress / (double) allFilesCount);
-                dependencyProgress++;
-                if (virtualFile.getFileType() != JavaFileType.INSTANCE) {
-                    return true;
-                }
-                final AccessToken token = application.acquireReadActionLock();
-                try {
-                    final PsiFile file = psiManager.findFile(virtualFile);
-                    if (!(file instanceof PsiJavaFile)) {
-                        return true;
+        final DependencyMapImpl dependencyMap = executionContext.runSharedPhase("Dependency map",
+                new Computable<DependencyMapImpl>() {
+                    @Override
+                    public DependencyMapImpl compute() {
+                        final DependencyMapBuilder builder = new DependencyMapBuilder(executionContext.getProject(),
+                                executionContext.getThreadCount());
+                        return builder.build(executionContext.getScope());
                     }
-                    dependencyMap.build(file);
-                } finally {
-                    token.finish();
-                }
-                return true;
-            }
-        });
+                });
         executionContext.putUserData(dependencyMapKey, dependencyMap);
     }
 }
@@ -18,21 +18,54 @@ package com.sixrr.stockmetrics.fileTypeMetrics;
 
 import com.intellij.openapi.fileTypes.FileType;
 import com.intellij.psi.PsiElement;
+import com.sixrr.metrics.PartialResultCalculator;
 import com.sixrr.metrics.utils.BucketedCount;
 import com.sixrr.metrics.utils.ClassUtils;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 import java.util.Set;
 
-public abstract class ElementCountFileTypeCalculator extends FileTypeCalculator {
+public abstract class ElementCountFileTypeCalculator extends FileTypeCalculator
+        implements PartialResultCalculator<BucketedCount<FileType>> {
 
-    private final BucketedCount<FileType> elementCountsPerFileType = new BucketedCount<FileType>();
+    private BucketedCount<FileType> elementCountsPerFileType = new BucketedCount<FileType>();
 
     @Override
-    public void endMetricsRun() {
-        final Set<FileType> fileTypes = elementCountsPerFileType.getBuckets();
+    public final BucketedCount<FileType> takePartialResult() {
+        if (elementCountsPerFileType.isEmpty()) {
+            return null;
+        }
+        final BucketedCount<FileType> result = elementCountsPerFileType;
+        elementCountsPerFileType = new BucketedCount<FileType>();
+        return result;
+    }
+
+    @NotNull
+    @Override
+    public final BucketedCount<FileType> reduce(@NotNull BucketedCount<FileType> first,
+                                                @NotNull BucketedCount<FileType> second) {
+        final BucketedCount<FileType> result = new BucketedCount<FileType>(first);
+        result.addAll(second);
+        return result;
+    }
+
+    @NotNull
+    @Override
+    public final BucketedCount<FileType> accumulate(@NotNull BucketedCount<FileType> accumulated,
+                                                    @NotNull BucketedCount<FileType> partialResult) {
+        accumulated.addAll(partialResult);
+        return accumulated;
+    }
+
+    @Override
+    public void postResult(@Nullable BucketedCount<FileType> result) {
+        if (result == null) {
+            return;
+        }
+        final Set<FileType> fileTypes = result.getBuckets();
         for (FileType fileType : fileTypes) {
-            final int count = elementCountsPerFileType.getBucketValue(fileType);
+            final int count = result.getBucketValue(fileType);
             postMetric(fileType, count);
         }
     }
@@ -18,25 +18,58 @@ package com.sixrr.stockmetrics.fileTypeMetrics;
 
 import com.intellij.openapi.fileTypes.FileType;
 import com.intellij.psi.PsiElement;
-import com.sixrr.metrics.utils.BucketedCount;
+import com.sixrr.metrics.PartialResultCalculator;
+import com.sixrr.metrics.utils.BucketedRatio;
 import com.sixrr.metrics.utils.ClassUtils;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 import java.util.Set;
 
 /**
  * @author Bas Leijdekkers
  */
-public abstract class ElementRatioFileTypeCalculator extends FileTypeCalculator {
+public abstract class ElementRatioFileTypeCalculator extends FileTypeCalculator
+        implements PartialResultCalculator<BucketedRatio<FileType>> {
 
-    private final BucketedCount<FileType> numeratorPerModule = new BucketedCount<FileType>();
-    private final BucketedCount<FileType> denominatorPerModule = new BucketedCount<FileType>();
+    private BucketedRatio<FileType> ratioPerFileType = new BucketedRatio<FileType>();
 
     @Override
-    public void endMetricsRun() {
-        final Set<FileType> fileTypes = numeratorPerModule.getBuckets();
+    public final BucketedRatio<FileType> takePartialResult() {
+        if (ratioPerFileType.isEmpty()) {
+            return null;
+        }
+        final BucketedRatio<FileType> result = ratioPerFileType;
+        ratioPerFileType = new BucketedRatio<FileType>();
+        return result;
+    }
+
+    @NotNull
+    @Override
+    public final BucketedRatio<FileType> reduce(@NotNull BucketedRatio<FileType> first,
+                                                @NotNull BucketedRatio<FileType> second) {
+        final BucketedRatio<FileType> result = new BucketedRatio<FileType>(first);
+        result.addAll(second);
+        return result;
+    }
+
+    @NotNull
+    @Override
+    public final BucketedRatio<FileType> accumulate(@NotNull BucketedRatio<FileType> accumulated,
+                                                    @NotNull BucketedRatio<FileType> partialResult) {
+        accumulated.addAll(partialResult);
+        return accumulated;
+    }
+
+    @Override
+    public void postResult(@Nullable BucketedRatio<FileType> result) {
+        if (result == null) {
+            return;
+        }
+        final Set<FileType> fileTypes = result.getBuckets();
         for (final FileType fileType : fileTypes) {
-            final int numerator = numeratorPerModule.getBucketValue(fileType);
-            final int denominator = denominatorPerModule.getBucketValue(fileType);
+            final int numerator = result.getNumerator(fileType);
+            final int denominator = result.getDenominator(fileType);
 
             if (denominator == 0) {
                 postMetric(fileType, 0);
@@ -51,23 +84,22 @@ public abstract class ElementRatioFileTypeCalculator extends FileTypeCalculator
         if (fileType == null) {
             return;
         }
-        numeratorPerModule.createBucket(fileType);
-        denominatorPerModule.createBucket(fileType);
+        ratioPerFileType.createBucket(fileType);
     }
 
     protected void incrementNumerator(PsiElement element, int count) {
-        increment(element, count, numeratorPerModule);
+        final FileType fileType = ClassUtils.calculateFileType(element);
+        if (fileType == null) {
+            return;
+        }
+        ratioPerFileType.incrementNumerator(fileType, count);
     }
 
     protected void incrementDenominator(PsiElement element, int count) {
-        increment(element, count, denominatorPerModule);
-    }
-
-    private static void increment(PsiElement element, int count, BucketedCount<FileType> result) {
         final FileType fileType = ClassUtils.calculateFileType(element);
         if (fileType == null) {
             return;
         }
-        result.incrementBucketValue(fileType, count);
+        ratioPerFileType.incrementDenominator(fileType, count);
     }
 }
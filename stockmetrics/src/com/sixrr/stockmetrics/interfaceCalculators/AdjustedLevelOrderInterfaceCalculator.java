@@ -16,7 +16,7 @@
 
 package com.sixrr.stockmetrics.interfaceCalculators;
 
-import com.intellij.psi.JavaRecursiveElementVisitor;
+import com.intellij.psi.JavaElementVisitor;
 import com.intellij.psi.PsiClass;
 import com.intellij.psi.PsiElementVisitor;
 import com.sixrr.stockmetrics.dependency.DependencyMap;
@@ -28,11 +28,15 @@ public class AdjustedLevelOrderInterfaceCalculator extends InterfaceCalculator {
         return new Visitor();
     }
 
-    private class Visitor extends JavaRecursiveElementVisitor {
+    @Override
+    protected boolean supportsSharedTraversal() {
+        return true;
+    }
+
+    private class Visitor extends JavaElementVisitor {
 
         @Override
         public void visitClass(PsiClass aClass) {
-            super.visitClass(aClass);
             if (isInterface(aClass)) {
                 final DependencyMap dependencyMap = getDependencyMap();
                 final int levelOrder = dependencyMap.calculateAdjustedLevelOrder(aClass);
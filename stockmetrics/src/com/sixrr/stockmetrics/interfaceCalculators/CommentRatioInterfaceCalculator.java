@@ -17,10 +17,11 @@
 package com.sixrr.stockmetrics.interfaceCalculators;
 
 import com.intellij.psi.*;
+import com.sixrr.metrics.FileLocalCalculator;
 import com.sixrr.metrics.utils.ClassUtils;
 import com.sixrr.stockmetrics.utils.LineUtil;
 
-public class CommentRatioInterfaceCalculator extends InterfaceCalculator {
+public class CommentRatioInterfaceCalculator extends InterfaceCalculator implements FileLocalCalculator {
     private int commentLines = 0;
 
     @Override
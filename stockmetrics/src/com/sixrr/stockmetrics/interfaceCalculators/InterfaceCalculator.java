@@ -17,9 +17,15 @@
 package com.sixrr.stockmetrics.interfaceCalculators;
 
 import com.intellij.psi.PsiClass;
+import com.sixrr.metrics.ConcurrentMetricCalculator;
 import com.sixrr.stockmetrics.execution.BaseMetricsCalculator;
 
-public abstract class InterfaceCalculator extends BaseMetricsCalculator {
+public abstract class InterfaceCalculator extends BaseMetricsCalculator implements ConcurrentMetricCalculator {
+
+    @Override
+    public boolean isThreadSafe() {
+        return false;
+    }
 
     void postMetric(PsiClass aClass, int value) {
         resultsHolder.postInterfaceMetric(metric, aClass, (double) value);
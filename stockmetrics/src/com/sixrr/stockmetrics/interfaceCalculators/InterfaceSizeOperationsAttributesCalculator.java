@@ -24,11 +24,15 @@ public class InterfaceSizeOperationsAttributesCalculator extends InterfaceCalcul
         return new Visitor();
     }
 
-    private class Visitor extends JavaRecursiveElementVisitor {
+    @Override
+    protected boolean supportsSharedTraversal() {
+        return true;
+    }
+
+    private class Visitor extends JavaElementVisitor {
 
         @Override
         public void visitClass(PsiClass aClass) {
-            super.visitClass(aClass);
             if (!isInterface(aClass)) {
                 return;
             }
@@ -20,10 +20,11 @@ import com.intellij.psi.JavaRecursiveElementVisitor;
 import com.intellij.psi.PsiClass;
 import com.intellij.psi.PsiElementVisitor;
 import com.intellij.psi.javadoc.PsiDocComment;
+import com.sixrr.metrics.FileLocalCalculator;
 import com.sixrr.metrics.utils.ClassUtils;
 import com.sixrr.stockmetrics.utils.LineUtil;
 
-public class JavadocLinesOfCodeInterfaceCalculator extends InterfaceCalculator {
+public class JavadocLinesOfCodeInterfaceCalculator extends InterfaceCalculator implements FileLocalCalculator {
     private int elementCount = 0;
 
     @Override
@@ -16,23 +16,28 @@
 
 package com.sixrr.stockmetrics.interfaceCalculators;
 
-import com.intellij.psi.JavaRecursiveElementVisitor;
+import com.intellij.psi.JavaElementVisitor;
 import com.intellij.psi.PsiClass;
 import com.intellij.psi.PsiElementVisitor;
+import com.sixrr.metrics.FileLocalCalculator;
 import com.sixrr.stockmetrics.utils.LineUtil;
 
-public class LinesOfCodeInterfaceCalculator extends InterfaceCalculator {
+public class LinesOfCodeInterfaceCalculator extends InterfaceCalculator implements FileLocalCalculator {
 
     @Override
     protected PsiElementVisitor createVisitor() {
         return new Visitor();
     }
 
-    private class Visitor extends JavaRecursiveElementVisitor {
+    @Override
+    protected boolean supportsSharedTraversal() {
+        return true;
+    }
+
+    private class Visitor extends JavaElementVisitor {
 
         @Override
         public void visitClass(PsiClass aClass) {
-            super.visitClass(aClass);
             if (isInterface(aClass)) {
                 int linesOfCode = LineUtil.countLines(aClass);
                 final PsiClass[] innerClasses = aClass.getInnerClasses();
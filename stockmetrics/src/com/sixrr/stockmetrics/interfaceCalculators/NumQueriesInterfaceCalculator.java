@@ -17,19 +17,24 @@
 package com.sixrr.stockmetrics.interfaceCalculators;
 
 import com.intellij.psi.*;
+import com.sixrr.metrics.FileLocalCalculator;
 
-public class NumQueriesInterfaceCalculator extends InterfaceCalculator {
+public class NumQueriesInterfaceCalculator extends InterfaceCalculator implements FileLocalCalculator {
 
     @Override
     protected PsiElementVisitor createVisitor() {
         return new Visitor();
     }
 
-    private class Visitor extends JavaRecursiveElementVisitor {
+    @Override
+    protected boolean supportsSharedTraversal() {
+        return true;
+    }
+
+    private class Visitor extends JavaElementVisitor {
 
         @Override
         public void visitClass(PsiClass aClass) {
-            super.visitClass(aClass);
             if (isInterface(aClass)) {
                 final PsiMethod[] methods = aClass.getMethods();
                 int numQueries = 0;
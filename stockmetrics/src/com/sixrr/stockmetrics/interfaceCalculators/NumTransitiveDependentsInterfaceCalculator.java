@@ -16,28 +16,29 @@
 
 package com.sixrr.stockmetrics.interfaceCalculators;
 
-import com.intellij.psi.JavaRecursiveElementVisitor;
+import com.intellij.psi.JavaElementVisitor;
 import com.intellij.psi.PsiClass;
 import com.intellij.psi.PsiElementVisitor;
 import com.sixrr.stockmetrics.dependency.DependentsMap;
 
-import java.util.Set;
-
 public class NumTransitiveDependentsInterfaceCalculator extends InterfaceCalculator {
     @Override
     protected PsiElementVisitor createVisitor() {
         return new Visitor();
     }
 
-    private class Visitor extends JavaRecursiveElementVisitor {
+    @Override
+    protected boolean supportsSharedTraversal() {
+        return true;
+    }
+
+    private class Visitor extends JavaElementVisitor {
 
         @Override
         public void visitClass(PsiClass aClass) {
-            super.visitClass(aClass);
             if (isInterface(aClass)) {
                 final DependentsMap dependentsMap = getDependentsMap();
-                final Set<PsiClass> dependents = dependentsMap.calculateTransitiveDependents(aClass);
-                final int numDependents = dependents.size() - 1;
+                final int numDependents = dependentsMap.calculateNumTransitiveDependents(aClass) - 1;
                 postMetric(aClass, numDependents);
             }
         }
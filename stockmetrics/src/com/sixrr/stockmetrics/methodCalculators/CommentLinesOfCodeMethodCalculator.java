@@ -20,9 +20,10 @@ import com.intellij.psi.JavaRecursiveElementVisitor;
 import com.intellij.psi.PsiComment;
 import com.intellij.psi.PsiElementVisitor;
 import com.intellij.psi.PsiMethod;
+import com.sixrr.metrics.FileLocalCalculator;
 import com.sixrr.stockmetrics.utils.LineUtil;
 
-public class CommentLinesOfCodeMethodCalculator extends MethodCalculator {
+public class CommentLinesOfCodeMethodCalculator extends MethodCalculator implements FileLocalCalculator {
     private int methodNestingDepth = 0;
     private int elementCount = 0;
 
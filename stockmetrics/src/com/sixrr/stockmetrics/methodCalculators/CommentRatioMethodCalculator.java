@@ -20,9 +20,10 @@ import com.intellij.psi.JavaRecursiveElementVisitor;
 import com.intellij.psi.PsiComment;
 import com.intellij.psi.PsiElementVisitor;
 import com.intellij.psi.PsiMethod;
+import com.sixrr.metrics.FileLocalCalculator;
 import com.sixrr.stockmetrics.utils.LineUtil;
 
-public class CommentRatioMethodCalculator extends MethodCalculator {
+public class CommentRatioMethodCalculator extends MethodCalculator implements FileLocalCalculator {
     private int methodNestingDepth = 0;
     private int numerator = 0;
     private int denominator = 0;
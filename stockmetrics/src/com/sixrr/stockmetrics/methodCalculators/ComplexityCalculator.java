@@ -21,10 +21,11 @@ import com.intellij.psi.PsiElement;
 import com.intellij.psi.PsiElementVisitor;
 import com.intellij.psi.PsiMethod;
 import com.intellij.psi.util.PsiElementFilter;
+import com.sixrr.metrics.FileLocalCalculator;
 import com.sixrr.metrics.utils.MethodUtils;
 import com.sixrr.stockmetrics.utils.CyclomaticComplexityUtil;
 
-public abstract class ComplexityCalculator extends MethodCalculator {
+public abstract class ComplexityCalculator extends MethodCalculator implements FileLocalCalculator {
 
     @Override
     protected PsiElementVisitor createVisitor() {
@@ -17,9 +17,10 @@
 package com.sixrr.stockmetrics.methodCalculators;
 
 import com.intellij.psi.*;
+import com.sixrr.metrics.FileLocalCalculator;
 import com.sixrr.metrics.utils.MethodUtils;
 
-public class ConditionalNestingDepthCalculator extends MethodCalculator {
+public class ConditionalNestingDepthCalculator extends MethodCalculator implements FileLocalCalculator {
     private int methodNestingCount = 0;
     private int maximumDepth = 0;
     private int currentDepth = 0;
@@ -17,9 +17,10 @@
 package com.sixrr.stockmetrics.methodCalculators;
 
 import com.intellij.psi.*;
+import com.sixrr.metrics.FileLocalCalculator;
 import com.sixrr.metrics.utils.MethodUtils;
 
-public class ControlDensityCalculator extends MethodCalculator {
+public class ControlDensityCalculator extends MethodCalculator implements FileLocalCalculator {
     private int methodNestingDepth = 0;
     private int numerator = 0;
     private int denominator = 0;
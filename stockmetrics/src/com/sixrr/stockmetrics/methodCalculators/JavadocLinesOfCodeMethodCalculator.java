@@ -20,10 +20,11 @@ import com.intellij.psi.JavaRecursiveElementVisitor;
 import com.intellij.psi.PsiElementVisitor;
 import com.intellij.psi.PsiMethod;
 import com.intellij.psi.javadoc.PsiDocComment;
+import com.sixrr.metrics.FileLocalCalculator;
 import com.sixrr.stockmetrics.utils.LineUtil;
 import com.sixrr.metrics.utils.MethodUtils;
 
-public class JavadocLinesOfCodeMethodCalculator extends MethodCalculator {
+public class JavadocLinesOfCodeMethodCalculator extends MethodCalculator implements FileLocalCalculator {
     private int methodNestingDepth = 0;
     protected int elementCount = 0;
 
@@ -19,10 +19,11 @@ package com.sixrr.stockmetrics.methodCalculators;
 import com.intellij.psi.JavaRecursiveElementVisitor;
 import com.intellij.psi.PsiElementVisitor;
 import com.intellij.psi.PsiMethod;
+import com.sixrr.metrics.FileLocalCalculator;
 import com.sixrr.stockmetrics.utils.LineUtil;
 import com.sixrr.metrics.utils.MethodUtils;
 
-public class LinesOfCodeMethodCalculator extends MethodCalculator {
+public class LinesOfCodeMethodCalculator extends MethodCalculator implements FileLocalCalculator {
     private int methodNestingDepth = 0;
     private int elementCount = 0;
 
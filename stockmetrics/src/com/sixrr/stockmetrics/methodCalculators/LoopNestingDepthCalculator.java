@@ -17,9 +17,10 @@
 package com.sixrr.stockmetrics.methodCalculators;
 
 import com.intellij.psi.*;
+import com.sixrr.metrics.FileLocalCalculator;
 import com.sixrr.metrics.utils.MethodUtils;
 
-public class LoopNestingDepthCalculator extends MethodCalculator {
+public class LoopNestingDepthCalculator extends MethodCalculator implements FileLocalCalculator {
     private int methodNestingCount = 0;
     private int maximumDepth = 0;
     private int currentDepth = 0;
@@ -17,9 +17,16 @@
 package com.sixrr.stockmetrics.methodCalculators;
 
 import com.intellij.psi.PsiMethod;
+import com.sixrr.metrics.ConcurrentMetricCalculator;
 import com.sixrr.stockmetrics.execution.BaseMetricsCalculator;
 
-public abstract class MethodCalculator extends BaseMetricsCalculator {
+public abstract class MethodCalculator extends BaseMetricsCalculator implements ConcurrentMetricCalculator {
+
+    @Override
+    public boolean isThreadSafe() {
+        return false;
+    }
+
     void postMetric(PsiMethod method, int numerator, int denominator) {
         resultsHolder.postMethodMetric(metric, method, (double) numerator, (double) denominator);
     }
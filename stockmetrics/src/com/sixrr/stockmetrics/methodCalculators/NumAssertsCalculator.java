@@ -20,9 +20,10 @@ import com.intellij.psi.JavaRecursiveElementVisitor;
 import com.intellij.psi.PsiAssertStatement;
 import com.intellij.psi.PsiElementVisitor;
 import com.intellij.psi.PsiMethod;
+import com.sixrr.metrics.FileLocalCalculator;
 import com.sixrr.metrics.utils.MethodUtils;
 
-public class NumAssertsCalculator extends MethodCalculator {
+public class NumAssertsCalculator extends MethodCalculator implements FileLocalCalculator {
     private int methodNestingDepth = 0;
     private int elementCount = 0;
 
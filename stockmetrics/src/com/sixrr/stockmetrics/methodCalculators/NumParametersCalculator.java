@@ -17,8 +17,9 @@
 package com.sixrr.stockmetrics.methodCalculators;
 
 import com.intellij.psi.*;
+import com.sixrr.metrics.FileLocalCalculator;
 
-public class NumParametersCalculator extends MethodCalculator {
+public class NumParametersCalculator extends MethodCalculator implements FileLocalCalculator {
 
     private int methodNestingDepth = 0;
 
@@ -17,10 +17,11 @@
 package com.sixrr.stockmetrics.methodCalculators;
 
 import com.intellij.psi.*;
+import com.sixrr.metrics.FileLocalCalculator;
 import com.sixrr.stockmetrics.utils.ControlFlowUtils;
 import com.sixrr.metrics.utils.MethodUtils;
 
-public class NumReturnPointsCalculator extends MethodCalculator {
+public class NumReturnPointsCalculator extends MethodCalculator implements FileLocalCalculator {
     private int methodNestingDepth = 0;
     private int numReturnPoints = 0;
 
@@ -44,7 +44,7 @@ public class NumTimesCalledCalculator extends MethodCalculator {
                 MethodCallMap methodCallMap = executionContext.getUserData(key);
                 if(methodCallMap == null)
                 {
-                    methodCallMap = new MethodCallMapImpl();
+                    methodCallMap = new MethodCallMapImpl(executionContext);
                     executionContext.putUserData(key, methodCallMap);
                 }
                 final Set<PsiReference> methodCalls = methodCallMap.calculateMethodCallPoints(method);
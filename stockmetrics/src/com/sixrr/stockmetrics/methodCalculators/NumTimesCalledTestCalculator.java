@@ -43,7 +43,7 @@ public class NumTimesCalledTestCalculator extends MethodCalculator {
 
                 MethodCallMap methodCallMap = executionContext.getUserData(key);
                 if (methodCallMap == null) {
-                    methodCallMap = new MethodCallMapImpl();
+                    methodCallMap = new MethodCallMapImpl(executionContext);
                     executionContext.putUserData(key, methodCallMap);
                 }
                 final Set<PsiReference> methodCalls = methodCallMap.calculateTestMethodCallPoints(method);
@@ -17,8 +17,9 @@
 package com.sixrr.stockmetrics.methodCalculators;
 
 import com.intellij.psi.*;
+import com.sixrr.metrics.FileLocalCalculator;
 
-public class NumTypeParametersCalculator extends MethodCalculator {
+public class NumTypeParametersCalculator extends MethodCalculator implements FileLocalCalculator {
     private int methodNestingDepth = 0;
 
     @Override
@@ -19,9 +19,10 @@ package com.sixrr.stockmetrics.methodCalculators;
 import com.intellij.psi.JavaRecursiveElementVisitor;
 import com.intellij.psi.PsiElementVisitor;
 import com.intellij.psi.PsiMethod;
+import com.sixrr.metrics.FileLocalCalculator;
 import com.sixrr.stockmetrics.utils.TodoUtil;
 
-public class TodoCommentCountMethodCalculator extends MethodCalculator {
+public class TodoCommentCountMethodCalculator extends MethodCalculator implements FileLocalCalculator {
 
     @Override
     protected PsiElementVisitor createVisitor() {
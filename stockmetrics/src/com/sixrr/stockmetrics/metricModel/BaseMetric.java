@@ -17,11 +17,12 @@
 package com.sixrr.stockmetrics.metricModel;
 
 import com.sixrr.metrics.Metric;
+import com.sixrr.metrics.VersionedMetric;
 import org.jetbrains.annotations.NonNls;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
-public abstract class BaseMetric implements Metric {
+public abstract class BaseMetric implements VersionedMetric {
 
     protected BaseMetric() {
         final Class<?> aClass = getClass();
@@ -67,6 +68,15 @@ public abstract class BaseMetric implements Metric {
         return null;
     }
 
+    /**
+     * Override to increase the version when a metric calculates different values than before, so the values cached
+     * by earlier versions are not used.
+     */
+    @Override
+    public int getVersion() {
+        return 1;
+    }
+
     public boolean requiresDependents() {
         return false;
     }
@@ -27,11 +27,15 @@ public abstract class ClassCountingModuleCalculator extends ElementCountModuleCa
         return new Visitor();
     }
 
-    private class Visitor extends JavaRecursiveElementVisitor {
+    @Override
+    protected boolean supportsSharedTraversal() {
+        return true;
+    }
+
+    private class Visitor extends JavaElementVisitor {
 
         @Override
         public void visitClass(PsiClass aClass) {
-            super.visitClass(aClass);
             if (aClass instanceof PsiTypeParameter || aClass instanceof PsiEnumConstantInitializer) {
                 return;
             }
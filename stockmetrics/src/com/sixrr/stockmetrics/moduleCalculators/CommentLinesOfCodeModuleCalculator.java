@@ -17,9 +17,10 @@
 package com.sixrr.stockmetrics.moduleCalculators;
 
 import com.intellij.psi.*;
+import com.sixrr.metrics.FileLocalCalculator;
 import com.sixrr.stockmetrics.utils.LineUtil;
 
-public class CommentLinesOfCodeModuleCalculator extends ElementCountModuleCalculator {
+public class CommentLinesOfCodeModuleCalculator extends ElementCountModuleCalculator implements FileLocalCalculator {
 
     @Override
     protected PsiElementVisitor createVisitor() {
@@ -16,9 +16,10 @@
 package com.sixrr.stockmetrics.moduleCalculators;
 
 import com.intellij.psi.*;
+import com.sixrr.metrics.FileLocalCalculator;
 import com.sixrr.stockmetrics.utils.LineUtil;
 
-public class CommentRatioModuleCalculator extends ElementRatioModuleCalculator {
+public class CommentRatioModuleCalculator extends ElementRatioModuleCalculator implements FileLocalCalculator {
 
     @Override
     protected PsiElementVisitor createVisitor() {
@@ -18,20 +18,54 @@ package com.sixrr.stockmetrics.moduleCalculators;
 
 import com.intellij.openapi.module.Module;
 import com.intellij.psi.PsiElement;
+import com.sixrr.metrics.PartialResultCalculator;
 import com.sixrr.metrics.utils.BucketedCount;
 import com.sixrr.metrics.utils.ClassUtils;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 import java.util.Set;
 
-public abstract class ElementCountModuleCalculator extends ModuleCalculator {
+public abstract class ElementCountModuleCalculator extends ModuleCalculator
+        implements PartialResultCalculator<BucketedCount<Module>> {
 
-    private final BucketedCount<Module> elementCountPerModule = new BucketedCount<Module>();
+    private BucketedCount<Module> elementCountPerModule = new BucketedCount<Module>();
 
     @Override
-    public final void endMetricsRun() {
-        final Set<Module> modules = elementCountPerModule.getBuckets();
+    public final BucketedCount<Module> takePartialResult() {
+        if (elementCountPerModule.isEmpty()) {
+            return null;
+        }
+        final BucketedCount<Module> result = elementCountPerModule;
+        elementCountPerModule = new BucketedCount<Module>();
+        return result;
+    }
+
+    @NotNull
+    @Override
+    public final BucketedCount<Module> reduce(@NotNull BucketedCount<Module> first,
+                                              @NotNull BucketedCount<Module> second) {
+        final BucketedCount<Module> result = new BucketedCount<Module>(first);
+        result.addAll(second);
+        return result;
+    }
+
+    @NotNull
+    @Override
+    public final BucketedCount<Module> accumulate(@NotNull BucketedCount<Module> accumulated,
+                                                  @NotNull BucketedCount<Module> partialResult) {
+        accumulated.addAll(partialResult);
+        return accumulated;
+    }
+
+    @Override
+    public final void postResult(@Nullable BucketedCount<Module> result) {
+        if (result == null) {
+            return;
+        }
+        final Set<Module> modules = result.getBuckets();
         for (final Module module : modules) {
-            final int count = elementCountPerModule.getBucketValue(module);
+            final int count = result.getBucketValue(module);
             postMetric(module, count);
         }
     }
@@ -18,22 +18,55 @@ package com.sixrr.stockmetrics.moduleCalculators;
 
 import com.intellij.openapi.module.Module;
 import com.intellij.psi.PsiElement;
-import com.sixrr.metrics.utils.BucketedCount;
+import com.sixrr.metrics.PartialResultCalculator;
+import com.sixrr.metrics.utils.BucketedRatio;
 import com.sixrr.metrics.utils.ClassUtils;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 import java.util.Set;
 
-public abstract class ElementRatioModuleCalculator extends ModuleCalculator {
+public abstract class ElementRatioModuleCalculator extends ModuleCalculator
+        implements PartialResultCalculator<BucketedRatio<Module>> {
 
-    private final BucketedCount<Module> numeratorPerModule = new BucketedCount<Module>();
-    private final BucketedCount<Module> denominatorPerModule = new BucketedCount<Module>();
+    private BucketedRatio<Module> ratioPerModule = new BucketedRatio<Module>();
 
     @Override
-    public void endMetricsRun() {
-        final Set<Module> modules = numeratorPerModule.getBuckets();
+    public final BucketedRatio<Module> takePartialResult() {
+        if (ratioPerModule.isEmpty()) {
+            return null;
+        }
+        final BucketedRatio<Module> result = ratioPerModule;
+        ratioPerModule = new BucketedRatio<Module>();
+        return result;
+    }
+
+    @NotNull
+    @Override
+    public final BucketedRatio<Module> reduce(@NotNull BucketedRatio<Module> first,
+                                              @NotNull BucketedRatio<Module> second) {
+        final BucketedRatio<Module> result = new BucketedRatio<Module>(first);
+        result.addAll(second);
+        return result;
+    }
+
+    @NotNull
+    @Override
+    public final BucketedRatio<Module> accumulate(@NotNull BucketedRatio<Module> accumulated,
+                                                  @NotNull BucketedRatio<Module> partialResult) {
+        accumulated.addAll(partialResult);
+        return accumulated;
+    }
+
+    @Override
+    public void postResult(@Nullable BucketedRatio<Module> result) {
+        if (result == null) {
+            return;
+        }
+        final Set<Module> modules = result.getBuckets();
         for (final Module module : modules) {
-            final int numerator = numeratorPerModule.getBucketValue(module);
-            final int denominator = denominatorPerModule.getBucketValue(module);
+            final int numerator = result.getNumerator(module);
+            final int denominator = result.getDenominator(module);
 
             if (denominator == 0) {
                 postMetric(module, 0);
@@ -48,23 +81,22 @@ public abstract class ElementRatioModuleCalculator extends ModuleCalculator {
         if (module == null) {
             return;
         }
-        numeratorPerModule.createBucket(module);
-        denominatorPerModule.createBucket(module);
+        ratioPerModule.createBucket(module);
     }
 
     protected void incrementNumerator(PsiElement element, int count) {
-        increment(element, count, numeratorPerModule);
+        final Module module = ClassUtils.calculateModule(element);
+        if (module == null) {
+            return;
+        }
+        ratioPerModule.incrementNumerator(module, count);
     }
 
     protected void incrementDenominator(PsiElement element, int count) {
-        increment(element, count, denominatorPerModule);
-    }
-
-    private static void increment(PsiElement element, int count, BucketedCount<Module> result) {
         final Module module = ClassUtils.calculateModule(element);
         if (module == null) {
             return;
         }
-        result.incrementBucketValue(module, count);
+        ratioPerModule.incrementDenominator(module, count);
     }
 }
@@ -48,7 +48,7 @@ public class EncapsulationRatioModuleCalculator extends ElementRatioModuleCalcul
 
             ClassReferenceCache classReferenceCache = executionContext.getUserData(key);
             if (classReferenceCache == null) {
-                classReferenceCache = new ClassReferenceCache();
+                classReferenceCache = new ClassReferenceCache(executionContext);
                 executionContext.putUserData(key, classReferenceCache);
             }
             for (final PsiReference reference : classReferenceCache.findClassReferences(aClass)) {
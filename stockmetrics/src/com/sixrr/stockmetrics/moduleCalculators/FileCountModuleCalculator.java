@@ -19,8 +19,9 @@ package com.sixrr.stockmetrics.moduleCalculators;
 import com.intellij.openapi.fileTypes.FileType;
 import com.intellij.psi.PsiElementVisitor;
 import com.intellij.psi.PsiFile;
+import com.sixrr.metrics.FileLocalCalculator;
 
-public class FileCountModuleCalculator extends ElementCountModuleCalculator {
+public class FileCountModuleCalculator extends ElementCountModuleCalculator implements FileLocalCalculator {
 
     private final FileType fileType;
 
@@ -20,9 +20,10 @@ import com.intellij.openapi.fileTypes.FileType;
 import com.intellij.psi.PsiElementVisitor;
 import com.intellij.psi.PsiFile;
 import com.intellij.psi.PsiRecursiveElementVisitor;
+import com.sixrr.metrics.FileLocalCalculator;
 import com.sixrr.stockmetrics.utils.LineUtil;
 
-public class LinesOfCodeModuleCalculator extends ElementCountModuleCalculator {
+public class LinesOfCodeModuleCalculator extends ElementCountModuleCalculator implements FileLocalCalculator {
 
     private final FileType fileType;
 
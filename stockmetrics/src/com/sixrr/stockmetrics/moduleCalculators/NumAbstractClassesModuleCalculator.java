@@ -17,10 +17,11 @@
 package com.sixrr.stockmetrics.moduleCalculators;
 
 import com.intellij.psi.PsiClass;
+import com.sixrr.metrics.FileLocalCalculator;
 import com.sixrr.metrics.utils.ClassUtils;
 
 public class NumAbstractClassesModuleCalculator
-        extends ClassCountingModuleCalculator {
+        extends ClassCountingModuleCalculator implements FileLocalCalculator {
     @Override
     public boolean satisfies(PsiClass aClass) {
         return ClassUtils.isAbstract(aClass);
@@ -17,8 +17,9 @@
 package com.sixrr.stockmetrics.moduleCalculators;
 
 import com.intellij.psi.PsiClass;
+import com.sixrr.metrics.FileLocalCalculator;
 
-public class NumClassesModuleCalculator extends ClassCountingModuleCalculator {
+public class NumClassesModuleCalculator extends ClassCountingModuleCalculator implements FileLocalCalculator {
     @Override
     public boolean satisfies(PsiClass aClass) {
         return true;
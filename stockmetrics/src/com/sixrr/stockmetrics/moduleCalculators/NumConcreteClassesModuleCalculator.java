@@ -17,9 +17,10 @@
 package com.sixrr.stockmetrics.moduleCalculators;
 
 import com.intellij.psi.PsiClass;
+import com.sixrr.metrics.FileLocalCalculator;
 import com.sixrr.metrics.utils.ClassUtils;
 
-public class NumConcreteClassesModuleCalculator extends ClassCountingModuleCalculator {
+public class NumConcreteClassesModuleCalculator extends ClassCountingModuleCalculator implements FileLocalCalculator {
     @Override
     public boolean satisfies(PsiClass aClass) {
         return ClassUtils.isConcrete(aClass);
@@ -17,11 +17,12 @@
 package com.sixrr.stockmetrics.moduleCalculators;
 
 import com.intellij.psi.PsiClass;
+import com.sixrr.metrics.FileLocalCalculator;
 
 /**
  * @author Bas Leijdekkers
  */
-public class NumEnumClassesModuleCalculator extends ClassCountingModuleCalculator {
+public class NumEnumClassesModuleCalculator extends ClassCountingModuleCalculator implements FileLocalCalculator {
 
     @Override
     public boolean satisfies(PsiClass aClass) {
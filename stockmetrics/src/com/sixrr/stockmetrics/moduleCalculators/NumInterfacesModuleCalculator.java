@@ -17,8 +17,9 @@
 package com.sixrr.stockmetrics.moduleCalculators;
 
 import com.intellij.psi.PsiClass;
+import com.sixrr.metrics.FileLocalCalculator;
 
-public class NumInterfacesModuleCalculator extends ClassCountingModuleCalculator {
+public class NumInterfacesModuleCalculator extends ClassCountingModuleCalculator implements FileLocalCalculator {
     @Override
     public boolean satisfies(PsiClass aClass) {
         return aClass.isInterface();
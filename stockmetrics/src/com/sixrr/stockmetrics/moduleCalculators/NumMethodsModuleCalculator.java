@@ -20,8 +20,9 @@ import com.intellij.psi.JavaRecursiveElementVisitor;
 import com.intellij.psi.PsiElementVisitor;
 import com.intellij.psi.PsiJavaFile;
 import com.intellij.psi.PsiMethod;
+import com.sixrr.metrics.FileLocalCalculator;
 
-public class NumMethodsModuleCalculator extends ElementCountModuleCalculator {
+public class NumMethodsModuleCalculator extends ElementCountModuleCalculator implements FileLocalCalculator {
 
     @Override
     protected PsiElementVisitor createVisitor() {
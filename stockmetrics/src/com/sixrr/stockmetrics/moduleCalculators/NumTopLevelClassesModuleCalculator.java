@@ -17,9 +17,10 @@
 package com.sixrr.stockmetrics.moduleCalculators;
 
 import com.intellij.psi.PsiClass;
+import com.sixrr.metrics.FileLocalCalculator;
 import com.sixrr.metrics.utils.ClassUtils;
 
-public class NumTopLevelClassesModuleCalculator extends ClassCountingModuleCalculator {
+public class NumTopLevelClassesModuleCalculator extends ClassCountingModuleCalculator implements FileLocalCalculator {
 
     @Override
     public boolean satisfies(PsiClass aClass) {
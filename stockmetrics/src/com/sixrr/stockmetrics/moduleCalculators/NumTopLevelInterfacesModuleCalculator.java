@@ -17,9 +17,11 @@
 package com.sixrr.stockmetrics.moduleCalculators;
 
 import com.intellij.psi.PsiClass;
+import com.sixrr.metrics.FileLocalCalculator;
 import com.sixrr.metrics.utils.ClassUtils;
 
-public class NumTopLevelInterfacesModuleCalculator extends ClassCountingModuleCalculator {
+public class NumTopLevelInterfacesModuleCalculator extends ClassCountingModuleCalculator
+        implements FileLocalCalculator {
 
     @Override
     public boolean satisfies(PsiClass aClass) {
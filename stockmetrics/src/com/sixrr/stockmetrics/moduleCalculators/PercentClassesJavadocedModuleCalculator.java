@@ -20,9 +20,11 @@ import com.intellij.psi.JavaRecursiveElementVisitor;
 import com.intellij.psi.PsiClass;
 import com.intellij.psi.PsiElementVisitor;
 import com.intellij.psi.PsiJavaFile;
+import com.sixrr.metrics.FileLocalCalculator;
 import com.sixrr.metrics.utils.ClassUtils;
 
-public class PercentClassesJavadocedModuleCalculator extends ElementRatioModuleCalculator {
+public class PercentClassesJavadocedModuleCalculator extends ElementRatioModuleCalculator
+        implements FileLocalCalculator {
 
     @Override
     protected PsiElementVisitor createVisitor() {
@@ -17,9 +17,11 @@
 package com.sixrr.stockmetrics.moduleCalculators;
 
 import com.intellij.psi.*;
+import com.sixrr.metrics.FileLocalCalculator;
 import com.sixrr.metrics.utils.ClassUtils;
 
-public class PercentMethodsJavadocedModuleCalculator extends ElementRatioModuleCalculator {
+public class PercentMethodsJavadocedModuleCalculator extends ElementRatioModuleCalculator
+        implements FileLocalCalculator {
 
     @Override
     protected PsiElementVisitor createVisitor() {
@@ -18,9 +18,10 @@ package com.sixrr.stockmetrics.moduleCalculators;
 
 import com.intellij.openapi.fileTypes.PlainTextFileType;
 import com.intellij.psi.*;
+import com.sixrr.metrics.FileLocalCalculator;
 import com.sixrr.stockmetrics.utils.LineUtil;
 
-public class SourceLinesOfCodeModuleCalculator extends ElementCountModuleCalculator {
+public class SourceLinesOfCodeModuleCalculator extends ElementCountModuleCalculator implements FileLocalCalculator {
 
     @Override
     protected PsiElementVisitor createVisitor() {
@@ -19,9 +19,10 @@ package com.sixrr.stockmetrics.moduleCalculators;
 import com.intellij.psi.PsiElementVisitor;
 import com.intellij.psi.PsiFile;
 import com.intellij.psi.PsiRecursiveElementVisitor;
+import com.sixrr.metrics.FileLocalCalculator;
 import com.sixrr.stockmetrics.utils.TodoUtil;
 
-public class TodoCommentCountModuleCalculator extends ElementCountModuleCalculator {
+public class TodoCommentCountModuleCalculator extends ElementCountModuleCalculator implements FileLocalCalculator {
 
     @Override
     protected PsiElementVisitor createVisitor() {
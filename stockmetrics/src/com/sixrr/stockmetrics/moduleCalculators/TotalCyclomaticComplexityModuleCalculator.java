@@ -19,10 +19,12 @@ package com.sixrr.stockmetrics.moduleCalculators;
 import com.intellij.psi.JavaRecursiveElementVisitor;
 import com.intellij.psi.PsiElementVisitor;
 import com.intellij.psi.PsiMethod;
+import com.sixrr.metrics.FileLocalCalculator;
 import com.sixrr.metrics.utils.MethodUtils;
 import com.sixrr.stockmetrics.utils.CyclomaticComplexityUtil;
 
-public class TotalCyclomaticComplexityModuleCalculator extends ElementCountModuleCalculator {
+public class TotalCyclomaticComplexityModuleCalculator extends ElementCountModuleCalculator
+        implements FileLocalCalculator {
 
     @Override
     protected PsiElementVisitor createVisitor() {
@@ -25,11 +25,15 @@ public abstract class ClassCountingPackageCalculator extends ElementCountPackage
         return new Visitor();
     }
 
-    private class Visitor extends JavaRecursiveElementVisitor {
+    @Override
+    protected boolean supportsSharedTraversal() {
+        return true;
+    }
+
+    private class Visitor extends JavaElementVisitor {
 
         @Override
         public void visitClass(PsiClass aClass) {
-            super.visitClass(aClass);
             if (aClass instanceof PsiTypeParameter || aClass instanceof PsiEnumConstantInitializer) {
                 return;
             }
@@ -20,9 +20,10 @@ import com.intellij.psi.PsiComment;
 import com.intellij.psi.PsiElementVisitor;
 import com.intellij.psi.PsiFile;
 import com.intellij.psi.PsiRecursiveElementVisitor;
+import com.sixrr.metrics.FileLocalCalculator;
 import com.sixrr.stockmetrics.utils.LineUtil;
 
-public class CommentLinesOfCodePackageCalculator extends ElementCountPackageCalculator {
+public class CommentLinesOfCodePackageCalculator extends ElementCountPackageCalculator implements FileLocalCalculator {
 
     @Override
     protected PsiElementVisitor createVisitor() {
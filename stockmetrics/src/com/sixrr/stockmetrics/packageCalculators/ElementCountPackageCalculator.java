@@ -18,23 +18,57 @@ package com.sixrr.stockmetrics.packageCalculators;
 
 import com.intellij.psi.PsiElement;
 import com.intellij.psi.PsiPackage;
+import com.sixrr.metrics.PartialResultCalculator;
 import com.sixrr.metrics.utils.BucketedCount;
 import com.sixrr.metrics.utils.ClassUtils;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 import java.util.Set;
 
 /**
  * @author Bas Leijdekkers
  */
-public abstract class ElementCountPackageCalculator extends PackageCalculator {
+public abstract class ElementCountPackageCalculator extends PackageCalculator
+        implements PartialResultCalculator<BucketedCount<PsiPackage>> {
 
-    private final BucketedCount<PsiPackage> elementCountPerPackage = new BucketedCount<PsiPackage>();
+    private BucketedCount<PsiPackage> elementCountPerPackage = new BucketedCount<PsiPackage>();
 
     @Override
-    public final void endMetricsRun() {
-        final Set<PsiPackage> packages = elementCountPerPackage.getBuckets();
+    public final BucketedCount<PsiPackage> takePartialResult() {
+        if (elementCountPerPackage.isEmpty()) {
+            return null;
+        }
+        final BucketedCount<PsiPackage> result = elementCountPerPackage;
+        elementCountPerPackage = new BucketedCount<PsiPackage>();
+        return result;
+    }
+
+    @NotNull
+    @Override
+    public final BucketedCount<PsiPackage> reduce(@NotNull BucketedCount<PsiPackage> first,
+                                                  @NotNull BucketedCount<PsiPackage> second) {
+        final BucketedCount<PsiPackage> result = new BucketedCount<PsiPackage>(first);
+        result.addAll(second);
+        return result;
+    }
+
+    @NotNull
+    @Override
+    public final BucketedCount<PsiPackage> accumulate(@NotNull BucketedCount<PsiPackage> accumulated,
+                                                      @NotNull BucketedCount<PsiPackage> partialResult) {
+        accumulated.addAll(partialResult);
+        return accumulated;
+    }
+
+    @Override
+    public final void postResult(@Nullable BucketedCount<PsiPackage> result) {
+        if (result == null) {
+            return;
+        }
+        final Set<PsiPackage> packages = result.getBuckets();
         for (final PsiPackage aPackage : packages) {
-            final int count = elementCountPerPackage.getBucketValue(aPackage);
+            final int count = result.getBucketValue(aPackage);
             postMetric(aPackage, count);
         }
     }
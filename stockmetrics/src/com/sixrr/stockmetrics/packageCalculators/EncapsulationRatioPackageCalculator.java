@@ -73,7 +73,7 @@ public class EncapsulationRatioPackageCalculator extends PackageCalculator {
 
             ClassReferenceCache classReferenceCache = executionContext.getUserData(key);
             if (classReferenceCache == null) {
-                classReferenceCache = new ClassReferenceCache();
+                classReferenceCache = new ClassReferenceCache(executionContext);
                 executionContext.putUserData(key, classReferenceCache);
             }
             for (final PsiReference reference : classReferenceCache.findClassReferences(aClass)) {
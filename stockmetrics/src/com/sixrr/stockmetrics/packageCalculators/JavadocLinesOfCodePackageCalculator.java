@@ -20,9 +20,10 @@ import com.intellij.psi.JavaRecursiveElementVisitor;
 import com.intellij.psi.PsiElementVisitor;
 import com.intellij.psi.PsiJavaFile;
 import com.intellij.psi.javadoc.PsiDocComment;
+import com.sixrr.metrics.FileLocalCalculator;
 import com.sixrr.stockmetrics.utils.LineUtil;
 
-public class JavadocLinesOfCodePackageCalculator extends ElementCountPackageCalculator {
+public class JavadocLinesOfCodePackageCalculator extends ElementCountPackageCalculator implements FileLocalCalculator {
 
     @Override
     protected PsiElementVisitor createVisitor() {
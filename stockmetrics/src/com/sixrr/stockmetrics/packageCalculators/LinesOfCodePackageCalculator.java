@@ -19,9 +19,10 @@ package com.sixrr.stockmetrics.packageCalculators;
 import com.intellij.psi.PsiElementVisitor;
 import com.intellij.psi.PsiFile;
 import com.intellij.psi.PsiRecursiveElementVisitor;
+import com.sixrr.metrics.FileLocalCalculator;
 import com.sixrr.stockmetrics.utils.LineUtil;
 
-public class LinesOfCodePackageCalculator extends ElementCountPackageCalculator {
+public class LinesOfCodePackageCalculator extends ElementCountPackageCalculator implements FileLocalCalculator {
 
     @Override
     protected PsiElementVisitor createVisitor() {
@@ -17,9 +17,10 @@
 package com.sixrr.stockmetrics.packageCalculators;
 
 import com.intellij.psi.PsiClass;
+import com.sixrr.metrics.FileLocalCalculator;
 import com.sixrr.metrics.utils.ClassUtils;
 
-public class NumAbstractClassesPackageCalculator extends ClassCountingPackageCalculator {
+public class NumAbstractClassesPackageCalculator extends ClassCountingPackageCalculator implements FileLocalCalculator {
 
     @Override
     public boolean satisfies(PsiClass aClass) {
@@ -17,8 +17,10 @@
 package com.sixrr.stockmetrics.packageCalculators;
 
 import com.intellij.psi.PsiClass;
+import com.sixrr.metrics.FileLocalCalculator;
 
-public class NumAnnotationClassesPackageCalculator extends ClassCountingPackageCalculator {
+public class NumAnnotationClassesPackageCalculator extends ClassCountingPackageCalculator
+        implements FileLocalCalculator {
 
     @Override
     public boolean satisfies(PsiClass aClass) {
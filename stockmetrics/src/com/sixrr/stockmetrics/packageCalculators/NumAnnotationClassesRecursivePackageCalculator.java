@@ -17,9 +17,10 @@
 package com.sixrr.stockmetrics.packageCalculators;
 
 import com.intellij.psi.PsiClass;
+import com.sixrr.metrics.FileLocalCalculator;
 
 public class NumAnnotationClassesRecursivePackageCalculator
-        extends ClassCountingRecursivePackageCalculator {
+        extends ClassCountingRecursivePackageCalculator implements FileLocalCalculator {
 
     @Override
     public boolean satisfies(PsiClass aClass) {
@@ -18,11 +18,13 @@ package com.sixrr.stockmetrics.packageCalculators;
 
 import com.intellij.psi.PsiAnonymousClass;
 import com.intellij.psi.PsiClass;
+import com.sixrr.metrics.FileLocalCalculator;
 
 /**
  * @author Bas Leijdekkers
  */
-public class NumAnonymousClassesPackageCalculator extends ClassCountingPackageCalculator {
+public class NumAnonymousClassesPackageCalculator extends ClassCountingPackageCalculator
+        implements FileLocalCalculator {
 
     @Override
     public boolean satisfies(PsiClass aClass) {
@@ -17,10 +17,11 @@
 package com.sixrr.stockmetrics.packageCalculators;
 
 import com.intellij.psi.PsiClass;
+import com.sixrr.metrics.FileLocalCalculator;
 import com.sixrr.metrics.utils.ClassUtils;
 
 public class NumConcreteClassesPackageCalculator
-        extends ClassCountingPackageCalculator {
+        extends ClassCountingPackageCalculator implements FileLocalCalculator {
 
     @Override
     public boolean satisfies(PsiClass aClass) {
@@ -17,8 +17,9 @@
 package com.sixrr.stockmetrics.packageCalculators;
 
 import com.intellij.psi.PsiClass;
+import com.sixrr.metrics.FileLocalCalculator;
 
-public class NumEnumClassesPackageCalculator extends ClassCountingPackageCalculator {
+public class NumEnumClassesPackageCalculator extends ClassCountingPackageCalculator implements FileLocalCalculator {
 
     @Override
     public boolean satisfies(PsiClass aClass) {
@@ -17,11 +17,12 @@
 package com.sixrr.stockmetrics.packageCalculators;
 
 import com.intellij.psi.*;
+import com.sixrr.metrics.FileLocalCalculator;
 
 /**
  * @author Bas Leijdekkers
  */
-public class NumLambdasPackageCalculator extends ElementCountPackageCalculator {
+public class NumLambdasPackageCalculator extends ElementCountPackageCalculator implements FileLocalCalculator {
 
     @Override
     protected PsiElementVisitor createVisitor() {
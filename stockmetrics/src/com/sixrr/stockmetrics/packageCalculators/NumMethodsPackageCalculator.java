@@ -20,11 +20,12 @@ import com.intellij.psi.JavaRecursiveElementVisitor;
 import com.intellij.psi.PsiElementVisitor;
 import com.intellij.psi.PsiJavaFile;
 import com.intellij.psi.PsiMethod;
+import com.sixrr.metrics.FileLocalCalculator;
 
 /**
  * @author Bas Leijdekkers
  */
-public class NumMethodsPackageCalculator extends ElementCountPackageCalculator {
+public class NumMethodsPackageCalculator extends ElementCountPackageCalculator implements FileLocalCalculator {
 
     @Override
     protected PsiElementVisitor createVisitor() {
@@ -19,9 +19,10 @@ package com.sixrr.stockmetrics.packageCalculators;
 import com.intellij.psi.PsiElementVisitor;
 import com.intellij.psi.PsiFile;
 import com.intellij.psi.PsiRecursiveElementVisitor;
+import com.sixrr.metrics.FileLocalCalculator;
 import com.sixrr.stockmetrics.utils.TodoUtil;
 
-public class TodoCommentCountPackageCalculator extends ElementCountPackageCalculator {
+public class TodoCommentCountPackageCalculator extends ElementCountPackageCalculator implements FileLocalCalculator {
 
     @Override
     protected PsiElementVisitor createVisitor() {
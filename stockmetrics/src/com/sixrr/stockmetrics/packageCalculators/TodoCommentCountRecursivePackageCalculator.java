@@ -19,9 +19,11 @@ package com.sixrr.stockmetrics.packageCalculators;
 import com.intellij.psi.PsiElementVisitor;
 import com.intellij.psi.PsiFile;
 import com.intellij.psi.PsiRecursiveElementVisitor;
+import com.sixrr.metrics.FileLocalCalculator;
 import com.sixrr.stockmetrics.utils.TodoUtil;
 
-public class TodoCommentCountRecursivePackageCalculator extends ElementCountPackageCalculator {
+public class TodoCommentCountRecursivePackageCalculator extends ElementCountPackageCalculator
+        implements FileLocalCalculator {
 
     @Override
     protected PsiElementVisitor createVisitor() {
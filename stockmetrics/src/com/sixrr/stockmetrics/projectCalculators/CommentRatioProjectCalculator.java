@@ -17,9 +17,10 @@
 package com.sixrr.stockmetrics.projectCalculators;
 
 import com.intellij.psi.*;
+import com.sixrr.metrics.FileLocalCalculator;
 import com.sixrr.stockmetrics.utils.LineUtil;
 
-public class CommentRatioProjectCalculator extends ElementRatioProjectCalculator {
+public class CommentRatioProjectCalculator extends ElementRatioProjectCalculator implements FileLocalCalculator {
 
     @Override
     protected PsiElementVisitor createVisitor() {
@@ -16,13 +16,37 @@
 
 package com.sixrr.stockmetrics.projectCalculators;
 
-public abstract class ElementCountProjectCalculator extends ProjectCalculator {
+import com.sixrr.metrics.PartialResultCalculator;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+public abstract class ElementCountProjectCalculator extends ProjectCalculator
+        implements PartialResultCalculator<Integer> {
 
     private int numElements = 0;
 
     @Override
-    public final void endMetricsRun() {
-        postMetric(numElements);
+    public final Integer takePartialResult() {
+        final int result = numElements;
+        numElements = 0;
+        return Integer.valueOf(result);
+    }
+
+    @NotNull
+    @Override
+    public final Integer reduce(@NotNull Integer first, @NotNull Integer second) {
+        return Integer.valueOf(first.intValue() + second.intValue());
+    }
+
+    @NotNull
+    @Override
+    public final Integer accumulate(@NotNull Integer accumulated, @NotNull Integer partialResult) {
+        return reduce(accumulated, partialResult);
+    }
+
+    @Override
+    public final void postResult(@Nullable Integer result) {
+        postMetric(result == null ? 0 : result.intValue());
     }
 
     protected void incrementCount(int count) {
@@ -16,13 +16,40 @@
 
 package com.sixrr.stockmetrics.projectCalculators;
 
-public abstract class ElementRatioProjectCalculator extends ProjectCalculator {
+import com.sixrr.metrics.PartialResultCalculator;
+import com.sixrr.metrics.utils.Ratio;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+public abstract class ElementRatioProjectCalculator extends ProjectCalculator
+        implements PartialResultCalculator<Ratio> {
 
     protected int denominator = 0;
     protected int numerator = 0;
 
     @Override
-    public void endMetricsRun() {
-        postMetric(numerator, denominator);
+    public final Ratio takePartialResult() {
+        final Ratio result = new Ratio(numerator, denominator);
+        numerator = 0;
+        denominator = 0;
+        return result;
+    }
+
+    @NotNull
+    @Override
+    public final Ratio reduce(@NotNull Ratio first, @NotNull Ratio second) {
+        return first.plus(second);
+    }
+
+    @NotNull
+    @Override
+    public final Ratio accumulate(@NotNull Ratio accumulated, @NotNull Ratio partialResult) {
+        return accumulated.plus(partialResult);
+    }
+
+    @Override
+    public void postResult(@Nullable Ratio result) {
+        final Ratio ratio = result == null ? Ratio.ZERO : result;
+        postMetric(ratio.getNumerator(), ratio.getDenominator());
     }
 }
@@ -19,8 +19,9 @@ package com.sixrr.stockmetrics.projectCalculators;
 import com.intellij.openapi.fileTypes.FileType;
 import com.intellij.psi.PsiElementVisitor;
 import com.intellij.psi.PsiFile;
+import com.sixrr.metrics.FileLocalCalculator;
 
-public class FileCountProjectCalculator extends ElementCountProjectCalculator {
+public class FileCountProjectCalculator extends ElementCountProjectCalculator implements FileLocalCalculator {
 
     private final FileType fileType;
 
@@ -19,9 +19,10 @@ package com.sixrr.stockmetrics.projectCalculators;
 import com.intellij.psi.JavaRecursiveElementVisitor;
 import com.intellij.psi.PsiElementVisitor;
 import com.intellij.psi.javadoc.PsiDocComment;
+import com.sixrr.metrics.FileLocalCalculator;
 import com.sixrr.stockmetrics.utils.LineUtil;
 
-public class JavadocLinesOfCodeProjectCalculator extends ElementCountProjectCalculator {
+public class JavadocLinesOfCodeProjectCalculator extends ElementCountProjectCalculator implements FileLocalCalculator {
 
     @Override
     protected PsiElementVisitor createVisitor() {
@@ -19,9 +19,10 @@ package com.sixrr.stockmetrics.projectCalculators;
 import com.intellij.openapi.fileTypes.FileType;
 import com.intellij.psi.PsiElementVisitor;
 import com.intellij.psi.PsiFile;
+import com.sixrr.metrics.FileLocalCalculator;
 import com.sixrr.stockmetrics.utils.LineUtil;
 
-public class LinesOfCodeProjectCalculator extends ElementCountProjectCalculator {
+public class LinesOfCodeProjectCalculator extends ElementCountProjectCalculator implements FileLocalCalculator {
 
     private final FileType fileType;
 
@@ -17,9 +17,10 @@
 package com.sixrr.stockmetrics.projectCalculators;
 
 import com.intellij.psi.PsiClass;
+import com.sixrr.metrics.FileLocalCalculator;
 
 public class NumAnnotationClassesProjectCalculator
-        extends ClassCountingProjectCalculator {
+        extends ClassCountingProjectCalculator implements FileLocalCalculator {
 
     @Override
     public boolean satisfies(PsiClass aClass) {
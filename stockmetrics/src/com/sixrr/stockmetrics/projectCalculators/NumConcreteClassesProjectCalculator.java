@@ -17,10 +17,11 @@
 package com.sixrr.stockmetrics.projectCalculators;
 
 import com.intellij.psi.PsiClass;
+import com.sixrr.metrics.FileLocalCalculator;
 import com.sixrr.metrics.utils.ClassUtils;
 
 public class NumConcreteClassesProjectCalculator
-        extends ClassCountingProjectCalculator {
+        extends ClassCountingProjectCalculator implements FileLocalCalculator {
 
     @Override
     public boolean satisfies(PsiClass aClass) {
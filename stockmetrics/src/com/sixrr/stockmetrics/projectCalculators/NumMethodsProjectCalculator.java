@@ -19,8 +19,9 @@ package com.sixrr.stockmetrics.projectCalculators;
 import com.intellij.psi.JavaRecursiveElementVisitor;
 import com.intellij.psi.PsiElementVisitor;
 import com.intellij.psi.PsiMethod;
+import com.sixrr.metrics.FileLocalCalculator;
 
-public class NumMethodsProjectCalculator extends ElementCountProjectCalculator {
+public class NumMethodsProjectCalculator extends ElementCountProjectCalculator implements FileLocalCalculator {
 
     @Override
     protected PsiElementVisitor createVisitor() {
@@ -18,9 +18,10 @@ package com.sixrr.stockmetrics.projectCalculators;
 
 import com.intellij.openapi.fileTypes.PlainTextFileType;
 import com.intellij.psi.*;
+import com.sixrr.metrics.FileLocalCalculator;
 import com.sixrr.stockmetrics.utils.LineUtil;
 
-public class SourceLinesOfCodeProjectCalculator extends ElementCountProjectCalculator {
+public class SourceLinesOfCodeProjectCalculator extends ElementCountProjectCalculator implements FileLocalCalculator {
     @Override
     protected PsiElementVisitor createVisitor() {
         return new Visitor();
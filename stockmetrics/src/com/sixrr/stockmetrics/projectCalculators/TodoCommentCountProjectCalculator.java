@@ -19,9 +19,10 @@ package com.sixrr.stockmetrics.projectCalculators;
 import com.intellij.psi.PsiElementVisitor;
 import com.intellij.psi.PsiFile;
 import com.intellij.psi.PsiRecursiveElementVisitor;
+import com.sixrr.metrics.FileLocalCalculator;
 import com.sixrr.stockmetrics.utils.TodoUtil;
 
-public class TodoCommentCountProjectCalculator extends ElementCountProjectCalculator {
+public class TodoCommentCountProjectCalculator extends ElementCountProjectCalculator implements FileLocalCalculator {
 
     @Override
     protected PsiElementVisitor createVisitor() {
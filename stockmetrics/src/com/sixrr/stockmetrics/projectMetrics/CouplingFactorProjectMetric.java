@@ -18,12 +18,13 @@ package com.sixrr.stockmetrics.projectMetrics;
 
 import com.sixrr.metrics.MetricCalculator;
 import com.sixrr.metrics.MetricType;
+import com.sixrr.metrics.NonAdditiveMetric;
 import com.sixrr.stockmetrics.i18n.HelpURLs;
 import com.sixrr.stockmetrics.i18n.StockMetricsBundle;
 import com.sixrr.stockmetrics.projectCalculators.CouplingFactorProjectCalculator;
 import org.jetbrains.annotations.NotNull;
 
-public class CouplingFactorProjectMetric extends ProjectMetric {
+public class CouplingFactorProjectMetric extends ProjectMetric implements NonAdditiveMetric {
 
     @NotNull
     @Override
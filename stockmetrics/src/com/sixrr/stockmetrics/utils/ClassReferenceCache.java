@@ -16,12 +16,14 @@
 
 package com.sixrr.stockmetrics.utils;
 
+import com.intellij.openapi.util.Computable;
 import com.intellij.psi.PsiClass;
 import com.intellij.psi.PsiReference;
 import com.intellij.psi.SmartPointerManager;
 import com.intellij.psi.SmartPsiElementPointer;
 import com.intellij.psi.search.SearchScope;
 import com.intellij.psi.search.searches.ReferencesSearch;
+import com.sixrr.metrics.MetricsExecutionContext;
 
 import java.util.Collection;
 import java.util.Map;
@@ -31,6 +33,11 @@ public class ClassReferenceCache {
 
     private final Map<SmartPsiElementPointer<PsiClass>, Collection<PsiReference>> cachedReferences =
             new WeakHashMap<SmartPsiElementPointer<PsiClass>, Collection<PsiReference>>(256);
+    private final MetricsExecutionContext executionContext;
+
+    public ClassReferenceCache(MetricsExecutionContext executionContext) {
+        this.executionContext = executionContext;
+    }
 
     public Collection<PsiReference> findClassReferences(final PsiClass aClass) {
         final SmartPointerManager manager = SmartPointerManager.getInstance(aClass.getProject());
@@ -39,7 +46,13 @@ public class ClassReferenceCache {
         final Collection<PsiReference> references = cachedReferences.get(pointer);
         if (references == null) {
             final SearchScope scope = aClass.getUseScope();
-            final Collection<PsiReference> newReferences = ReferencesSearch.search(aClass, scope, false).findAll();
+            final Collection<PsiReference> newReferences = executionContext.runSharedPhase(
+                    "Class reference searches", new Computable<Collection<PsiReference>>() {
+                        @Override
+                        public Collection<PsiReference> compute() {
+                            return ReferencesSearch.search(aClass, scope, false).findAll();
+                        }
+                    });
             cachedReferences.put(pointer, newReferences);
         }
         return cachedReferences.get(pointer);
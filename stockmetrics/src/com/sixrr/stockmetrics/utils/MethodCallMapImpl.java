@@ -16,12 +16,14 @@
 
 package com.sixrr.stockmetrics.utils;
 
+import com.intellij.openapi.util.Computable;
 import com.intellij.psi.*;
 import com.intellij.psi.search.searches.ReferencesSearch;
 import com.intellij.psi.util.PsiTreeUtil;
-import com.intellij.util.Query;
+import com.sixrr.metrics.MetricsExecutionContext;
 import com.sixrr.metrics.utils.TestUtils;
 
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
@@ -34,6 +36,11 @@ public class MethodCallMapImpl implements MethodCallMap {
             new HashMap<SmartPsiElementPointer<PsiMethod>, Set<PsiReference>>(1024);
     private final Map<SmartPsiElementPointer<PsiMethod>, Set<PsiReference>> methodToProductCallPointMap =
             new HashMap<SmartPsiElementPointer<PsiMethod>, Set<PsiReference>>(1024);
+    private final MetricsExecutionContext executionContext;
+
+    public MethodCallMapImpl(MetricsExecutionContext executionContext) {
+        this.executionContext = executionContext;
+    }
 
     @Override
     public Set<PsiReference> calculateMethodCallPoints(PsiMethod method) {
@@ -70,8 +77,14 @@ public class MethodCallMapImpl implements MethodCallMap {
         final Set<PsiReference> testCalls = new HashSet<PsiReference>(4);
         final Set<PsiReference> productCalls = new HashSet<PsiReference>(4);
 
-        final Query<PsiReference> query = ReferencesSearch.search(method);
-        for (final PsiReference reference : query) {
+        final Collection<PsiReference> references = executionContext.runSharedPhase("Method call searches",
+                new Computable<Collection<PsiReference>>() {
+                    @Override
+                    public Collection<PsiReference> compute() {
+                        return ReferencesSearch.search(method).findAll();
+                    }
+                });
+        for (final PsiReference reference : references) {
             final PsiElement element = reference.getElement();
 
             final PsiClass referencingClass = PsiTreeUtil.getParentOfType(element, PsiClass.class);
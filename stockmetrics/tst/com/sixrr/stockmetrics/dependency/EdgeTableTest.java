@@ -0,0 +1,156 @@
+/*
+ * Copyright 2005-2016 Sixth and Red River Software, Bas Leijdekkers
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.sixrr.stockmetrics.dependency;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+public class EdgeTableTest {
+
+    @Test
+    public void testStrengthsAreSummed() {
+        final EdgeTable edges = new EdgeTable();
+        edges.add(0, 1, 2);
+        edges.add(0, 1, 3);
+        edges.add(1, 0, 1);
+        edges.freeze();
+        assertEquals(5, edges.getStrength(0, 1));
+        assertEquals(1, edges.getStrength(1, 0));
+        assertEquals(0, edges.getStrength(0, 0));
+        assertEquals(0, edges.getStrength(1, 1));
+        assertEquals(0, edges.getStrength(2, 0));
+        assertEquals(0, edges.getStrength(0, -1));
+    }
+
+    @Test
+    public void testSortedTargetsAndSources() {
+        final EdgeTable edges = new EdgeTable();
+        edges.add(1, 3, 1);
+        edges.add(1, 0, 1);
+        edges.add(2, 0, 1);
+        edges.add(1, 2, 1);
+        edges.add(0, 0, 1);
+        edges.freeze();
+        assertEquals(3, edges.getSourceCount());
+        assertEquals(4, edges.getTargetCount());
+        assertArrayEquals(new int[]{0, 2, 3}, getTargets(edges, 1));
+        assertArrayEquals(new int[]{0}, getTargets(edges, 0));
+        assertArrayEquals(new int[]{0, 1, 2}, getSources(edges, 0));
+        assertArrayEquals(new int[]{}, getSources(edges, 1));
+        assertArrayEquals(new int[]{1}, getSources(edges, 3));
+    }
+
+    @Test
+    public void testOutOfRange() {
+        final EdgeTable edges = new EdgeTable();
+        edges.add(0, 1, 1);
+        edges.freeze();
+        assertEquals(0, edges.start(-1));
+        assertEquals(0, edges.end(-1));
+        assertEquals(0, edges.start(5));
+        assertEquals(0, edges.end(5));
+        assertEquals(0, edges.reverseStart(-1));
+        assertEquals(0, edges.reverseEnd(-1));
+        assertEquals(0, edges.reverseStart(5));
+        assertEquals(0, edges.reverseEnd(5));
+    }
+
+    @Test
+    public void testEmpty() {
+        final EdgeTable edges = new EdgeTable();
+        edges.freeze();
+        assertEquals(0, edges.getSourceCount());
+        assertEquals(0, edges.getTargetCount());
+        assertEquals(0, edges.getStrength(0, 0));
+    }
+
+    @Test
+    public void testAddAfterFreeze() {
+        final EdgeTable edges = new EdgeTable();
+        edges.add(0, 1, 1);
+        edges.add(2, 1, 1);
+        edges.freeze();
+        edges.add(0, 1, 4);
+        edges.add(0, 3, 1);
+        edges.freeze();
+        assertEquals(5, edges.getStrength(0, 1));
+        assertEquals(1, edges.getStrength(2, 1));
+        assertEquals(1, edges.getStrength(0, 3));
+        assertArrayEquals(new int[]{1, 3}, getTargets(edges, 0));
+        assertArrayEquals(new int[]{0, 2}, getSources(edges, 1));
+    }
+
+    @Test
+    public void testNodeTable() {
+        final NodeTable<String> nodes = new NodeTable<String>();
+        assertEquals(-1, nodes.find("a"));
+        assertEquals(0, nodes.intern("a"));
+        assertEquals(1, nodes.intern("b"));
+        assertEquals(0, nodes.intern("a"));
+        assertEquals(1, nodes.find("b"));
+        assertEquals(-1, nodes.find("c"));
+        assertEquals(2, nodes.size());
+        assertEquals("b", nodes.get(1));
+    }
+
+    @Test
+    public void testNodeSet() {
+        final NodeTable<String> nodes = new NodeTable<String>();
+        final int a = nodes.intern("a");
+        final int b = nodes.intern("b");
+        final int c = nodes.intern("c");
+        nodes.intern("d");
+        final EdgeTable edges = new EdgeTable();
+        edges.add(a, c, 1);
+        edges.add(a, b, 1);
+        edges.add(b, c, 1);
+        edges.freeze();
+        final Set<String> targets = edges.getTargets(a, nodes);
+        assertEquals(2, targets.size());
+        assertTrue(targets.contains("b"));
+        assertTrue(targets.contains("c"));
+        assertFalse(targets.contains("a"));
+        assertFalse(targets.contains("d"));
+        assertFalse(targets.contains("unknown"));
+        assertEquals(new HashSet<String>(Arrays.asList("b", "c")), new HashSet<String>(targets));
+        final Set<String> sources = edges.getSources(c, nodes);
+        assertEquals(new HashSet<String>(Arrays.asList("a", "b")), new HashSet<String>(sources));
+        assertTrue(edges.getTargets(c, nodes).isEmpty());
+        assertTrue(edges.getSources(a, nodes).isEmpty());
+    }
+
+    private static int[] getTargets(EdgeTable edges, int source) {
+        final int[] result = new int[edges.end(source) - edges.start(source)];
+        for (int i = edges.start(source); i < edges.end(source); i++) {
+            result[i - edges.start(source)] = edges.getTarget(i);
+        }
+        return result;
+    }
+
+    private static int[] getSources(EdgeTable edges, int target) {
+        final int[] result = new int[edges.reverseEnd(target) - edges.reverseStart(target)];
+        for (int i = edges.reverseStart(target); i < edges.reverseEnd(target); i++) {
+            result[i - edges.reverseStart(target)] = edges.getSource(i);
+        }
+        return result;
+    }
+}
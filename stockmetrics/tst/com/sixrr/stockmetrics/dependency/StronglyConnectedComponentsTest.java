@@ -0,0 +1,102 @@
+/*
+ * Copyright 2005-2016 Sixth and Red River Software, Bas Leijdekkers
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.sixrr.stockmetrics.dependency;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class StronglyConnectedComponentsTest {
+
+    private static final int CHAIN_LENGTH = 100000;
+
+    @Test
+    public void testCycles() {
+        // 0 -> 1 -> 2 -> 0 and 3 <-> 4 form cycles, 2 -> 3 connects them, 5 is on its own
+        final EdgeTable edges = new EdgeTable();
+        edges.add(0, 1, 1);
+        edges.add(1, 2, 1);
+        edges.add(2, 0, 1);
+        edges.add(2, 3, 1);
+        edges.add(3, 4, 1);
+        edges.add(4, 3, 1);
+        edges.freeze();
+        final StronglyConnectedComponents components = new StronglyConnectedComponents(edges, 6);
+        assertEquals(3, components.getComponentCount());
+
+        final int cycle = components.getComponent(0);
+        assertEquals(cycle, components.getComponent(1));
+        assertEquals(cycle, components.getComponent(2));
+        assertArrayEquals(new int[]{0, 1, 2}, components.getMembers(cycle));
+
+        final int pair = components.getComponent(3);
+        assertEquals(pair, components.getComponent(4));
+        assertArrayEquals(new int[]{3, 4}, components.getMembers(pair));
+
+        final int single = components.getComponent(5);
+        assertArrayEquals(new int[]{5}, components.getMembers(single));
+
+        // dependencies are numbered before their dependents
+        assertTrue(pair < cycle);
+
+        assertEquals(1, components.getLevelOrder(pair));
+        assertEquals(2, components.getLevelOrder(cycle));
+        assertEquals(1, components.getLevelOrder(single));
+        assertEquals(2, components.getAdjustedLevelOrder(pair));
+        assertEquals(5, components.getAdjustedLevelOrder(cycle));
+        assertEquals(1, components.getAdjustedLevelOrder(single));
+    }
+
+    @Test
+    public void testNodeOutsideGraph() {
+        final EdgeTable edges = new EdgeTable();
+        edges.add(0, 1, 1);
+        edges.freeze();
+        final StronglyConnectedComponents components = new StronglyConnectedComponents(edges, 2);
+        assertEquals(-1, components.getComponent(-1));
+        assertEquals(-1, components.getComponent(2));
+    }
+
+    @Test
+    public void testLongChain() {
+        final EdgeTable edges = new EdgeTable();
+        for (int i = 0; i < CHAIN_LENGTH - 1; i++) {
+            edges.add(i, i + 1, 1);
+        }
+        edges.freeze();
+        final StronglyConnectedComponents components = new StronglyConnectedComponents(edges, CHAIN_LENGTH);
+        assertEquals(CHAIN_LENGTH, components.getComponentCount());
+        assertEquals(0, components.getComponent(CHAIN_LENGTH - 1));
+        assertEquals(CHAIN_LENGTH, components.getLevelOrder(components.getComponent(0)));
+        assertEquals(CHAIN_LENGTH, components.getAdjustedLevelOrder(components.getComponent(0)));
+        assertEquals(1, components.getLevelOrder(components.getComponent(CHAIN_LENGTH - 1)));
+    }
+
+    @Test
+    public void testLongCycle() {
+        final EdgeTable edges = new EdgeTable();
+        for (int i = 0; i < CHAIN_LENGTH; i++) {
+            edges.add(i, (i + 1) % CHAIN_LENGTH, 1);
+        }
+        edges.freeze();
+        final StronglyConnectedComponents components = new StronglyConnectedComponents(edges, CHAIN_LENGTH);
+        assertEquals(1, components.getComponentCount());
+        assertEquals(CHAIN_LENGTH, components.getMembers(0).length);
+        assertEquals(1, components.getLevelOrder(0));
+        assertEquals(CHAIN_LENGTH, components.getAdjustedLevelOrder(0));
+    }
+}
@@ -0,0 +1,94 @@
+/*
+ * Copyright 2005-2016 Sixth and Red River Software, Bas Leijdekkers
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.sixrr.stockmetrics.dependency;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class TransitiveClosureTest {
+
+    @Test
+    public void testCycles() {
+        // 0 -> 1 -> 2 -> 0 and 3 <-> 4 form cycles, 2 -> 3 connects them, 5 is on its own
+        final EdgeTable edges = new EdgeTable();
+        edges.add(0, 1, 1);
+        edges.add(1, 2, 1);
+        edges.add(2, 0, 1);
+        edges.add(2, 3, 1);
+        edges.add(3, 4, 1);
+        edges.add(4, 3, 1);
+        edges.freeze();
+        final StronglyConnectedComponents components = new StronglyConnectedComponents(edges, 6);
+        final int cycle = components.getComponent(0);
+        final int pair = components.getComponent(3);
+        final int single = components.getComponent(5);
+
+        final TransitiveClosure dependencies = new TransitiveClosure(components, edges, false);
+        assertEquals(5, dependencies.getCount(cycle));
+        assertArrayEquals(new int[]{0, 1, 2, 3, 4}, dependencies.getReachableNodes(cycle));
+        assertEquals(2, dependencies.getCount(pair));
+        assertArrayEquals(new int[]{3, 4}, dependencies.getReachableNodes(pair));
+        assertEquals(1, dependencies.getCount(single));
+        assertArrayEquals(new int[]{5}, dependencies.getReachableNodes(single));
+
+        final TransitiveClosure dependents = new TransitiveClosure(components, edges, true);
+        assertEquals(3, dependents.getCount(cycle));
+        assertArrayEquals(new int[]{0, 1, 2}, dependents.getReachableNodes(cycle));
+        assertEquals(5, dependents.getCount(pair));
+        assertArrayEquals(new int[]{0, 1, 2, 3, 4}, dependents.getReachableNodes(pair));
+        assertEquals(1, dependents.getCount(single));
+        assertArrayEquals(new int[]{5}, dependents.getReachableNodes(single));
+    }
+
+    @Test
+    public void testDiamondIsCountedOnce() {
+        final EdgeTable edges = new EdgeTable();
+        edges.add(0, 1, 1);
+        edges.add(0, 2, 1);
+        edges.add(1, 3, 1);
+        edges.add(2, 3, 1);
+        edges.freeze();
+        final StronglyConnectedComponents components = new StronglyConnectedComponents(edges, 4);
+        final TransitiveClosure dependencies = new TransitiveClosure(components, edges, false);
+        assertEquals(4, dependencies.getCount(components.getComponent(0)));
+        assertArrayEquals(new int[]{0, 1, 2, 3}, dependencies.getReachableNodes(components.getComponent(0)));
+        final TransitiveClosure dependents = new TransitiveClosure(components, edges, true);
+        assertEquals(4, dependents.getCount(components.getComponent(3)));
+        assertArrayEquals(new int[]{0, 1, 2, 3}, dependents.getReachableNodes(components.getComponent(3)));
+    }
+
+    @Test
+    public void testChainCountedInSeveralBlocks() {
+        // large enough that the reachable sets are counted one block of nodes at a time
+        final int length = 20000;
+        final EdgeTable edges = new EdgeTable();
+        for (int i = 0; i < length - 1; i++) {
+            edges.add(i, i + 1, 1);
+        }
+        edges.freeze();
+        final StronglyConnectedComponents components = new StronglyConnectedComponents(edges, length);
+        final TransitiveClosure dependencies = new TransitiveClosure(components, edges, false);
+        final TransitiveClosure dependents = new TransitiveClosure(components, edges, true);
+        for (int i = 0; i < length; i++) {
+            assertEquals(length - i, dependencies.getCount(components.getComponent(i)));
+            assertEquals(i + 1, dependents.getCount(components.getComponent(i)));
+        }
+        final int[] reachable = dependencies.getReachableNodes(components.getComponent(length - 3));
+        assertArrayEquals(new int[]{length - 3, length - 2, length - 1}, reachable);
+    }
+}
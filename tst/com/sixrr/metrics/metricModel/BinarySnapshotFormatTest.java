@@ -0,0 +1,157 @@
+/*
+ * Copyright 2005-2016 Sixth and Red River Software, Bas Leijdekkers
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.sixrr.metrics.metricModel;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.*;
+
+public class BinarySnapshotFormatTest {
+
+    @Test
+    public void testVarInt() throws IOException {
+        assertVarInt(0, 1);
+        assertVarInt(1, 1);
+        assertVarInt(127, 1);
+        assertVarInt(128, 2);
+        assertVarInt(16383, 2);
+        assertVarInt(16384, 3);
+        assertVarInt(Integer.MAX_VALUE, 5);
+        assertVarInt(-1, 5);
+        assertVarInt(Integer.MIN_VALUE, 5);
+    }
+
+    @Test
+    public void testConsecutiveVarInts() throws IOException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final DataOutputStream out = new DataOutputStream(bytes);
+        BinarySnapshotFormat.writeVarInt(out, 300);
+        BinarySnapshotFormat.writeVarInt(out, 0);
+        BinarySnapshotFormat.writeVarInt(out, -2);
+        out.close();
+        final ByteBuffer buffer = ByteBuffer.wrap(bytes.toByteArray());
+        assertEquals(300, BinarySnapshotFormat.readVarInt(buffer));
+        assertEquals(0, BinarySnapshotFormat.readVarInt(buffer));
+        assertEquals(-2, BinarySnapshotFormat.readVarInt(buffer));
+        assertFalse(buffer.hasRemaining());
+    }
+
+    @Test
+    public void testReadUTF() throws IOException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final DataOutputStream out = new DataOutputStream(bytes);
+        out.writeUTF("");
+        out.writeUTF("com.example.Foo");
+        out.writeUTF("nul\0 \u00e9 \u4e2d \uD83D\uDE00");
+        out.close();
+        final ByteBuffer buffer = ByteBuffer.wrap(bytes.toByteArray());
+        assertEquals("", BinarySnapshotFormat.readUTF(buffer));
+        assertEquals("com.example.Foo", BinarySnapshotFormat.readUTF(buffer));
+        assertEquals("nul\0 \u00e9 \u4e2d \uD83D\uDE00", BinarySnapshotFormat.readUTF(buffer));
+        assertFalse(buffer.hasRemaining());
+    }
+
+    @Test
+    public void testUncompressedBlocks() throws IOException {
+        assertBlocks(false);
+    }
+
+    @Test
+    public void testCompressedBlocks() throws IOException {
+        assertBlocks(true);
+    }
+
+    @Test
+    public void testDictionary() throws IOException {
+        final String[] dictionary = {
+                "",
+                "com.example.Bar",
+                "com.example.Bar.baz()",
+                "com.example.Bar.baz(int)",
+                "com.example.Foo",
+                "org.example.Foo",
+                "x\uD83D\uDE00",
+                "x\uD83D\uDE01",
+                "\u00e9t\u00e9",
+        };
+        final byte[] encoded = BinarySnapshotWriter.encodeDictionary(dictionary);
+        final String[] decoded = BinarySnapshotReader.decodeDictionary(ByteBuffer.wrap(encoded));
+        assertEquals(dictionary.length, decoded.length);
+        for (int i = 0; i < dictionary.length; i++) {
+            assertEquals(dictionary[i], decoded[i]);
+        }
+        int totalLength = 0;
+        for (String measuredObject : dictionary) {
+            totalLength += measuredObject.length();
+        }
+        assertTrue("shared prefixes are stored once", encoded.length < totalLength);
+    }
+
+    @Test
+    public void testEmptyDictionary() throws IOException {
+        final byte[] encoded = BinarySnapshotWriter.encodeDictionary(new String[0]);
+        assertEquals(0, BinarySnapshotReader.decodeDictionary(ByteBuffer.wrap(encoded)).length);
+    }
+
+    private static void assertVarInt(int value, int expectedLength) throws IOException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final DataOutputStream out = new DataOutputStream(bytes);
+        BinarySnapshotFormat.writeVarInt(out, value);
+        out.close();
+        assertEquals("length of " + value, expectedLength, bytes.size());
+        final ByteBuffer buffer = ByteBuffer.wrap(bytes.toByteArray());
+        assertEquals(value, BinarySnapshotFormat.readVarInt(buffer));
+        assertFalse(buffer.hasRemaining());
+    }
+
+    private static void assertBlocks(boolean compress) throws IOException {
+        final byte[] empty = new byte[0];
+        final byte[] repetitive = new byte[100000];
+        for (int i = 0; i < repetitive.length; i++) {
+            repetitive[i] = (byte) (i % 10);
+        }
+        final byte[] small = {1, 2, 3, -1};
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final DataOutputStream out = new DataOutputStream(bytes);
+        BinarySnapshotFormat.writeBlock(out, empty, compress);
+        BinarySnapshotFormat.writeBlock(out, repetitive, compress);
+        BinarySnapshotFormat.writeBlock(out, small, compress);
+        out.writeInt(BinarySnapshotFormat.MAGIC);
+        out.close();
+        if (compress) {
+            assertTrue(bytes.size() < repetitive.length / 10);
+        }
+        final ByteBuffer buffer = ByteBuffer.wrap(bytes.toByteArray());
+        assertArrayEquals(empty, toArray(BinarySnapshotFormat.readBlock(buffer, compress)));
+        assertArrayEquals(repetitive, toArray(BinarySnapshotFormat.readBlock(buffer, compress)));
+        assertArrayEquals(small, toArray(BinarySnapshotFormat.readBlock(buffer, compress)));
+        // the buffer is left just past the last block
+        assertEquals(BinarySnapshotFormat.MAGIC, buffer.getInt());
+        assertFalse(buffer.hasRemaining());
+    }
+
+    private static byte[] toArray(ByteBuffer block) {
+        final byte[] result = new byte[block.remaining()];
+        block.get(result);
+        return result;
+    }
+}
@@ -0,0 +1,110 @@
+/*
+ * Copyright 2005-2016 Sixth and Red River Software, Bas Leijdekkers
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.sixrr.metrics.metricModel;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class FractionColumnTest {
+
+    private static final double EPSILON = 1.0e-9;
+
+    @Test
+    public void testStatistics() {
+        final FractionColumn column = new FractionColumn();
+        column.put(0, 1.0, 1.0);
+        column.put(1, 5.0, 1.0);
+        column.put(2, 3.0, 1.0);
+        assertEquals(1.0, column.getMinimum(), EPSILON);
+        assertEquals(5.0, column.getMaximum(), EPSILON);
+        assertEquals(9.0, column.getTotal(), EPSILON);
+        assertEquals(3.0, column.getAverage(), EPSILON);
+        assertEquals(3L, column.getSketch().getCount());
+    }
+
+    @Test
+    public void testOverwriteMaximum() {
+        final FractionColumn column = new FractionColumn();
+        column.put(0, 1.0, 1.0);
+        column.put(1, 5.0, 1.0);
+        column.put(2, 3.0, 1.0);
+        assertEquals(5.0, column.getMaximum(), EPSILON);
+        column.put(1, 2.0, 1.0);
+        assertEquals(3.0, column.getMaximum(), EPSILON);
+        assertEquals(1.0, column.getMinimum(), EPSILON);
+        assertEquals(6.0, column.getTotal(), EPSILON);
+        assertEquals(2.0, column.getAverage(), EPSILON);
+        assertEquals(3L, column.getSketch().getCount());
+        assertEquals(3.0, column.getSketch().getMaximum(), EPSILON);
+    }
+
+    @Test
+    public void testOverwriteMinimum() {
+        final FractionColumn column = new FractionColumn();
+        column.put(0, 1.0, 1.0);
+        column.put(1, 5.0, 1.0);
+        column.put(2, 3.0, 1.0);
+        column.put(0, 4.0, 1.0);
+        assertEquals(3.0, column.getMinimum(), EPSILON);
+        assertEquals(5.0, column.getMaximum(), EPSILON);
+        assertEquals(12.0, column.getTotal(), EPSILON);
+        // values added after the overwrite are included as well
+        column.put(3, 0.0, 1.0);
+        assertEquals(0.0, column.getMinimum(), EPSILON);
+        assertEquals(12.0, column.getTotal(), EPSILON);
+        assertEquals(4L, column.getSketch().getCount());
+    }
+
+    @Test
+    public void testAverageOfFractions() {
+        final FractionColumn column = new FractionColumn();
+        column.put(0, 1.0, 2.0);
+        column.put(1, 3.0, 4.0);
+        assertEquals(0.5, column.get(0), EPSILON);
+        assertEquals(0.75, column.get(1), EPSILON);
+        assertEquals(1.25, column.getTotal(), EPSILON);
+        // the average is the total numerator over the total denominator, not the mean of the fractions
+        assertEquals(4.0 / 6.0, column.getAverage(), EPSILON);
+        assertEquals(3.0, column.getNumerator(1), EPSILON);
+        assertEquals(4.0, column.getDenominator(1), EPSILON);
+    }
+
+    @Test
+    public void testZeroDenominator() {
+        assertEquals(1.0, FractionColumn.toValue(3.0, 0.0), EPSILON);
+        assertEquals(1.0, FractionColumn.toValue(0.0, 0.0), EPSILON);
+        final FractionColumn column = new FractionColumn();
+        assertEquals(1.0, column.getAverage(), EPSILON);
+        column.put(0, 2.0, 0.0);
+        assertEquals(1.0, column.get(0), EPSILON);
+        assertEquals(1.0, column.getAverage(), EPSILON);
+    }
+
+    @Test
+    public void testSparseRows() {
+        final FractionColumn column = new FractionColumn();
+        column.put(100, 7.0, 1.0);
+        assertTrue(column.contains(100));
+        assertFalse(column.contains(50));
+        assertFalse(column.contains(-1));
+        assertEquals(7.0, column.get(100), EPSILON);
+        assertEquals(7.0, column.getMinimum(), EPSILON);
+        assertEquals(7.0, column.getTotal(), EPSILON);
+        assertEquals(1L, column.getSketch().getCount());
+    }
+}
@@ -0,0 +1,128 @@
+/*
+ * Copyright 2005-2016 Sixth and Red River Software, Bas Leijdekkers
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.sixrr.metrics.metricModel;
+
+import com.sixrr.metrics.Metric;
+import com.sixrr.metrics.MetricCategory;
+import com.sixrr.stockmetrics.classMetrics.CommentRatioClassMetric;
+import com.sixrr.stockmetrics.classMetrics.NumCommandsClassMetric;
+import com.sixrr.stockmetrics.methodMetrics.NumParametersMetric;
+import com.sixrr.stockmetrics.projectMetrics.CouplingFactorProjectMetric;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+public class MergeResultsTest {
+
+    private static final Metric COUNT = new NumCommandsClassMetric();
+    private static final Metric RATIO = new CommentRatioClassMetric();
+    private static final Metric SCORE = new NumParametersMetric();
+    private static final Metric COUPLING_FACTOR = new CouplingFactorProjectMetric();
+
+    @Test
+    public void testCountsAreAddedUp() {
+        final MetricsResultImpl results = new MetricsResultImpl();
+        results.combineValue(COUNT, "Foo", 3.0, 1.0);
+        assertEquals(Double.valueOf(3.0), results.getValueForMetric(COUNT, "Foo"));
+        results.combineValue(COUNT, "Foo", 4.0, 1.0);
+        assertEquals(Double.valueOf(7.0), results.getValueForMetric(COUNT, "Foo"));
+        results.combineValue(COUNT, "Bar", 2.0, 1.0);
+        assertEquals(Double.valueOf(2.0), results.getValueForMetric(COUNT, "Bar"));
+        assertEquals(Double.valueOf(7.0), results.getValueForMetric(COUNT, "Foo"));
+    }
+
+    @Test
+    public void testNumeratorsAndDenominatorsOfRatiosAreAddedUp() {
+        final MetricsResultImpl results = new MetricsResultImpl();
+        results.combineValue(RATIO, "Foo", 1.0, 4.0);
+        results.combineValue(RATIO, "Foo", 3.0, 4.0);
+        assertEquals(0.5, results.getValueForMetric(RATIO, "Foo").doubleValue(), 0.0);
+        assertEquals(4.0, results.getNumeratorsForMetric(RATIO)[0], 0.0);
+        assertEquals(8.0, results.getDenominatorsForMetric(RATIO)[0], 0.0);
+        // not the mean of the two ratios
+        results.combineValue(RATIO, "Foo", 0.0, 2.0);
+        assertEquals(0.4, results.getValueForMetric(RATIO, "Foo").doubleValue(), 1.0e-9);
+    }
+
+    @Test
+    public void testMaximumScoreIsKept() {
+        final MetricsResultImpl results = new MetricsResultImpl();
+        results.combineValue(SCORE, "Foo.bar()", 2.0, 1.0);
+        results.combineValue(SCORE, "Foo.bar()", 5.0, 1.0);
+        assertEquals(Double.valueOf(5.0), results.getValueForMetric(SCORE, "Foo.bar()"));
+        results.combineValue(SCORE, "Foo.bar()", 3.0, 1.0);
+        assertEquals(Double.valueOf(5.0), results.getValueForMetric(SCORE, "Foo.bar()"));
+    }
+
+    @Test
+    public void testMergeRuns() {
+        final MetricsRunImpl shard1 = new MetricsRunImpl();
+        shard1.setProfileName("profile");
+        final MetricsResult classes1 = shard1.getResultsForCategory(MetricCategory.Class);
+        classes1.postValue(COUNT, "Foo", 3.0);
+        classes1.postValue(RATIO, "Foo", 1.0, 4.0);
+        shard1.getResultsForCategory(MetricCategory.Method).postValue(SCORE, "Foo.bar()", 2.0);
+
+        final MetricsRunImpl shard2 = new MetricsRunImpl();
+        shard2.setProfileName("other");
+        final MetricsResult classes2 = shard2.getResultsForCategory(MetricCategory.Class);
+        classes2.postValue(COUNT, "Foo", 4.0);
+        classes2.postValue(RATIO, "Foo", 3.0, 4.0);
+        classes2.postValue(COUNT, "Bar", 2.0);
+        shard2.getResultsForCategory(MetricCategory.Method).postValue(SCORE, "Foo.bar()", 5.0);
+
+        final Set<String> droppedMetricIds = new HashSet<String>();
+        final MetricsRun merged = MetricsRunImpl.merge(Arrays.<MetricsRun>asList(shard1, shard2), droppedMetricIds);
+        assertTrue(droppedMetricIds.isEmpty());
+        assertEquals("profile", merged.getProfileName());
+        final MetricsResult classes = merged.getResultsForCategory(MetricCategory.Class);
+        assertEquals(Double.valueOf(7.0), classes.getValueForMetric(COUNT, "Foo"));
+        assertEquals(Double.valueOf(2.0), classes.getValueForMetric(COUNT, "Bar"));
+        assertNull(classes.getValueForMetric(RATIO, "Bar"));
+        assertEquals(0.5, classes.getValueForMetric(RATIO, "Foo").doubleValue(), 0.0);
+        final MetricsResult methods = merged.getResultsForCategory(MetricCategory.Method);
+        assertEquals(Double.valueOf(5.0), methods.getValueForMetric(SCORE, "Foo.bar()"));
+        // the shards are left unchanged
+        assertEquals(Double.valueOf(3.0), classes1.getValueForMetric(COUNT, "Foo"));
+    }
+
+    @Test
+    public void testNonAdditiveValuesOfSeveralRunsAreDropped() {
+        final MetricsRunImpl shard1 = new MetricsRunImpl();
+        shard1.getResultsForCategory(MetricCategory.Project).postValue(COUPLING_FACTOR, "project", 2.0, 6.0);
+        final MetricsRunImpl shard2 = new MetricsRunImpl();
+        shard2.getResultsForCategory(MetricCategory.Project).postValue(COUPLING_FACTOR, "project", 1.0, 2.0);
+
+        final Set<String> droppedMetricIds = new HashSet<String>();
+        final MetricsRun merged = MetricsRunImpl.merge(Arrays.<MetricsRun>asList(shard1, shard2), droppedMetricIds);
+        assertNull(merged.getResultsForCategory(MetricCategory.Project).getValueForMetric(COUPLING_FACTOR, "project"));
+        assertEquals(Collections.singleton(COUPLING_FACTOR.getID()), droppedMetricIds);
+
+        // a value reported by a single run is still copied
+        droppedMetricIds.clear();
+        final MetricsRun single = MetricsRunImpl.merge(Arrays.<MetricsRun>asList(shard1, new MetricsRunImpl()),
+                droppedMetricIds);
+        final MetricsResult project = single.getResultsForCategory(MetricCategory.Project);
+        assertEquals(2.0 / 6.0, project.getValueForMetric(COUPLING_FACTOR, "project").doubleValue(), 1.0e-9);
+        assertTrue(droppedMetricIds.isEmpty());
+    }
+}
@@ -0,0 +1,177 @@
+/*
+ * Copyright 2005-2016 Sixth and Red River Software, Bas Leijdekkers
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.sixrr.metrics.metricModel;
+
+import com.sixrr.metrics.Metric;
+import com.sixrr.metrics.MetricCategory;
+import com.sixrr.stockmetrics.classMetrics.CommentRatioClassMetric;
+import com.sixrr.stockmetrics.classMetrics.NumCommandsClassMetric;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class MetricsHistoryTest {
+
+    private static final Metric COUNT = new NumCommandsClassMetric();
+    private static final Metric RATIO = new CommentRatioClassMetric();
+
+    @Test
+    public void testAppendAndReopen() throws IOException {
+        final File file = createHistoryFile();
+        try {
+            final MetricsHistory history = MetricsHistory.open(file);
+            assertEquals(0, history.getGenerationCount());
+            assertEquals(0, history.append(createRun(3.0, 5.0), "first"));
+            assertEquals(1, history.append(createRun(4.0, Double.NaN), "second"));
+            assertEquals(2, history.append(createRun(4.0, 7.0), "third"));
+            assertHistory(history);
+            assertHistory(MetricsHistory.open(file));
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void testTornRecordIsOverwritten() throws IOException {
+        final File file = createHistoryFile();
+        try {
+            final MetricsHistory history = MetricsHistory.open(file);
+            history.append(createRun(3.0, 5.0), "first");
+            history.append(createRun(4.0, Double.NaN), "second");
+            final long validLength = file.length();
+            history.append(createRun(10.0, 10.0), "torn");
+            final long tornLength = file.length();
+            truncate(file, (validLength + tornLength) / 2);
+
+            final MetricsHistory reopened = MetricsHistory.open(file);
+            assertEquals(2, reopened.getGenerationCount());
+            assertEquals("second", reopened.getLabel(1));
+            assertEquals(2, reopened.append(createRun(4.0, 7.0), "third"));
+            assertHistory(reopened);
+            assertHistory(MetricsHistory.open(file));
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void testGarbageAfterLastRecordIsIgnored() throws IOException {
+        final File file = createHistoryFile();
+        try {
+            final MetricsHistory history = MetricsHistory.open(file);
+            history.append(createRun(3.0, 5.0), "first");
+            final long validLength = file.length();
+            final RandomAccessFile out = new RandomAccessFile(file, "rw");
+            try {
+                out.seek(validLength);
+                out.writeInt(4);
+                out.writeInt(12345);
+                out.writeInt(-1);
+            } finally {
+                out.close();
+            }
+            final MetricsHistory reopened = MetricsHistory.open(file);
+            assertEquals(1, reopened.getGenerationCount());
+            reopened.append(createRun(4.0, Double.NaN), "second");
+            reopened.append(createRun(4.0, 7.0), "third");
+            assertHistory(MetricsHistory.open(file));
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void testGenerationsAppendedByAnotherInstanceAreReadFirst() throws IOException {
+        final File file = createHistoryFile();
+        try {
+            final MetricsHistory history1 = MetricsHistory.open(file);
+            final MetricsHistory history2 = MetricsHistory.open(file);
+            assertEquals(0, history1.append(createRun(3.0, 5.0), "first"));
+            assertEquals(1, history2.append(createRun(4.0, Double.NaN), "second"));
+            assertEquals(2, history1.append(createRun(4.0, 7.0), "third"));
+            assertHistory(history1);
+            assertHistory(MetricsHistory.open(file));
+        } finally {
+            file.delete();
+        }
+    }
+
+    /**
+     * Checks the generations appended by {@link #testAppendAndReopen()}.
+     */
+    private static void assertHistory(MetricsHistory history) {
+        assertEquals(3, history.getGenerationCount());
+        assertEquals("first", history.getLabel(0));
+        assertEquals("second", history.getLabel(1));
+        assertEquals("third", history.getLabel(2));
+        assertEquals("profile", history.getProfileName(2));
+        assertEquals(2, history.getMetricIds().length);
+
+        assertEquals(Double.valueOf(3.0), history.getValue(COUNT.getID(), "Foo", 0));
+        assertEquals(Double.valueOf(4.0), history.getValue(COUNT.getID(), "Foo", 1));
+        assertEquals(Double.valueOf(4.0), history.getValue(COUNT.getID(), "Foo", 2));
+        assertEquals(Double.valueOf(5.0), history.getValue(COUNT.getID(), "Bar", 0));
+        assertNull(history.getValue(COUNT.getID(), "Bar", 1));
+        assertEquals(Double.valueOf(7.0), history.getValue(COUNT.getID(), "Bar", 2));
+        assertEquals(Double.valueOf(0.25), history.getValue(RATIO.getID(), "Foo", 2));
+        assertNull(history.getValue(RATIO.getID(), "Bar", 0));
+        assertNull(history.getValue("Unknown", "Foo", 0));
+
+        final double[] series = history.getSeries(COUNT.getID(), "Bar", 0, 3);
+        assertEquals(3, series.length);
+        assertEquals(5.0, series[0], 0.0);
+        assertTrue(Double.isNaN(series[1]));
+        assertEquals(7.0, series[2], 0.0);
+
+        final List<MetricsHistory.Change> increases = history.getLargestIncreases(COUNT.getID(), 0, 2, 10);
+        assertEquals(2, increases.size());
+        assertEquals("Bar", increases.get(0).getMeasuredObject());
+        assertEquals("Foo", increases.get(1).getMeasuredObject());
+    }
+
+    private static MetricsRun createRun(double fooCount, double barCount) {
+        final MetricsRunImpl run = new MetricsRunImpl();
+        run.setProfileName("profile");
+        final MetricsResult results = run.getResultsForCategory(MetricCategory.Class);
+        results.postValue(COUNT, "Foo", fooCount);
+        results.postValue(RATIO, "Foo", 1.0, 4.0);
+        if (!Double.isNaN(barCount)) {
+            results.postValue(COUNT, "Bar", barCount);
+        }
+        return run;
+    }
+
+    private static File createHistoryFile() throws IOException {
+        final File file = File.createTempFile("metrics", ".history");
+        file.deleteOnExit();
+        return file;
+    }
+
+    private static void truncate(File file, long length) throws IOException {
+        final RandomAccessFile out = new RandomAccessFile(file, "rw");
+        try {
+            out.setLength(length);
+        } finally {
+            out.close();
+        }
+    }
+}
@@ -0,0 +1,47 @@
+/*
+ * Copyright 2005-2016 Sixth and Red River Software, Bas Leijdekkers
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.sixrr.metrics.metricModel;
+
+import com.sixrr.metrics.Metric;
+import com.sixrr.stockmetrics.classMetrics.NumCommandsClassMetric;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class MetricsResultImplTest {
+
+    private static final Metric COUNT = new NumCommandsClassMetric();
+
+    @Test
+    public void testNullMeasuredObjectIsIgnored() {
+        final MetricsResultImpl results = new MetricsResultImpl();
+        // a local class has no qualified name
+        results.postValue(COUNT, null, 1.0);
+        results.setElementForMeasuredObject(null, null);
+        assertEquals(0, results.getMeasuredObjects().length);
+        assertNull(results.getElementForMeasuredObject(null));
+    }
+
+    @Test
+    public void testElementWithoutValuesAddsNoRow() {
+        final MetricsResultImpl results = new MetricsResultImpl();
+        results.setElementForMeasuredObject("Foo", null);
+        assertEquals(0, results.getMeasuredObjects().length);
+        results.postValue(COUNT, "Bar", 1.0);
+        assertArrayEquals(new String[]{"Bar"}, results.getMeasuredObjects());
+    }
+}
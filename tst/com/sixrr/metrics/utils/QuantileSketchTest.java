@@ -0,0 +1,136 @@
+/*
+ * Copyright 2005-2016 Sixth and Red River Software, Bas Leijdekkers
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.sixrr.metrics.utils;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class QuantileSketchTest {
+
+    private static final int VALUE_COUNT = 100000;
+    /** the largest rank error allowed, as a fraction of the number of values */
+    private static final double RANK_ERROR = 0.02;
+
+    @Test
+    public void testEmpty() {
+        final QuantileSketch sketch = new QuantileSketch();
+        assertEquals(0L, sketch.getCount());
+        assertTrue(Double.isNaN(sketch.getQuantile(0.5)));
+        assertTrue(Double.isNaN(sketch.getMinimum()));
+        assertTrue(Double.isNaN(sketch.getMaximum()));
+        sketch.add(Double.NaN);
+        assertEquals(0L, sketch.getCount());
+    }
+
+    @Test
+    public void testExactWhileSmall() {
+        final QuantileSketch sketch = new QuantileSketch();
+        for (int i = 100; i >= 1; i--) {
+            sketch.add(i);
+        }
+        assertEquals(100L, sketch.getCount());
+        assertEquals(1.0, sketch.getQuantile(0.0), 0.0);
+        assertEquals(1.0, sketch.getQuantile(0.01), 0.0);
+        assertEquals(50.0, sketch.getQuantile(0.5), 0.0);
+        assertEquals(90.0, sketch.getQuantile(0.9), 0.0);
+        assertEquals(100.0, sketch.getQuantile(1.0), 0.0);
+    }
+
+    @Test
+    public void testRankErrorOfShuffledValues() {
+        final List<Integer> values = createValues();
+        Collections.shuffle(values, new Random(42L));
+        final QuantileSketch sketch = new QuantileSketch();
+        for (Integer value : values) {
+            sketch.add(value.intValue());
+        }
+        assertRankError(sketch);
+    }
+
+    @Test
+    public void testRankErrorOfSortedValues() {
+        final QuantileSketch ascending = new QuantileSketch();
+        final QuantileSketch descending = new QuantileSketch();
+        for (int i = 0; i < VALUE_COUNT; i++) {
+            ascending.add(i);
+            descending.add(VALUE_COUNT - 1 - i);
+        }
+        assertRankError(ascending);
+        assertRankError(descending);
+    }
+
+    @Test
+    public void testMerge() {
+        final List<Integer> values = createValues();
+        Collections.shuffle(values, new Random(7L));
+        final QuantileSketch[] parts = new QuantileSketch[4];
+        for (int i = 0; i < parts.length; i++) {
+            parts[i] = new QuantileSketch();
+        }
+        for (int i = 0; i < values.size(); i++) {
+            parts[i % parts.length].add(values.get(i).intValue());
+        }
+        final QuantileSketch merged = new QuantileSketch(parts[0]);
+        for (int i = 1; i < parts.length; i++) {
+            merged.merge(parts[i]);
+        }
+        merged.merge(new QuantileSketch());
+        assertRankError(merged);
+        // the merged parts are left unchanged
+        assertEquals((long) VALUE_COUNT / parts.length, parts[0].getCount());
+    }
+
+    @Test
+    public void testMinimumAndMaximumAreExact() {
+        final List<Integer> values = createValues();
+        Collections.shuffle(values, new Random(3L));
+        final QuantileSketch sketch = new QuantileSketch(16);
+        for (Integer value : values) {
+            sketch.add(value.intValue());
+        }
+        assertEquals(0.0, sketch.getMinimum(), 0.0);
+        assertEquals(VALUE_COUNT - 1, sketch.getMaximum(), 0.0);
+        assertEquals(0.0, sketch.getQuantile(0.0), 0.0);
+        assertEquals(VALUE_COUNT - 1, sketch.getQuantile(1.0), 0.0);
+    }
+
+    private static List<Integer> createValues() {
+        final List<Integer> values = new ArrayList<Integer>(VALUE_COUNT);
+        for (int i = 0; i < VALUE_COUNT; i++) {
+            values.add(Integer.valueOf(i));
+        }
+        return values;
+    }
+
+    /**
+     * The values are 0 to VALUE_COUNT - 1, so the rank of each value is the value itself.
+     */
+    private static void assertRankError(QuantileSketch sketch) {
+        assertEquals(VALUE_COUNT, sketch.getCount());
+        for (int percentile = 1; percentile < 100; percentile++) {
+            final double fraction = percentile / 100.0;
+            final double rank = sketch.getQuantile(fraction);
+            assertEquals("percentile " + percentile, fraction * VALUE_COUNT, rank, RANK_ERROR * VALUE_COUNT);
+        }
+    }
+}
@@ -17,6 +17,7 @@
 package com.sixrr.metrics.utils;
 
 import gnu.trove.TObjectIntHashMap;
+import gnu.trove.TObjectIntProcedure;
 import gnu.trove.TObjectProcedure;
 import org.jetbrains.annotations.NotNull;
 
@@ -27,6 +28,12 @@ public class BucketedCount<T> {
 
     private final TObjectIntHashMap<T> buckets = new TObjectIntHashMap<T>();
 
+    public BucketedCount() {}
+
+    public BucketedCount(@NotNull BucketedCount<T> other) {
+        addAll(other);
+    }
+
     public void createBucket(@NotNull T bucketName) {
         if (!buckets.containsKey(bucketName)) {
             buckets.put(bucketName, 0);
@@ -64,6 +71,23 @@ public class BucketedCount<T> {
         return buckets.get(bucketName);
     }
 
+    /**
+     * Adds the buckets and values of the specified count to this one.
+     */
+    public void addAll(@NotNull BucketedCount<T> other) {
+        other.buckets.forEachEntry(new TObjectIntProcedure<T>() {
+            @Override
+            public boolean execute(T bucketName, int value) {
+                incrementBucketValue(bucketName, value);
+                return true;
+            }
+        });
+    }
+
+    public boolean isEmpty() {
+        return buckets.isEmpty();
+    }
+
     public void clear() {
         buckets.clear();
     }
@@ -0,0 +1,73 @@
+/*
+ * Copyright 2005, Sixth and Red River Software
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.sixrr.metrics.utils;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Set;
+
+/**
+ * A numerator and a denominator for each of a number of buckets.
+ */
+public class BucketedRatio<T> {
+
+    private final BucketedCount<T> numerators = new BucketedCount<T>();
+    private final BucketedCount<T> denominators = new BucketedCount<T>();
+
+    public BucketedRatio() {}
+
+    public BucketedRatio(@NotNull BucketedRatio<T> other) {
+        addAll(other);
+    }
+
+    public void createBucket(@NotNull T bucketName) {
+        numerators.createBucket(bucketName);
+        denominators.createBucket(bucketName);
+    }
+
+    /**
+     * @return the buckets which have a numerator.
+     */
+    public Set<T> getBuckets() {
+        return numerators.getBuckets();
+    }
+
+    public void incrementNumerator(@NotNull T bucketName, int increment) {
+        numerators.incrementBucketValue(bucketName, increment);
+    }
+
+    public void incrementDenominator(@NotNull T bucketName, int increment) {
+        denominators.incrementBucketValue(bucketName, increment);
+    }
+
+    public int getNumerator(T bucketName) {
+        return numerators.getBucketValue(bucketName);
+    }
+
+    public int getDenominator(T bucketName) {
+        return denominators.getBucketValue(bucketName);
+    }
+
+    public void addAll(@NotNull BucketedRatio<T> other) {
+        numerators.addAll(other.numerators);
+        denominators.addAll(other.denominators);
+    }
+
+    public boolean isEmpty() {
+        return numerators.isEmpty() && denominators.isEmpty();
+    }
+}
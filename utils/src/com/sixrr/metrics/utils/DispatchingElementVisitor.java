@@ -0,0 +1,48 @@
+/*
+ * Copyright 2005-2016 Sixth and Red River Software, Bas Leijdekkers
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.sixrr.metrics.utils;
+
+import com.intellij.psi.PsiElement;
+import com.intellij.psi.PsiElementVisitor;
+import com.intellij.psi.PsiRecursiveElementWalkingVisitor;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.List;
+
+/**
+ * Walks a tree of elements once, offering every element to each of a number of non-recursive visitors.
+ */
+public class DispatchingElementVisitor extends PsiRecursiveElementWalkingVisitor {
+
+    private final PsiElementVisitor[] visitors;
+
+    public DispatchingElementVisitor(@NotNull PsiElementVisitor visitor) {
+        visitors = new PsiElementVisitor[]{visitor};
+    }
+
+    public DispatchingElementVisitor(@NotNull List<PsiElementVisitor> visitors) {
+        this.visitors = visitors.toArray(new PsiElementVisitor[visitors.size()]);
+    }
+
+    @Override
+    public void visitElement(PsiElement element) {
+        for (PsiElementVisitor visitor : visitors) {
+            element.accept(visitor);
+        }
+        super.visitElement(element);
+    }
+}
@@ -0,0 +1,249 @@
+/*
+ * Copyright 2005-2016 Sixth and Red River Software, Bas Leijdekkers
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+
+package com.sixrr.metrics.utils;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Arrays;
+
+/**
+ * A bounded-memory approximation of the distribution of a stream of values, from which quantiles can be estimated
+ * (after Karnin, Lang and Liberty, "Optimal Quantile Approximation in Streams").  Values are kept in a hierarchy of
+ * compactors, where a value on level h stands for 2^h of the original values.  When the sketch is full, a level is
+ * sorted and every other value is promoted to the next level.  Sketches of separately measured values can be merged.
+ */
+public class QuantileSketch {
+
+    private static final int DEFAULT_ACCURACY = 200;
+    private static final double CAPACITY_DECAY = 2.0 / 3.0;
+
+    private final int accuracy;
+    private double[][] levels;
+    private int[] levelSizes;
+    private int levelCount = 0;
+    private int maximumSize = 0;
+    private int size = 0;
+    private long count = 0L;
+    private double minimum = Double.POSITIVE_INFINITY;
+    private double maximum = Double.NEGATIVE_INFINITY;
+    private boolean promoteOdd = false;
+
+    private double[] sortedValues = null;
+    private long[] cumulativeWeights = null;
+
+    public QuantileSketch() {
+        this(DEFAULT_ACCURACY);
+    }
+
+    /**
+     * @param accuracy the capacity of the top level of the sketch.  The rank error of the estimated quantiles is
+     *                 roughly proportional to 1/accuracy.
+     */
+    public QuantileSketch(int accuracy) {
+        this.accuracy = Math.max(8, accuracy);
+        levels = new double[4][];
+        levelSizes = new int[4];
+        addLevel();
+    }
+
+    public QuantileSketch(@NotNull QuantileSketch other) {
+        this(other.accuracy);
+        merge(other);
+    }
+
+    public void add(double value) {
+        if (Double.isNaN(value)) {
+            return;
+        }
+        count++;
+        minimum = Math.min(minimum, value);
+        maximum = Math.max(maximum, value);
+        append(0, value);
+        size++;
+        if (size >= maximumSize) {
+            compress();
+        }
+        sortedValues = null;
+    }
+
+    /**
+     * Adds all values summarized by the specified sketch to this one.
+     */
+    public void merge(@NotNull QuantileSketch other) {
+        if (other.count == 0L) {
+            return;
+        }
+        for (int level = 0; level < other.levelCount; level++) {
+            while (level >= levelCount) {
+                addLevel();
+            }
+            final double[] values = other.levels[level];
+            for (int i = 0, length = other.levelSizes[level]; i < length; i++) {
+                append(level, values[i]);
+            }
+        }
+        size += other.size;
+        count += other.count;
+        minimum = Math.min(minimum, other.minimum);
+        maximum = Math.max(maximum, other.maximum);
+        compress();
+        sortedValues = null;
+    }
+
+    /**
+     * @return the number of values summarized by this sketch.
+     */
+    public long getCount() {
+        return count;
+    }
+
+    public double getMinimum() {
+        return count == 0L ? Double.NaN : minimum;
+    }
+
+    public double getMaximum() {
+        return count == 0L ? Double.NaN : maximum;
+    }
+
+    /**
+     * Estimates the value below which the specified fraction of the values lies.
+     * @param fraction a number between 0.0 and 1.0, for example 0.9 for the 90th percentile.
+     * @return the estimated quantile, or NaN if the sketch is empty.
+     */
+    public double getQuantile(double fraction) {
+        if (count == 0L) {
+            return Double.NaN;
+        }
+        if (fraction <= 0.0) {
+            return minimum;
+        }
+        if (fraction >= 1.0) {
+            return maximum;
+        }
+        if (sortedValues == null) {
+            sortValues();
+        }
+        final double rank = fraction * count;
+        int low = 0;
+        int high = cumulativeWeights.length - 1;
+        while (low < high) {
+            final int middle = (low + high) >>> 1;
+            if (cumulativeWeights[middle] < rank) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return sortedValues[low];
+    }
+
+    private void sortValues() {
+        final double[] values = new double[size];
+        final long[] weights = new long[size];
+        int index = 0;
+        for (int level = 0; level < levelCount; level++) {
+            final int levelSize = levelSizes[level];
+            System.arraycopy(levels[level], 0, values, index, levelSize);
+            Arrays.fill(weights, index, index + levelSize, 1L << level);
+            index += levelSize;
+        }
+        sortByValue(values, weights);
+        for (int i = 1; i < weights.length; i++) {
+            weights[i] += weights[i - 1];
+        }
+        sortedValues = values;
+        cumulativeWeights = weights;
+    }
+
+    private static void sortByValue(double[] values, long[] weights) {
+        // insertion sort is fine for the small number of retained values, and keeps the weights in step
+        for (int i = 1; i < values.length; i++) {
+            final double value = values[i];
+            final long weight = weights[i];
+            int j = i - 1;
+            while (j >= 0 && values[j] > value) {
+                values[j + 1] = values[j];
+                weights[j + 1] = weights[j];
+                j--;
+            }
+            values[j + 1] = value;
+            weights[j + 1] = weight;
+        }
+    }
+
+    private void addLevel() {
+        if (levelCount == levels.length) {
+            levels = Arrays.copyOf(levels, levelCount << 1);
+            levelSizes = Arrays.copyOf(levelSizes, levelCount << 1);
+        }
+        levels[levelCount] = new double[8];
+        levelSizes[levelCount] = 0;
+        levelCount++;
+        maximumSize = 0;
+        for (int level = 0; level < levelCount; level++) {
+            maximumSize += getCapacity(level);
+        }
+    }
+
+    private void append(int level, double value) {
+        double[] values = levels[level];
+        final int levelSize = levelSizes[level];
+        if (levelSize == values.length) {
+            values = Arrays.copyOf(values, levelSize << 1);
+            levels[level] = values;
+        }
+        values[levelSize] = value;
+        levelSizes[level] = levelSize + 1;
+    }
+
+    /**
+     * The top level holds up to accuracy values, and every level below it two thirds of the level above.
+     */
+    private int getCapacity(int level) {
+        final int depth = levelCount - level - 1;
+        return Math.max(2, (int) Math.ceil(accuracy * Math.pow(CAPACITY_DECAY, depth)));
+    }
+
+    private void compress() {
+        while (size >= maximumSize) {
+            for (int level = 0; level < levelCount; level++) {
+                if (levelSizes[level] >= getCapacity(level)) {
+                    if (level + 1 == levelCount) {
+                        addLevel();
+                    }
+                    compact(level);
+                    break;
+                }
+            }
+        }
+    }
+
+    private void compact(int level) {
+        final double[] values = levels[level];
+        final int levelSize = levelSizes[level];
+        Arrays.sort(values, 0, levelSize);
+        // with an odd number of values the smallest stays behind, the others are halved into the next level
+        final int start = levelSize & 1;
+        promoteOdd = !promoteOdd;
+        for (int i = start + (promoteOdd ? 1 : 0); i < levelSize; i += 2) {
+            append(level + 1, values[i]);
+        }
+        levelSizes[level] = start;
+        size -= (levelSize - start) >> 1;
+    }
+}
@@ -0,0 +1,48 @@
+/*
+ * Copyright 2005, Sixth and Red River Software
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.sixrr.metrics.utils;
+
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * An immutable pair of an integer numerator and denominator.
+ */
+public final class Ratio {
+
+    public static final Ratio ZERO = new Ratio(0, 0);
+
+    private final int numerator;
+    private final int denominator;
+
+    public Ratio(int numerator, int denominator) {
+        this.numerator = numerator;
+        this.denominator = denominator;
+    }
+
+    public int getNumerator() {
+        return numerator;
+    }
+
+    public int getDenominator() {
+        return denominator;
+    }
+
+    @NotNull
+    public Ratio plus(@NotNull Ratio other) {
+        return new Ratio(numerator + other.numerator, denominator + other.denominator);
+    }
+}